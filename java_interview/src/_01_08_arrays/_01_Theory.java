@@ -396,6 +396,7 @@ public class _01_Theory {
 
         sb.setScores(new int[]{1, 2, 3}); // setter copies input
         System.out.println("After setScores: " + Arrays.toString(sb.getScores()));
+        System.out.println("Read-only view (no copy): " + sb.scores());
     }
 
     // 18) Zero-length arrays vs null
@@ -430,19 +431,26 @@ public class _01_Theory {
         @Override public String toString() { return key + "(" + order + ")"; }
     }
 
+    // Copies once on the way in; the frozen view can be handed out on every read without another copy
     static class Scoreboard {
-        private int[] scores;
+        private _05_PrimitiveArrayBuilders.IntArrayView scores;
 
         Scoreboard(int[] scores) {
-            this.scores = scores == null ? new int[0] : Arrays.copyOf(scores, scores.length);
+            setScores(scores);
+        }
+
+        public _05_PrimitiveArrayBuilders.IntArrayView scores() {
+            return scores; // read-only, safe to share
         }
 
         public int[] getScores() {
-            return Arrays.copyOf(scores, scores.length); // defensive copy
+            return scores.toArray(); // defensive copy, for callers that need an int[]
         }
 
         public void setScores(int[] scores) {
-            this.scores = scores == null ? new int[0] : Arrays.copyOf(scores, scores.length);
+            this.scores = scores == null
+                    ? _05_PrimitiveArrayBuilders.IntArrayView.empty()
+                    : _05_PrimitiveArrayBuilders.IntArrayView.copyOf(scores); // setter copies input
         }
     }
 }
\ No newline at end of file
@@ -177,6 +177,7 @@ public class _02_Examples {
     // -----------------------------------------------------------------------------
     // MULTI-DIMENSIONAL
     // -----------------------------------------------------------------------------
+    // Jagged arrays: one heap object per row. For dense numeric work see _06_FlatMatrix (one array, row-major).
     static void multiDimensional() {
         // Rectangular 2D
         int[][] grid = new int[2][3];
@@ -367,6 +368,8 @@ public class _02_Examples {
         }
     }
 
+    // Copies the whole array per call: appending n values this way is O(n^2).
+    // To build an array value by value use _05_PrimitiveArrayBuilders.IntArrayBuilder.
     static int[] append(int[] arr, int value) {
         int[] out = Arrays.copyOf(arr, arr.length + 1);
         out[out.length - 1] = value;
@@ -0,0 +1,590 @@
+package _01_08_arrays;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Top-k and partial sort for int[] / long[] / double[]: bounded heaps and quickselect instead of a full sort.
+ *
+ * sortingSearching() in _02_Examples sorts the whole array even when the caller only wants the first few, and a
+ * leaderboard over a stream of scores (Scoreboard in _01_Theory keeps a plain int[]) would have to materialize every
+ * score before sorting it. Two tools cover the cases:
+ * - IntTopK / LongTopK / DoubleTopK keep the k best values seen so far in a primitive min-heap whose root is the
+ *   current entry threshold. A value that does not beat the root costs one comparison; one that does costs
+ *   O(log k). That is O(n log k) time and O(k) memory for any stream, with nothing boxed. Two heaps merge, so they
+ *   plug into IntStream.collect(supplier, accumulator, combiner) and run on parallel streams unchanged.
+ * - PartialSort.select / partialSort work in place on an array that is already there: a quickselect (median-of-3
+ *   pivot, three-way partition so runs of equal values finish early) moves the k smallest to the front in expected
+ *   O(n), then only those k are sorted. A depth budget of 2 log2(n) partitions falls back to Arrays.sort on the
+ *   remaining range, so adversarial inputs stay O(n log n).
+ * "Smallest" heaps store ~v (bitwise NOT reverses int/long order without the overflow of -v), so one heap
+ * implementation serves both directions. Doubles are mapped to longs whose signed order equals Double.compare
+ * (-0.0 before 0.0, NaN last), so DoubleTopK is a LongTopK underneath; PartialSort compares doubles with
+ * Double.compare for the same reason.
+ *
+ * Measurement: JMH is not on the classpath, so times come from an ad-hoc bench loop (a warm-up, then the average of
+ * a few runs) and allocation from com.sun.management.ThreadMXBean. Rows that modify the array sort a clone, and the
+ * clone is part of the time (~20 ms at 20M ints).
+ *
+ * Typical numbers (1 CPU, JDK 21, 20M random ints):
+ * - Top 10 / top 1000: clone + Arrays.sort ~2.4 s (parallelSort is no faster on one CPU); clone + select + sort of
+ *   the tail 290-350 ms; IntTopK.addAll ~35 ms, about the cost of reading the array once. A bounded
+ *   PriorityQueue&lt;Integer&gt; is close (~40 ms) on random input because almost every value is rejected at peek()
+ *   before anything is boxed; the parallel stream adds ~40 ms of splitting and merging overhead on one CPU.
+ * - Ascending input is the heap's worst case: every value replaces the root, so top 1000 costs ~2 s (n log k);
+ *   quickselect on the same input takes 0.8-1.3 s, as the three-way partition moves half of every range.
+ * - Top 10 of a generated IntStream: 0 B allocated per element with IntTopK, ~24 B with boxed().sorted().limit().
+ */
+public class _04_TopKAndPartialSort {
+
+    public static void main(String[] args) {
+        header("Top-k of a small array");
+        demoSmall();
+
+        header("Streaming leaderboard: top 5 of 1M scores, never materialized");
+        demoStreamingLeaderboard();
+
+        header("Benchmarks");
+        benchmarks();
+    }
+
+    // -----------------------------------------------------------------------------
+    // BOUNDED HEAPS
+    // -----------------------------------------------------------------------------
+
+    /** The k largest (or smallest) ints seen so far. Not thread-safe; parallel streams give each thread its own. */
+    static final class IntTopK {
+        private final int k;
+        private final boolean largest;
+        private final int[] heap; // min-heap of stored values (v, or ~v when keeping the smallest)
+        private int size;
+
+        private IntTopK(int k, boolean largest) {
+            if (k < 0) throw new IllegalArgumentException("k must be >= 0: " + k);
+            this.k = k;
+            this.largest = largest;
+            this.heap = new int[k];
+        }
+
+        static IntTopK largest(int k) {
+            return new IntTopK(k, true);
+        }
+
+        static IntTopK smallest(int k) {
+            return new IntTopK(k, false);
+        }
+
+        void offer(int value) {
+            offerStored(largest ? value : ~value);
+        }
+
+        void addAll(int[] values) {
+            for (int v : values) offer(v);
+        }
+
+        /** Combiner for IntStream.collect: adds everything {@code other} kept. */
+        IntTopK merge(IntTopK other) {
+            if (other.k != k || other.largest != largest) throw new IllegalArgumentException("different top-k shapes");
+            for (int i = 0; i < other.size; i++) offerStored(other.heap[i]);
+            return this;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** The worst value still kept: a new value must beat it to enter once k values are held. */
+        int threshold() {
+            if (size == 0) throw new IllegalStateException("empty");
+            return largest ? heap[0] : ~heap[0];
+        }
+
+        /** Best first: descending for largest(k), ascending for smallest(k). */
+        int[] toSortedArray() {
+            int[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            int[] out = new int[size];
+            for (int i = 0; i < size; i++) {
+                int stored = sorted[size - 1 - i];
+                out[i] = largest ? stored : ~stored;
+            }
+            return out;
+        }
+
+        private void offerStored(int v) {
+            if (size < k) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (heap[parent] <= v) break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = v;
+            } else if (k > 0 && v > heap[0]) {
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                    if (v <= heap[child]) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = v;
+            }
+        }
+    }
+
+    /** The k largest (or smallest) longs seen so far; same shape as IntTopK. */
+    static final class LongTopK {
+        private final int k;
+        private final boolean largest;
+        private final long[] heap;
+        private int size;
+
+        private LongTopK(int k, boolean largest) {
+            if (k < 0) throw new IllegalArgumentException("k must be >= 0: " + k);
+            this.k = k;
+            this.largest = largest;
+            this.heap = new long[k];
+        }
+
+        static LongTopK largest(int k) {
+            return new LongTopK(k, true);
+        }
+
+        static LongTopK smallest(int k) {
+            return new LongTopK(k, false);
+        }
+
+        void offer(long value) {
+            offerStored(largest ? value : ~value);
+        }
+
+        void addAll(long[] values) {
+            for (long v : values) offer(v);
+        }
+
+        LongTopK merge(LongTopK other) {
+            if (other.k != k || other.largest != largest) throw new IllegalArgumentException("different top-k shapes");
+            for (int i = 0; i < other.size; i++) offerStored(other.heap[i]);
+            return this;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long threshold() {
+            if (size == 0) throw new IllegalStateException("empty");
+            return largest ? heap[0] : ~heap[0];
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            long[] out = new long[size];
+            for (int i = 0; i < size; i++) {
+                long stored = sorted[size - 1 - i];
+                out[i] = largest ? stored : ~stored;
+            }
+            return out;
+        }
+
+        private void offerStored(long v) {
+            if (size < k) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (heap[parent] <= v) break;
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = v;
+            } else if (k > 0 && v > heap[0]) {
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                    if (v <= heap[child]) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = v;
+            }
+        }
+    }
+
+    /** The k largest (or smallest) doubles in Double.compare order, kept as sortable longs in a LongTopK. */
+    static final class DoubleTopK {
+        private final LongTopK keys;
+
+        private DoubleTopK(LongTopK keys) {
+            this.keys = keys;
+        }
+
+        static DoubleTopK largest(int k) {
+            return new DoubleTopK(LongTopK.largest(k));
+        }
+
+        static DoubleTopK smallest(int k) {
+            return new DoubleTopK(LongTopK.smallest(k));
+        }
+
+        void offer(double value) {
+            keys.offer(sortableBits(value));
+        }
+
+        void addAll(double[] values) {
+            for (double v : values) offer(v);
+        }
+
+        DoubleTopK merge(DoubleTopK other) {
+            keys.merge(other.keys);
+            return this;
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        double threshold() {
+            return fromSortableBits(keys.threshold());
+        }
+
+        double[] toSortedArray() {
+            long[] sorted = keys.toSortedArray();
+            double[] out = new double[sorted.length];
+            for (int i = 0; i < sorted.length; i++) out[i] = fromSortableBits(sorted[i]);
+            return out;
+        }
+
+        // Flipping the 63 value bits of negatives makes the signed long order match Double.compare;
+        // doubleToLongBits collapses all NaNs into one, so NaN sorts above +Infinity exactly once
+        private static long sortableBits(double v) {
+            long bits = Double.doubleToLongBits(v);
+            return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+
+        private static double fromSortableBits(long s) {
+            return Double.longBitsToDouble(s ^ ((s >> 63) & Long.MAX_VALUE));
+        }
+    }
+
+    // -----------------------------------------------------------------------------
+    // QUICKSELECT
+    // -----------------------------------------------------------------------------
+
+    /**
+     * In-place selection on primitive arrays. After select(a, k), a[k] holds the value a full sort would put there,
+     * everything before it is &lt;= and everything after it is &gt;=. partialSort(a, k) additionally sorts a[0, k).
+     * Neither keeps the relative order of the rest of the array.
+     */
+    static final class PartialSort {
+        private static final int INSERTION_SORT_THRESHOLD = 16;
+
+        private PartialSort() {
+        }
+
+        /** Returns the k-th smallest value (0-based) and partitions {@code a} around it. */
+        static int select(int[] a, int k) {
+            Objects.checkIndex(k, a.length);
+            selectRange(a, 0, a.length - 1, k);
+            return a[k];
+        }
+
+        /** Moves the k smallest values to a[0, k) in ascending order. */
+        static void partialSort(int[] a, int k) {
+            Objects.checkFromToIndex(0, k, a.length);
+            if (k == 0) return;
+            if (k < a.length) selectRange(a, 0, a.length - 1, k - 1);
+            Arrays.sort(a, 0, k);
+        }
+
+        static long select(long[] a, int k) {
+            Objects.checkIndex(k, a.length);
+            selectRange(a, 0, a.length - 1, k);
+            return a[k];
+        }
+
+        static void partialSort(long[] a, int k) {
+            Objects.checkFromToIndex(0, k, a.length);
+            if (k == 0) return;
+            if (k < a.length) selectRange(a, 0, a.length - 1, k - 1);
+            Arrays.sort(a, 0, k);
+        }
+
+        static double select(double[] a, int k) {
+            Objects.checkIndex(k, a.length);
+            selectRange(a, 0, a.length - 1, k);
+            return a[k];
+        }
+
+        static void partialSort(double[] a, int k) {
+            Objects.checkFromToIndex(0, k, a.length);
+            if (k == 0) return;
+            if (k < a.length) selectRange(a, 0, a.length - 1, k - 1);
+            Arrays.sort(a, 0, k);
+        }
+
+        // Narrows [lo, hi] to the side holding k; a three-way partition ends as soon as k lands among the pivots
+        private static void selectRange(int[] a, int lo, int hi, int k) {
+            int budget = 2 * (32 - Integer.numberOfLeadingZeros(hi - lo + 1));
+            while (hi - lo > INSERTION_SORT_THRESHOLD) {
+                if (budget-- == 0) {
+                    Arrays.sort(a, lo, hi + 1);
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                int x = a[lo], y = a[mid], z = a[hi];
+                int pivot = x < y ? (y < z ? y : Math.max(x, z)) : (x < z ? x : Math.max(y, z));
+                int lt = lo, gt = hi, i = lo;
+                while (i <= gt) {
+                    int v = a[i];
+                    if (v < pivot) {
+                        a[i++] = a[lt];
+                        a[lt++] = v;
+                    } else if (v > pivot) {
+                        a[i] = a[gt];
+                        a[gt--] = v;
+                    } else {
+                        i++;
+                    }
+                }
+                if (k < lt) hi = lt - 1;
+                else if (k > gt) lo = gt + 1;
+                else return;
+            }
+            Arrays.sort(a, lo, hi + 1);
+        }
+
+        private static void selectRange(long[] a, int lo, int hi, int k) {
+            int budget = 2 * (32 - Integer.numberOfLeadingZeros(hi - lo + 1));
+            while (hi - lo > INSERTION_SORT_THRESHOLD) {
+                if (budget-- == 0) {
+                    Arrays.sort(a, lo, hi + 1);
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                long x = a[lo], y = a[mid], z = a[hi];
+                long pivot = x < y ? (y < z ? y : Math.max(x, z)) : (x < z ? x : Math.max(y, z));
+                int lt = lo, gt = hi, i = lo;
+                while (i <= gt) {
+                    long v = a[i];
+                    if (v < pivot) {
+                        a[i++] = a[lt];
+                        a[lt++] = v;
+                    } else if (v > pivot) {
+                        a[i] = a[gt];
+                        a[gt--] = v;
+                    } else {
+                        i++;
+                    }
+                }
+                if (k < lt) hi = lt - 1;
+                else if (k > gt) lo = gt + 1;
+                else return;
+            }
+            Arrays.sort(a, lo, hi + 1);
+        }
+
+        // Same as above in Double.compare order: -0.0 partitions before 0.0 and NaNs gather at the top
+        private static void selectRange(double[] a, int lo, int hi, int k) {
+            int budget = 2 * (32 - Integer.numberOfLeadingZeros(hi - lo + 1));
+            while (hi - lo > INSERTION_SORT_THRESHOLD) {
+                if (budget-- == 0) {
+                    Arrays.sort(a, lo, hi + 1);
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                double x = a[lo], y = a[mid], z = a[hi];
+                double pivot = Double.compare(x, y) < 0
+                        ? (Double.compare(y, z) < 0 ? y : (Double.compare(x, z) < 0 ? z : x))
+                        : (Double.compare(x, z) < 0 ? x : (Double.compare(y, z) < 0 ? z : y));
+                int lt = lo, gt = hi, i = lo;
+                while (i <= gt) {
+                    double v = a[i];
+                    int c = Double.compare(v, pivot);
+                    if (c < 0) {
+                        a[i++] = a[lt];
+                        a[lt++] = v;
+                    } else if (c > 0) {
+                        a[i] = a[gt];
+                        a[gt--] = v;
+                    } else {
+                        i++;
+                    }
+                }
+                if (k < lt) hi = lt - 1;
+                else if (k > gt) lo = gt + 1;
+                else return;
+            }
+            Arrays.sort(a, lo, hi + 1);
+        }
+    }
+
+    // -----------------------------------------------------------------------------
+    // DEMOS
+    // -----------------------------------------------------------------------------
+    static void demoSmall() {
+        int[] scores = {42, 7, 99, 7, 63, 15, 88, 99, 1, 50};
+        IntTopK best = IntTopK.largest(3);
+        best.addAll(scores);
+        System.out.println("scores:               " + Arrays.toString(scores));
+        System.out.println("largest(3):           " + Arrays.toString(best.toSortedArray()) + ", threshold " + best.threshold());
+        IntTopK worst = IntTopK.smallest(3);
+        worst.addAll(scores);
+        System.out.println("smallest(3):          " + Arrays.toString(worst.toSortedArray()));
+
+        int[] copy = scores.clone();
+        PartialSort.partialSort(copy, 4);
+        System.out.println("partialSort(a, 4):    " + Arrays.toString(copy) + "  (only a[0..4) is sorted)");
+        int[] median = scores.clone();
+        System.out.println("select(a, n/2):       " + PartialSort.select(median, median.length / 2));
+
+        double[] doubles = {0.5, Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, 3.25, -1.5};
+        DoubleTopK top = DoubleTopK.largest(3);
+        top.addAll(doubles);
+        DoubleTopK bottom = DoubleTopK.smallest(3);
+        bottom.addAll(doubles);
+        double[] d = doubles.clone();
+        PartialSort.partialSort(d, 3);
+        System.out.println("doubles largest(3):   " + Arrays.toString(top.toSortedArray()) + " (Double.compare order: NaN is largest)");
+        System.out.println("doubles smallest(3):  " + Arrays.toString(bottom.toSortedArray()));
+        System.out.println("doubles partialSort:  " + Arrays.toString(Arrays.copyOf(d, 3)));
+
+        long[] ids = {Long.MIN_VALUE, 5, Long.MAX_VALUE, -3, 0};
+        LongTopK lo = LongTopK.smallest(2);
+        lo.addAll(ids);
+        System.out.println("longs smallest(2):    " + Arrays.toString(lo.toSortedArray()) + " (~v has no overflow at MIN_VALUE)");
+    }
+
+    // Scores arrive as a stream; only the heap of 5 is ever held. The combiner lets a parallel stream split the work.
+    static void demoStreamingLeaderboard() {
+        int n = 1_000_000;
+        IntTopK board = new SplittableRandom(7).ints(n, 0, 1_000_000_000)
+                .collect(() -> IntTopK.largest(5), IntTopK::offer, IntTopK::merge);
+        IntTopK parallelBoard = new SplittableRandom(7).ints(n, 0, 1_000_000_000).parallel()
+                .collect(() -> IntTopK.largest(5), IntTopK::offer, IntTopK::merge);
+        int[] all = new SplittableRandom(7).ints(n, 0, 1_000_000_000).toArray();
+        Arrays.sort(all);
+        int[] expected = new int[5];
+        for (int i = 0; i < 5; i++) expected[i] = all[n - 1 - i];
+        System.out.println("top 5:                " + Arrays.toString(board.toSortedArray()));
+        System.out.println("same as full sort:    " + Arrays.equals(expected, board.toSortedArray())
+                + ", parallel stream: " + Arrays.equals(expected, parallelBoard.toSortedArray()));
+        System.out.println("score to enter:       " + board.threshold());
+    }
+
+    // -----------------------------------------------------------------------------
+    // BENCHMARKS
+    // -----------------------------------------------------------------------------
+    private static final int N = 20_000_000;
+
+    static void benchmarks() {
+        int[] data = new SplittableRandom(1).ints(N).toArray();
+        int[] ascending = data.clone();
+        Arrays.sort(ascending);
+        System.out.println(N / 1_000_000 + "M random ints, " + Runtime.getRuntime().availableProcessors() + " CPU(s)");
+
+        for (int k : new int[]{10, 1_000}) {
+            System.out.println("-- k = " + k + " largest --");
+            int kk = k;
+            bench("clone + Arrays.sort, take tail", () -> {
+                int[] a = data.clone();
+                Arrays.sort(a);
+                return a[N - kk];
+            });
+            bench("clone + Arrays.parallelSort", () -> {
+                int[] a = data.clone();
+                Arrays.parallelSort(a);
+                return a[N - kk];
+            });
+            bench("bounded PriorityQueue<Integer>", () -> {
+                PriorityQueue<Integer> pq = new PriorityQueue<>(kk + 1);
+                for (int v : data) {
+                    if (pq.size() < kk) pq.add(v);
+                    else if (v > pq.peek()) {
+                        pq.poll();
+                        pq.add(v);
+                    }
+                }
+                return pq.peek();
+            });
+            bench("IntTopK.addAll", () -> {
+                IntTopK top = IntTopK.largest(kk);
+                top.addAll(data);
+                return top.threshold();
+            });
+            bench("IntStream.parallel().collect(TopK)", () -> IntStream.of(data).parallel()
+                    .collect(() -> IntTopK.largest(kk), IntTopK::offer, IntTopK::merge).threshold());
+            bench("clone + select + sort tail", () -> {
+                int[] a = data.clone();
+                PartialSort.select(a, N - kk);
+                Arrays.sort(a, N - kk, N);
+                return a[N - kk];
+            });
+            bench("IntTopK.addAll, ascending input", () -> {
+                IntTopK top = IntTopK.largest(kk);
+                top.addAll(ascending);
+                return top.threshold();
+            });
+            bench("clone + select, ascending input", () -> {
+                int[] a = ascending.clone();
+                return PartialSort.select(a, N - kk);
+            });
+        }
+
+        int[] expected = data.clone();
+        Arrays.sort(expected);
+        int[] selected = data.clone();
+        PartialSort.partialSort(selected, 1_000);
+        IntTopK smallest = IntTopK.smallest(1_000);
+        smallest.addAll(data);
+        System.out.println("partialSort and smallest(1000) match Arrays.sort: "
+                + Arrays.equals(expected, 0, 1_000, selected, 0, 1_000)
+                + " " + Arrays.equals(expected, 0, 1_000, smallest.toSortedArray(), 0, 1_000));
+
+        System.out.println("-- allocation per element, top 10 of a generated stream --");
+        System.out.printf("%-35s %8.2f B%n", "IntTopK via IntStream.collect", allocatedPer(() ->
+                new SplittableRandom(3).ints(N).collect(() -> IntTopK.largest(10), IntTopK::offer, IntTopK::merge).threshold(), N));
+        System.out.printf("%-35s %8.2f B%n", "boxed().sorted().limit(10)", allocatedPer(() ->
+                new SplittableRandom(3).ints(N / 10).boxed().sorted(Collections.reverseOrder()).limit(10)
+                        .mapToLong(Integer::longValue).sum(), N / 10));
+    }
+
+    private static volatile long BLACKHOLE;
+
+    private static void bench(String label, LongSupplier task) {
+        BLACKHOLE = task.getAsLong(); // warm-up
+        int runs = 3;
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            BLACKHOLE = task.getAsLong();
+            total += System.nanoTime() - t0;
+        }
+        System.out.printf("%-35s %8.1f ms%n", label, total / 1_000_000.0 / runs);
+    }
+
+    private static double allocatedPer(LongSupplier task, int elements) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        BLACKHOLE = task.getAsLong(); // warm-up
+        long before = mx.getCurrentThreadAllocatedBytes();
+        BLACKHOLE = task.getAsLong();
+        return (mx.getCurrentThreadAllocatedBytes() - before) / (double) elements;
+    }
+
+    static void header(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+}
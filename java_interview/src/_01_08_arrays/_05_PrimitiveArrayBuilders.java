@@ -0,0 +1,676 @@
+package _01_08_arrays;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Growable primitive array builders with a zero-copy freeze into read-only views (benchmarks).
+ *
+ * Three patterns in this package copy more than they need to:
+ * - _02_Examples.append(arr, v) copies the whole array for every element, so building n values that way copies
+ *   n^2 / 2 of them.
+ * - Scoreboard (in _01_Theory) copies its scores on the way in and again on every getScores(), because an int[]
+ *   handed out can be written by the caller; deepCopy2D copies every row for the same reason.
+ * - Collecting into ArrayList&lt;Integer&gt; first boxes each value (16 B object plus a 4 B reference at least).
+ *
+ * IntArrayBuilder / LongArrayBuilder / DoubleArrayBuilder grow by 1.5x like ArrayList, so n adds copy fewer than 2n
+ * elements in total; addAll of an array or a SIZED stream reserves the exact room first. freeze() hands the builder's
+ * array to an IntArrayView / LongArrayView / DoubleArrayView without copying it (the builder starts over empty, so
+ * no one else ever holds a reference to that array) and the view has no way to write it. A frozen view can then be
+ * returned from any getter as is: the one copy that remains is the one made when data enters from an untrusted
+ * int[] (IntArrayView.copyOf). Views share their array with slice(), and stream() reads it in place.
+ * A frozen view keeps the builder's spare capacity (up to a third of the array); callers that keep many small
+ * views for a long time can call trimToSize() before freeze().
+ *
+ * Measurement: JMH is not on the classpath, so times come from an ad-hoc bench loop (a warm-up, then the average of
+ * a few runs) and allocation from com.sun.management.ThreadMXBean.
+ *
+ * Typical numbers (1 CPU, JDK 21):
+ * - 50k ints one at a time: append() ~400 ms and ~100 KB allocated per element; IntArrayBuilder.add ~4 ms, 12.6 B.
+ * - 10M ints: ArrayList&lt;Integer&gt;.add ~1.1 s, 32.6 B per element; IntArrayBuilder.add ~70 ms, ~12 B (every
+ *   intermediate array of the 1.5x growth); addAll(int[]) and addAll of a SIZED IntStream 4.0 B, the final array
+ *   only, at about the speed of IntStream.toArray.
+ * - Reading a 1000-score board 1M times: getScores() ~790 ms and 4016 B per read; scores() ~8 ms and 0 B.
+ * - Handing out 10M ints: freeze() allocates one 24 B view, toArray() 40 MB.
+ */
+public class _05_PrimitiveArrayBuilders {
+
+    public static void main(String[] args) {
+        header("Builders and frozen views");
+        demo();
+
+        header("Benchmarks");
+        benchmarks();
+    }
+
+    // -----------------------------------------------------------------------------
+    // BUILDERS
+    // -----------------------------------------------------------------------------
+
+    // Same limit as ArrayList: some VMs reserve header words in arrays
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static int grow(int oldCapacity, int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_ARRAY_LENGTH) throw new OutOfMemoryError("Required array length too large");
+        int preferred = oldCapacity + Math.max(oldCapacity >> 1, 8);
+        return preferred < 0 || preferred > MAX_ARRAY_LENGTH ? MAX_ARRAY_LENGTH : Math.max(preferred, minCapacity);
+    }
+
+    private static int exactSize(Spliterator<?> s) {
+        long n = s.getExactSizeIfKnown();
+        return n > MAX_ARRAY_LENGTH ? MAX_ARRAY_LENGTH : (int) n;
+    }
+
+    /** Appends ints into a growing array; freeze() turns the contents into an IntArrayView without copying. */
+    static final class IntArrayBuilder {
+        private static final int[] EMPTY = {};
+
+        private int[] elements;
+        private int size;
+
+        IntArrayBuilder() {
+            this.elements = EMPTY;
+        }
+
+        IntArrayBuilder(int initialCapacity) {
+            if (initialCapacity < 0) throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+            this.elements = initialCapacity == 0 ? EMPTY : new int[initialCapacity];
+        }
+
+        IntArrayBuilder add(int value) {
+            if (size == elements.length) elements = Arrays.copyOf(elements, grow(elements.length, size + 1));
+            elements[size++] = value;
+            return this;
+        }
+
+        IntArrayBuilder addAll(int[] values) {
+            return addAll(values, 0, values.length);
+        }
+
+        IntArrayBuilder addAll(int[] values, int from, int to) {
+            Objects.checkFromToIndex(from, to, values.length);
+            int n = to - from;
+            reserve(n);
+            System.arraycopy(values, from, elements, size, n);
+            size += n;
+            return this;
+        }
+
+        /** Consumes the stream sequentially (also a parallel one), reserving room first when its size is known. */
+        IntArrayBuilder addAll(IntStream values) {
+            Spliterator.OfInt s = values.spliterator();
+            int n = exactSize(s);
+            if (n > 0) reserve(n);
+            s.forEachRemaining((IntConsumer) this::add);
+            return this;
+        }
+
+        void ensureCapacity(int minCapacity) {
+            if (minCapacity > elements.length) elements = Arrays.copyOf(elements, grow(elements.length, minCapacity));
+        }
+
+        // size + n may overflow: grow() rejects the negative minimum
+        private void reserve(int n) {
+            if (n > elements.length - size) elements = Arrays.copyOf(elements, grow(elements.length, size + n));
+        }
+
+        void trimToSize() {
+            if (size < elements.length) elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            Objects.checkIndex(index, size);
+            return elements[index];
+        }
+
+        void set(int index, int value) {
+            Objects.checkIndex(index, size);
+            elements[index] = value;
+        }
+
+        /** Hands the array to a read-only view and leaves this builder empty. */
+        IntArrayView freeze() {
+            IntArrayView view = new IntArrayView(elements, 0, size);
+            elements = EMPTY;
+            size = 0;
+            return view;
+        }
+    }
+
+    /** Appends longs into a growing array; same shape as IntArrayBuilder. */
+    static final class LongArrayBuilder {
+        private static final long[] EMPTY = {};
+
+        private long[] elements;
+        private int size;
+
+        LongArrayBuilder() {
+            this.elements = EMPTY;
+        }
+
+        LongArrayBuilder(int initialCapacity) {
+            if (initialCapacity < 0) throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+            this.elements = initialCapacity == 0 ? EMPTY : new long[initialCapacity];
+        }
+
+        LongArrayBuilder add(long value) {
+            if (size == elements.length) elements = Arrays.copyOf(elements, grow(elements.length, size + 1));
+            elements[size++] = value;
+            return this;
+        }
+
+        LongArrayBuilder addAll(long[] values) {
+            return addAll(values, 0, values.length);
+        }
+
+        LongArrayBuilder addAll(long[] values, int from, int to) {
+            Objects.checkFromToIndex(from, to, values.length);
+            int n = to - from;
+            reserve(n);
+            System.arraycopy(values, from, elements, size, n);
+            size += n;
+            return this;
+        }
+
+        LongArrayBuilder addAll(LongStream values) {
+            Spliterator.OfLong s = values.spliterator();
+            int n = exactSize(s);
+            if (n > 0) reserve(n);
+            s.forEachRemaining((LongConsumer) this::add);
+            return this;
+        }
+
+        void ensureCapacity(int minCapacity) {
+            if (minCapacity > elements.length) elements = Arrays.copyOf(elements, grow(elements.length, minCapacity));
+        }
+
+        private void reserve(int n) {
+            if (n > elements.length - size) elements = Arrays.copyOf(elements, grow(elements.length, size + n));
+        }
+
+        void trimToSize() {
+            if (size < elements.length) elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            Objects.checkIndex(index, size);
+            return elements[index];
+        }
+
+        void set(int index, long value) {
+            Objects.checkIndex(index, size);
+            elements[index] = value;
+        }
+
+        LongArrayView freeze() {
+            LongArrayView view = new LongArrayView(elements, 0, size);
+            elements = EMPTY;
+            size = 0;
+            return view;
+        }
+    }
+
+    /** Appends doubles into a growing array; same shape as IntArrayBuilder. */
+    static final class DoubleArrayBuilder {
+        private static final double[] EMPTY = {};
+
+        private double[] elements;
+        private int size;
+
+        DoubleArrayBuilder() {
+            this.elements = EMPTY;
+        }
+
+        DoubleArrayBuilder(int initialCapacity) {
+            if (initialCapacity < 0) throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+            this.elements = initialCapacity == 0 ? EMPTY : new double[initialCapacity];
+        }
+
+        DoubleArrayBuilder add(double value) {
+            if (size == elements.length) elements = Arrays.copyOf(elements, grow(elements.length, size + 1));
+            elements[size++] = value;
+            return this;
+        }
+
+        DoubleArrayBuilder addAll(double[] values) {
+            return addAll(values, 0, values.length);
+        }
+
+        DoubleArrayBuilder addAll(double[] values, int from, int to) {
+            Objects.checkFromToIndex(from, to, values.length);
+            int n = to - from;
+            reserve(n);
+            System.arraycopy(values, from, elements, size, n);
+            size += n;
+            return this;
+        }
+
+        DoubleArrayBuilder addAll(DoubleStream values) {
+            Spliterator.OfDouble s = values.spliterator();
+            int n = exactSize(s);
+            if (n > 0) reserve(n);
+            s.forEachRemaining((DoubleConsumer) this::add);
+            return this;
+        }
+
+        void ensureCapacity(int minCapacity) {
+            if (minCapacity > elements.length) elements = Arrays.copyOf(elements, grow(elements.length, minCapacity));
+        }
+
+        private void reserve(int n) {
+            if (n > elements.length - size) elements = Arrays.copyOf(elements, grow(elements.length, size + n));
+        }
+
+        void trimToSize() {
+            if (size < elements.length) elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        double get(int index) {
+            Objects.checkIndex(index, size);
+            return elements[index];
+        }
+
+        void set(int index, double value) {
+            Objects.checkIndex(index, size);
+            elements[index] = value;
+        }
+
+        DoubleArrayView freeze() {
+            DoubleArrayView view = new DoubleArrayView(elements, 0, size);
+            elements = EMPTY;
+            size = 0;
+            return view;
+        }
+    }
+
+    // -----------------------------------------------------------------------------
+    // READ-ONLY VIEWS
+    // -----------------------------------------------------------------------------
+
+    /**
+     * An immutable window [from, to) over an int[] nobody writes any more. Safe to return from getters and to share
+     * between threads (all fields are final, so the array contents are visible once the view is).
+     */
+    static final class IntArrayView {
+        private static final IntArrayView EMPTY = new IntArrayView(new int[0], 0, 0);
+
+        private final int[] array;
+        private final int from;
+        private final int to;
+
+        private IntArrayView(int[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        static IntArrayView empty() {
+            return EMPTY;
+        }
+
+        /** The one defensive copy: for arrays that come from outside and may still be written by their owner. */
+        static IntArrayView copyOf(int[] values) {
+            return values.length == 0 ? EMPTY : new IntArrayView(values.clone(), 0, values.length);
+        }
+
+        static IntArrayView of(int... values) {
+            return copyOf(values);
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        boolean isEmpty() {
+            return to == from;
+        }
+
+        int get(int index) {
+            Objects.checkIndex(index, to - from);
+            return array[from + index];
+        }
+
+        /** A view of [fromIndex, toIndex) sharing the same array. */
+        IntArrayView slice(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, to - from);
+            return new IntArrayView(array, from + fromIndex, from + toIndex);
+        }
+
+        IntStream stream() {
+            return Arrays.stream(array, from, to);
+        }
+
+        void forEach(IntConsumer action) {
+            for (int i = from; i < to; i++) action.accept(array[i]);
+        }
+
+        /** A mutable copy, for the callers that really need an int[]. */
+        int[] toArray() {
+            return Arrays.copyOfRange(array, from, to);
+        }
+
+        void copyTo(int[] dest, int destPos) {
+            System.arraycopy(array, from, dest, destPos, to - from);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IntArrayView v && Arrays.equals(array, from, to, v.array, v.from, v.to);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31 * h + array[i];
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(toArray());
+        }
+    }
+
+    /** An immutable window over a long[]; same shape as IntArrayView. */
+    static final class LongArrayView {
+        private static final LongArrayView EMPTY = new LongArrayView(new long[0], 0, 0);
+
+        private final long[] array;
+        private final int from;
+        private final int to;
+
+        private LongArrayView(long[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        static LongArrayView empty() {
+            return EMPTY;
+        }
+
+        static LongArrayView copyOf(long[] values) {
+            return values.length == 0 ? EMPTY : new LongArrayView(values.clone(), 0, values.length);
+        }
+
+        static LongArrayView of(long... values) {
+            return copyOf(values);
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        boolean isEmpty() {
+            return to == from;
+        }
+
+        long get(int index) {
+            Objects.checkIndex(index, to - from);
+            return array[from + index];
+        }
+
+        LongArrayView slice(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, to - from);
+            return new LongArrayView(array, from + fromIndex, from + toIndex);
+        }
+
+        LongStream stream() {
+            return Arrays.stream(array, from, to);
+        }
+
+        void forEach(LongConsumer action) {
+            for (int i = from; i < to; i++) action.accept(array[i]);
+        }
+
+        long[] toArray() {
+            return Arrays.copyOfRange(array, from, to);
+        }
+
+        void copyTo(long[] dest, int destPos) {
+            System.arraycopy(array, from, dest, destPos, to - from);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LongArrayView v && Arrays.equals(array, from, to, v.array, v.from, v.to);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31 * h + Long.hashCode(array[i]);
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(toArray());
+        }
+    }
+
+    /** An immutable window over a double[]; same shape as IntArrayView, equality as in Arrays.equals(double[]...). */
+    static final class DoubleArrayView {
+        private static final DoubleArrayView EMPTY = new DoubleArrayView(new double[0], 0, 0);
+
+        private final double[] array;
+        private final int from;
+        private final int to;
+
+        private DoubleArrayView(double[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        static DoubleArrayView empty() {
+            return EMPTY;
+        }
+
+        static DoubleArrayView copyOf(double[] values) {
+            return values.length == 0 ? EMPTY : new DoubleArrayView(values.clone(), 0, values.length);
+        }
+
+        static DoubleArrayView of(double... values) {
+            return copyOf(values);
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        boolean isEmpty() {
+            return to == from;
+        }
+
+        double get(int index) {
+            Objects.checkIndex(index, to - from);
+            return array[from + index];
+        }
+
+        DoubleArrayView slice(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, to - from);
+            return new DoubleArrayView(array, from + fromIndex, from + toIndex);
+        }
+
+        DoubleStream stream() {
+            return Arrays.stream(array, from, to);
+        }
+
+        void forEach(DoubleConsumer action) {
+            for (int i = from; i < to; i++) action.accept(array[i]);
+        }
+
+        double[] toArray() {
+            return Arrays.copyOfRange(array, from, to);
+        }
+
+        void copyTo(double[] dest, int destPos) {
+            System.arraycopy(array, from, dest, destPos, to - from);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DoubleArrayView v && Arrays.equals(array, from, to, v.array, v.from, v.to);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31 * h + Double.hashCode(array[i]);
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(toArray());
+        }
+    }
+
+    // -----------------------------------------------------------------------------
+    // DEMO
+    // -----------------------------------------------------------------------------
+    static void demo() {
+        IntArrayBuilder b = new IntArrayBuilder();
+        for (int i = 1; i <= 5; i++) b.add(i * i);
+        b.addAll(new int[]{100, 200}).addAll(IntStream.rangeClosed(7, 9));
+        IntArrayView squares = b.freeze();
+        System.out.println("frozen:          " + squares + " size " + squares.size() + ", builder now " + b.size());
+        System.out.println("slice(2, 5):     " + squares.slice(2, 5) + " (same array, no copy)");
+        System.out.println("stream().sum():  " + squares.stream().sum());
+
+        // The Scoreboard in _01_Theory now stores a view: nothing to copy on read
+        _01_Theory.Scoreboard sb = new _01_Theory.Scoreboard(new int[]{10, 20, 30});
+        int[] legacy = sb.getScores(); // still a copy, for callers that need an int[]
+        legacy[0] = 999;
+        System.out.println("scores():        " + sb.scores() + " (legacy copy mutated to " + legacy[0] + ")");
+
+        // Rows frozen once can be shared where deepCopy2D would copy each of them again
+        IntArrayView[] grid = {IntArrayView.of(1, 2), IntArrayView.of(3, 4)};
+        IntArrayView[] shared = grid.clone();
+        System.out.println("shared rows:     " + Arrays.toString(shared) + ", same row objects: " + (shared[0] == grid[0]));
+
+        DoubleArrayView d = new DoubleArrayBuilder().addAll(new double[]{0.5, Double.NaN}).add(-0.0).freeze();
+        System.out.println("doubles:         " + d + ", equals copy: " + d.equals(DoubleArrayView.of(0.5, Double.NaN, -0.0)));
+        LongArrayView l = new LongArrayBuilder(2).addAll(LongStream.range(0, 4).map(x -> x << 40)).freeze();
+        System.out.println("longs:           " + l);
+    }
+
+    // -----------------------------------------------------------------------------
+    // BENCHMARKS
+    // -----------------------------------------------------------------------------
+    static void benchmarks() {
+        int[] source = new SplittableRandom(1).ints(10_000_000).toArray();
+
+        System.out.println("-- building 50k ints one at a time --");
+        int small = 50_000;
+        report("_02_Examples.append per element", small, () -> {
+            int[] a = new int[0];
+            for (int i = 0; i < small; i++) a = _02_Examples.append(a, source[i]);
+            return a.length;
+        });
+        report("IntArrayBuilder.add", small, () -> {
+            IntArrayBuilder b = new IntArrayBuilder();
+            for (int i = 0; i < small; i++) b.add(source[i]);
+            return b.freeze().size();
+        });
+
+        System.out.println("-- building 10M ints --");
+        int n = source.length;
+        report("ArrayList<Integer>.add", n, () -> {
+            List<Integer> list = new ArrayList<>();
+            for (int v : source) list.add(v);
+            return list.size();
+        });
+        report("IntArrayBuilder.add", n, () -> {
+            IntArrayBuilder b = new IntArrayBuilder();
+            for (int v : source) b.add(v);
+            return b.freeze().size();
+        });
+        report("IntArrayBuilder.addAll(int[])", n, () -> new IntArrayBuilder().addAll(source).freeze().size());
+        report("IntArrayBuilder.addAll(IntStream)", n, () -> new IntArrayBuilder().addAll(IntStream.of(source).map(v -> v ^ 1)).freeze().size());
+        report("IntStream.toArray (baseline)", n, () -> IntStream.of(source).map(v -> v ^ 1).toArray().length);
+
+        System.out.println("-- 1M reads of a 1000-score board, per read --");
+        int[] thousand = Arrays.copyOf(source, 1_000);
+        _01_Theory.Scoreboard board = new _01_Theory.Scoreboard(thousand);
+        int reads = 1_000_000;
+        report("getScores() copy, then read one", reads, () -> {
+            long s = 0;
+            for (int r = 0; r < reads; r++) {
+                int[] a = board.getScores();
+                s += a[r % a.length];
+            }
+            return s;
+        });
+        report("scores() view, then read one", reads, () -> {
+            long s = 0;
+            for (int r = 0; r < reads; r++) {
+                IntArrayView v = board.scores();
+                s += v.get(r % v.size());
+            }
+            return s;
+        });
+
+        System.out.println("-- handing out 10M ints, bytes allocated --");
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        IntArrayBuilder filled = new IntArrayBuilder().addAll(source);
+        long b0 = mx.getCurrentThreadAllocatedBytes();
+        IntArrayView big = filled.freeze();
+        long frozenBytes = mx.getCurrentThreadAllocatedBytes() - b0;
+        b0 = mx.getCurrentThreadAllocatedBytes();
+        int[] copy = big.toArray();
+        long copyBytes = mx.getCurrentThreadAllocatedBytes() - b0;
+        System.out.printf("%-35s %12d B%n", "builder.freeze()", frozenBytes);
+        System.out.printf("%-35s %12d B%n", "view.toArray()", copyBytes);
+        BLACKHOLE = copy.length;
+    }
+
+    private static volatile long BLACKHOLE;
+
+    // Prints average time and the bytes allocated per unit (element or read) on this thread
+    private static void report(String label, int units, LongSupplier task) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        BLACKHOLE = task.getAsLong(); // warm-up
+        int runs = 3;
+        long total = 0L;
+        long bytes = 0L;
+        for (int i = 0; i < runs; i++) {
+            long b0 = mx.getCurrentThreadAllocatedBytes();
+            long t0 = System.nanoTime();
+            BLACKHOLE = task.getAsLong();
+            total += System.nanoTime() - t0;
+            bytes += mx.getCurrentThreadAllocatedBytes() - b0;
+        }
+        System.out.printf("%-35s %10.3f ms %12.1f B/unit%n", label, total / 1_000_000.0 / runs, bytes / (double) runs / units);
+    }
+
+    static void header(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+}
@@ -0,0 +1,518 @@
+package _01_08_arrays;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Flat row-major matrices on one int[]: blocked transpose, tiled multiply and fork-join kernels (benchmarks).
+ *
+ * multiDimensional() and deepCopy2D() in _02_Examples use jagged int[][]. Every row is its own heap object with
+ * its own header and length, so a[i][j] loads a[i] first (and bounds-checks twice), rows may lie anywhere in the heap,
+ * walking down a column touches a different object for every element, and a copy is one allocation per row.
+ * IntMatrix keeps rows x cols values in a single int[] at base + r * cols + c:
+ * - copy() is one allocation and one arraycopy; row(r) and column(c) are IntStridedView windows over the same array
+ *   (stride 1 and stride cols), readable and writable without copying; IntTensor3 stores depth x rows x cols the same
+ *   way, and its slice(z) is an IntMatrix sharing the array.
+ * - transpose() works in TILE x TILE blocks: a naive transpose reads rows but writes columns, so every write of a
+ *   large matrix lands on a different cache line (and, past a few thousand columns, a different page). Inside a
+ *   block both the rows read and the columns written stay in L1.
+ * - multiply() is the i-k-j order over tiles of TILE rows of A, TILE values of k and COLUMN_TILE columns: the
+ *   innermost loop streams rows of B into a row of C, four k at a time, and the B tile (64 x 256 ints = 64 KB) stays
+ *   in L2 while it is reused for every row of the A tile. The textbook i-j-k loop walks B down a column instead,
+ *   one cache line per multiply once a column no longer fits in cache.
+ * - parallelTranspose() / parallelMultiply() split the output rows in halves on the common fork-join pool down to a
+ *   band of PARALLEL_ROWS rows; each task writes only its own rows of the result, so no synchronization is needed.
+ * Arithmetic is int with the usual wrap-around on overflow, exactly like the int[][] loops it replaces.
+ *
+ * Measurement: JMH is not on the classpath, so times come from an ad-hoc bench loop (a warm-up, then the average of
+ * a few runs; one run for the large sizes). The machine has 1 CPU and 5 GB, so the parallel kernels only show
+ * their overhead here, and the naive multiply stops at 2048 (at 4096 it would take minutes, at 8192 hours).
+ *
+ * Typical numbers (1 CPU, JDK 21, -Xmx3g -XX:+AlwaysPreTouch, so that first-touch page faults of new heap regions
+ * do not land in whichever row happens to allocate first):
+ * - Transpose 1024 / 2048 / 4096 / 8192: int[][] 7 / 38 / 275 / 1410 ms; blocked 6 / 21 / 105 / 440 ms.
+ * - Multiply 1024: i-j-k on int[][] ~2.0 s, tiled ~0.6 s. 2048: ~65 s against ~3.8 s, as B's columns no longer fit
+ *   in cache. 4096 tiled: ~38 s.
+ * - Copy: one arraycopy is on par with deepCopy2D up to 2048 (1.4 vs 1.5 ms at 1024) but slower from 4096 on
+ *   (82 vs 42 ms): a 64 MB array is a humongous G1 allocation that the VM zeroes before copying into it, while
+ *   Arrays.copyOf of a small row skips the zeroing.
+ * - The parallel kernels run within ~30% of the sequential ones on one CPU; they only pay off with more cores.
+ */
+public class _06_FlatMatrix {
+
+    public static void main(String[] args) {
+        header("Flat matrix, views and 3D slices");
+        demo();
+
+        header("Correctness against int[][] loops");
+        checks();
+
+        header("Benchmarks");
+        benchmarks();
+    }
+
+    // -----------------------------------------------------------------------------
+    // MATRIX
+    // -----------------------------------------------------------------------------
+
+    static final int TILE = 64;
+    static final int COLUMN_TILE = 4 * TILE;
+    static final int PARALLEL_ROWS = 128;
+
+    /** A dense rows x cols int matrix, row-major in data[base, base + rows * cols). */
+    static final class IntMatrix {
+        private final int[] data;
+        private final int base;
+        private final int rows;
+        private final int cols;
+
+        IntMatrix(int rows, int cols) {
+            this(new int[checkedSize(rows, cols)], 0, rows, cols);
+        }
+
+        private IntMatrix(int[] data, int base, int rows, int cols) {
+            this.data = data;
+            this.base = base;
+            this.rows = rows;
+            this.cols = cols;
+        }
+
+        private static int checkedSize(int rows, int cols) {
+            if (rows < 0 || cols < 0) throw new IllegalArgumentException("Negative dimension: " + rows + "x" + cols);
+            return Math.multiplyExact(rows, cols);
+        }
+
+        /** Copies a rectangular int[][] (all rows the same length) into one array. */
+        static IntMatrix fromJagged(int[][] src) {
+            int cols = src.length == 0 ? 0 : src[0].length;
+            IntMatrix m = new IntMatrix(src.length, cols);
+            for (int r = 0; r < src.length; r++) {
+                if (src[r].length != cols) throw new IllegalArgumentException("Row " + r + " has " + src[r].length + " columns, expected " + cols);
+                System.arraycopy(src[r], 0, m.data, r * cols, cols);
+            }
+            return m;
+        }
+
+        int[][] toJagged() {
+            int[][] out = new int[rows][];
+            for (int r = 0; r < rows; r++) out[r] = Arrays.copyOfRange(data, base + r * cols, base + (r + 1) * cols);
+            return out;
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        int cols() {
+            return cols;
+        }
+
+        int get(int r, int c) {
+            return data[index(r, c)];
+        }
+
+        void set(int r, int c, int value) {
+            data[index(r, c)] = value;
+        }
+
+        private int index(int r, int c) {
+            Objects.checkIndex(r, rows);
+            Objects.checkIndex(c, cols);
+            return base + r * cols + c;
+        }
+
+        void fill(int value) {
+            Arrays.fill(data, base, base + rows * cols, value);
+        }
+
+        /** One allocation and one arraycopy, where deepCopy2D makes one of each per row. */
+        IntMatrix copy() {
+            return new IntMatrix(Arrays.copyOfRange(data, base, base + rows * cols), 0, rows, cols);
+        }
+
+        /** Row r as a view: writes go to this matrix. */
+        IntStridedView row(int r) {
+            Objects.checkIndex(r, rows);
+            return new IntStridedView(data, base + r * cols, 1, cols);
+        }
+
+        /** Column c as a view with stride cols: writes go to this matrix. */
+        IntStridedView column(int c) {
+            Objects.checkIndex(c, cols);
+            return new IntStridedView(data, base + c, cols, rows);
+        }
+
+        boolean sameValues(IntMatrix other) {
+            return rows == other.rows && cols == other.cols
+                    && Arrays.equals(data, base, base + rows * cols, other.data, other.base, other.base + rows * cols);
+        }
+
+        // ----- transpose -----
+
+        IntMatrix transpose() {
+            IntMatrix out = new IntMatrix(cols, rows);
+            transposeRows(this, out, 0, rows);
+            return out;
+        }
+
+        IntMatrix parallelTranspose() {
+            IntMatrix out = new IntMatrix(cols, rows);
+            ForkJoinPool.commonPool().invoke(new TransposeTask(this, out, 0, rows));
+            return out;
+        }
+
+        // Source rows [from, to) become output columns [from, to), one TILE x TILE block at a time
+        private static void transposeRows(IntMatrix src, IntMatrix out, int from, int to) {
+            for (int rb = from; rb < to; rb += TILE) {
+                int rEnd = Math.min(rb + TILE, to);
+                for (int cb = 0; cb < src.cols; cb += TILE) transposeBlock(src, out, rb, rEnd, cb, Math.min(cb + TILE, src.cols));
+            }
+        }
+
+        // Kept out of the loops above so that it is invoked often and compiled as a whole method, not only
+        // through on-stack replacement of a loop that runs once per call
+        private static void transposeBlock(IntMatrix src, IntMatrix out, int rb, int rEnd, int cb, int cEnd) {
+            int[] s = src.data, d = out.data;
+            int cols = src.cols, outCols = out.cols;
+            for (int r = rb; r < rEnd; r++) {
+                int si = src.base + r * cols;
+                for (int c = cb; c < cEnd; c++) d[out.base + c * outCols + r] = s[si + c];
+            }
+        }
+
+        // ----- multiply -----
+
+        /** this (n x m) times other (m x p), tiled i-k-j. */
+        IntMatrix multiply(IntMatrix other) {
+            IntMatrix out = productShape(other);
+            multiplyRows(this, other, out, 0, rows);
+            return out;
+        }
+
+        IntMatrix parallelMultiply(IntMatrix other) {
+            IntMatrix out = productShape(other);
+            ForkJoinPool.commonPool().invoke(new MultiplyTask(this, other, out, 0, rows));
+            return out;
+        }
+
+        private IntMatrix productShape(IntMatrix other) {
+            if (cols != other.rows) {
+                throw new IllegalArgumentException("Cannot multiply " + rows + "x" + cols + " by " + other.rows + "x" + other.cols);
+            }
+            return new IntMatrix(rows, other.cols);
+        }
+
+        // Rows [from, to) of out = a * b; out must start zeroed
+        private static void multiplyRows(IntMatrix a, IntMatrix b, IntMatrix out, int from, int to) {
+            int m = a.cols, p = b.cols;
+            for (int ib = from; ib < to; ib += TILE) {
+                int iEnd = Math.min(ib + TILE, to);
+                for (int kb = 0; kb < m; kb += TILE) {
+                    int kEnd = Math.min(kb + TILE, m);
+                    for (int jb = 0; jb < p; jb += COLUMN_TILE) {
+                        multiplyTile(a, b, out, ib, iEnd, kb, kEnd, jb, Math.min(jb + COLUMN_TILE, p));
+                    }
+                }
+            }
+        }
+
+        // out[i][jb..jEnd) += sum over k of a[i][k] * b[k][jb..jEnd). Four k at a time, so each element of the out
+        // row is loaded and stored once per four rows of b instead of once per row
+        private static void multiplyTile(IntMatrix a, IntMatrix b, IntMatrix out,
+                                         int ib, int iEnd, int kb, int kEnd, int jb, int jEnd) {
+            int[] ad = a.data, bd = b.data, cd = out.data;
+            int m = a.cols, p = b.cols;
+            for (int i = ib; i < iEnd; i++) {
+                int aRow = a.base + i * m;
+                int cRow = out.base + i * p;
+                int k = kb;
+                for (; k + 3 < kEnd; k += 4) {
+                    int a0 = ad[aRow + k], a1 = ad[aRow + k + 1], a2 = ad[aRow + k + 2], a3 = ad[aRow + k + 3];
+                    int b0 = b.base + k * p, b1 = b0 + p, b2 = b1 + p, b3 = b2 + p;
+                    for (int j = jb; j < jEnd; j++) {
+                        cd[cRow + j] += a0 * bd[b0 + j] + a1 * bd[b1 + j] + a2 * bd[b2 + j] + a3 * bd[b3 + j];
+                    }
+                }
+                for (; k < kEnd; k++) {
+                    int aik = ad[aRow + k];
+                    int bRow = b.base + k * p;
+                    for (int j = jb; j < jEnd; j++) cd[cRow + j] += aik * bd[bRow + j];
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.deepToString(toJagged());
+        }
+    }
+
+    // Splits the source rows in halves; each half writes its own columns of the transposed matrix
+    @SuppressWarnings("serial") // never serialized; RecursiveAction is Serializable only by inheritance
+    private static final class TransposeTask extends RecursiveAction {
+        private final IntMatrix src;
+        private final IntMatrix out;
+        private final int from;
+        private final int to;
+
+        TransposeTask(IntMatrix src, IntMatrix out, int from, int to) {
+            this.src = src;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_ROWS) {
+                IntMatrix.transposeRows(src, out, from, to);
+                return;
+            }
+            int mid = alignedMid(from, to);
+            invokeAll(new TransposeTask(src, out, from, mid), new TransposeTask(src, out, mid, to));
+        }
+    }
+
+    // Splits the rows of the product in halves; each half computes its own rows
+    @SuppressWarnings("serial") // never serialized; RecursiveAction is Serializable only by inheritance
+    private static final class MultiplyTask extends RecursiveAction {
+        private final IntMatrix a;
+        private final IntMatrix b;
+        private final IntMatrix out;
+        private final int from;
+        private final int to;
+
+        MultiplyTask(IntMatrix a, IntMatrix b, IntMatrix out, int from, int to) {
+            this.a = a;
+            this.b = b;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_ROWS) {
+                IntMatrix.multiplyRows(a, b, out, from, to);
+                return;
+            }
+            int mid = alignedMid(from, to);
+            invokeAll(new MultiplyTask(a, b, out, from, mid), new MultiplyTask(a, b, out, mid, to));
+        }
+    }
+
+    // Midpoint rounded to a whole tile, so that no band starts with a partial tile
+    private static int alignedMid(int from, int to) {
+        int mid = from + ((to - from) / 2 + TILE - 1) / TILE * TILE;
+        return Math.min(mid, to - 1);
+    }
+
+    /** A row, a column or any other arithmetic progression of an int[]: element i is data[offset + i * stride]. */
+    static final class IntStridedView {
+        private final int[] data;
+        private final int offset;
+        private final int stride;
+        private final int length;
+
+        IntStridedView(int[] data, int offset, int stride, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.stride = stride;
+            this.length = length;
+        }
+
+        int length() {
+            return length;
+        }
+
+        int get(int i) {
+            Objects.checkIndex(i, length);
+            return data[offset + i * stride];
+        }
+
+        void set(int i, int value) {
+            Objects.checkIndex(i, length);
+            data[offset + i * stride] = value;
+        }
+
+        long sum() {
+            long s = 0;
+            for (int i = 0, p = offset; i < length; i++, p += stride) s += data[p];
+            return s;
+        }
+
+        int[] toArray() {
+            int[] out = new int[length];
+            for (int i = 0, p = offset; i < length; i++, p += stride) out[i] = data[p];
+            return out;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(toArray());
+        }
+    }
+
+    /** A dense depth x rows x cols int tensor in one array; slice(z) shares it. */
+    static final class IntTensor3 {
+        private final int[] data;
+        private final int depth;
+        private final int rows;
+        private final int cols;
+
+        IntTensor3(int depth, int rows, int cols) {
+            if (depth < 0 || rows < 0 || cols < 0) {
+                throw new IllegalArgumentException("Negative dimension: " + depth + "x" + rows + "x" + cols);
+            }
+            this.data = new int[Math.multiplyExact(depth, Math.multiplyExact(rows, cols))];
+            this.depth = depth;
+            this.rows = rows;
+            this.cols = cols;
+        }
+
+        int get(int z, int r, int c) {
+            return data[index(z, r, c)];
+        }
+
+        void set(int z, int r, int c, int value) {
+            data[index(z, r, c)] = value;
+        }
+
+        private int index(int z, int r, int c) {
+            Objects.checkIndex(z, depth);
+            Objects.checkIndex(r, rows);
+            Objects.checkIndex(c, cols);
+            return (z * rows + r) * cols + c;
+        }
+
+        /** Layer z as a rows x cols matrix over the same array. */
+        IntMatrix slice(int z) {
+            Objects.checkIndex(z, depth);
+            return new IntMatrix(data, z * rows * cols, rows, cols);
+        }
+    }
+
+    // -----------------------------------------------------------------------------
+    // DEMO AND CHECKS
+    // -----------------------------------------------------------------------------
+    static void demo() {
+        IntMatrix grid = new IntMatrix(2, 3);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 3; j++) grid.set(i, j, (i + 1) * (j + 1));
+        }
+        System.out.println("grid:              " + grid + " (same values as multiDimensional())");
+        System.out.println("transpose:         " + grid.transpose());
+        System.out.println("row(1), column(2): " + grid.row(1) + ", " + grid.column(2));
+        grid.column(0).set(1, -2);
+        System.out.println("column(0).set(1):  " + grid + " (the view writes through)");
+        IntMatrix copy = grid.copy();
+        copy.set(0, 0, 99);
+        System.out.println("copy() changed:    " + copy + ", original " + grid);
+
+        IntTensor3 cube = new IntTensor3(2, 2, 2);
+        cube.set(1, 0, 1, 7);
+        IntMatrix layer = cube.slice(1);
+        layer.set(1, 1, 8);
+        System.out.println("slice(1) of cube:  " + layer + ", cube(1,1,1) = " + cube.get(1, 1, 1));
+    }
+
+    static void checks() {
+        int[][] a = random(517, 300, 1);
+        int[][] b = random(300, 411, 2);
+        IntMatrix fa = IntMatrix.fromJagged(a);
+        IntMatrix fb = IntMatrix.fromJagged(b);
+        IntMatrix expected = IntMatrix.fromJagged(naiveMultiply(a, b));
+        System.out.println("517x300 * 300x411: multiply " + fa.multiply(fb).sameValues(expected)
+                + ", parallelMultiply " + fa.parallelMultiply(fb).sameValues(expected));
+        IntMatrix t = IntMatrix.fromJagged(naiveTranspose(a));
+        System.out.println("transpose 517x300: transpose " + fa.transpose().sameValues(t)
+                + ", parallelTranspose " + fa.parallelTranspose().sameValues(t));
+        long columnSum = 0;
+        for (int[] row : a) columnSum += row[5];
+        System.out.println("column(5).sum() = " + fa.column(5).sum() + " (int[][] loop: " + columnSum + ")");
+    }
+
+    static int[][] naiveMultiply(int[][] a, int[][] b) {
+        int n = a.length, m = b.length, p = b[0].length;
+        int[][] c = new int[n][p];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                int s = 0;
+                for (int k = 0; k < m; k++) s += a[i][k] * b[k][j];
+                c[i][j] = s;
+            }
+        }
+        return c;
+    }
+
+    static int[][] naiveTranspose(int[][] a) {
+        int[][] t = new int[a[0].length][a.length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[0].length; j++) t[j][i] = a[i][j];
+        }
+        return t;
+    }
+
+    static int[][] random(int rows, int cols, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[][] m = new int[rows][cols];
+        for (int[] row : m) {
+            for (int j = 0; j < cols; j++) row[j] = rnd.nextInt(-100, 100);
+        }
+        return m;
+    }
+
+    // -----------------------------------------------------------------------------
+    // BENCHMARKS
+    // -----------------------------------------------------------------------------
+    static void benchmarks() {
+        System.out.println(Runtime.getRuntime().availableProcessors() + " CPU(s)");
+        for (int n : new int[]{1024, 2048, 4096, 8192}) {
+            System.out.println("-- transpose and copy " + n + "x" + n + " --");
+            int[][] jagged = random(n, n, n);
+            IntMatrix flat = IntMatrix.fromJagged(jagged);
+            int runs = n >= 4096 ? 1 : 3;
+            bench("int[][] naive transpose", 1, runs, () -> naiveTranspose(jagged));
+            bench("IntMatrix.transpose (blocked)", 1, runs, flat::transpose);
+            bench("IntMatrix.parallelTranspose", 1, runs, flat::parallelTranspose);
+            bench("_02_Examples.deepCopy2D", 1, runs, () -> _02_Examples.deepCopy2D(jagged));
+            bench("IntMatrix.copy", 1, runs, flat::copy);
+        }
+        for (int n : new int[]{1024, 2048, 4096}) {
+            System.out.println("-- multiply " + n + "x" + n + " --");
+            int[][] a = random(n, n, 3);
+            int[][] b = random(n, n, 4);
+            IntMatrix fa = IntMatrix.fromJagged(a);
+            IntMatrix fb = IntMatrix.fromJagged(b);
+            // The kernels are compiled by the smaller sizes; the large ones run once, without a warm-up
+            int warmups = n == 1024 ? 1 : 0;
+            int runs = n == 1024 ? 3 : 1;
+            if (n <= 2048) bench("int[][] naive i-j-k", warmups, runs, () -> naiveMultiply(a, b));
+            bench("IntMatrix.multiply (tiled i-k-j)", warmups, runs, () -> fa.multiply(fb));
+            bench("IntMatrix.parallelMultiply", warmups, runs, () -> fa.parallelMultiply(fb));
+        }
+    }
+
+    private static volatile Object BLACKHOLE;
+
+    private static void bench(String label, int warmups, int runs, Supplier<?> task) {
+        for (int i = 0; i < warmups; i++) BLACKHOLE = task.get();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            BLACKHOLE = task.get();
+            total += System.nanoTime() - t0;
+        }
+        BLACKHOLE = null;
+        System.out.printf("%-35s %10.1f ms%n", label, total / 1_000_000.0 / runs);
+    }
+
+    static void header(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+}
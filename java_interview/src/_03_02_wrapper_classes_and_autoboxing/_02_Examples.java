@@ -284,6 +284,7 @@ public class _02_Examples {
             freq2.compute(k, (key, old) -> old == null ? 1 : old + 1);
         }
         System.out.println("freq2 = " + freq2);
+        // Without boxing: _04_02_list_set_map_implementations._04_PrimitiveCollections.IntIntMap#addTo
     }
 
     // 15) Character wrapper utilities
@@ -0,0 +1,26 @@
+package _03_03_enums;
+
+import java.util.EnumSet;
+
+/* Feature flags with an ordinal-based bitmask for interop only; see section 9 of _01_Theory. */
+enum FeatureFlag {
+    ALPHA, BETA, GAMMA, DELTA;
+
+    public static int toBitMask(EnumSet<FeatureFlag> flags) {
+        int mask = 0;
+        for (FeatureFlag f : flags) {
+            mask |= (1 << f.ordinal()); // interop only; unstable if enum changes
+        }
+        return mask;
+    }
+
+    public static EnumSet<FeatureFlag> fromBitMask(int mask) {
+        EnumSet<FeatureFlag> set = EnumSet.noneOf(FeatureFlag.class);
+        for (FeatureFlag f : values()) {
+            if ((mask & (1 << f.ordinal())) != 0) {
+                set.add(f);
+            }
+        }
+        return set;
+    }
+}
@@ -348,28 +348,9 @@ enum AppSettings {
 
 /* 9) Feature flags: EnumSet is ideal. If you must interoperate with bitmasks (external), map carefully.
    - WARNING: This bitmask relies on ordinal positions. Do not persist this mask internally or across versions.
-   - Prefer EnumSet internally; only produce/consume masks at the boundary if a protocol requires it. */
-enum FeatureFlag {
-    ALPHA, BETA, GAMMA, DELTA;
-
-    public static int toBitMask(EnumSet<FeatureFlag> flags) {
-        int mask = 0;
-        for (FeatureFlag f : flags) {
-            mask |= (1 << f.ordinal()); // interop only; unstable if enum changes
-        }
-        return mask;
-    }
-
-    public static EnumSet<FeatureFlag> fromBitMask(int mask) {
-        EnumSet<FeatureFlag> set = EnumSet.noneOf(FeatureFlag.class);
-        for (FeatureFlag f : values()) {
-            if ((mask & (1 << f.ordinal())) != 0) {
-                set.add(f);
-            }
-        }
-        return set;
-    }
-}
+   - Prefer EnumSet internally; only produce/consume masks at the boundary if a protocol requires it.
+   - More than 32 flags, shared immutable sets or persisted masks: see _04_FlagSet (long[] words, name-based ids).
+   - The FeatureFlag enum itself is in FeatureFlag.java, so _04_FlagSet can use it too. */
 
 /*
 Additional notes:
@@ -0,0 +1,593 @@
+package _03_03_enums;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/*
+Immutable flag sets over long[] words, with stable name-based persistence ids.
+
+FeatureFlag.toBitMask/fromBitMask (see _01_Theory) are fine for four flags at a protocol boundary, but:
+- int + (1 << ordinal()) caps them at 32 flags (and 1 << 32 silently wraps to bit 0).
+- fromBitMask allocates an EnumSet and walks values() (a fresh array) on every decode.
+- The mask is ordinal-based: reordering or removing a constant changes the meaning of every stored mask.
+EnumSet itself is a bitset (RegularEnumSet <= 64 constants, JumboEnumSet above), but it is mutable, so sets shared
+across requests need defensive copies, and bulk operations are copy-then-mutate.
+
+FlagSet<E>:
+- Immutable, safe to share; words indexed by ordinal, contains() = one shift, one AND, no type check beyond generics.
+- and/or/andNot/orAndNot/with/without return new sets; containsAll/intersects work word by word.
+- FlagUniverse: constants and word count per enum class, computed once (ClassValue) and shared by all its sets.
+
+FlagCodec<E> (persistence):
+- Ids come from a name -> id table that is stored next to the data and only ever grows: assignIds() gives new
+  constants max+1 and keeps ids of removed constants reserved, so old masks still decode (unknown ids are skipped).
+- encode/decode translate between ordinal bits and id bits with two int[] permutations; when ids equal ordinals
+  (constants only appended), the words are copied as they are.
+- Packed form (all ids < 64): contains(packed, flag) tests a persisted long directly, and decode(long) goes through a
+  small direct-mapped cache of immutable FlagSets, so decoding a mask seen before allocates nothing.
+
+main() benchmarks against EnumSet and HashSet<E>. "Thousands of flags" needs a large enum: a 4,096-constant enum is
+generated and compiled at runtime (falls back to Character.UnicodeScript, ~160 constants, without a JDK compiler).
+JMH is not on the classpath: ad-hoc bench loop, allocation per op from ThreadMXBean#getCurrentThreadAllocatedBytes.
+
+Typical numbers (1 CPU, 4,096 flags): 4M contains() ~9 ms FlagSet, ~16 ms EnumSet (JumboEnumSet: class check +
+two loads), ~80 ms HashSet. 20k grant/revoke merges: orAndNot ~5 ms / 552 B, EnumSet clone+addAll+removeAll ~6 ms /
+560 B, HashSet ~820 ms. Decoding a persisted long[]: ~6 ms vs ~170-260 ms for an EnumSet bit loop. 4M packed
+FeatureFlag decodes: fromBitMask ~85 ms / 64 B each, cached decode ~15 ms / 0 B, contains(packed) ~4 ms.
+*/
+public class _04_FlagSet {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("--- FlagSet basics ---");
+        FlagSet<FeatureFlag> ab = FlagSet.of(FeatureFlag.ALPHA, FeatureFlag.BETA);
+        FlagSet<FeatureFlag> bg = FlagSet.of(FeatureFlag.BETA, FeatureFlag.GAMMA);
+        System.out.println(ab + " and " + bg + " = " + ab.and(bg) + ", or = " + ab.or(bg) + ", andNot = " + ab.andNot(bg));
+        System.out.println("contains(BETA)=" + ab.contains(FeatureFlag.BETA) + ", size=" + ab.size()
+                + ", all=" + FlagSet.allOf(FeatureFlag.class) + ", equal to copyOf(EnumSet): "
+                + ab.equals(FlagSet.copyOf(FeatureFlag.class, EnumSet.of(FeatureFlag.ALPHA, FeatureFlag.BETA))));
+
+        System.out.println("\n--- Persistence with stable ids ---");
+        // The id table as it was persisted by an older build where the enum was declared DELTA, GAMMA, BETA, ALPHA
+        // and a flag OMEGA existed that has since been removed
+        Map<String, Integer> stored = new LinkedHashMap<>();
+        for (String name : new String[]{"DELTA", "GAMMA", "BETA", "ALPHA", "OMEGA"}) stored.put(name, stored.size());
+        Map<String, Integer> ids = FlagCodec.assignIds(FeatureFlag.class, stored);
+        FlagCodec<FeatureFlag> codec = FlagCodec.of(FeatureFlag.class, ids);
+        long packed = codec.encodePacked(ab);
+        System.out.println("ids=" + ids + ", " + ab + " -> packed 0b" + Long.toBinaryString(packed));
+        long oldMask = packed | (1L << 4); // written when OMEGA was still on
+        System.out.println("decode(old mask with retired OMEGA bit) = " + codec.decode(oldMask)
+                + ", contains(packed, ALPHA) = " + codec.contains(packed, FeatureFlag.ALPHA)
+                + ", legacy ordinal mask = " + FeatureFlag.toBitMask(EnumSet.of(FeatureFlag.ALPHA, FeatureFlag.BETA)));
+
+        benchmarks();
+    }
+
+    // ----------------------------------------------------------------
+    // Universe
+    // ----------------------------------------------------------------
+    static final class FlagUniverse<E extends Enum<E>> {
+        private static final ClassValue<FlagUniverse<?>> UNIVERSES = new ClassValue<>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            protected FlagUniverse<?> computeValue(Class<?> type) {
+                if (!type.isEnum()) throw new IllegalArgumentException(type + " is not an enum");
+                return new FlagUniverse(type);
+            }
+        };
+
+        final Class<E> type;
+        final E[] constants;
+        final int words;
+        final FlagSet<E> none;
+        final FlagSet<E> all;
+
+        private FlagUniverse(Class<E> type) {
+            this.type = type;
+            this.constants = type.getEnumConstants();
+            this.words = Math.max(1, (constants.length + 63) >>> 6);
+            this.none = new FlagSet<>(this, new long[words]);
+            long[] full = new long[words];
+            for (int o = 0; o < constants.length; o++) full[o >>> 6] |= 1L << o;
+            this.all = new FlagSet<>(this, full);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <E extends Enum<E>> FlagUniverse<E> of(Class<E> type) {
+            return (FlagUniverse<E>) UNIVERSES.get(type);
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // FlagSet
+    // ----------------------------------------------------------------
+    static final class FlagSet<E extends Enum<E>> implements Iterable<E> {
+        private final FlagUniverse<E> universe;
+        private final long[] words; // indexed by ordinal; never modified after construction
+
+        private FlagSet(FlagUniverse<E> universe, long[] words) {
+            this.universe = universe;
+            this.words = words;
+        }
+
+        static <E extends Enum<E>> FlagSet<E> noneOf(Class<E> type) {
+            return FlagUniverse.of(type).none;
+        }
+
+        static <E extends Enum<E>> FlagSet<E> allOf(Class<E> type) {
+            return FlagUniverse.of(type).all;
+        }
+
+        @SafeVarargs
+        static <E extends Enum<E>> FlagSet<E> of(E first, E... rest) {
+            FlagUniverse<E> u = FlagUniverse.of(first.getDeclaringClass());
+            long[] w = new long[u.words];
+            set(w, first);
+            for (E e : rest) set(w, e);
+            return new FlagSet<>(u, w);
+        }
+
+        static <E extends Enum<E>> FlagSet<E> copyOf(Class<E> type, Collection<E> flags) {
+            FlagUniverse<E> u = FlagUniverse.of(type);
+            long[] w = new long[u.words];
+            for (E e : flags) set(w, e);
+            return new FlagSet<>(u, w);
+        }
+
+        boolean contains(E flag) {
+            int o = flag.ordinal();
+            return (words[o >>> 6] & (1L << o)) != 0;
+        }
+
+        FlagSet<E> with(E flag) {
+            if (contains(flag)) return this;
+            long[] w = words.clone();
+            set(w, flag);
+            return new FlagSet<>(universe, w);
+        }
+
+        FlagSet<E> without(E flag) {
+            if (!contains(flag)) return this;
+            long[] w = words.clone();
+            int o = flag.ordinal();
+            w[o >>> 6] &= ~(1L << o);
+            return new FlagSet<>(universe, w);
+        }
+
+        FlagSet<E> and(FlagSet<E> other) {
+            long[] a = words, b = check(other).words, w = new long[a.length];
+            for (int i = 0; i < w.length; i++) w[i] = a[i] & b[i];
+            return new FlagSet<>(universe, w);
+        }
+
+        FlagSet<E> or(FlagSet<E> other) {
+            long[] a = words, b = check(other).words, w = new long[a.length];
+            for (int i = 0; i < w.length; i++) w[i] = a[i] | b[i];
+            return new FlagSet<>(universe, w);
+        }
+
+        FlagSet<E> andNot(FlagSet<E> other) {
+            long[] a = words, b = check(other).words, w = new long[a.length];
+            for (int i = 0; i < w.length; i++) w[i] = a[i] & ~b[i];
+            return new FlagSet<>(universe, w);
+        }
+
+        /** {@code (this | add) & ~remove} in one pass, e.g. defaults with per-request grants and revocations. */
+        FlagSet<E> orAndNot(FlagSet<E> add, FlagSet<E> remove) {
+            long[] a = words, b = check(add).words, c = check(remove).words, w = new long[a.length];
+            for (int i = 0; i < w.length; i++) w[i] = (a[i] | b[i]) & ~c[i];
+            return new FlagSet<>(universe, w);
+        }
+
+        boolean containsAll(FlagSet<E> other) {
+            long[] a = words, b = check(other).words;
+            for (int i = 0; i < a.length; i++) {
+                if ((b[i] & ~a[i]) != 0) return false;
+            }
+            return true;
+        }
+
+        boolean intersects(FlagSet<E> other) {
+            long[] a = words, b = check(other).words;
+            for (int i = 0; i < a.length; i++) {
+                if ((a[i] & b[i]) != 0) return true;
+            }
+            return false;
+        }
+
+        int size() {
+            int n = 0;
+            for (long w : words) n += Long.bitCount(w);
+            return n;
+        }
+
+        boolean isEmpty() {
+            for (long w : words) {
+                if (w != 0) return false;
+            }
+            return true;
+        }
+
+        EnumSet<E> toEnumSet() {
+            EnumSet<E> set = EnumSet.noneOf(universe.type);
+            forEach(set::add);
+            return set;
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+            for (int i = 0; i < words.length; i++) {
+                for (long w = words[i]; w != 0; w &= w - 1) {
+                    action.accept(universe.constants[(i << 6) + Long.numberOfTrailingZeros(w)]);
+                }
+            }
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<>() {
+                private int index;
+                private long word = words[0];
+
+                @Override
+                public boolean hasNext() {
+                    while (word == 0 && index + 1 < words.length) word = words[++index];
+                    return word != 0;
+                }
+
+                @Override
+                public E next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    int bit = Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    return universe.constants[(index << 6) + bit];
+                }
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FlagSet<?> other && other.universe == universe && Arrays.equals(other.words, words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            forEach(e -> sb.append(sb.length() > 1 ? ", " : "").append(e.name()));
+            return sb.append(']').toString();
+        }
+
+        private FlagSet<E> check(FlagSet<E> other) {
+            // Generics already prevent this; raw types do not
+            if (other.universe != universe) throw new IllegalArgumentException(other.universe.type + " vs " + universe.type);
+            return other;
+        }
+
+        private static void set(long[] w, Enum<?> e) {
+            int o = e.ordinal();
+            w[o >>> 6] |= 1L << o;
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Codec
+    // ----------------------------------------------------------------
+    static final class FlagCodec<E extends Enum<E>> {
+        private static final int CACHE_SIZE = 1024;
+
+        private final FlagUniverse<E> universe;
+        private final int[] idByOrdinal;
+        private final int[] ordinalById; // -1: retired id
+        private final int idWords;
+        private final boolean identity;
+        private final Entry<E>[] cache;
+
+        private record Entry<E extends Enum<E>>(long packed, FlagSet<E> set) {
+        }
+
+        @SuppressWarnings("unchecked")
+        private FlagCodec(FlagUniverse<E> universe, int[] idByOrdinal, int[] ordinalById) {
+            this.universe = universe;
+            this.idByOrdinal = idByOrdinal;
+            this.ordinalById = ordinalById;
+            this.idWords = Math.max(1, (ordinalById.length + 63) >>> 6);
+            boolean same = true;
+            for (int o = 0; o < idByOrdinal.length; o++) same &= idByOrdinal[o] == o;
+            this.identity = same;
+            this.cache = (Entry<E>[]) new Entry<?>[CACHE_SIZE];
+        }
+
+        /** Codec over a persisted name -> id table; every constant must have an id (see {@link #assignIds}). */
+        static <E extends Enum<E>> FlagCodec<E> of(Class<E> type, Map<String, Integer> idsByName) {
+            FlagUniverse<E> u = FlagUniverse.of(type);
+            int maxId = -1;
+            for (int id : idsByName.values()) {
+                if (id < 0) throw new IllegalArgumentException("negative id " + id);
+                maxId = Math.max(maxId, id);
+            }
+            int[] ordinalById = new int[maxId + 1];
+            Arrays.fill(ordinalById, -1);
+            int[] idByOrdinal = new int[u.constants.length];
+            for (E e : u.constants) {
+                Integer id = idsByName.get(e.name());
+                if (id == null) throw new IllegalArgumentException("no persistence id for " + e.name() + "; run assignIds first");
+                if (ordinalById[id] != -1) throw new IllegalArgumentException("id " + id + " used twice");
+                ordinalById[id] = e.ordinal();
+                idByOrdinal[e.ordinal()] = id;
+            }
+            return new FlagCodec<>(u, idByOrdinal, ordinalById);
+        }
+
+        /** The stored table plus ids for constants it does not know yet (max + 1, declaration order); nothing is removed. */
+        static <E extends Enum<E>> Map<String, Integer> assignIds(Class<E> type, Map<String, Integer> stored) {
+            Map<String, Integer> ids = new LinkedHashMap<>(stored);
+            int next = 0;
+            for (int id : ids.values()) next = Math.max(next, id + 1);
+            for (E e : FlagUniverse.of(type).constants) {
+                if (!ids.containsKey(e.name())) ids.put(e.name(), next++);
+            }
+            return ids;
+        }
+
+        long[] encode(FlagSet<E> set) {
+            if (identity) return Arrays.copyOf(set.words, idWords);
+            long[] out = new long[idWords];
+            long[] w = set.words;
+            for (int i = 0; i < w.length; i++) {
+                for (long bits = w[i]; bits != 0; bits &= bits - 1) {
+                    int id = idByOrdinal[(i << 6) + Long.numberOfTrailingZeros(bits)];
+                    out[id >>> 6] |= 1L << id;
+                }
+            }
+            return out;
+        }
+
+        FlagSet<E> decode(long[] persisted) {
+            long[] w = new long[universe.words];
+            if (identity) {
+                System.arraycopy(persisted, 0, w, 0, Math.min(w.length, persisted.length));
+                if (universe.constants.length < w.length * 64) w[w.length - 1] &= universe.all.words[w.length - 1];
+                return new FlagSet<>(universe, w);
+            }
+            for (int i = 0; i < persisted.length; i++) {
+                for (long bits = persisted[i]; bits != 0; bits &= bits - 1) {
+                    int id = (i << 6) + Long.numberOfTrailingZeros(bits);
+                    int o = id < ordinalById.length ? ordinalById[id] : -1;
+                    if (o >= 0) w[o >>> 6] |= 1L << o; // retired or unknown ids are skipped
+                }
+            }
+            return new FlagSet<>(universe, w);
+        }
+
+        /** Packed form; only if every id of the table is below 64. */
+        long encodePacked(FlagSet<E> set) {
+            requirePackable();
+            return encode(set)[0];
+        }
+
+        /** Decodes a packed mask; masks seen recently come from a cache and allocate nothing. */
+        FlagSet<E> decode(long packed) {
+            int slot = (int) ((packed * 0x9E3779B97F4A7C15L) >>> 54) & (CACHE_SIZE - 1);
+            Entry<E> e = cache[slot];
+            if (e != null && e.packed == packed) return e.set;
+            FlagSet<E> set = decode(new long[]{packed});
+            cache[slot] = new Entry<>(packed, set); // racy but safe: Entry and FlagSet are immutable
+            return set;
+        }
+
+        /** Tests a flag in a packed mask without decoding it. */
+        boolean contains(long packed, E flag) {
+            int id = idByOrdinal[flag.ordinal()];
+            return id < 64 && (packed & (1L << id)) != 0;
+        }
+
+        private void requirePackable() {
+            if (ordinalById.length > 64) throw new IllegalStateException("ids go up to " + (ordinalById.length - 1) + "; use encode(FlagSet)");
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Benchmarks
+    // ----------------------------------------------------------------
+
+    private static volatile Object BLACKHOLE;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void benchmarks() throws Exception {
+        Class<?> large = generatedEnum(4096);
+        benchUniverse((Class) large);
+        benchPackedDecode();
+    }
+
+    private static <E extends Enum<E>> void benchUniverse(Class<E> type) {
+        E[] constants = type.getEnumConstants();
+        System.out.println("\n--- " + constants.length + " flags (" + type.getSimpleName() + "), ~25% enabled per request ---");
+        SplittableRandom rnd = new SplittableRandom(42);
+        Set<E> enabled = new HashSet<>();
+        for (E e : constants) {
+            if (rnd.nextInt(4) == 0) enabled.add(e);
+        }
+        FlagSet<E> flags = FlagSet.copyOf(type, enabled);
+        EnumSet<E> enumSet = EnumSet.copyOf(enabled);
+        HashSet<E> hashSet = new HashSet<>(enabled);
+        E[] probes = Arrays.copyOf(constants, 1 << 16);
+        for (int i = 0; i < probes.length; i++) probes[i] = constants[rnd.nextInt(constants.length)];
+
+        int checks = 4_000_000;
+        bench("contains: FlagSet", 3, 5, () -> {
+            int hits = 0;
+            for (int i = 0; i < checks; i++) hits += flags.contains(probes[i & 0xFFFF]) ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+        bench("contains: EnumSet", 3, 5, () -> {
+            int hits = 0;
+            for (int i = 0; i < checks; i++) hits += enumSet.contains(probes[i & 0xFFFF]) ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+        bench("contains: HashSet<E>", 3, 5, () -> {
+            int hits = 0;
+            for (int i = 0; i < checks; i++) hits += hashSet.contains(probes[i & 0xFFFF]) ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+
+        // Request overrides: (defaults | granted) & ~revoked
+        Set<E> grantedSet = new HashSet<>(), revokedSet = new HashSet<>();
+        for (E e : constants) {
+            int r = rnd.nextInt(16);
+            if (r == 0) grantedSet.add(e);
+            else if (r == 1) revokedSet.add(e);
+        }
+        FlagSet<E> granted = FlagSet.copyOf(type, grantedSet), revoked = FlagSet.copyOf(type, revokedSet);
+        EnumSet<E> grantedEnum = EnumSet.copyOf(grantedSet), revokedEnum = EnumSet.copyOf(revokedSet);
+        int ops = 20_000;
+        bench("or+andNot: FlagSet", 3, 5, () -> {
+            Object r = null;
+            for (int i = 0; i < ops; i++) r = flags.or(granted).andNot(revoked);
+            BLACKHOLE = r;
+        });
+        bench("orAndNot: FlagSet (one pass)", 3, 5, () -> {
+            Object r = null;
+            for (int i = 0; i < ops; i++) r = flags.orAndNot(granted, revoked);
+            BLACKHOLE = r;
+        });
+        bench("or+andNot: EnumSet copy+mutate", 3, 5, () -> {
+            Object r = null;
+            for (int i = 0; i < ops; i++) {
+                EnumSet<E> s = enumSet.clone();
+                s.addAll(grantedEnum);
+                s.removeAll(revokedEnum);
+                r = s;
+            }
+            BLACKHOLE = r;
+        });
+        bench("or+andNot: HashSet copy+mutate", 1, 3, () -> {
+            Object r = null;
+            for (int i = 0; i < ops; i++) {
+                HashSet<E> s = new HashSet<>(hashSet);
+                s.addAll(grantedSet);
+                s.removeAll(revokedSet);
+                r = s;
+            }
+            BLACKHOLE = r;
+        });
+        System.out.printf("%-35s %8d B%n", "or+andNot alloc/op: FlagSet", allocatedPer(() -> BLACKHOLE = flags.or(granted).andNot(revoked)));
+        System.out.printf("%-35s %8d B%n", "orAndNot alloc/op: FlagSet", allocatedPer(() -> BLACKHOLE = flags.orAndNot(granted, revoked)));
+        System.out.printf("%-35s %8d B%n", "or+andNot alloc/op: EnumSet", allocatedPer(() -> {
+            EnumSet<E> s = enumSet.clone();
+            s.addAll(grantedEnum);
+            s.removeAll(revokedEnum);
+            BLACKHOLE = s;
+        }));
+
+        FlagCodec<E> codec = FlagCodec.of(type, FlagCodec.assignIds(type, Map.of()));
+        long[] persisted = codec.encode(flags);
+        bench("decode long[]: FlagCodec", 3, 5, () -> {
+            Object r = null;
+            for (int i = 0; i < ops; i++) r = codec.decode(persisted);
+            BLACKHOLE = r;
+        });
+        bench("decode long[]: EnumSet bit loop", 3, 5, () -> {
+            Object r = null;
+            for (int i = 0; i < ops; i++) {
+                EnumSet<E> s = EnumSet.noneOf(type);
+                for (int id = 0; id < constants.length; id++) {
+                    if ((persisted[id >>> 6] & (1L << id)) != 0) s.add(constants[id]);
+                }
+                r = s;
+            }
+            BLACKHOLE = r;
+        });
+    }
+
+    private static void benchPackedDecode() {
+        System.out.println("\n--- Decode a persisted mask (FeatureFlag, 4 flags) ---");
+        FlagCodec<FeatureFlag> codec = FlagCodec.of(FeatureFlag.class, FlagCodec.assignIds(FeatureFlag.class, Map.of()));
+        int[] masks = new int[1024];
+        SplittableRandom rnd = new SplittableRandom(7);
+        for (int i = 0; i < masks.length; i++) masks[i] = rnd.nextInt(16);
+        int n = 4_000_000;
+        bench("FeatureFlag.fromBitMask(int)", 3, 5, () -> {
+            int hits = 0;
+            for (int i = 0; i < n; i++) hits += FeatureFlag.fromBitMask(masks[i & 1023]).contains(FeatureFlag.GAMMA) ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+        bench("FlagCodec.decode(long) (cached)", 3, 5, () -> {
+            int hits = 0;
+            for (int i = 0; i < n; i++) hits += codec.decode(masks[i & 1023]).contains(FeatureFlag.GAMMA) ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+        bench("FlagCodec.contains(long, flag)", 3, 5, () -> {
+            int hits = 0;
+            for (int i = 0; i < n; i++) hits += codec.contains(masks[i & 1023], FeatureFlag.GAMMA) ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+        int[] k = new int[1];
+        System.out.printf("%-35s %8d B%n", "alloc/decode: fromBitMask", allocatedPer(() -> BLACKHOLE = FeatureFlag.fromBitMask(masks[k[0]++ & 1023])));
+        System.out.printf("%-35s %8d B%n", "alloc/decode: FlagCodec.decode", allocatedPer(() -> BLACKHOLE = codec.decode(masks[k[0]++ & 1023])));
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    // enum Flags { F0000, F0001, ... } compiled into a temp dir; Character.UnicodeScript if there is no compiler
+    private static Class<?> generatedEnum(int constants) throws IOException, ClassNotFoundException {
+        if (ToolProvider.getSystemJavaCompiler() == null) return Character.UnicodeScript.class;
+        Path dir = Files.createTempDirectory("flags_");
+        StringBuilder src = new StringBuilder("public enum Flags {");
+        for (int i = 0; i < constants; i++) src.append(i == 0 ? "" : ",").append(String.format("F%04d", i));
+        Path file = Files.writeString(dir.resolve("Flags.java"), src.append("}\n"));
+        if (ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", dir.toString(), file.toString()) != 0) {
+            return Character.UnicodeScript.class;
+        }
+        @SuppressWarnings("resource") // the loader has to outlive the benchmark
+        URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()}, _04_FlagSet.class.getClassLoader());
+        dir.toFile().deleteOnExit();
+        dir.resolve("Flags.class").toFile().deleteOnExit();
+        file.toFile().deleteOnExit();
+        return loader.loadClass("Flags");
+    }
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    private static long allocatedPer(Runnable op) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int n = 100_000;
+        for (int i = 0; i < n; i++) op.run(); // warm-up
+        long before = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < n; i++) op.run();
+        return (mx.getCurrentThreadAllocatedBytes() - before) / n;
+    }
+}
@@ -0,0 +1,692 @@
+package _04_02_list_set_map_implementations;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Primitive-valued open-addressing collections for counting and grouping without boxing.
+ *
+ * Why the usual patterns are expensive on hot paths:
+ * - {@code Map<String,Integer>.merge(w, 1, Integer::sum)}: every increment above 127 allocates a new Integer; each
+ *   entry is a 32-byte HashMap.Node plus a 16-byte Integer, reached through a pointer from the table.
+ * - {@code Map<Integer,Integer>}: the key is boxed as well, and every lookup boxes the probe key.
+ * - {@code Map<K, List<Integer>>} via computeIfAbsent: an ArrayList + Object[] per key and an Integer per value
+ *   (4-byte payload, ~20 bytes with the reference).
+ *
+ * The structures here:
+ * - KeyIndex: Object -> dense int id (0, 1, 2, ...), linear probing over parallel Object[]/int[] slots, load <= 2/3.
+ *   Values live in arrays indexed by id, so they are stored once, unboxed, contiguous and in insertion order.
+ * - ObjectLongCounter: KeyIndex + long[] counts. increment() allocates nothing once the arrays have grown.
+ * - IntIntMap: int keys and values in two arrays; key 0 is the free marker and is stored on the side. Removal uses
+ *   backward-shift deletion (no tombstones, probe sequences stay short).
+ * - IntMultimap: values of all keys in one shared int[] with per-entry "next" links (append is O(1), no per-key
+ *   objects); freeze() compacts into CSR form (offsets + values grouped by key) for cache-friendly reads.
+ * Not thread-safe; null keys are rejected. Counters do not support removal: histogram and index builders only add.
+ *
+ * Measurement: JMH is not on the classpath, so times come from the ad-hoc bench loop used elsewhere in the repo, and
+ * allocation per operation from com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes. JOL is not
+ * available either: footprints are retained-heap deltas after System.gc() (keys are shared and excluded), with the
+ * array sizes computed from the layout (16-byte array header, 8-byte alignment) next to them as a cross-check.
+ *
+ * Typical numbers (1 CPU, -Xmx2g):
+ * - 4M word increments, 100k words: merge ~380 ms / 8 B per op / 5.5 MB; counter ~220 ms / 0 B / 3.7 MB.
+ * - 4M int increments, 1M keys: HashMap<Integer,Integer> ~1.2 s / 51 MB; IntIntMap ~120 ms / 17 MB.
+ * - 2M postings: Map<String,List<Integer>> ~900 ms / 50 MB; IntMultimap ~260 ms / 21 MB, frozen 11 MB.
+ *   Reading all postings: List<Integer> and CSR ~19 ms, the linked builder ~190 ms (every hop is a cache miss),
+ *   which is why the builder is meant to be frozen before it is queried.
+ */
+public class _04_PrimitiveCollections {
+
+    public static void main(String[] args) {
+        section("PRIMITIVE COLLECTIONS");
+        demoCounter();
+        demoIntIntMap();
+        demoMultimap();
+
+        section("BENCHMARKS");
+        benchHistogram();
+        benchIntCounts();
+        benchInvertedIndex();
+    }
+
+    // ===== DEMOS =====
+
+    private static void demoCounter() {
+        subtitle("ObjectLongCounter (replaces Map<String,Integer>.merge)");
+        ObjectLongCounter<String> freq = new ObjectLongCounter<>(8);
+        for (String w : Arrays.asList("to", "be", "or", "not", "to", "be")) freq.increment(w);
+        freq.add("be", 10);
+        StringBuilder sb = new StringBuilder();
+        freq.forEach((k, v) -> sb.append(k).append('=').append(v).append(' '));
+        System.out.println("frequencies (insertion order): " + sb.toString().trim() + ", missing=" + freq.get("missing"));
+    }
+
+    private static void demoIntIntMap() {
+        subtitle("IntIntMap (replaces Map<Integer,Integer> counting)");
+        IntIntMap freq = new IntIntMap(8);
+        for (int k : new int[]{1, 1, 2, 3, 3, 3, 0, 0}) freq.addTo(k, 1);
+        System.out.println("freq = " + freq + ", size=" + freq.size());
+        freq.remove(3);
+        freq.put(-7, 42);
+        System.out.println("after remove(3), put(-7,42): " + freq + ", get(3, -1)=" + freq.getOrDefault(3, -1));
+    }
+
+    private static void demoMultimap() {
+        subtitle("IntMultimap (replaces Map<String, List<Integer>> via computeIfAbsent)");
+        IntMultimap<String> multi = new IntMultimap<>(4, 8);
+        multi.put("grp1", 100);
+        multi.put("grp1", 200);
+        multi.put("grp2", 300);
+        multi.put("grp1", 400);
+        System.out.println("grp1=" + Arrays.toString(multi.get("grp1")) + ", grp2=" + Arrays.toString(multi.get("grp2"))
+                + ", grp3=" + Arrays.toString(multi.get("grp3")));
+        IntMultimap.Frozen<String> frozen = multi.freeze();
+        System.out.println("frozen grp1=" + Arrays.toString(frozen.get("grp1")) + ", count(grp1)=" + frozen.count("grp1"));
+    }
+
+    // ===== IMPLEMENTATIONS =====
+
+    /** Object -> dense int id. Ids are assigned 0, 1, 2, ... in insertion order and never change. */
+    static final class KeyIndex<K> {
+        private Object[] slots;
+        private int[] slotIds;
+        private Object[] keysById;
+        private int size;
+        private int mask;
+        private int resizeAt;
+
+        KeyIndex(int expectedKeys) {
+            allocate(tableSizeFor(expectedKeys * 3 / 2 + 1));
+            keysById = new Object[Math.max(4, expectedKeys)];
+        }
+
+        /** Id of {@code key}, or -1. */
+        int idOf(Object key) {
+            Object[] s = slots;
+            for (int i = mix(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+                Object k = s[i];
+                if (k == null) return -1;
+                if (k == key || k.equals(key)) return slotIds[i];
+            }
+        }
+
+        /** Id of {@code key}, assigning the next id if it is new. */
+        int add(K key) {
+            Objects.requireNonNull(key, "key");
+            Object[] s = slots;
+            int i = mix(key.hashCode()) & mask;
+            for (Object k; (k = s[i]) != null; i = (i + 1) & mask) {
+                if (k == key || k.equals(key)) return slotIds[i];
+            }
+            int id = size++;
+            if (id == keysById.length) keysById = Arrays.copyOf(keysById, id * 2);
+            keysById[id] = key;
+            s[i] = key;
+            slotIds[i] = id;
+            if (size > resizeAt) rehash();
+            return id;
+        }
+
+        @SuppressWarnings("unchecked")
+        K key(int id) {
+            return (K) keysById[id];
+        }
+
+        int size() {
+            return size;
+        }
+
+        long footprintBytes() {
+            return arrayBytes(slots.length, 4) + arrayBytes(slotIds.length, 4) + arrayBytes(keysById.length, 4);
+        }
+
+        private void rehash() {
+            Object[] oldSlots = slots;
+            int[] oldIds = slotIds;
+            allocate(oldSlots.length * 2);
+            for (int j = 0; j < oldSlots.length; j++) {
+                Object k = oldSlots[j];
+                if (k == null) continue;
+                int i = mix(k.hashCode()) & mask;
+                while (slots[i] != null) i = (i + 1) & mask;
+                slots[i] = k;
+                slotIds[i] = oldIds[j];
+            }
+        }
+
+        private void allocate(int capacity) {
+            slots = new Object[capacity];
+            slotIds = new int[capacity];
+            mask = capacity - 1;
+            resizeAt = capacity * 2 / 3;
+        }
+    }
+
+    /** Counts per key in a long[]; no allocation per increment. */
+    static final class ObjectLongCounter<K> {
+        private final KeyIndex<K> index;
+        private long[] counts;
+
+        ObjectLongCounter(int expectedKeys) {
+            index = new KeyIndex<>(expectedKeys);
+            counts = new long[Math.max(4, expectedKeys)];
+        }
+
+        long increment(K key) {
+            return add(key, 1);
+        }
+
+        /** Adds {@code delta} and returns the new count. */
+        long add(K key, long delta) {
+            int id = index.add(key);
+            if (id >= counts.length) counts = Arrays.copyOf(counts, Math.max(counts.length * 2, id + 1));
+            return counts[id] += delta;
+        }
+
+        /** Count of {@code key}; 0 if it was never added. */
+        long get(Object key) {
+            int id = index.idOf(key);
+            return id < 0 ? 0 : counts[id];
+        }
+
+        int size() {
+            return index.size();
+        }
+
+        /** Visits keys in insertion order. */
+        void forEach(ObjLongConsumer<? super K> action) {
+            for (int id = 0, n = index.size(); id < n; id++) action.accept(index.key(id), counts[id]);
+        }
+
+        long footprintBytes() {
+            return index.footprintBytes() + arrayBytes(counts.length, 8);
+        }
+    }
+
+    @FunctionalInterface
+    interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    /** int -> int, linear probing; key 0 marks a free slot, so a real key 0 is kept in a separate field. */
+    static final class IntIntMap {
+        private int[] keys;
+        private int[] values;
+        private int size;             // slots in use, not counting key 0
+        private int mask;
+        private int resizeAt;
+        private boolean hasZeroKey;
+        private int zeroValue;
+
+        IntIntMap(int expectedKeys) {
+            allocate(tableSizeFor(expectedKeys * 2));
+        }
+
+        int getOrDefault(int key, int defaultValue) {
+            if (key == 0) return hasZeroKey ? zeroValue : defaultValue;
+            int i = slotOf(key);
+            return keys[i] == 0 ? defaultValue : values[i];
+        }
+
+        boolean containsKey(int key) {
+            return key == 0 ? hasZeroKey : keys[slotOf(key)] != 0;
+        }
+
+        void put(int key, int value) {
+            if (key == 0) {
+                hasZeroKey = true;
+                zeroValue = value;
+                return;
+            }
+            int i = slotOf(key);
+            values[i] = value;
+            if (keys[i] == 0) {
+                keys[i] = key;
+                if (++size > resizeAt) rehash();
+            }
+        }
+
+        /** Adds {@code delta} to the value of {@code key} (absent = 0) and returns the new value. */
+        int addTo(int key, int delta) {
+            if (key == 0) {
+                hasZeroKey = true;
+                return zeroValue += delta;
+            }
+            int i = slotOf(key);
+            if (keys[i] != 0) return values[i] += delta;
+            keys[i] = key;
+            values[i] = delta;
+            if (++size > resizeAt) rehash();
+            return delta;
+        }
+
+        boolean remove(int key) {
+            if (key == 0) {
+                boolean had = hasZeroKey;
+                hasZeroKey = false;
+                zeroValue = 0;
+                return had;
+            }
+            int i = slotOf(key);
+            if (keys[i] == 0) return false;
+            // Backward-shift: pull later entries of the probe run into the hole if their home slot allows it
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = mix(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            values[i] = 0;
+            size--;
+            return true;
+        }
+
+        int size() {
+            return size + (hasZeroKey ? 1 : 0);
+        }
+
+        void forEach(IntIntConsumer action) {
+            if (hasZeroKey) action.accept(0, zeroValue);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) action.accept(keys[i], values[i]);
+            }
+        }
+
+        long footprintBytes() {
+            return arrayBytes(keys.length, 4) + arrayBytes(values.length, 4);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            forEach((k, v) -> sb.append(sb.length() > 1 ? ", " : "").append(k).append('=').append(v));
+            return sb.append('}').toString();
+        }
+
+        // Slot holding key, or the free slot where it would go
+        private int slotOf(int key) {
+            int[] k = keys;
+            int i = mix(key) & mask;
+            while (k[i] != 0 && k[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        private void rehash() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            allocate(oldKeys.length * 2);
+            for (int j = 0; j < oldKeys.length; j++) {
+                int key = oldKeys[j];
+                if (key == 0) continue;
+                int i = mix(key) & mask;
+                while (keys[i] != 0) i = (i + 1) & mask;
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            resizeAt = capacity / 2;
+        }
+    }
+
+    /**
+     * K -> many ints. All values share one int[]; each entry links to the next entry of the same key, so appends
+     * are O(1) with no per-key list. Values of a key come back in insertion order.
+     */
+    static final class IntMultimap<K> {
+        private final KeyIndex<K> index;
+        private int[] head;     // by key id: first entry, -1 = none
+        private int[] tail;     // by key id: last entry
+        private int[] count;    // by key id
+        private int[] values;   // by entry
+        private int[] next;     // by entry: next entry of the same key, -1 = end
+        private int entries;
+
+        IntMultimap(int expectedKeys, int expectedValues) {
+            index = new KeyIndex<>(expectedKeys);
+            int k = Math.max(4, expectedKeys), v = Math.max(4, expectedValues);
+            head = new int[k];
+            tail = new int[k];
+            count = new int[k];
+            values = new int[v];
+            next = new int[v];
+        }
+
+        void put(K key, int value) {
+            int id = index.add(key);
+            if (id >= head.length) {
+                int n = Math.max(head.length * 2, id + 1);
+                head = Arrays.copyOf(head, n);
+                tail = Arrays.copyOf(tail, n);
+                count = Arrays.copyOf(count, n);
+            }
+            if (entries == values.length) {
+                values = Arrays.copyOf(values, entries * 2);
+                next = Arrays.copyOf(next, entries * 2);
+            }
+            int e = entries++;
+            values[e] = value;
+            next[e] = -1;
+            if (count[id]++ == 0) head[id] = e;
+            else next[tail[id]] = e;
+            tail[id] = e;
+        }
+
+        int count(Object key) {
+            int id = index.idOf(key);
+            return id < 0 ? 0 : count[id];
+        }
+
+        void forEach(Object key, IntConsumer action) {
+            int id = index.idOf(key);
+            if (id < 0) return;
+            for (int e = head[id], n = count[id]; n > 0; e = next[e], n--) action.accept(values[e]);
+        }
+
+        /** Values of {@code key} in insertion order (a copy; empty if absent). */
+        int[] get(Object key) {
+            int id = index.idOf(key);
+            if (id < 0) return new int[0];
+            int[] out = new int[count[id]];
+            for (int e = head[id], j = 0; j < out.length; e = next[e], j++) out[j] = values[e];
+            return out;
+        }
+
+        int keyCount() {
+            return index.size();
+        }
+
+        int valueCount() {
+            return entries;
+        }
+
+        /** Compacts into CSR form: the values of key id k are values[offsets[k] .. offsets[k+1]). */
+        Frozen<K> freeze() {
+            int keys = index.size();
+            int[] offsets = new int[keys + 1];
+            for (int id = 0; id < keys; id++) offsets[id + 1] = offsets[id] + count[id];
+            int[] packed = new int[entries];
+            for (int id = 0; id < keys; id++) {
+                int j = offsets[id];
+                for (int e = head[id], n = count[id]; n > 0; e = next[e], n--) packed[j++] = values[e];
+            }
+            return new Frozen<>(index, offsets, packed);
+        }
+
+        long footprintBytes() {
+            return index.footprintBytes() + 3L * arrayBytes(head.length, 4) + 2L * arrayBytes(values.length, 4);
+        }
+
+        /**
+         * Read-only CSR snapshot. It shares the key index with its builder: keys added to the builder later are
+         * simply absent here (their ids are beyond offsets).
+         */
+        static final class Frozen<K> {
+            private final KeyIndex<K> index;
+            private final int[] offsets;
+            private final int[] values;
+
+            Frozen(KeyIndex<K> index, int[] offsets, int[] values) {
+                this.index = index;
+                this.offsets = offsets;
+                this.values = values;
+            }
+
+            int count(Object key) {
+                int id = idOf(key);
+                return id < 0 ? 0 : offsets[id + 1] - offsets[id];
+            }
+
+            void forEach(Object key, IntConsumer action) {
+                int id = idOf(key);
+                if (id < 0) return;
+                for (int j = offsets[id], end = offsets[id + 1]; j < end; j++) action.accept(values[j]);
+            }
+
+            int[] get(Object key) {
+                int id = idOf(key);
+                return id < 0 ? new int[0] : Arrays.copyOfRange(values, offsets[id], offsets[id + 1]);
+            }
+
+            long footprintBytes() {
+                return index.footprintBytes() + arrayBytes(offsets.length, 4) + arrayBytes(values.length, 4);
+            }
+
+            private int idOf(Object key) {
+                int id = index.idOf(key);
+                return id < offsets.length - 1 ? id : -1;
+            }
+        }
+    }
+
+    // ===== BENCHMARKS =====
+
+    private static final int VOCABULARY = 100_000;
+    private static final int STREAM = 4_000_000;
+
+    private static void benchHistogram() {
+        subtitle("Word histogram: " + STREAM / 1_000_000 + "M increments over " + VOCABULARY / 1000 + "k distinct words");
+        String[] vocabulary = vocabulary();
+        int[] stream = skewedStream(STREAM, VOCABULARY, 1);
+
+        bench("HashMap<String,Integer>.merge", 2, 5, () -> {
+            Map<String, Integer> m = new HashMap<>();
+            for (int w : stream) m.merge(vocabulary[w], 1, Integer::sum);
+            BLACKHOLE = m;
+        });
+        bench("ObjectLongCounter.increment", 2, 5, () -> {
+            ObjectLongCounter<String> c = new ObjectLongCounter<>(16);
+            for (int w : stream) c.increment(vocabulary[w]);
+            BLACKHOLE = c;
+        });
+
+        Map<String, Integer> boxed = new HashMap<>();
+        ObjectLongCounter<String> counter = new ObjectLongCounter<>(16);
+        for (int w : stream) {
+            boxed.merge(vocabulary[w], 1, Integer::sum);
+            counter.increment(vocabulary[w]);
+        }
+        System.out.printf("allocated per increment (warm map):  merge %d B, counter %d B%n",
+                allocatedPer(() -> {
+                    for (int w : stream) boxed.merge(vocabulary[w], 1, Integer::sum);
+                }, stream.length),
+                allocatedPer(() -> {
+                    for (int w : stream) counter.increment(vocabulary[w]);
+                }, stream.length));
+        footprint("HashMap<String,Integer>", () -> {
+            Map<String, Integer> m = new HashMap<>();
+            for (int w : stream) m.merge(vocabulary[w], 1, Integer::sum);
+            return m;
+        }, -1);
+        footprint("ObjectLongCounter<String>", () -> {
+            ObjectLongCounter<String> c = new ObjectLongCounter<>(16);
+            for (int w : stream) c.increment(vocabulary[w]);
+            return c;
+        }, counter.footprintBytes());
+    }
+
+    private static void benchIntCounts() {
+        int range = 1_000_000;
+        subtitle("Int counts: " + STREAM / 1_000_000 + "M increments over " + range / 1000 + "k distinct ints");
+        int[] stream = skewedStream(STREAM, range, 2);
+
+        bench("HashMap<Integer,Integer>.merge", 2, 5, () -> {
+            Map<Integer, Integer> m = new HashMap<>();
+            for (int k : stream) m.merge(k, 1, Integer::sum);
+            BLACKHOLE = m;
+        });
+        bench("IntIntMap.addTo", 2, 5, () -> {
+            IntIntMap m = new IntIntMap(16);
+            for (int k : stream) m.addTo(k, 1);
+            BLACKHOLE = m;
+        });
+        IntIntMap sized = new IntIntMap(16);
+        for (int k : stream) sized.addTo(k, 1);
+        footprint("HashMap<Integer,Integer>", () -> {
+            Map<Integer, Integer> m = new HashMap<>();
+            for (int k : stream) m.merge(k, 1, Integer::sum);
+            return m;
+        }, -1);
+        footprint("IntIntMap", () -> {
+            IntIntMap m = new IntIntMap(16);
+            for (int k : stream) m.addTo(k, 1);
+            return m;
+        }, sized.footprintBytes());
+    }
+
+    private static void benchInvertedIndex() {
+        int docs = 250_000, termsPerDoc = 8;
+        subtitle("Inverted index: " + docs / 1000 + "k docs x " + termsPerDoc + " terms -> term -> doc ids");
+        String[] vocabulary = vocabulary();
+        int[] terms = skewedStream(docs * termsPerDoc, VOCABULARY, 3);
+
+        bench("Map<String,List<Integer>> build", 2, 5, () -> BLACKHOLE = boxedIndex(vocabulary, terms, termsPerDoc));
+        bench("IntMultimap build", 2, 5, () -> BLACKHOLE = primitiveIndex(vocabulary, terms, termsPerDoc));
+        bench("IntMultimap build + freeze", 2, 5, () -> BLACKHOLE = primitiveIndex(vocabulary, terms, termsPerDoc).freeze());
+
+        Map<String, List<Integer>> boxed = boxedIndex(vocabulary, terms, termsPerDoc);
+        IntMultimap<String> multi = primitiveIndex(vocabulary, terms, termsPerDoc);
+        IntMultimap.Frozen<String> frozen = multi.freeze();
+        long[] sink = new long[1];
+        bench("postings scan, List<Integer>", 2, 5, () -> {
+            long sum = 0;
+            for (String t : vocabulary) {
+                List<Integer> docIds = boxed.get(t);
+                if (docIds != null) for (int d : docIds) sum += d;
+            }
+            BLACKHOLE = sum;
+        });
+        bench("postings scan, IntMultimap", 2, 5, () -> {
+            sink[0] = 0;
+            for (String t : vocabulary) multi.forEach(t, d -> sink[0] += d);
+            BLACKHOLE = sink[0];
+        });
+        bench("postings scan, Frozen (CSR)", 2, 5, () -> {
+            sink[0] = 0;
+            for (String t : vocabulary) frozen.forEach(t, d -> sink[0] += d);
+            BLACKHOLE = sink[0];
+        });
+        footprint("Map<String,List<Integer>>", () -> boxedIndex(vocabulary, terms, termsPerDoc), -1);
+        footprint("IntMultimap<String>", () -> primitiveIndex(vocabulary, terms, termsPerDoc), multi.footprintBytes());
+        footprint("IntMultimap.Frozen<String>", () -> primitiveIndex(vocabulary, terms, termsPerDoc).freeze(), frozen.footprintBytes());
+    }
+
+    private static Map<String, List<Integer>> boxedIndex(String[] vocabulary, int[] terms, int termsPerDoc) {
+        Map<String, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < terms.length; i++) {
+            index.computeIfAbsent(vocabulary[terms[i]], k -> new ArrayList<>()).add(i / termsPerDoc);
+        }
+        return index;
+    }
+
+    private static IntMultimap<String> primitiveIndex(String[] vocabulary, int[] terms, int termsPerDoc) {
+        IntMultimap<String> index = new IntMultimap<>(16, 16);
+        for (int i = 0; i < terms.length; i++) index.put(vocabulary[terms[i]], i / termsPerDoc);
+        return index;
+    }
+
+    // ===== HELPERS =====
+
+    private static volatile Object BLACKHOLE;
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int n) {
+        return Math.max(8, Integer.highestOneBit(Math.max(1, n - 1)) << 1);
+    }
+
+    // 16-byte header (compressed class pointers), 8-byte alignment; Object[] slots are 4 bytes with compressed oops
+    private static long arrayBytes(int length, int elementSize) {
+        return (16L + (long) length * elementSize + 7) & ~7L;
+    }
+
+    private static String[] vocabulary() {
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "word" + i;
+            words[i].hashCode(); // cached in the String, as for words read from real input
+        }
+        return words;
+    }
+
+    // Roughly Zipf-like: a few hot keys, a long tail
+    private static int[] skewedStream(int n, int distinct, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) {
+            double u = rnd.nextDouble();
+            out[i] = (int) (distinct * u * u * u);
+        }
+        return out;
+    }
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    private static long allocatedPer(Runnable r, int operations) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        r.run(); // warm-up
+        long before = mx.getCurrentThreadAllocatedBytes();
+        r.run();
+        return (mx.getCurrentThreadAllocatedBytes() - before) / operations;
+    }
+
+    private interface Builder {
+        Object build();
+    }
+
+    // Retained size: used heap after GC while the structure is held, minus after it is released. Held first, so
+    // garbage from building it is already gone and only the structure itself is freed between the two GCs.
+    private static void footprint(String label, Builder builder, long computedBytes) {
+        BLACKHOLE = builder.build();
+        long held = usedAfterGc();
+        BLACKHOLE = null;
+        long released = usedAfterGc();
+        System.out.printf("%-35s %8.1f MB retained%s%n", label, (held - released) / 1e6,
+                computedBytes < 0 ? "" : String.format(" (arrays: %.1f MB)", computedBytes / 1e6));
+    }
+
+    private static long usedAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void section(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+
+    private static void subtitle(String title) {
+        System.out.println();
+        System.out.println("-- " + title + " --");
+    }
+}
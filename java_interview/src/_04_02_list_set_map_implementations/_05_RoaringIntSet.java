@@ -0,0 +1,1237 @@
+package _04_02_list_set_map_implementations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed integer set in the style of Roaring bitmaps, for set algebra over tens of millions of ids.
+ *
+ * {@code demoSetAlgebra} in _02_Examples uses LinkedHashSet&lt;Integer&gt; with addAll/retainAll/removeAll:
+ * ~55-70 bytes per element (entry + Integer + table slot), a hash lookup per element per operation, and results
+ * built one boxed element at a time.
+ *
+ * RoaringIntSet splits each 32-bit value into a 16-bit key (high bits) and a 16-bit low part. The keys are a sorted
+ * char[]; each key owns one container holding the low parts, in whichever of three forms is smallest:
+ * - ArrayContainer: sorted char[], up to 4,096 values (2 bytes per value).
+ * - BitmapContainer: long[1024] = 65,536 bits, 8 KB, for more than 4,096 values.
+ * - RunContainer: (start, length-1) pairs, for long consecutive ranges (cohorts, id blocks); produced by addRange
+ *   (whenever the touched container is smaller as runs, a full 65,536-value block always is) and by runOptimize().
+ * Set operations walk the two key arrays like a merge and combine containers pairwise: array/array by merging
+ * (galloping when sizes differ a lot), bitmap/bitmap word by word with popcount, array/bitmap by probing bits. Runs
+ * are converted to array/bitmap form for the operations that have no run-specific path. Results are new sets
+ * (containers are copied, never shared).
+ * - andAll(sets, parallel): multi-way intersection; first the keys common to all sets, then each key's containers
+ *   intersected smallest-first with an early exit, keys processed in parallel.
+ * - writeTo/map: a little-endian serialized form (header, fixed 16-byte directory entries, payloads) that
+ *   MappedView reads in place from a MappedByteBuffer: opening a file costs only the directory, contains() reads
+ *   the container bytes directly, and nothing is deserialized unless toRoaring() is called.
+ * Mutable through add/addRange, not thread-safe; publish a finished set safely and treat it as read-only.
+ *
+ * Measurement: JMH is not on the classpath, so times come from the ad-hoc bench loop used elsewhere in the repo and
+ * footprints from retained heap after System.gc(). The LinkedHashSet comparison runs on a tenth of the id space
+ * because a boxed set of ten million ids already needs ~700 MB.
+ *
+ * Typical numbers (1 CPU, JDK 21, -Xmx2g): over 50M ids a 10M-id segment is 6.3 MB (763 bitmaps) and 400 cohort
+ * ranges covering 18M ids are ~4 KB of runs; AND/OR/XOR of two bitmap segments ~3.5 ms, andAll over four segments
+ * ~8-11 ms. On 1M ids the LinkedHashSet union/intersection/difference take 500/185/147 ms against 0.6/0.5/2.8 ms,
+ * and retain 64 MB against 0.6 MB. Mapping the 6.3 MB file reads 12 KB of directory in ~0.4 ms; random contains()
+ * through the mapped view is as fast as on the heap copy (~110 ns, dominated by cache misses).
+ */
+public class _05_RoaringIntSet {
+
+    public static void main(String[] args) throws IOException {
+        section("ROARING INT SET");
+        demoBasics();
+
+        section("BENCHMARKS");
+        benchmarks();
+    }
+
+    private static void demoBasics() {
+        subtitle("Same algebra as demoSetAlgebra, plus containers");
+        RoaringIntSet a = RoaringIntSet.of(1, 2, 3, 4);
+        RoaringIntSet b = RoaringIntSet.of(3, 4, 5);
+        System.out.println("a=" + a + ", b=" + b);
+        System.out.println("union=" + a.or(b) + ", intersection=" + a.and(b) + ", difference=" + a.andNot(b) + ", symmetric=" + a.xor(b));
+
+        RoaringIntSet big = new RoaringIntSet();
+        for (int i = 0; i < 5_000; i++) big.add(i * 3);           // 15,000 values across one key -> bitmap (5,000 > 4,096)
+        big.add(1 << 20);                                         // another key -> array
+        big.addRange(3_000_000, 3_200_000);                       // 200,000 consecutive -> runs / full containers
+        System.out.println("big: " + big.cardinality() + " values, " + big.describeContainers()
+                + ", contains(2_999_999)=" + big.contains(2_999_999) + ", contains(3_100_000)=" + big.contains(3_100_000));
+        big.runOptimize();
+        System.out.println("after runOptimize: " + big.describeContainers() + ", " + big.sizeInBytes() + " bytes");
+
+        ByteBuffer buf = ByteBuffer.allocate(big.serializedSizeInBytes());
+        big.writeTo(buf);
+        buf.flip();
+        RoaringIntSet.MappedView view = RoaringIntSet.map(buf);
+        System.out.println("serialized " + buf.remaining() + " bytes; view cardinality=" + view.cardinality()
+                + ", contains(1<<20)=" + view.contains(1 << 20) + ", round trip equal=" + view.toRoaring().equals(big));
+    }
+
+    // ===== IMPLEMENTATION =====
+
+    static final class RoaringIntSet {
+        static final int ARRAY_MAX = 4096;
+
+        private char[] keys = new char[4];
+        private Container[] containers = new Container[4];
+        private int size;
+
+        static RoaringIntSet of(int... values) {
+            RoaringIntSet s = new RoaringIntSet();
+            for (int v : values) s.add(v);
+            return s;
+        }
+
+        void add(int x) {
+            char key = (char) (x >>> 16);
+            int i = indexOf(key);
+            if (i >= 0) {
+                containers[i] = containers[i].add((char) x);
+            } else {
+                ArrayContainer c = new ArrayContainer(4);
+                c.add((char) x);
+                insert(-i - 1, key, c);
+            }
+        }
+
+        /** Adds [from, to) (to is exclusive; longs so that the full int range can be expressed). */
+        void addRange(long from, long to) {
+            if (from < 0 || to > (1L << 32) || from >= to) {
+                if (from >= to) return;
+                throw new IllegalArgumentException("range " + from + ".." + to);
+            }
+            for (long start = from; start < to; ) {
+                char key = (char) (start >>> 16);
+                long containerEnd = ((start >>> 16) + 1) << 16;
+                int lo = (int) (start & 0xFFFF);
+                int hi = (int) (Math.min(to, containerEnd) - 1 & 0xFFFF);
+                int i = indexOf(key);
+                Container c;
+                if (lo == 0 && hi == 0xFFFF) {
+                    c = RunContainer.FULL;
+                } else {
+                    BitmapContainer b = i >= 0 ? containers[i].toBitmap() : new BitmapContainer();
+                    b.setRange(lo, hi + 1);
+                    c = b.optimize();
+                    // A partial range usually leaves few runs: keep it as runs instead of an 8 KB bitmap
+                    int runs = RunContainer.countRuns(b);
+                    if (RunContainer.bytesFor(runs) < c.payloadBytes()) c = RunContainer.from(b, runs);
+                }
+                if (i >= 0) containers[i] = c;
+                else insert(-i - 1, key, c);
+                start = Math.min(to, containerEnd);
+            }
+        }
+
+        boolean contains(int x) {
+            int i = indexOf((char) (x >>> 16));
+            return i >= 0 && containers[i].contains((char) x);
+        }
+
+        long cardinality() {
+            long n = 0;
+            for (int i = 0; i < size; i++) n += containers[i].cardinality();
+            return n;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** Visits values in unsigned order. */
+        void forEach(IntConsumer action) {
+            for (int i = 0; i < size; i++) containers[i].forEach(keys[i] << 16, action);
+        }
+
+        int[] toArray() {
+            int[] out = new int[Math.toIntExact(cardinality())];
+            int[] k = new int[1];
+            forEach(v -> out[k[0]++] = v);
+            return out;
+        }
+
+        RoaringIntSet and(RoaringIntSet other) {
+            return merge(this, other, SetOp.AND);
+        }
+
+        RoaringIntSet or(RoaringIntSet other) {
+            return merge(this, other, SetOp.OR);
+        }
+
+        RoaringIntSet xor(RoaringIntSet other) {
+            return merge(this, other, SetOp.XOR);
+        }
+
+        RoaringIntSet andNot(RoaringIntSet other) {
+            return merge(this, other, SetOp.AND_NOT);
+        }
+
+        /** Intersection of all sets; with {@code parallel}, the common keys are intersected on the common pool. */
+        static RoaringIntSet andAll(List<RoaringIntSet> sets, boolean parallel) {
+            if (sets.isEmpty()) return new RoaringIntSet();
+            RoaringIntSet[] bySize = sets.toArray(new RoaringIntSet[0]);
+            Arrays.sort(bySize, Comparator.comparingLong(RoaringIntSet::cardinality));
+            RoaringIntSet smallest = bySize[0];
+
+            // Keys present in every set, with the position of the key in each set
+            int[][] positions = new int[bySize.length][smallest.size];
+            int common = 0;
+            keys:
+            for (int i = 0; i < smallest.size; i++) {
+                for (int s = 1; s < bySize.length; s++) {
+                    int p = bySize[s].indexOf(smallest.keys[i]);
+                    if (p < 0) continue keys;
+                    positions[s][common] = p;
+                }
+                positions[0][common++] = i;
+            }
+
+            int n = common;
+            IntStream range = IntStream.range(0, n);
+            Container[] results = new Container[n];
+            (parallel ? range.parallel() : range).forEach(k -> {
+                Container c = smallest.containers[positions[0][k]];
+                for (int s = 1; s < bySize.length && c.cardinality() > 0; s++) {
+                    c = SetOp.AND.apply(c, bySize[s].containers[positions[s][k]]);
+                }
+                results[k] = c;
+            });
+
+            RoaringIntSet out = new RoaringIntSet();
+            for (int k = 0; k < n; k++) {
+                Container c = results[k];
+                if (c.cardinality() > 0) out.append(smallest.keys[positions[0][k]], c == smallest.containers[positions[0][k]] ? c.copy() : c);
+            }
+            return out;
+        }
+
+        /** Converts containers to runs where that is smaller. */
+        void runOptimize() {
+            for (int i = 0; i < size; i++) {
+                Container c = containers[i];
+                if (c instanceof RunContainer) continue;
+                int runs = RunContainer.countRuns(c);
+                if (RunContainer.bytesFor(runs) < c.payloadBytes()) containers[i] = RunContainer.from(c, runs);
+            }
+        }
+
+        /** Heap footprint estimate: key and container arrays plus containers (compressed oops). */
+        long sizeInBytes() {
+            long n = 16 + 16 + 2L * keys.length + 16 + 4L * containers.length + 16;
+            for (int i = 0; i < size; i++) n += containers[i].sizeInBytes();
+            return n;
+        }
+
+        String describeContainers() {
+            int arrays = 0, bitmaps = 0, runs = 0;
+            for (int i = 0; i < size; i++) {
+                if (containers[i] instanceof ArrayContainer) arrays++;
+                else if (containers[i] instanceof BitmapContainer) bitmaps++;
+                else runs++;
+            }
+            return size + " containers (array=" + arrays + ", bitmap=" + bitmaps + ", run=" + runs + ")";
+        }
+
+        // ---- serialized form ----
+        // header:    int magic, int containerCount
+        // directory: per container 16 bytes: char key, byte type, byte 0, int cardinality, int length, int offset
+        //            (length = values for arrays, runs for run containers, 1024 words for bitmaps)
+        // payloads:  arrays char[], bitmaps long[1024] (8-byte aligned), runs (char start, char lengthMinusOne)[]
+        // All little-endian; offsets are relative to the start of the set.
+        static final int MAGIC = 0x3B3A3031;
+
+        int serializedSizeInBytes() {
+            int offset = 8 + 16 * size;
+            for (int i = 0; i < size; i++) offset = payloadOffset(offset, containers[i]) + containers[i].payloadBytes();
+            return offset;
+        }
+
+        void writeTo(ByteBuffer out) {
+            ByteBuffer b = out.slice().order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(0, MAGIC).putInt(4, size);
+            int offset = 8 + 16 * size;
+            for (int i = 0; i < size; i++) {
+                Container c = containers[i];
+                offset = payloadOffset(offset, c);
+                int entry = 8 + 16 * i;
+                b.putChar(entry, keys[i]).put(entry + 2, c.type()).put(entry + 3, (byte) 0)
+                        .putInt(entry + 4, c.cardinality()).putInt(entry + 8, c.length()).putInt(entry + 12, offset);
+                c.write(b, offset);
+                offset += c.payloadBytes();
+            }
+            out.position(out.position() + offset);
+        }
+
+        static MappedView map(ByteBuffer in) {
+            return new MappedView(in.slice().order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        private static int payloadOffset(int offset, Container c) {
+            return c instanceof BitmapContainer ? (offset + 7) & ~7 : offset;
+        }
+
+        /** Read-only view over a serialized set, typically a MappedByteBuffer; only the directory is read up front. */
+        static final class MappedView {
+            private final ByteBuffer buf;
+            private final char[] keys;
+            private final byte[] types;
+            private final int[] cards;
+            private final int[] lengths;
+            private final int[] offsets;
+
+            private MappedView(ByteBuffer buf) {
+                if (buf.getInt(0) != MAGIC) throw new IllegalArgumentException("not a serialized RoaringIntSet");
+                this.buf = buf;
+                int n = buf.getInt(4);
+                keys = new char[n];
+                types = new byte[n];
+                cards = new int[n];
+                lengths = new int[n];
+                offsets = new int[n];
+                for (int i = 0; i < n; i++) {
+                    int entry = 8 + 16 * i;
+                    keys[i] = buf.getChar(entry);
+                    types[i] = buf.get(entry + 2);
+                    cards[i] = buf.getInt(entry + 4);
+                    lengths[i] = buf.getInt(entry + 8);
+                    offsets[i] = buf.getInt(entry + 12);
+                }
+            }
+
+            boolean contains(int x) {
+                int i = Arrays.binarySearch(keys, (char) (x >>> 16));
+                if (i < 0) return false;
+                char low = (char) x;
+                int off = offsets[i];
+                switch (types[i]) {
+                    case ArrayContainer.TYPE -> {
+                        int lo = 0, hi = lengths[i] - 1;
+                        while (lo <= hi) {
+                            int mid = (lo + hi) >>> 1;
+                            char v = buf.getChar(off + 2 * mid);
+                            if (v < low) lo = mid + 1;
+                            else if (v > low) hi = mid - 1;
+                            else return true;
+                        }
+                        return false;
+                    }
+                    case BitmapContainer.TYPE -> {
+                        return (buf.getLong(off + 8 * (low >>> 6)) & (1L << low)) != 0;
+                    }
+                    default -> {
+                        int lo = 0, hi = lengths[i] - 1, found = -1;
+                        while (lo <= hi) { // last run starting at or before low
+                            int mid = (lo + hi) >>> 1;
+                            if (buf.getChar(off + 4 * mid) <= low) {
+                                found = mid;
+                                lo = mid + 1;
+                            } else {
+                                hi = mid - 1;
+                            }
+                        }
+                        return found >= 0 && low - buf.getChar(off + 4 * found) <= buf.getChar(off + 4 * found + 2);
+                    }
+                }
+            }
+
+            long cardinality() {
+                long n = 0;
+                for (int c : cards) n += c;
+                return n;
+            }
+
+            RoaringIntSet toRoaring() {
+                RoaringIntSet s = new RoaringIntSet();
+                for (int i = 0; i < keys.length; i++) s.append(keys[i], container(i));
+                return s;
+            }
+
+            private Container container(int i) {
+                int off = offsets[i], len = lengths[i];
+                switch (types[i]) {
+                    case ArrayContainer.TYPE -> {
+                        char[] v = new char[len];
+                        for (int j = 0; j < len; j++) v[j] = buf.getChar(off + 2 * j);
+                        return new ArrayContainer(v, len);
+                    }
+                    case BitmapContainer.TYPE -> {
+                        long[] w = new long[1024];
+                        for (int j = 0; j < 1024; j++) w[j] = buf.getLong(off + 8 * j);
+                        return new BitmapContainer(w, cards[i]);
+                    }
+                    default -> {
+                        char[] starts = new char[len], lens = new char[len];
+                        for (int j = 0; j < len; j++) {
+                            starts[j] = buf.getChar(off + 4 * j);
+                            lens[j] = buf.getChar(off + 4 * j + 2);
+                        }
+                        return new RunContainer(starts, lens, len, cards[i]);
+                    }
+                }
+            }
+        }
+
+        // ---- internals ----
+
+        private int indexOf(char key) {
+            // Appending in ascending order is the common way sets are built: check the last key first
+            if (size > 0 && keys[size - 1] == key) return size - 1;
+            return Arrays.binarySearch(keys, 0, size, key);
+        }
+
+        private void insert(int at, char key, Container c) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            System.arraycopy(containers, at, containers, at + 1, size - at);
+            keys[at] = key;
+            containers[at] = c;
+            size++;
+        }
+
+        private void append(char key, Container c) {
+            insert(size, key, c);
+        }
+
+        private static RoaringIntSet merge(RoaringIntSet a, RoaringIntSet b, SetOp op) {
+            RoaringIntSet out = new RoaringIntSet();
+            int i = 0, j = 0;
+            while (i < a.size && j < b.size) {
+                char ka = a.keys[i], kb = b.keys[j];
+                if (ka == kb) {
+                    Container c = op.apply(a.containers[i++], b.containers[j++]);
+                    if (c.cardinality() > 0) out.append(ka, c);
+                } else if (ka < kb) {
+                    if (op.keepsLeft) out.append(ka, a.containers[i].copy());
+                    i++;
+                } else {
+                    if (op.keepsRight) out.append(kb, b.containers[j].copy());
+                    j++;
+                }
+            }
+            for (; op.keepsLeft && i < a.size; i++) out.append(a.keys[i], a.containers[i].copy());
+            for (; op.keepsRight && j < b.size; j++) out.append(b.keys[j], b.containers[j].copy());
+            return out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RoaringIntSet other) || other.size != size) return false;
+            for (int i = 0; i < size; i++) {
+                if (keys[i] != other.keys[i] || containers[i].cardinality() != other.containers[i].cardinality()) return false;
+                if (!Arrays.equals(containers[i].toBitmap().words, other.containers[i].toBitmap().words)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 1;
+            for (int i = 0; i < size; i++) h = 31 * h + Arrays.hashCode(containers[i].toBitmap().words);
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            forEach(v -> {
+                if (sb.length() < 200) sb.append(sb.length() > 1 ? ", " : "").append(Integer.toUnsignedString(v));
+            });
+            return sb.append(sb.length() >= 200 ? ", ...]" : "]").toString();
+        }
+    }
+
+    /** Pairwise container operations; the flags say which side's unmatched keys survive. */
+    enum SetOp {
+        AND(false, false) {
+            @Override
+            Container apply(Container a, Container b) {
+                if (a instanceof RunContainer r) {
+                    if (r.isFull()) return b.copy();
+                    if (b instanceof ArrayContainer arr) return r.filter(arr);
+                    a = r.toArrayOrBitmap();
+                }
+                if (b instanceof RunContainer r) {
+                    if (r.isFull()) return a.copy();
+                    if (a instanceof ArrayContainer arr) return r.filter(arr);
+                    b = r.toArrayOrBitmap();
+                }
+                if (a instanceof ArrayContainer x) return b instanceof ArrayContainer y ? x.and(y) : x.and((BitmapContainer) b);
+                return b instanceof ArrayContainer y ? y.and((BitmapContainer) a) : ((BitmapContainer) a).and((BitmapContainer) b);
+            }
+        },
+        OR(true, true) {
+            @Override
+            Container apply(Container a, Container b) {
+                if (a instanceof RunContainer r && r.isFull() || b instanceof RunContainer s && s.isFull()) return RunContainer.FULL;
+                a = plain(a);
+                b = plain(b);
+                if (a instanceof ArrayContainer x) return b instanceof ArrayContainer y ? x.or(y) : ((BitmapContainer) b).or(x);
+                return b instanceof ArrayContainer y ? ((BitmapContainer) a).or(y) : ((BitmapContainer) a).or((BitmapContainer) b);
+            }
+        },
+        XOR(true, true) {
+            @Override
+            Container apply(Container a, Container b) {
+                a = plain(a);
+                b = plain(b);
+                if (a instanceof ArrayContainer x) return b instanceof ArrayContainer y ? x.xor(y) : ((BitmapContainer) b).xor(x);
+                return b instanceof ArrayContainer y ? ((BitmapContainer) a).xor(y) : ((BitmapContainer) a).xor((BitmapContainer) b);
+            }
+        },
+        AND_NOT(true, false) {
+            @Override
+            Container apply(Container a, Container b) {
+                if (b instanceof RunContainer r && r.isFull()) return ArrayContainer.EMPTY;
+                a = plain(a);
+                b = plain(b);
+                if (a instanceof ArrayContainer x) return b instanceof ArrayContainer y ? x.andNot(y) : x.andNot((BitmapContainer) b);
+                return b instanceof ArrayContainer y ? ((BitmapContainer) a).andNot(y) : ((BitmapContainer) a).andNot((BitmapContainer) b);
+            }
+        };
+
+        final boolean keepsLeft;
+        final boolean keepsRight;
+
+        SetOp(boolean keepsLeft, boolean keepsRight) {
+            this.keepsLeft = keepsLeft;
+            this.keepsRight = keepsRight;
+        }
+
+        abstract Container apply(Container a, Container b);
+
+        private static Container plain(Container c) {
+            return c instanceof RunContainer r ? r.toArrayOrBitmap() : c;
+        }
+    }
+
+    // ===== CONTAINERS =====
+
+    abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char x);
+
+        /** Adds x; returns this or a replacement (array -> bitmap, run -> array/bitmap). */
+        abstract Container add(char x);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract Container copy();
+
+        /** A new bitmap with the same values. */
+        abstract BitmapContainer toBitmap();
+
+        abstract long sizeInBytes();
+
+        abstract byte type();
+
+        abstract int length();
+
+        abstract int payloadBytes();
+
+        abstract void write(ByteBuffer b, int offset);
+    }
+
+    static final class ArrayContainer extends Container {
+        static final byte TYPE = 1;
+        static final ArrayContainer EMPTY = new ArrayContainer(new char[0], 0);
+
+        private char[] values;
+        private int card;
+
+        ArrayContainer(int capacity) {
+            this.values = new char[capacity];
+        }
+
+        ArrayContainer(char[] values, int card) {
+            this.values = values;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return Arrays.binarySearch(values, 0, card, x) >= 0;
+        }
+
+        @Override
+        Container add(char x) {
+            // Appending in order: no search, no shift
+            int at = card > 0 && values[card - 1] < x ? card : Arrays.binarySearch(values, 0, card, x);
+            if (at >= 0 && at < card) return this;
+            if (at < 0) at = -at - 1;
+            if (card == RoaringIntSet.ARRAY_MAX) {
+                BitmapContainer b = toBitmap();
+                b.set(x);
+                return b;
+            }
+            if (card == values.length) values = Arrays.copyOf(values, Math.min(RoaringIntSet.ARRAY_MAX, Math.max(4, card * 2)));
+            System.arraycopy(values, at, values, at + 1, card - at);
+            values[at] = x;
+            card++;
+            return this;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < card; i++) action.accept(high | values[i]);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, card), card);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < card; i++) b.words[values[i] >>> 6] |= 1L << values[i];
+            b.card = card;
+            return b;
+        }
+
+        Container and(ArrayContainer o) {
+            char[] a = values, b = o.values;
+            int na = card, nb = o.card;
+            if (na > nb) return o.and(this);
+            char[] out = new char[na];
+            int k = 0;
+            if (nb > 32 * na) {
+                // Galloping: binary search each small-side value in the rest of the large side
+                for (int i = 0, from = 0; i < na && from < nb; i++) {
+                    int p = Arrays.binarySearch(b, from, nb, a[i]);
+                    if (p >= 0) {
+                        out[k++] = a[i];
+                        from = p + 1;
+                    } else {
+                        from = -p - 1;
+                    }
+                }
+            } else {
+                for (int i = 0, j = 0; i < na && j < nb; ) {
+                    char x = a[i], y = b[j];
+                    if (x < y) i++;
+                    else if (x > y) j++;
+                    else {
+                        out[k++] = x;
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        Container and(BitmapContainer b) {
+            char[] out = new char[card];
+            int k = 0;
+            for (int i = 0; i < card; i++) {
+                char v = values[i];
+                out[k] = v;
+                k += (int) ((b.words[v >>> 6] >>> v) & 1); // branch-free filter
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        Container or(ArrayContainer o) {
+            if (card + o.card > RoaringIntSet.ARRAY_MAX) {
+                BitmapContainer b = toBitmap();
+                for (int i = 0; i < o.card; i++) b.set(o.values[i]);
+                return b.optimize();
+            }
+            char[] out = new char[card + o.card];
+            int i = 0, j = 0, k = 0;
+            while (i < card && j < o.card) {
+                char x = values[i], y = o.values[j];
+                if (x < y) out[k++] = values[i++];
+                else if (x > y) out[k++] = o.values[j++];
+                else {
+                    out[k++] = x;
+                    i++;
+                    j++;
+                }
+            }
+            while (i < card) out[k++] = values[i++];
+            while (j < o.card) out[k++] = o.values[j++];
+            return new ArrayContainer(out, k);
+        }
+
+        Container xor(ArrayContainer o) {
+            if (card + o.card > RoaringIntSet.ARRAY_MAX) {
+                BitmapContainer b = toBitmap();
+                for (int i = 0; i < o.card; i++) b.flip(o.values[i]);
+                return b.optimize();
+            }
+            char[] out = new char[card + o.card];
+            int i = 0, j = 0, k = 0;
+            while (i < card && j < o.card) {
+                char x = values[i], y = o.values[j];
+                if (x < y) out[k++] = values[i++];
+                else if (x > y) out[k++] = o.values[j++];
+                else {
+                    i++;
+                    j++;
+                }
+            }
+            while (i < card) out[k++] = values[i++];
+            while (j < o.card) out[k++] = o.values[j++];
+            return new ArrayContainer(out, k);
+        }
+
+        Container andNot(ArrayContainer o) {
+            char[] out = new char[card];
+            int i = 0, j = 0, k = 0;
+            while (i < card && j < o.card) {
+                char x = values[i], y = o.values[j];
+                if (x < y) out[k++] = values[i++];
+                else if (x > y) j++;
+                else {
+                    i++;
+                    j++;
+                }
+            }
+            while (i < card) out[k++] = values[i++];
+            return new ArrayContainer(out, k);
+        }
+
+        Container andNot(BitmapContainer b) {
+            char[] out = new char[card];
+            int k = 0;
+            for (int i = 0; i < card; i++) {
+                char v = values[i];
+                out[k] = v;
+                k += (int) (((b.words[v >>> 6] >>> v) & 1) ^ 1);
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 24 + ((16 + 2L * values.length + 7) & ~7L);
+        }
+
+        @Override
+        byte type() {
+            return TYPE;
+        }
+
+        @Override
+        int length() {
+            return card;
+        }
+
+        @Override
+        int payloadBytes() {
+            return 2 * card;
+        }
+
+        @Override
+        void write(ByteBuffer b, int offset) {
+            for (int i = 0; i < card; i++) b.putChar(offset + 2 * i, values[i]);
+        }
+    }
+
+    static final class BitmapContainer extends Container {
+        static final byte TYPE = 2;
+
+        final long[] words;
+        int card;
+
+        BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        Container add(char x) {
+            set(x);
+            return this;
+        }
+
+        void set(char x) {
+            long before = words[x >>> 6];
+            long after = before | (1L << x);
+            words[x >>> 6] = after;
+            card += (int) ((before ^ after) >>> x);
+        }
+
+        void flip(char x) {
+            long bit = 1L << x;
+            card += (words[x >>> 6] & bit) == 0 ? 1 : -1;
+            words[x >>> 6] ^= bit;
+        }
+
+        // [from, to)
+        void setRange(int from, int to) {
+            setRangeNoCount(from, to);
+            card = popcount(words);
+        }
+
+        void setRangeNoCount(int from, int to) {
+            if (from >= to) return;
+            int fw = from >>> 6, lw = (to - 1) >>> 6;
+            long first = -1L << from, last = -1L >>> -to;
+            if (fw == lw) {
+                words[fw] |= first & last;
+            } else {
+                words[fw] |= first;
+                for (int i = fw + 1; i < lw; i++) words[i] = -1L;
+                words[lw] |= last;
+            }
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < 1024; i++) {
+                for (long w = words[i]; w != 0; w &= w - 1) action.accept(high | (i << 6) + Long.numberOfTrailingZeros(w));
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), card);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return new BitmapContainer(words.clone(), card);
+        }
+
+        /** Array form if the cardinality allows it. */
+        Container optimize() {
+            return card <= RoaringIntSet.ARRAY_MAX ? toArray(words, card) : this;
+        }
+
+        Container and(BitmapContainer o) {
+            long[] w = new long[1024];
+            int c = 0;
+            for (int i = 0; i < 1024; i++) c += Long.bitCount(w[i] = words[i] & o.words[i]);
+            return c <= RoaringIntSet.ARRAY_MAX ? toArray(w, c) : new BitmapContainer(w, c);
+        }
+
+        Container or(BitmapContainer o) {
+            long[] w = new long[1024];
+            int c = 0;
+            for (int i = 0; i < 1024; i++) c += Long.bitCount(w[i] = words[i] | o.words[i]);
+            return new BitmapContainer(w, c);
+        }
+
+        Container or(ArrayContainer a) {
+            BitmapContainer b = toBitmap();
+            for (int i = 0; i < a.card; i++) b.set(a.values[i]);
+            return b;
+        }
+
+        Container xor(BitmapContainer o) {
+            long[] w = new long[1024];
+            int c = 0;
+            for (int i = 0; i < 1024; i++) c += Long.bitCount(w[i] = words[i] ^ o.words[i]);
+            return c <= RoaringIntSet.ARRAY_MAX ? toArray(w, c) : new BitmapContainer(w, c);
+        }
+
+        Container xor(ArrayContainer a) {
+            BitmapContainer b = toBitmap();
+            for (int i = 0; i < a.card; i++) b.flip(a.values[i]);
+            return b.optimize();
+        }
+
+        Container andNot(BitmapContainer o) {
+            long[] w = new long[1024];
+            int c = 0;
+            for (int i = 0; i < 1024; i++) c += Long.bitCount(w[i] = words[i] & ~o.words[i]);
+            return c <= RoaringIntSet.ARRAY_MAX ? toArray(w, c) : new BitmapContainer(w, c);
+        }
+
+        Container andNot(ArrayContainer a) {
+            BitmapContainer b = toBitmap();
+            for (int i = 0; i < a.card; i++) {
+                char v = a.values[i];
+                long bit = 1L << v;
+                if ((b.words[v >>> 6] & bit) != 0) {
+                    b.words[v >>> 6] &= ~bit;
+                    b.card--;
+                }
+            }
+            return b.optimize();
+        }
+
+        static ArrayContainer toArray(long[] w, int card) {
+            char[] out = new char[card];
+            int k = 0;
+            for (int i = 0; i < 1024; i++) {
+                for (long t = w[i]; t != 0; t &= t - 1) out[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(t));
+            }
+            return new ArrayContainer(out, card);
+        }
+
+        static int popcount(long[] w) {
+            int c = 0;
+            for (long x : w) c += Long.bitCount(x);
+            return c;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 24 + 16 + 8 * 1024;
+        }
+
+        @Override
+        byte type() {
+            return TYPE;
+        }
+
+        @Override
+        int length() {
+            return 1024;
+        }
+
+        @Override
+        int payloadBytes() {
+            return 8 * 1024;
+        }
+
+        @Override
+        void write(ByteBuffer b, int offset) {
+            for (int i = 0; i < 1024; i++) b.putLong(offset + 8 * i, words[i]);
+        }
+    }
+
+    /** Immutable runs of consecutive values: start and length-1 per run (a full run is 0..65535). */
+    static final class RunContainer extends Container {
+        static final byte TYPE = 3;
+        static final RunContainer FULL = new RunContainer(new char[]{0}, new char[]{0xFFFF}, 1, 65536);
+
+        private final char[] starts;
+        private final char[] lengths; // length - 1
+        private final int runs;
+        private final int card;
+
+        RunContainer(char[] starts, char[] lengths, int runs, int card) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.runs = runs;
+            this.card = card;
+        }
+
+        static int bytesFor(int runs) {
+            return 4 * runs;
+        }
+
+        static int countRuns(Container c) {
+            if (c instanceof BitmapContainer b) {
+                int n = 0;
+                long carry = 0;
+                for (long w : b.words) {
+                    n += Long.bitCount(w & ~((w << 1) | carry)); // bits set whose predecessor is not
+                    carry = w >>> 63;
+                }
+                return n;
+            }
+            ArrayContainer a = (ArrayContainer) c;
+            int n = 0;
+            for (int i = 0; i < a.card; i++) {
+                if (i == 0 || a.values[i] != a.values[i - 1] + 1) n++;
+            }
+            return n;
+        }
+
+        static RunContainer from(Container c, int runs) {
+            char[] s = new char[runs], l = new char[runs];
+            int[] state = {-1, -2}; // run index, previous value
+            c.forEach(0, v -> {
+                if (v != state[1] + 1) s[++state[0]] = (char) v;
+                l[state[0]] = (char) (v - s[state[0]]);
+                state[1] = v;
+            });
+            return new RunContainer(s, l, runs, c.cardinality());
+        }
+
+        boolean isFull() {
+            return card == 65536;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        boolean contains(char x) {
+            int i = Arrays.binarySearch(starts, 0, runs, x);
+            if (i >= 0) return true;
+            i = -i - 2;
+            return i >= 0 && x - starts[i] <= lengths[i];
+        }
+
+        @Override
+        Container add(char x) {
+            return contains(x) ? this : toArrayOrBitmap().add(x);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int r = 0; r < runs; r++) {
+                for (int v = starts[r], end = v + lengths[r]; v <= end; v++) action.accept(high | v);
+            }
+        }
+
+        @Override
+        Container copy() {
+            return this;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int r = 0; r < runs; r++) b.setRangeNoCount(starts[r], starts[r] + lengths[r] + 1);
+            b.card = card;
+            return b;
+        }
+
+        Container toArrayOrBitmap() {
+            if (card > RoaringIntSet.ARRAY_MAX) return toBitmap();
+            char[] out = new char[card];
+            int k = 0;
+            for (int r = 0; r < runs; r++) {
+                for (int v = starts[r], end = v + lengths[r]; v <= end; v++) out[k++] = (char) v;
+            }
+            return new ArrayContainer(out, card);
+        }
+
+        // Values of the array that fall into a run; both sides sorted, so one pass
+        ArrayContainer filter(ArrayContainer a) {
+            char[] out = new char[a.card];
+            int k = 0;
+            for (int i = 0, r = 0; i < a.card && r < runs; ) {
+                char v = a.values[i];
+                if (v < starts[r]) i++;
+                else if (v > starts[r] + lengths[r]) r++;
+                else {
+                    out[k++] = v;
+                    i++;
+                }
+            }
+            return new ArrayContainer(out, k);
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + 2 * ((16 + 2L * starts.length + 7) & ~7L);
+        }
+
+        @Override
+        byte type() {
+            return TYPE;
+        }
+
+        @Override
+        int length() {
+            return runs;
+        }
+
+        @Override
+        int payloadBytes() {
+            return bytesFor(runs);
+        }
+
+        @Override
+        void write(ByteBuffer b, int offset) {
+            for (int r = 0; r < runs; r++) b.putChar(offset + 4 * r, starts[r]).putChar(offset + 4 * r + 2, lengths[r]);
+        }
+    }
+
+    // ===== BENCHMARKS =====
+
+    private static final int ID_SPACE = 50_000_000;
+
+    private static void benchmarks() throws IOException {
+        subtitle("Segments over " + ID_SPACE / 1_000_000 + "M user ids");
+        RoaringIntSet dense = randomSet(ID_SPACE, 0.20, 1);     // ~10M, bitmap containers
+        RoaringIntSet sparse = randomSet(ID_SPACE, 0.04, 2);    // ~2M, array containers
+        RoaringIntSet half = randomSet(ID_SPACE, 0.50, 3);      // ~25M
+        RoaringIntSet cohorts = cohortSet(ID_SPACE, 400, 4);    // ranges, run containers
+        for (Object[] s : new Object[][]{{"dense 20%", dense}, {"sparse 4%", sparse}, {"half 50%", half}, {"cohorts", cohorts}}) {
+            RoaringIntSet set = (RoaringIntSet) s[1];
+            System.out.printf("%-10s %,12d ids  %6.1f MB  %s%n", s[0], set.cardinality(), set.sizeInBytes() / 1e6, set.describeContainers());
+        }
+
+        bench("dense AND sparse", 3, 5, () -> BLACKHOLE = dense.and(sparse));
+        bench("dense AND half", 3, 5, () -> BLACKHOLE = dense.and(half));
+        bench("dense OR half", 3, 5, () -> BLACKHOLE = dense.or(half));
+        bench("dense XOR half", 3, 5, () -> BLACKHOLE = dense.xor(half));
+        bench("dense ANDNOT sparse", 3, 5, () -> BLACKHOLE = dense.andNot(sparse));
+        bench("half AND cohorts", 3, 5, () -> BLACKHOLE = half.and(cohorts));
+        List<RoaringIntSet> all = List.of(half, dense, cohorts, sparse);
+        bench("andAll(4 sets), sequential", 3, 5, () -> BLACKHOLE = RoaringIntSet.andAll(all, false));
+        bench("andAll(4 sets), parallel", 3, 5, () -> BLACKHOLE = RoaringIntSet.andAll(all, true));
+        System.out.println("andAll result: " + RoaringIntSet.andAll(all, true).cardinality() + " ids, pairwise check: "
+                + half.and(dense).and(cohorts).and(sparse).cardinality() + " (" + Runtime.getRuntime().availableProcessors() + " CPU(s))");
+
+        int scaled = ID_SPACE / 10;
+        subtitle("Against LinkedHashSet<Integer> (demoSetAlgebra style), ids < " + scaled / 1_000_000 + "M");
+        RoaringIntSet a = randomSet(scaled, 0.20, 5), b = randomSet(scaled, 0.04, 6);
+        Set<Integer> boxedA = boxed(a), boxedB = boxed(b);
+        bench("LinkedHashSet union", 1, 3, () -> {
+            Set<Integer> u = new LinkedHashSet<>(boxedA);
+            u.addAll(boxedB);
+            BLACKHOLE = u;
+        });
+        bench("Roaring union", 3, 5, () -> BLACKHOLE = a.or(b));
+        bench("LinkedHashSet intersection", 1, 3, () -> {
+            Set<Integer> i = new LinkedHashSet<>(boxedA);
+            i.retainAll(boxedB);
+            BLACKHOLE = i;
+        });
+        bench("Roaring intersection", 3, 5, () -> BLACKHOLE = a.and(b));
+        bench("LinkedHashSet difference", 1, 3, () -> {
+            Set<Integer> d = new LinkedHashSet<>(boxedA);
+            d.removeAll(boxedB);
+            BLACKHOLE = d;
+        });
+        bench("Roaring difference", 3, 5, () -> BLACKHOLE = a.andNot(b));
+        footprint("LinkedHashSet<Integer> (" + boxedA.size() / 1000 + "k)", () -> boxed(a));
+        footprint("RoaringIntSet (" + a.cardinality() / 1000 + "k)", () -> randomSet(scaled, 0.20, 5));
+
+        subtitle("Serialized form, memory-mapped");
+        Path file = Files.createTempFile("roaring_", ".bin");
+        try {
+            ByteBuffer out = ByteBuffer.allocate(dense.serializedSizeInBytes());
+            dense.writeTo(out);
+            out.flip();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) ch.write(out);
+            }
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                System.out.printf("file %.1f MB%n", ch.size() / 1e6);
+                bench("open (map directory only)", 3, 10, () -> BLACKHOLE = RoaringIntSet.map(mapped));
+                bench("deserialize (toRoaring)", 3, 10, () -> BLACKHOLE = RoaringIntSet.map(mapped).toRoaring());
+                RoaringIntSet.MappedView view = RoaringIntSet.map(mapped);
+                int[] probes = new SplittableRandom(9).ints(1 << 20, 0, ID_SPACE).toArray();
+                bench("1M contains, heap set", 3, 5, () -> {
+                    int hits = 0;
+                    for (int p : probes) hits += dense.contains(p) ? 1 : 0;
+                    BLACKHOLE = hits;
+                });
+                bench("1M contains, mapped view", 3, 5, () -> {
+                    int hits = 0;
+                    for (int p : probes) hits += view.contains(p) ? 1 : 0;
+                    BLACKHOLE = hits;
+                });
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RoaringIntSet randomSet(int space, double density, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        RoaringIntSet s = new RoaringIntSet();
+        for (int id = 0; id < space; id++) {
+            if (rnd.nextDouble() < density) s.add(id);
+        }
+        return s;
+    }
+
+    private static RoaringIntSet cohortSet(int space, int cohorts, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        RoaringIntSet s = new RoaringIntSet();
+        for (int c = 0; c < cohorts; c++) {
+            int start = rnd.nextInt(space);
+            s.addRange(start, Math.min(space, start + 10_000 + rnd.nextInt(90_000)));
+        }
+        s.runOptimize();
+        return s;
+    }
+
+    private static Set<Integer> boxed(RoaringIntSet s) {
+        Set<Integer> out = new LinkedHashSet<>();
+        s.forEach(out::add);
+        return out;
+    }
+
+    // ===== HELPERS =====
+
+    private static volatile Object BLACKHOLE;
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    private interface Builder {
+        Object build();
+    }
+
+    // Retained size: used heap after GC while held minus after release (see _04_PrimitiveCollections)
+    private static void footprint(String label, Builder builder) {
+        BLACKHOLE = builder.build();
+        long held = usedAfterGc();
+        BLACKHOLE = null;
+        long released = usedAfterGc();
+        System.out.printf("%-35s %8.1f MB retained%n", label, (held - released) / 1e6);
+    }
+
+    private static long usedAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void section(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+
+    private static void subtitle(String title) {
+        System.out.println();
+        System.out.println("-- " + title + " --");
+    }
+}
@@ -0,0 +1,795 @@
+package _04_02_list_set_map_implementations;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.LongConsumer;
+
+/**
+ * Ordered primitive long set and map (B+-tree) for range lookups on time-series keys.
+ *
+ * {@code demoNavigableSet} in _02_Examples navigates a TreeSet&lt;Integer&gt;. For millions of timestamps that means:
+ * - one 40-byte TreeMap.Entry per key plus a 16-24 byte boxed Long (plus another box per value in a TreeMap);
+ * - floor/ceiling chase ~log2(n) pointers to nodes scattered over the heap, nearly one cache miss per level;
+ * - every probe boxes its argument, and subSet(...) iteration allocates a view, an iterator and reads boxed keys.
+ *
+ * LongBTreeMap keeps keys in sorted long[] arrays inside nodes of up to 128 entries:
+ * - Leaf: long[] keys, long[] values (absent for the set), count, and a link to the next leaf for range scans.
+ * - Inner: separators (the first key of each child but the first) and child references; a 10M-key tree is 4 levels.
+ * - Search inside a node is a binary search over one contiguous array (a few cache lines), so a lookup costs a
+ *   handful of misses instead of ~24.
+ * - Ascending inserts (the time-series case) split the rightmost node 100/0 instead of 50/50, so appended trees are
+ *   packed full; random inserts leave nodes ~70% full. fromSorted() bulk-loads full leaves bottom-up in O(n).
+ * - floorOrDefault/ceilingOrDefault/getOrDefault return primitives, and Cursor iterates a [from, to) range leaf by
+ *   leaf; a cursor is reusable, so range scans allocate nothing.
+ * No removal: time-series indexes are appended to and rebuilt, like the counters in _04_PrimitiveCollections. That
+ * also keeps the invariant floor() relies on: a leaf's first key never changes after it is created. Not thread-safe.
+ *
+ * Measurement: JMH is not on the classpath, so times come from the ad-hoc bench loop used elsewhere in the repo,
+ * allocation per operation from com.sun.management.ThreadMXBean and footprints from retained heap after GC. The
+ * comparison with TreeSet/TreeMap runs at 10M keys: at 100M a TreeMap&lt;Long,Long&gt; needs ~7 GB, more than this
+ * machine has. The B+-tree set alone is also bulk-loaded at 100M keys when the heap allows (-Xmx3g).
+ *
+ * Typical numbers (1 CPU, JDK 21, -Xmx3g, 10M keys):
+ * - Footprint: TreeSet&lt;Long&gt; 640 MB, LongBTreeSet 85 MB appended or bulk-loaded (8.5 B/key), 123 MB after
+ *   random inserts; TreeMap&lt;Long,Long&gt; 880 MB, LongBTreeMap 167 MB.
+ * - Build: TreeSet ascending 4.4 s, B+-tree ascending 0.6 s, fromSorted 0.08 s.
+ * - 1M random floor/ceiling: TreeSet ~2.8 s, B+-tree ~0.85 s; as-of lookups on the maps 3.1 s vs 1.1 s.
+ * - 10k range scans of ~1,000 keys: subSet 230 ms / 152 B per scan, Cursor 38 ms / 0 B.
+ * - 100M keys: fromSorted 0.55 s, 854 MB, 4 levels; 1M floor ~1.0 s.
+ */
+public class _06_LongBTree {
+
+    public static void main(String[] args) {
+        section("PRIMITIVE B+-TREE");
+        demoNavigation();
+
+        section("BENCHMARKS");
+        benchSet();
+        footprintSet();
+        benchMap();
+        benchHundredMillion();
+    }
+
+    // ===== DEMOS =====
+
+    private static void demoNavigation() {
+        subtitle("Same navigation as demoNavigableSet, without boxing");
+        LongBTreeSet ns = new LongBTreeSet();
+        for (long v : new long[]{1, 3, 5, 7, 9}) ns.add(v);
+        System.out.println("Set: " + ns);
+        System.out.println("floor(6)=" + ns.floorOrDefault(6, -1) + ", ceiling(6)=" + ns.ceilingOrDefault(6, -1));
+        System.out.println("lower(3)=" + ns.lowerOrDefault(3, -1) + ", higher(3)=" + ns.higherOrDefault(3, -1));
+        StringBuilder head = new StringBuilder();
+        ns.forEachInRange(Long.MIN_VALUE, 6, v -> head.append(v).append(' '));
+        System.out.println("headSet(5, true) via [MIN, 6): " + head.toString().trim());
+        LongBTreeMap.Cursor c = ns.cursor();
+        StringBuilder tail = new StringBuilder();
+        for (c.seek(6, Long.MAX_VALUE); c.next(); ) tail.append(c.key()).append(' ');
+        System.out.println("tailSet(5, false) via cursor [6, MAX): " + tail.toString().trim());
+        System.out.println("first=" + ns.first() + ", last=" + ns.last() + ", floor(0) absent -> " + ns.floorOrDefault(0, -1));
+
+        subtitle("Time-series map: value at or before a timestamp");
+        long[] ts = {1_000, 2_000, 3_500, 7_000};
+        long[] price = {100, 101, 99, 104};
+        LongBTreeMap series = LongBTreeMap.fromSorted(ts, price);
+        System.out.println("price as of 5000 = " + series.getOrDefault(series.floorOrDefault(5_000, -1), -1)
+                + ", as of 500 = " + series.getOrDefault(series.floorOrDefault(500, -1), -1) + " (none)");
+    }
+
+    // ===== IMPLEMENTATION =====
+
+    @FunctionalInterface
+    interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+
+    /** long -> long B+-tree; with {@code values == false} (LongBTreeSet) leaves carry no value arrays. */
+    static final class LongBTreeMap {
+        static final int LEAF_CAPACITY = 128;
+        static final int INNER_CAPACITY = 128; // children
+
+        private final boolean values;
+        private Node root;
+        private int height;   // 0: root is a leaf
+        private long size;
+
+        // Set by a split during insert: the first key of the new right node
+        private long splitKey;
+
+        LongBTreeMap() {
+            this(true);
+        }
+
+        private LongBTreeMap(boolean values) {
+            this.values = values;
+            this.root = new Leaf(values);
+        }
+
+        /** Bulk load from strictly ascending keys; {@code vals} may be null for a set. Leaves are packed full. */
+        static LongBTreeMap fromSorted(long[] keys, long[] vals) {
+            return fromSorted(keys, vals, vals != null);
+        }
+
+        private static LongBTreeMap fromSorted(long[] keys, long[] vals, boolean withValues) {
+            if (vals != null && vals.length != keys.length) throw new IllegalArgumentException("keys and values differ in length");
+            for (int i = 1; i < keys.length; i++) {
+                if (keys[i - 1] >= keys[i]) throw new IllegalArgumentException("keys not strictly ascending at index " + i);
+            }
+            LongBTreeMap m = new LongBTreeMap(withValues);
+            if (keys.length == 0) return m;
+
+            int leafCount = (keys.length + LEAF_CAPACITY - 1) / LEAF_CAPACITY;
+            Node[] level = new Node[leafCount];
+            long[] mins = new long[leafCount];
+            Leaf prev = null;
+            for (int l = 0; l < leafCount; l++) {
+                int from = l * LEAF_CAPACITY, n = Math.min(LEAF_CAPACITY, keys.length - from);
+                Leaf leaf = new Leaf(withValues);
+                System.arraycopy(keys, from, leaf.keys, 0, n);
+                if (withValues) System.arraycopy(vals, from, leaf.vals, 0, n);
+                leaf.count = n;
+                if (prev != null) prev.next = leaf;
+                prev = leaf;
+                level[l] = leaf;
+                mins[l] = keys[from];
+            }
+            int height = 0;
+            while (level.length > 1) {
+                int parents = (level.length + INNER_CAPACITY - 1) / INNER_CAPACITY;
+                Node[] up = new Node[parents];
+                long[] upMins = new long[parents];
+                for (int p = 0; p < parents; p++) {
+                    int from = p * INNER_CAPACITY, n = Math.min(INNER_CAPACITY, level.length - from);
+                    Inner inner = new Inner();
+                    System.arraycopy(level, from, inner.children, 0, n);
+                    System.arraycopy(mins, from + 1, inner.keys, 0, n - 1);
+                    inner.count = n;
+                    up[p] = inner;
+                    upMins[p] = mins[from];
+                }
+                level = up;
+                mins = upMins;
+                height++;
+            }
+            m.root = level[0];
+            m.height = height;
+            m.size = keys.length;
+            return m;
+        }
+
+        long size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** Inserts or replaces; returns true if the key was new. */
+        boolean put(long key, long value) {
+            long before = size;
+            Node right = insert(root, height, key, value, true);
+            if (right != null) {
+                Inner newRoot = new Inner();
+                newRoot.children[0] = root;
+                newRoot.children[1] = right;
+                newRoot.keys[0] = splitKey;
+                newRoot.count = 2;
+                root = newRoot;
+                height++;
+            }
+            return size != before;
+        }
+
+        boolean containsKey(long key) {
+            Leaf leaf = leafFor(key);
+            return Arrays.binarySearch(leaf.keys, 0, leaf.count, key) >= 0;
+        }
+
+        long getOrDefault(long key, long defaultValue) {
+            Leaf leaf = leafFor(key);
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+            return i >= 0 ? (values ? leaf.vals[i] : key) : defaultValue;
+        }
+
+        /** Greatest key <= key. */
+        long floorOrDefault(long key, long defaultValue) {
+            Leaf leaf = leafFor(key);
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+            if (i >= 0) return key;
+            i = -i - 1;
+            // leafFor() picks the leaf whose first key is <= key, except for the leftmost leaf
+            return i > 0 ? leaf.keys[i - 1] : defaultValue;
+        }
+
+        /** Least key >= key. */
+        long ceilingOrDefault(long key, long defaultValue) {
+            Leaf leaf = leafFor(key);
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+            if (i >= 0) return key;
+            i = -i - 1;
+            if (i < leaf.count) return leaf.keys[i];
+            return leaf.next != null ? leaf.next.keys[0] : defaultValue;
+        }
+
+        long lowerOrDefault(long key, long defaultValue) {
+            return key == Long.MIN_VALUE ? defaultValue : floorOrDefault(key - 1, defaultValue);
+        }
+
+        long higherOrDefault(long key, long defaultValue) {
+            return key == Long.MAX_VALUE ? defaultValue : ceilingOrDefault(key + 1, defaultValue);
+        }
+
+        long firstKey() {
+            if (size == 0) throw new NoSuchElementException();
+            return firstLeaf().keys[0];
+        }
+
+        long lastKey() {
+            if (size == 0) throw new NoSuchElementException();
+            Node n = root;
+            for (int h = height; h > 0; h--) n = ((Inner) n).children[n.count - 1];
+            return ((Leaf) n).keys[n.count - 1];
+        }
+
+        /** Visits keys in [fromInclusive, toExclusive) in ascending order. */
+        void forEachInRange(long fromInclusive, long toExclusive, LongLongConsumer action) {
+            Leaf leaf = leafFor(fromInclusive);
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, fromInclusive);
+            if (i < 0) i = -i - 1;
+            for (; leaf != null; leaf = leaf.next, i = 0) {
+                for (; i < leaf.count; i++) {
+                    long k = leaf.keys[i];
+                    if (k >= toExclusive) return;
+                    action.accept(k, values ? leaf.vals[i] : k);
+                }
+            }
+        }
+
+        void forEach(LongLongConsumer action) {
+            for (Leaf leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+                for (int i = 0; i < leaf.count; i++) action.accept(leaf.keys[i], values ? leaf.vals[i] : leaf.keys[i]);
+            }
+        }
+
+        Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /**
+         * Reusable range iterator: {@code for (c.seek(from, to); c.next(); ) use(c.key(), c.value());}.
+         * Reading the tree while it is modified gives undefined results.
+         */
+        static final class Cursor {
+            private final LongBTreeMap map;
+            private Leaf leaf;
+            private int index;
+            private long to;
+
+            private Cursor(LongBTreeMap map) {
+                this.map = map;
+            }
+
+            /** Positions before the first key >= fromInclusive; iteration stops before toExclusive. */
+            Cursor seek(long fromInclusive, long toExclusive) {
+                leaf = map.leafFor(fromInclusive);
+                int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, fromInclusive);
+                index = (i >= 0 ? i : -i - 1) - 1;
+                to = toExclusive;
+                return this;
+            }
+
+            boolean next() {
+                if (leaf == null) return false;
+                if (++index >= leaf.count) {
+                    leaf = leaf.next;
+                    index = 0;
+                    if (leaf == null) return false;
+                }
+                if (leaf.keys[index] < to) return true;
+                leaf = null;
+                return false;
+            }
+
+            long key() {
+                return leaf.keys[index];
+            }
+
+            long value() {
+                return map.values ? leaf.vals[index] : leaf.keys[index];
+            }
+        }
+
+        /** Heap footprint: nodes and their arrays (compressed oops, 16-byte array headers). */
+        long footprintBytes() {
+            return footprint(root, height);
+        }
+
+        /** Average leaf fill, 0..1. */
+        double leafFill() {
+            long leaves = 0;
+            for (Leaf l = firstLeaf(); l != null; l = l.next) leaves++;
+            return size / (double) (leaves * LEAF_CAPACITY);
+        }
+
+        int height() {
+            return height + 1;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            forEach((k, v) -> {
+                if (sb.length() < 200) sb.append(sb.length() > 1 ? ", " : "").append(k).append('=').append(v);
+            });
+            return sb.append(sb.length() >= 200 ? ", ...}" : "}").toString();
+        }
+
+        // ---- internals ----
+
+        private abstract static class Node {
+            int count;
+        }
+
+        // Arrays have one slot of slack: a full node takes the insert first and is split right after
+        private static final class Leaf extends Node {
+            final long[] keys = new long[LEAF_CAPACITY + 1];
+            final long[] vals;
+            Leaf next;
+
+            Leaf(boolean values) {
+                this.vals = values ? new long[LEAF_CAPACITY + 1] : null;
+            }
+        }
+
+        private static final class Inner extends Node {
+            final long[] keys = new long[INNER_CAPACITY];           // keys[i] = first key under children[i + 1]
+            final Node[] children = new Node[INNER_CAPACITY + 1];
+        }
+
+        private Leaf firstLeaf() {
+            Node n = root;
+            for (int h = height; h > 0; h--) n = ((Inner) n).children[0];
+            return (Leaf) n;
+        }
+
+        private Leaf leafFor(long key) {
+            Node n = root;
+            for (int h = height; h > 0; h--) {
+                Inner in = (Inner) n;
+                n = in.children[upperBound(in.keys, in.count - 1, key)];
+            }
+            return (Leaf) n;
+        }
+
+        // Number of separators <= key, i.e. the child to descend into
+        private static int upperBound(long[] a, int n, long key) {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] <= key) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        /** Returns the new right sibling if {@code node} split (its first key in splitKey), else null. */
+        private Node insert(Node node, int h, long key, long value, boolean rightmost) {
+            if (h == 0) {
+                Leaf leaf = (Leaf) node;
+                int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+                if (i >= 0) {
+                    if (values) leaf.vals[i] = value;
+                    return null;
+                }
+                i = -i - 1;
+                int n = leaf.count;
+                System.arraycopy(leaf.keys, i, leaf.keys, i + 1, n - i);
+                leaf.keys[i] = key;
+                if (values) {
+                    System.arraycopy(leaf.vals, i, leaf.vals, i + 1, n - i);
+                    leaf.vals[i] = value;
+                }
+                leaf.count = ++n;
+                size++;
+                if (n <= LEAF_CAPACITY) return null;
+
+                // Appending to the rightmost leaf: keep it full and start a new one (100/0), else split in half
+                int keep = rightmost && i == n - 1 ? LEAF_CAPACITY : n / 2;
+                Leaf right = new Leaf(values);
+                right.count = n - keep;
+                System.arraycopy(leaf.keys, keep, right.keys, 0, right.count);
+                if (values) System.arraycopy(leaf.vals, keep, right.vals, 0, right.count);
+                leaf.count = keep;
+                right.next = leaf.next;
+                leaf.next = right;
+                splitKey = right.keys[0];
+                return right;
+            }
+
+            Inner in = (Inner) node;
+            int c = upperBound(in.keys, in.count - 1, key);
+            Node child = insert(in.children[c], h - 1, key, value, rightmost && c == in.count - 1);
+            if (child == null) return null;
+
+            int n = in.count;
+            System.arraycopy(in.keys, c, in.keys, c + 1, n - 1 - c);
+            System.arraycopy(in.children, c + 1, in.children, c + 2, n - 1 - c);
+            in.keys[c] = splitKey;
+            in.children[c + 1] = child;
+            in.count = ++n;
+            if (n <= INNER_CAPACITY) return null;
+
+            // Left keeps `keep` children; the separator between the halves moves up
+            int keep = rightmost && c + 1 == n - 1 ? INNER_CAPACITY : n / 2;
+            Inner right = new Inner();
+            right.count = n - keep;
+            System.arraycopy(in.children, keep, right.children, 0, right.count);
+            System.arraycopy(in.keys, keep, right.keys, 0, right.count - 1);
+            splitKey = in.keys[keep - 1];
+            Arrays.fill(in.children, keep, n, null);
+            in.count = keep;
+            return right;
+        }
+
+        private long footprint(Node n, int h) {
+            if (h == 0) {
+                return 32 + arrayBytes(LEAF_CAPACITY + 1, 8) * (values ? 2 : 1);
+            }
+            Inner in = (Inner) n;
+            long bytes = 24 + arrayBytes(INNER_CAPACITY, 8) + arrayBytes(INNER_CAPACITY + 1, 4);
+            for (int i = 0; i < in.count; i++) bytes += footprint(in.children[i], h - 1);
+            return bytes;
+        }
+
+        private static long arrayBytes(int length, int elementSize) {
+            return (16 + (long) length * elementSize + 7) & ~7L;
+        }
+    }
+
+    /** Ordered long set: a LongBTreeMap whose leaves hold keys only. */
+    static final class LongBTreeSet {
+        private final LongBTreeMap tree;
+
+        LongBTreeSet() {
+            this(new LongBTreeMap(false));
+        }
+
+        private LongBTreeSet(LongBTreeMap tree) {
+            this.tree = tree;
+        }
+
+        static LongBTreeSet fromSorted(long[] keys) {
+            return new LongBTreeSet(LongBTreeMap.fromSorted(keys, null, false));
+        }
+
+        boolean add(long key) {
+            return tree.put(key, 0);
+        }
+
+        boolean contains(long key) {
+            return tree.containsKey(key);
+        }
+
+        long size() {
+            return tree.size();
+        }
+
+        long floorOrDefault(long key, long defaultValue) {
+            return tree.floorOrDefault(key, defaultValue);
+        }
+
+        long ceilingOrDefault(long key, long defaultValue) {
+            return tree.ceilingOrDefault(key, defaultValue);
+        }
+
+        long lowerOrDefault(long key, long defaultValue) {
+            return tree.lowerOrDefault(key, defaultValue);
+        }
+
+        long higherOrDefault(long key, long defaultValue) {
+            return tree.higherOrDefault(key, defaultValue);
+        }
+
+        long first() {
+            return tree.firstKey();
+        }
+
+        long last() {
+            return tree.lastKey();
+        }
+
+        void forEachInRange(long fromInclusive, long toExclusive, LongConsumer action) {
+            tree.forEachInRange(fromInclusive, toExclusive, (k, v) -> action.accept(k));
+        }
+
+        LongBTreeMap.Cursor cursor() {
+            return tree.cursor();
+        }
+
+        long footprintBytes() {
+            return tree.footprintBytes();
+        }
+
+        double leafFill() {
+            return tree.leafFill();
+        }
+
+        int height() {
+            return tree.height();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            tree.forEach((k, v) -> {
+                if (sb.length() < 200) sb.append(sb.length() > 1 ? ", " : "").append(k);
+            });
+            return sb.append(sb.length() >= 200 ? ", ...]" : "]").toString();
+        }
+    }
+
+    // ===== BENCHMARKS =====
+
+    private static final int N = 10_000_000;
+    private static final int PROBES = 1 << 20;
+    private static final int RANGES = 10_000;
+    private static final long RANGE_WIDTH = 1_000L * 1_000; // ~1,000 keys: timestamps are ~1,000 us apart
+
+    private static void benchSet() {
+        long[] ts = timestamps(N, 1);
+        long[] probes = probes(ts, PROBES, 2);
+        subtitle("Set of " + N / 1_000_000 + "M timestamps: TreeSet<Long> vs LongBTreeSet");
+
+        bench("build TreeSet (ascending add)", 0, 1, () -> BLACKHOLE = treeSet(ts));
+        bench("build LongBTreeSet (ascending add)", 1, 3, () -> BLACKHOLE = btreeSet(ts));
+        bench("build LongBTreeSet (fromSorted)", 1, 3, () -> BLACKHOLE = LongBTreeSet.fromSorted(ts));
+        long[] shuffled = ts.clone();
+        shuffle(shuffled, 3);
+        bench("build LongBTreeSet (random add)", 0, 1, () -> BLACKHOLE = btreeSet(shuffled));
+        LongBTreeSet random = btreeSet(shuffled);
+        System.out.printf("random-order tree: height %d, leaf fill %.0f%%%n", random.height(), 100 * random.leafFill());
+        random = null;
+
+        TreeSet<Long> tree = treeSet(ts);
+        LongBTreeSet btree = LongBTreeSet.fromSorted(ts);
+        System.out.printf("bulk-loaded tree: height %d, leaf fill %.0f%%, appended tree fill %.0f%%%n",
+                btree.height(), 100 * btree.leafFill(), 100 * btreeSet(ts).leafFill());
+
+        bench("1M floor, TreeSet", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) {
+                Long f = tree.floor(p);
+                if (f != null) sum += f;
+            }
+            BLACKHOLE = sum;
+        });
+        bench("1M floor, LongBTreeSet", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) sum += btree.floorOrDefault(p, 0);
+            BLACKHOLE = sum;
+        });
+        bench("1M ceiling, TreeSet", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) {
+                Long c = tree.ceiling(p);
+                if (c != null) sum += c;
+            }
+            BLACKHOLE = sum;
+        });
+        bench("1M ceiling, LongBTreeSet", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) sum += btree.ceilingOrDefault(p, 0);
+            BLACKHOLE = sum;
+        });
+
+        Runnable treeScan = () -> {
+            long sum = 0;
+            for (int r = 0; r < RANGES; r++) {
+                long from = probes[r];
+                for (Long v : tree.subSet(from, true, from + RANGE_WIDTH, false)) sum += v;
+            }
+            BLACKHOLE = sum;
+        };
+        LongBTreeMap.Cursor cursor = btree.cursor();
+        Runnable btreeScan = () -> {
+            long sum = 0;
+            for (int r = 0; r < RANGES; r++) {
+                long from = probes[r];
+                for (cursor.seek(from, from + RANGE_WIDTH); cursor.next(); ) sum += cursor.key();
+            }
+            BLACKHOLE = sum;
+        };
+        bench("10k range scans, TreeSet.subSet", 2, 5, treeScan);
+        bench("10k range scans, Cursor", 2, 5, btreeScan);
+        System.out.printf("allocated per range scan: subSet %d B, cursor %d B%n",
+                allocatedPer(treeScan, RANGES), allocatedPer(btreeScan, RANGES));
+
+        NavigableSet<Long> check = tree.subSet(probes[0], true, probes[0] + RANGE_WIDTH, false);
+        long[] counted = {0};
+        btree.forEachInRange(probes[0], probes[0] + RANGE_WIDTH, v -> counted[0]++);
+        System.out.println("same range size: " + check.size() + " == " + counted[0]);
+
+    }
+
+    // Separate from benchSet so that its trees are unreachable while these are measured
+    private static void footprintSet() {
+        long[] ts = timestamps(N, 1);
+        long[] shuffled = ts.clone();
+        shuffle(shuffled, 3);
+        BLACKHOLE = null;
+        footprint("TreeSet<Long>", () -> treeSet(ts), 0);
+        footprint("LongBTreeSet (random add)", () -> btreeSet(shuffled), 0);
+        footprint("LongBTreeSet (ascending add)", () -> btreeSet(ts), 0);
+        footprint("LongBTreeSet (fromSorted)", () -> LongBTreeSet.fromSorted(ts), LongBTreeSet.fromSorted(ts).footprintBytes());
+    }
+
+    private static void benchMap() {
+        long[] ts = timestamps(N, 4);
+        long[] vals = new long[N];
+        for (int i = 0; i < N; i++) vals[i] = 1_000 + i % 997;
+        long[] probes = probes(ts, PROBES, 5);
+        subtitle("Map of " + N / 1_000_000 + "M timestamp -> value: TreeMap<Long,Long> vs LongBTreeMap");
+
+        TreeMap<Long, Long> tree = new TreeMap<>();
+        for (int i = 0; i < N; i++) tree.put(ts[i], vals[i]);
+        LongBTreeMap btree = LongBTreeMap.fromSorted(ts, vals);
+        bench("1M as-of lookups, TreeMap", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) {
+                var e = tree.floorEntry(p);
+                if (e != null) sum += e.getValue();
+            }
+            BLACKHOLE = sum;
+        });
+        bench("1M as-of lookups, LongBTreeMap", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) sum += btree.getOrDefault(btree.floorOrDefault(p, Long.MIN_VALUE), 0);
+            BLACKHOLE = sum;
+        });
+        LongBTreeMap.Cursor cursor = btree.cursor();
+        bench("10k range sums, TreeMap.subMap", 2, 5, () -> {
+            long sum = 0;
+            for (int r = 0; r < RANGES; r++) {
+                for (long v : tree.subMap(probes[r], probes[r] + RANGE_WIDTH).values()) sum += v;
+            }
+            BLACKHOLE = sum;
+        });
+        bench("10k range sums, Cursor", 2, 5, () -> {
+            long sum = 0;
+            for (int r = 0; r < RANGES; r++) {
+                for (cursor.seek(probes[r], probes[r] + RANGE_WIDTH); cursor.next(); ) sum += cursor.value();
+            }
+            BLACKHOLE = sum;
+        });
+
+        BLACKHOLE = null;
+        footprint("TreeMap<Long,Long>", () -> {
+            TreeMap<Long, Long> m = new TreeMap<>();
+            for (int i = 0; i < N; i++) m.put(ts[i], vals[i]);
+            return m;
+        }, 0);
+        footprint("LongBTreeMap (fromSorted)", () -> LongBTreeMap.fromSorted(ts, vals), btree.footprintBytes());
+    }
+
+    private static void benchHundredMillion() {
+        int n = 100_000_000;
+        if (Runtime.getRuntime().maxMemory() < 2_800_000_000L) {
+            System.out.println("\n(skipping the 100M-key run: needs -Xmx3g)");
+            return;
+        }
+        subtitle("LongBTreeSet at " + n / 1_000_000 + "M keys (TreeSet<Long> would need ~5.6 GB)");
+        long[] ts = timestamps(n, 6);
+        long t0 = System.nanoTime();
+        LongBTreeSet set = LongBTreeSet.fromSorted(ts);
+        System.out.printf("fromSorted: %.0f ms, height %d, %.0f MB (%.1f B/key)%n", (System.nanoTime() - t0) / 1e6,
+                set.height(), set.footprintBytes() / 1e6, set.footprintBytes() / (double) n);
+        long[] probes = probes(ts, PROBES, 7);
+        ts = null;
+        bench("1M floor, LongBTreeSet 100M", 2, 5, () -> {
+            long sum = 0;
+            for (long p : probes) sum += set.floorOrDefault(p, 0);
+            BLACKHOLE = sum;
+        });
+        BLACKHOLE = null;
+    }
+
+    // Ascending timestamps in microseconds, ~1 ms apart with jitter
+    private static long[] timestamps(int n, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long[] ts = new long[n];
+        long t = 1_700_000_000_000_000L;
+        for (int i = 0; i < n; i++) ts[i] = t += 1 + rnd.nextInt(1_999);
+        return ts;
+    }
+
+    private static long[] probes(long[] ts, int count, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long lo = ts[0] - 1_000, hi = ts[ts.length - 1] + 1_000;
+        long[] p = new long[count];
+        for (int i = 0; i < count; i++) p[i] = rnd.nextLong(lo, hi);
+        return p;
+    }
+
+    private static void shuffle(long[] a, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            long t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    private static TreeSet<Long> treeSet(long[] keys) {
+        TreeSet<Long> s = new TreeSet<>();
+        for (long k : keys) s.add(k);
+        return s;
+    }
+
+    private static LongBTreeSet btreeSet(long[] keys) {
+        LongBTreeSet s = new LongBTreeSet();
+        for (long k : keys) s.add(k);
+        return s;
+    }
+
+    // ===== HELPERS =====
+
+    private static volatile Object BLACKHOLE;
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    private static long allocatedPer(Runnable r, int operations) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        r.run(); // warm-up
+        long before = mx.getCurrentThreadAllocatedBytes();
+        r.run();
+        return (mx.getCurrentThreadAllocatedBytes() - before) / operations;
+    }
+
+    private interface Builder {
+        Object build();
+    }
+
+    // Retained size: used heap after GC while held minus after release (see _04_PrimitiveCollections)
+    private static void footprint(String label, Builder builder, long computedBytes) {
+        BLACKHOLE = builder.build();
+        long held = usedAfterGc();
+        BLACKHOLE = null;
+        long released = usedAfterGc();
+        System.out.printf("%-35s %8.1f MB retained%s%n", label, (held - released) / 1e6,
+                computedBytes > 0 ? String.format(" (computed %.1f MB)", computedBytes / 1e6) : "");
+    }
+
+    private static long usedAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void section(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+
+    private static void subtitle(String title) {
+        System.out.println();
+        System.out.println("-- " + title + " --");
+    }
+}
@@ -3,6 +3,7 @@ package _04_03_iterator_and_fail_fast_behavior;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.ConcurrentModificationException;
 import java.util.ConcurrentModificationException;
@@ -14,10 +15,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Spliterator;
 import java.util.Vector;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Iterator & Fail-Fast Behavior (theory + runnable demos)
@@ -117,6 +123,9 @@ public class _01_Theory {
             System.out.print(i + " ");
         }
         System.out.println();
+        // Primitive paths: no Integer per element
+        System.out.println("Range 3..6 intStream().sum(): " + new Range(3, 7).intStream().sum()
+                + ", parallel over 0..1e6: " + new Range(0, 1_000_000).intStream().parallel().asLongStream().sum());
     }
 
     // --------------------------------------------------------------------------------------------
@@ -473,6 +482,12 @@ public class _01_Theory {
     /**
      * Minimal custom Iterable producing integers in [start, end).
      * Demonstrates how for-each relies on Iterable#iterator().
+     *
+     * The iterator is a PrimitiveIterator.OfInt: nextInt()/forEachRemaining(IntConsumer) do not box, while
+     * for-each still goes through next() and gets an Integer. spliterator() is SIZED/SUBSIZED and splits
+     * exactly in half, so intStream().parallel() divides work like IntStream.range instead of the default
+     * Iterable spliterator, which has no size and copies batches of boxed elements into arrays to split.
+     * See _04_RangeIteration for the measurements.
      */
     static class Range implements Iterable<Integer> {
         private final int startInclusive;
@@ -484,8 +499,8 @@ public class _01_Theory {
         }
 
         @Override
-        public Iterator<Integer> iterator() {
-            return new Iterator<Integer>() {
+        public PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
                 private int cursor = startInclusive;
                 private boolean canRemove = false;
 
@@ -495,10 +510,25 @@ public class _01_Theory {
                 }
 
                 @Override
-                public Integer next() {
-                    int v = cursor++;
+                public int nextInt() {
+                    if (cursor >= endExclusive) {
+                        throw new NoSuchElementException();
+                    }
+                    canRemove = true;
+                    return cursor++;
+                }
+
+                @Override
+                public void forEachRemaining(IntConsumer action) {
+                    int i = cursor, end = endExclusive;
+                    if (i >= end) {
+                        return;
+                    }
+                    cursor = end;
                     canRemove = true;
-                    return v;
+                    for (; i < end; i++) {
+                        action.accept(i);
+                    }
                 }
 
                 @Override
@@ -512,5 +542,73 @@ public class _01_Theory {
                 }
             };
         }
+
+        @Override
+        public Spliterator.OfInt spliterator() {
+            return new RangeSpliterator(startInclusive, Math.max(startInclusive, endExclusive));
+        }
+
+        IntStream intStream() {
+            return StreamSupport.intStream(spliterator(), false);
+        }
+    }
+
+    /**
+     * Spliterator over [from, to); trySplit hands off the lower half, so a balanced fork-join tree falls out of
+     * repeated splitting. Immutable source: no fail-fast checks needed. Bounds are longs so that sizes of ranges
+     * wider than Integer.MAX_VALUE do not overflow.
+     */
+    static final class RangeSpliterator implements Spliterator.OfInt {
+        private long from;
+        private final long to;
+
+        RangeSpliterator(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public OfInt trySplit() {
+            long lo = from, mid = lo + ((to - lo) >>> 1);
+            if (mid <= lo) {
+                return null;
+            }
+            from = mid;
+            return new RangeSpliterator(lo, mid);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept((int) from++);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int i = (int) from;
+            long n = to - from;
+            from = to;
+            for (long k = 0; k < n; k++) {
+                action.accept(i++);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | SORTED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return null; // natural order
+        }
     }
 }
\ No newline at end of file
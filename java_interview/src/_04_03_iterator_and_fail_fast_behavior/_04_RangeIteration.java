@@ -0,0 +1,178 @@
+package _04_03_iterator_and_fail_fast_behavior;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Range iteration: boxed Iterator&lt;Integer&gt; vs PrimitiveIterator.OfInt / Spliterator.OfInt (benchmarks).
+ *
+ * _01_Theory.Range used to implement only Iterable&lt;Integer&gt;:
+ * - next() returns an Integer: values above 127 are allocated unless escape analysis removes the box, which it
+ *   cannot once the iterator crosses a non-inlined call (a stream pipeline, a megamorphic consumer).
+ * - spliterator() is Iterable's default: Spliterators.spliteratorUnknownSize(iterator()). It has no size, and
+ *   trySplit() copies the next batch (1024, 2048, 3072, ... elements) into an Object[] by calling next() on the
+ *   one shared iterator. Parallel streams therefore split sequentially and unevenly, box every element and
+ *   cannot presize toArray().
+ * Range now returns a PrimitiveIterator.OfInt and a RangeSpliterator (SIZED, SUBSIZED, halves on trySplit), and
+ * offers intStream(). LegacyRange below keeps the old shape as the baseline.
+ *
+ * Measurement: JMH is not on the classpath, so times come from an ad-hoc bench loop (warm-ups, then the average of
+ * a few runs) and allocation from com.sun.management.ThreadMXBean. Parallel speed-up depends on the core count;
+ * on a single CPU the parallel rows only show the splitting and boxing overhead, so the split shapes are printed
+ * as well: they are what decides scaling on more cores.
+ *
+ * Typical numbers (1 CPU, JDK 21, 50M ints):
+ * - Splitting three levels: LegacyRange gives pieces of 256, 256, 256, 256, 1024, 1024, 3072 and 49,993,856 elements
+ *   (nearly all work stays in one task); Range gives eight pieces of 6,250,000; IntStream.range is right-balanced.
+ * - Sequential sum: for-each and nextInt() ~20 ms (escape analysis removes the boxes in a plain loop); boxed stream
+ *   ~260 ms; Range.intStream() and IntStream.range 20-55 ms.
+ * - Parallel sum of mix(i): LegacyRange ~2 s and 20 B per element (the Integer plus its Object[] slot); Range and
+ *   IntStream.range 0 B per element and 250-420 ms. With one CPU the order of the parallel rows alone moves them by
+ *   ~2x (the stream pipeline classes share JIT profiles), so only the gap to the boxed version is meaningful here.
+ */
+public class _04_RangeIteration {
+
+    private static final int N = 50_000_000;
+
+    public static void main(String[] args) {
+        header("Split shapes (how a parallel stream would divide the work)");
+        printSplits("LegacyRange (default Iterable spliterator)", new LegacyRange(0, N).spliterator());
+        printSplits("Range (RangeSpliterator)", new _01_Theory.Range(0, N).spliterator());
+        printSplits("IntStream.range", IntStream.range(0, N).spliterator());
+
+        header("Sequential: sum of [0, " + N / 1_000_000 + "M)");
+        LegacyRange legacy = new LegacyRange(0, N);
+        _01_Theory.Range range = new _01_Theory.Range(0, N);
+        bench("LegacyRange for-each (boxed)", () -> {
+            long sum = 0;
+            for (int i : legacy) sum += i;
+            return sum;
+        });
+        bench("Range nextInt()", () -> {
+            long sum = 0;
+            for (PrimitiveIterator.OfInt it = range.iterator(); it.hasNext(); ) sum += it.nextInt();
+            return sum;
+        });
+        bench("LegacyRange stream (boxed)", () -> StreamSupport.stream(legacy.spliterator(), false).mapToLong(i -> i).sum());
+        bench("Range.intStream()", () -> range.intStream().asLongStream().sum());
+        bench("IntStream.range", () -> IntStream.range(0, N).asLongStream().sum());
+
+        header("Parallel: sum of mix(i) over [0, " + N / 1_000_000 + "M), " + Runtime.getRuntime().availableProcessors() + " CPU(s)");
+        bench("LegacyRange parallel stream", () -> StreamSupport.stream(legacy.spliterator(), true).mapToLong(i -> mix(i)).sum());
+        bench("IntStream.range().parallel()", () -> IntStream.range(0, N).parallel().mapToLong(_04_RangeIteration::mix).sum());
+        bench("Range.intStream().parallel()", () -> range.intStream().parallel().mapToLong(_04_RangeIteration::mix).sum());
+        int[] a = range.intStream().parallel().toArray();
+        int[] b = IntStream.range(0, N).parallel().toArray();
+        System.out.println("toArray equal: " + Arrays.equals(a, b));
+
+        header("Allocation per element");
+        System.out.printf("%-35s %8.1f B%n", "LegacyRange parallel stream",
+                allocatedPer(() -> StreamSupport.stream(legacy.spliterator(), true).mapToLong(i -> mix(i)).sum(), N));
+        System.out.printf("%-35s %8.1f B%n", "Range.intStream().parallel()",
+                allocatedPer(() -> range.intStream().parallel().mapToLong(_04_RangeIteration::mix).sum(), N));
+        System.out.printf("%-35s %8.1f B%n", "IntStream.range().parallel()",
+                allocatedPer(() -> IntStream.range(0, N).parallel().mapToLong(_04_RangeIteration::mix).sum(), N));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Baseline: the boxed Range as it was before it got primitive iterators
+    // --------------------------------------------------------------------------------------------
+    static final class LegacyRange implements Iterable<Integer> {
+        private final int startInclusive;
+        private final int endExclusive;
+
+        LegacyRange(int startInclusive, int endExclusive) {
+            this.startInclusive = startInclusive;
+            this.endExclusive = endExclusive;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int cursor = startInclusive;
+
+                @Override
+                public boolean hasNext() {
+                    return cursor < endExclusive;
+                }
+
+                @Override
+                public Integer next() {
+                    return cursor++;
+                }
+            };
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Helpers
+    // --------------------------------------------------------------------------------------------
+
+    // Enough work per element that splitting overhead does not dominate
+    private static long mix(int i) {
+        long h = i * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 29)) & 0xFFFF;
+    }
+
+    // Splits three levels deep, as a fork-join pool would, then counts the elements each piece really holds
+    // (estimateSize() of the legacy pieces is a made-up Long.MAX_VALUE / 2)
+    private static void printSplits(String label, Spliterator<?> s) {
+        List<Spliterator<?>> pieces = new ArrayList<>(List.of(s));
+        for (int level = 0; level < 3; level++) {
+            List<Spliterator<?>> next = new ArrayList<>();
+            for (Spliterator<?> p : pieces) {
+                Spliterator<?> prefix = p.trySplit();
+                if (prefix != null) next.add(prefix);
+                next.add(p);
+            }
+            pieces = next;
+        }
+        StringBuilder sizes = new StringBuilder();
+        for (Spliterator<?> p : pieces) {
+            long[] n = {0};
+            p.forEachRemaining(x -> n[0]++);
+            sizes.append(n[0]).append(' ');
+        }
+        System.out.printf("%-45s SIZED=%-5s %s%n", label, s.hasCharacteristics(Spliterator.SIZED), sizes.toString().trim());
+    }
+
+    private interface LongTask {
+        long run();
+    }
+
+    private static volatile long BLACKHOLE;
+
+    private static void bench(String label, LongTask task) {
+        for (int i = 0; i < 2; i++) BLACKHOLE = task.run();
+        int runs = 3;
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            BLACKHOLE = task.run();
+            total += System.nanoTime() - t0;
+        }
+        System.out.printf("%-35s %8.3f ms%n", label, total / 1_000_000.0 / runs);
+    }
+
+    // Sums all live threads, so that the pieces run by common-pool workers are included
+    private static double allocatedPer(LongTask task, int elements) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        BLACKHOLE = task.run(); // warm-up, also starts the pool workers
+        long[] ids = mx.getAllThreadIds();
+        long before = Arrays.stream(mx.getThreadAllocatedBytes(ids)).filter(b -> b > 0).sum();
+        BLACKHOLE = task.run();
+        long after = Arrays.stream(mx.getThreadAllocatedBytes(ids)).filter(b -> b > 0).sum();
+        return (after - before) / (double) elements;
+    }
+
+    private static void header(String title) {
+        System.out.println("\n=== " + title + " ===");
+    }
+}
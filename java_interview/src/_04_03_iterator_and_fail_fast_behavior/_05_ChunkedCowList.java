@@ -0,0 +1,724 @@
+package _04_03_iterator_and_fail_fast_behavior;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Chunked copy-on-write list: snapshot iteration (no CME, like CopyOnWriteArrayList) without copying the whole
+ * array on every write.
+ *
+ * The trade-off being replaced:
+ * - ArrayList/HashMap iterators are fail-fast: a concurrent structural change surfaces as a CME (or worse, silently
+ *   corrupt reads from another thread). Collections.synchronizedList makes single calls safe, but iteration must
+ *   hold the list's lock for its whole duration, so readers block writers and each other.
+ * - CopyOnWriteArrayList gives lock-free reads and snapshot iterators, but every set/add copies the entire array:
+ *   400 KB of copying and garbage per write on a 100k-element list.
+ *
+ * ChunkedCowList keeps the elements in fixed-size chunks (default 1024) reached through a directory; the current
+ * (directory, size) pair is an immutable State published through one volatile field:
+ * - Readers: one volatile read of the state, then two array loads; iterators hold on to the state they started
+ *   with, so they see a consistent snapshot and never throw CME.
+ * - set(i, e): copies the one chunk that changes plus the directory (n / 1024 references), not the n elements.
+ * - add(e): writes into the unused tail slot in place and publishes a new State with size + 1; no copy at all.
+ *   This is safe because no published state has ever covered a slot at or beyond the current size: every
+ *   operation that shrinks the list (remove, clear) rebuilds the tail chunks as fresh arrays.
+ * - add(i, e)/remove(i): shift the elements after i, so every chunk from i's chunk onwards is copied; O(n - i)
+ *   like ArrayList, but chunks before i are shared with the previous state.
+ * - Writers are serialized by a ReentrantLock, as in CopyOnWriteArrayList.
+ *
+ * Reclaiming replaced chunks: by default the GC does it once no iterator references an old state. With
+ * {@code recycleChunks}, replaced chunks go through epoch-based reclamation instead and are reused by later
+ * writes, which removes the chunk allocation from set():
+ * - every read announces the global epoch in a per-thread ReaderSlot before it reads the state, and clears it after;
+ * - a writer tags each replaced chunk with the epoch current when it was replaced, publishes the new state and then
+ *   advances the epoch;
+ * - a tagged chunk is reused only when every active reader announced a later epoch (it started after the new state
+ *   was published, so it cannot reach the old chunk).
+ * The price is paid by readers (a ThreadLocal lookup and two volatile writes per get()). An iterator announces the
+ * epoch of its snapshot in a slot of its own, not its thread's, so it may be drained on any thread; the slot is
+ * released when the iterator is exhausted, or, if it is abandoned, once the GC has collected the iterator. Until
+ * then chunks replaced after its snapshot wait in limbo, which holds at most LIMBO_MAX chunks: older ones are
+ * dropped and left to the GC. An abandoned iterator therefore only pauses recycling; it never breaks reads or
+ * leaks memory. Slots of threads that have died are dropped on the next scan.
+ *
+ * Measurement: JMH is not on the classpath, so throughput comes from fixed-duration runs of mixed reader/writer
+ * threads and allocation from com.sun.management.ThreadMXBean.
+ *
+ * Typical numbers (1 CPU, JDK 21, 100k elements, 4 threads, 1 s per cell):
+ * - One set(): CopyOnWriteArrayList ~40 us / 400 KB allocated; ChunkedCowList ~2.3 us / 4.7 KB (chunk + directory);
+ *   with recycling ~1.4 us / 0.6 KB (directory only).
+ * - Mixed get/set ops per second at 99/1, 90/10, 50/50: CopyOnWriteArrayList 2.0M, 0.25M, 0.05M; ChunkedCowList
+ *   28M, 13M, 3.7M; with recycling 20M, 13M, 6.4M (slower reads, cheaper writes). synchronizedList does ~31M
+ *   throughout on one CPU, where its lock is never contended; with real cores its readers would serialize.
+ * - Full iterations per second with one concurrent writer: CopyOnWriteArrayList 3,600 but only 2,500 writes/s;
+ *   ChunkedCowList ~1,500 (one extra indirection per chunk) with 165k writes/s; synchronizedList 2,500, holding
+ *   the lock for each whole pass.
+ */
+public class _05_ChunkedCowList {
+
+    public static void main(String[] args) throws InterruptedException {
+        header("Snapshot iteration without CME");
+        demoSnapshotIteration();
+
+        header("Cost of one write (single thread, " + SIZE / 1000 + "k elements)");
+        benchWriteCost();
+
+        header("Mixed read/write throughput (" + THREADS + " threads, " + SIZE / 1000 + "k elements, "
+                + Runtime.getRuntime().availableProcessors() + " CPU(s))");
+        benchMixed();
+
+        header("Full iteration while a writer runs");
+        benchIterationUnderWrites();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Demo
+    // --------------------------------------------------------------------------------------------
+    private static void demoSnapshotIteration() {
+        ChunkedCowList<Integer> list = new ChunkedCowList<>(4, false);
+        for (int i = 1; i <= 10; i++) list.add(i);
+        System.out.println("list: " + list);
+        StringBuilder seen = new StringBuilder();
+        for (Integer n : list) {
+            if (n == 3) {
+                list.remove(Integer.valueOf(5)); // would be a CME with ArrayList
+                list.add(99);
+                list.set(0, -1);
+            }
+            seen.append(n).append(' ');
+        }
+        System.out.println("iteration saw the snapshot: " + seen.toString().trim());
+        System.out.println("list afterwards: " + list);
+        try {
+            Iterator<Integer> it = list.iterator();
+            it.next();
+            it.remove();
+        } catch (UnsupportedOperationException e) {
+            System.out.println("iterator.remove -> UnsupportedOperationException (same as CopyOnWriteArrayList)");
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Implementation
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * List with snapshot iterators whose writes copy one chunk instead of the whole array. Nulls are permitted.
+     * subList/listIterator come from AbstractList and read the latest state on each call (weakly consistent).
+     */
+    static final class ChunkedCowList<E> extends AbstractList<E> implements RandomAccess {
+        private static final int DEFAULT_CHUNK = 1024;
+        private static final int POOL_MAX = 64;
+        private static final int LIMBO_MAX = 4 * POOL_MAX;
+
+        /** Immutable once published; slots at or beyond size may be written in place by the next add(e). */
+        private record State(Object[][] chunks, int size) {
+        }
+
+        private final int shift;
+        private final int mask;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile State state;
+
+        // Epoch-based recycling; null when the GC reclaims chunks
+        private final Epochs epochs;
+
+        ChunkedCowList() {
+            this(DEFAULT_CHUNK, false);
+        }
+
+        ChunkedCowList(int chunkSize, boolean recycleChunks) {
+            if (chunkSize < 2 || Integer.bitCount(chunkSize) != 1) {
+                throw new IllegalArgumentException("chunkSize must be a power of two >= 2: " + chunkSize);
+            }
+            this.shift = Integer.numberOfTrailingZeros(chunkSize);
+            this.mask = chunkSize - 1;
+            this.state = new State(new Object[4][], 0);
+            this.epochs = recycleChunks ? new Epochs() : null;
+        }
+
+        @Override
+        public int size() {
+            return state.size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (epochs == null) {
+                State s = state;
+                Objects.checkIndex(index, s.size);
+                return (E) s.chunks[index >>> shift][index & mask];
+            }
+            ReaderSlot slot = epochs.enter();
+            try {
+                State s = state;
+                Objects.checkIndex(index, s.size);
+                return (E) s.chunks[index >>> shift][index & mask];
+            } finally {
+                epochs.exit(slot);
+            }
+        }
+
+        @Override
+        public E set(int index, E element) {
+            lock.lock();
+            try {
+                State s = state;
+                Objects.checkIndex(index, s.size);
+                int c = index >>> shift;
+                Object[] old = s.chunks[c];
+                @SuppressWarnings("unchecked")
+                E previous = (E) old[index & mask];
+                Object[] copy = newChunk();
+                System.arraycopy(old, 0, copy, 0, old.length);
+                copy[index & mask] = element;
+                Object[][] dir = s.chunks.clone();
+                dir[c] = copy;
+                publish(new State(dir, s.size), old);
+                return previous;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean add(E element) {
+            lock.lock();
+            try {
+                State s = state;
+                int n = s.size, c = n >>> shift;
+                Object[][] dir = s.chunks;
+                if (c == dir.length) {
+                    dir = Arrays.copyOf(dir, dir.length * 2);
+                }
+                if (dir[c] == null) {
+                    Object[] chunk = newChunk();
+                    if (epochs != null) {
+                        Arrays.fill(chunk, null); // a recycled chunk still references old elements
+                    }
+                    dir[c] = chunk;
+                }
+                // Slot n has never been visible to a reader (see class comment), so it can be written in place
+                dir[c][n & mask] = element;
+                state = new State(dir, n + 1);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void add(int index, E element) {
+            lock.lock();
+            try {
+                State s = state;
+                Objects.checkIndex(index, s.size + 1);
+                if (index == s.size) {
+                    add(element);
+                    return;
+                }
+                rebuildTail(s, index, element, true);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public E remove(int index) {
+            lock.lock();
+            try {
+                State s = state;
+                Objects.checkIndex(index, s.size);
+                @SuppressWarnings("unchecked")
+                E previous = (E) s.chunks[index >>> shift][index & mask];
+                rebuildTail(s, index, null, false);
+                return previous;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            lock.lock();
+            try {
+                int i = indexOf(o);
+                if (i < 0) {
+                    return false;
+                }
+                remove(i);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Bulk removals rebuild every chunk once instead of shifting per removed element
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean removeIf(Predicate<? super E> filter) {
+            Objects.requireNonNull(filter);
+            lock.lock();
+            try {
+                State s = state;
+                int used = (s.size + mask) >>> shift;
+                Object[][] dir = new Object[Math.max(4, used)][];
+                int n = 0;
+                for (int i = 0; i < s.size; i++) {
+                    Object e = s.chunks[i >>> shift][i & mask];
+                    if (filter.test((E) e)) {
+                        continue;
+                    }
+                    if (dir[n >>> shift] == null) {
+                        dir[n >>> shift] = newChunk();
+                    }
+                    dir[n >>> shift][n & mask] = e;
+                    n++;
+                }
+                if (n == s.size) {
+                    if (epochs != null) {
+                        for (Object[] c : dir) {
+                            if (c != null) epochs.giveBack(c); // never published
+                        }
+                    }
+                    return false;
+                }
+                if ((n & mask) != 0) {
+                    Object[] tail = dir[n >>> shift];
+                    Arrays.fill(tail, n & mask, tail.length, null);
+                }
+                state = new State(dir, n);
+                if (epochs != null) {
+                    for (int c = 0; c < used; c++) epochs.retire(s.chunks[c]);
+                    epochs.advance();
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeIf(c::contains);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeIf(e -> !c.contains(e));
+        }
+
+        @Override
+        public void clear() {
+            lock.lock();
+            try {
+                State s = state;
+                int used = (s.size + mask) >>> shift;
+                state = new State(new Object[4][], 0);
+                if (epochs != null) {
+                    for (int c = 0; c < used; c++) epochs.retire(s.chunks[c]);
+                    epochs.advance();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Iterates the snapshot current at the call; no locking, no CME. */
+        @Override
+        public Iterator<E> iterator() {
+            return new SnapshotIterator();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEach(Consumer<? super E> action) {
+            ReaderSlot slot = epochs == null ? null : epochs.enter();
+            try {
+                State s = state;
+                for (int c = 0, remaining = s.size; remaining > 0; c++) {
+                    Object[] chunk = s.chunks[c];
+                    int n = Math.min(remaining, chunk.length);
+                    for (int i = 0; i < n; i++) action.accept((E) chunk[i]);
+                    remaining -= n;
+                }
+            } finally {
+                if (slot != null) epochs.exit(slot);
+            }
+        }
+
+        /** Chunks handed out from the recycling pool so far (0 without recycleChunks). */
+        long recycledChunks() {
+            return epochs == null ? 0 : epochs.reused;
+        }
+
+        private final class SnapshotIterator implements Iterator<E> {
+            private final State snapshot;
+            private ReaderSlot pinned; // the iterator's own slot, never its thread's
+            private Object[] chunk;
+            private int cursor;
+
+            SnapshotIterator() {
+                pinned = epochs == null ? null : epochs.pin(this);
+                snapshot = state;
+                if (snapshot.size == 0) unpin();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return cursor < snapshot.size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (cursor >= snapshot.size) {
+                    throw new NoSuchElementException();
+                }
+                int i = cursor++;
+                if ((i & mask) == 0) {
+                    chunk = snapshot.chunks[i >>> shift];
+                }
+                E e = (E) chunk[i & mask];
+                if (cursor == snapshot.size) unpin();
+                return e;
+            }
+
+            private void unpin() {
+                if (pinned != null) {
+                    epochs.unpin(pinned);
+                    pinned = null;
+                }
+            }
+        }
+
+        // Replaces everything from index's chunk onwards with fresh chunks holding the shifted elements
+        private void rebuildTail(State s, int index, E inserted, boolean insert) {
+            int oldSize = s.size, newSize = insert ? oldSize + 1 : oldSize - 1;
+            int first = index >>> shift;
+            int oldUsed = (oldSize + mask) >>> shift, newUsed = (newSize + mask) >>> shift;
+            Object[][] dir = Arrays.copyOf(s.chunks, Math.max(s.chunks.length, newUsed + 1));
+            for (int c = first; c < Math.max(oldUsed, newUsed); c++) dir[c] = c < newUsed ? newChunk() : null;
+            int start = first << shift;
+            copy(s.chunks, start, dir, start, index - start);
+            if (insert) {
+                dir[index >>> shift][index & mask] = inserted;
+                copy(s.chunks, index, dir, index + 1, oldSize - index);
+            } else {
+                copy(s.chunks, index + 1, dir, index, oldSize - index - 1);
+            }
+            // Fresh (or recycled) chunks must not carry stale references past the new end
+            if (newSize > 0 && (newSize & mask) != 0) {
+                Object[] tail = dir[(newSize - 1) >>> shift];
+                Arrays.fill(tail, newSize & mask, tail.length, null);
+            }
+            state = new State(dir, newSize);
+            if (epochs != null) {
+                for (int c = first; c < oldUsed; c++) epochs.retire(s.chunks[c]);
+                epochs.advance();
+            }
+        }
+
+        private void copy(Object[][] src, int from, Object[][] dst, int to, int length) {
+            while (length > 0) {
+                int so = from & mask, d = to & mask;
+                int n = Math.min(length, Math.min(mask + 1 - so, mask + 1 - d));
+                System.arraycopy(src[from >>> shift], so, dst[to >>> shift], d, n);
+                from += n;
+                to += n;
+                length -= n;
+            }
+        }
+
+        private Object[] newChunk() {
+            Object[] recycled = epochs == null ? null : epochs.take();
+            return recycled != null ? recycled : new Object[mask + 1];
+        }
+
+        private void publish(State next, Object[] replaced) {
+            state = next;
+            if (epochs != null) {
+                epochs.retire(replaced);
+                epochs.advance();
+            }
+        }
+
+        /**
+         * Epoch bookkeeping. The writer side (retire/advance/take) runs under the list's lock; readers only touch
+         * their own ReaderSlot. Each slot refers weakly to its owner (a thread or an iterator), and take() drops the
+         * slots of dead threads and collected iterators.
+         */
+        private static final class Epochs {
+            private volatile long epoch = 1;
+            private final List<ReaderSlot> slots = new CopyOnWriteArrayList<>();
+            private final ThreadLocal<ReaderSlot> mine = ThreadLocal.withInitial(this::register);
+            private final ArrayDeque<Object[]> limbo = new ArrayDeque<>();
+            private final ArrayDeque<Long> limboEpochs = new ArrayDeque<>();
+            private final ArrayDeque<Object[]> pool = new ArrayDeque<>();
+            private long reused;
+
+            private ReaderSlot register() {
+                ReaderSlot s = new ReaderSlot(Thread.currentThread());
+                slots.add(s);
+                return s;
+            }
+
+            // An iterator's own slot: registered, then announced, before the iterator reads the state
+            ReaderSlot pin(Object iterator) {
+                ReaderSlot s = new ReaderSlot(iterator);
+                slots.add(s);
+                s.epoch = epoch;
+                return s;
+            }
+
+            void unpin(ReaderSlot s) {
+                s.epoch = ReaderSlot.IDLE;
+                slots.remove(s);
+            }
+
+            ReaderSlot enter() {
+                ReaderSlot s = mine.get();
+                if (s.depth++ == 0) {
+                    // Volatile write, then the caller's volatile read of the state: the announcement is visible to
+                    // a writer before this reader can observe any state
+                    s.epoch = epoch;
+                }
+                return s;
+            }
+
+            void exit(ReaderSlot s) {
+                if (--s.depth == 0) {
+                    s.epoch = ReaderSlot.IDLE;
+                }
+            }
+
+            void retire(Object[] chunk) {
+                if (limbo.size() == LIMBO_MAX) { // recycling is stalled by a slow or abandoned reader
+                    limbo.poll();
+                    limboEpochs.poll();
+                }
+                limbo.add(chunk);
+                limboEpochs.add(epoch);
+            }
+
+            void giveBack(Object[] unpublished) {
+                if (pool.size() < POOL_MAX) pool.add(unpublished);
+            }
+
+            // Called after the new state is published
+            void advance() {
+                epoch = epoch + 1;
+            }
+
+            Object[] take() {
+                if (pool.isEmpty() && !limbo.isEmpty()) {
+                    long oldestActive = Long.MAX_VALUE;
+                    for (ReaderSlot s : slots) {
+                        if (s.isDead()) {
+                            slots.remove(s);
+                        } else {
+                            oldestActive = Math.min(oldestActive, s.epoch);
+                        }
+                    }
+                    while (!limbo.isEmpty() && limboEpochs.peek() < oldestActive) {
+                        limboEpochs.poll();
+                        Object[] chunk = limbo.poll();
+                        if (pool.size() < POOL_MAX) pool.add(chunk);
+                    }
+                }
+                Object[] c = pool.poll();
+                if (c != null) reused++;
+                return c;
+            }
+        }
+
+        /** One per reader thread or live iterator; padded so that neighbouring slots do not share a cache line. */
+        private static final class ReaderSlot {
+            static final long IDLE = Long.MAX_VALUE;
+            long p1, p2, p3, p4, p5, p6, p7;
+            volatile long epoch = IDLE;
+            int depth; // nesting of enter() on the owning thread; unused by iterator slots
+            final WeakReference<Object> owner;
+            long q1, q2, q3, q4, q5, q6, q7;
+
+            ReaderSlot(Object owner) {
+                this.owner = new WeakReference<>(owner);
+            }
+
+            boolean isDead() {
+                Object o = owner.get();
+                return o == null || (o instanceof Thread t && !t.isAlive());
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Benchmarks
+    // --------------------------------------------------------------------------------------------
+    private static final int SIZE = 100_000;
+    private static final int THREADS = 4;
+    private static final long CELL_MILLIS = 1_000;
+
+    private interface ListFactory {
+        List<Integer> create();
+    }
+
+    private static final String[] NAMES = {"synchronizedList(ArrayList)", "CopyOnWriteArrayList", "ChunkedCowList", "ChunkedCowList (recycling)"};
+    private static final ListFactory[] FACTORIES = {
+            () -> Collections.synchronizedList(new ArrayList<>(filled())),
+            () -> new CopyOnWriteArrayList<>(filled()),
+            () -> fill(new ChunkedCowList<>()),
+            () -> fill(new ChunkedCowList<>(1024, true)),
+    };
+
+    private static void benchWriteCost() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int writes = 20_000;
+        for (int f = 0; f < FACTORIES.length; f++) {
+            List<Integer> list = FACTORIES[f].create();
+            SplittableRandom rnd = new SplittableRandom(1);
+            for (int i = 0; i < writes; i++) list.set(rnd.nextInt(SIZE), i); // warm-up
+            long bytes = mx.getCurrentThreadAllocatedBytes();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < writes; i++) list.set(rnd.nextInt(SIZE), i);
+            long ns = System.nanoTime() - t0;
+            bytes = mx.getCurrentThreadAllocatedBytes() - bytes;
+            System.out.printf("%-30s set(): %8.2f us, %9d B allocated%n", NAMES[f], ns / 1e3 / writes, bytes / writes);
+        }
+    }
+
+    private static void benchMixed() throws InterruptedException {
+        int[] writePercents = {1, 10, 50};
+        System.out.printf("%-30s", "ops/s (reads+writes)");
+        for (int w : writePercents) System.out.printf("  %12s", (100 - w) + "/" + w + " r/w");
+        System.out.println();
+        for (int f = 0; f < FACTORIES.length; f++) {
+            System.out.printf("%-30s", NAMES[f]);
+            for (int w : writePercents) {
+                List<Integer> list = FACTORIES[f].create();
+                System.out.printf("  %12s", String.format("%,.0f", mixed(list, w)));
+            }
+            System.out.println();
+        }
+    }
+
+    // All threads run the same mix: get(random) or set(random) with probability writePercent
+    private static double mixed(List<Integer> list, int writePercent) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            Thread th = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(seed);
+                long sum = 0, n = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (!stop.get()) {
+                    for (int k = 0; k < 64; k++, n++) {
+                        int i = rnd.nextInt(SIZE);
+                        if (rnd.nextInt(100) < writePercent) list.set(i, k);
+                        else sum += list.get(i);
+                    }
+                }
+                ops.add(n);
+                BLACKHOLE = sum;
+            });
+            th.start();
+            threads.add(th);
+        }
+        start.countDown();
+        Thread.sleep(CELL_MILLIS);
+        stop.set(true);
+        for (Thread th : threads) th.join();
+        return ops.sum() * 1000.0 / CELL_MILLIS;
+    }
+
+    // Readers sum the whole list repeatedly; one writer sets random elements as fast as it can
+    private static void benchIterationUnderWrites() throws InterruptedException {
+        for (int f = 0; f < FACTORIES.length; f++) {
+            List<Integer> list = FACTORIES[f].create();
+            boolean synced = f == 0;
+            LongAdder iterations = new LongAdder(), writes = new LongAdder();
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(7);
+                while (!stop.get()) {
+                    list.set(rnd.nextInt(SIZE), rnd.nextInt(100));
+                    writes.increment();
+                }
+            });
+            List<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < THREADS - 1; t++) {
+                readers.add(new Thread(() -> {
+                    while (!stop.get()) {
+                        long sum = 0;
+                        if (synced) {
+                            synchronized (list) { // required: the iterator itself is fail-fast
+                                for (int v : list) sum += v;
+                            }
+                        } else {
+                            for (int v : list) sum += v;
+                        }
+                        BLACKHOLE = sum;
+                        iterations.increment();
+                    }
+                }));
+            }
+            writer.start();
+            readers.forEach(Thread::start);
+            Thread.sleep(CELL_MILLIS);
+            stop.set(true);
+            writer.join();
+            for (Thread r : readers) r.join();
+            System.out.printf("%-30s %,8d full iterations/s, %,10d writes/s%n", NAMES[f],
+                    iterations.sum() * 1000 / CELL_MILLIS, writes.sum() * 1000 / CELL_MILLIS);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Helpers
+    // --------------------------------------------------------------------------------------------
+    private static volatile long BLACKHOLE;
+
+    private static List<Integer> filled() {
+        List<Integer> l = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) l.add(i % 100);
+        return l;
+    }
+
+    private static ChunkedCowList<Integer> fill(ChunkedCowList<Integer> list) {
+        for (int i = 0; i < SIZE; i++) list.add(i % 100);
+        return list;
+    }
+
+    private static void header(String title) {
+        System.out.println("\n=== " + title + " ===");
+    }
+}
@@ -0,0 +1,681 @@
+package _04_04_comparable_vs_comparator;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Key-extracting sort: compile a comparator chain into normalized byte keys once, then sort index arrays.
+ *
+ * What a chain such as {@code _02_Examples.COMPLEX_COMPARATOR} (city nullsLast case-insensitive, then age, then name
+ * case-insensitive) or {@code _03_InterviewQA.PersonComparators.BY_NAME_THEN_AGE} costs inside List.sort:
+ * - n log n comparisons (~23 per element at 10M), each calling the getters again through several lambda layers
+ *   and chasing Person -> String -> byte[] pointers;
+ * - CASE_INSENSITIVE_ORDER folds the case of both strings, char by char, on every comparison;
+ * - the comparator chain is megamorphic at its call sites, so little of it inlines.
+ *
+ * KeySort does the work once per element (a Schwartzian transform):
+ * - Every key part is encoded into one byte[] whose unsigned lexicographic order equals the comparator order
+ *   ("memcomparable"): ints/longs as a length tag plus their significant bytes (an age takes 2 bytes, not 4);
+ *   doubles by their sortable bit pattern (same order as Double.compare); strings after case folding in an
+ *   order-preserving variable-length form (ASCII is one byte per char) ended by 0x00, so that a shorter string sorts
+ *   first and the next part still compares correctly; a leading byte orders nulls first or last; descending parts
+ *   have all their bytes inverted (each part is prefix-free, so this reverses exactly that part).
+ * - Sorting moves (8-byte word, index) pairs only, never the records: a stable LSD radix sort on the first word of
+ *   every key (passes whose byte is constant are skipped), then each run of equal words is sorted the same way on
+ *   the next word, until the keys differ or end (a multikey, most-significant-word-first radix sort). In parallel,
+ *   extraction runs on the common pool, slices of 64k are radix sorted, and a fork-join merge (split by binary
+ *   search) combines them comparing whole keys.
+ * - The result is an index permutation; ties keep the input order, so the sort is stable like List.sort.
+ * Case folding matches String.CASE_INSENSITIVE_ORDER, which folds every char to
+ * toLowerCase(toUpperCase(c)). Surrogate pairs are kept unfolded (that comparator folds them as code points; the
+ * difference only shows for the few case pairs outside the BMP).
+ *
+ * Measurement: JMH is not on the classpath, so times come from an ad-hoc bench loop (a warm-up, then the average of
+ * a few runs) on fresh copies of the unsorted input. 10M records with their keys would not fit this machine's 5 GB next to the
+ * baseline copies, so the benchmark sorts 4M.
+ *
+ * Typical numbers (1 CPU, JDK 21, -Xmx3g, 4M records):
+ * - COMPLEX_COMPARATOR: List.sort ~11 s, Arrays.parallelSort ~11 s; KeySort.sort ~3.7 s, of which ~1.7 s is key
+ *   extraction (16 cities, so the city word ties in large runs and the name decides in the second word).
+ * - BY_JOIN_DATE_NEWEST_FIRST: List.sort ~3.6 s; KeySort ~0.5 s (the whole key fits in the first word).
+ * - BY_NAME_THEN_AGE: List.sort ~9.2 s; KeySort ~1.8 s.
+ * - KeySort.parallelSort ~5.8 s on one CPU: the merge levels compare whole keys, which only pays off with cores.
+ */
+public class _04_KeySort {
+
+    public static void main(String[] args) {
+        demoSameOrder();
+        benchmarks();
+    }
+
+    // ============================================================
+    // Demo: same order as the comparator chains in _02_Examples
+    // ============================================================
+
+    static final KeySort<_02_Examples.Person> COMPLEX_KEYS = KeySort.<_02_Examples.Person>builder()
+            .string(_02_Examples.Person::getCity, Case.INSENSITIVE, Nulls.LAST)
+            .intKey(_02_Examples.Person::getAge)
+            .string(_02_Examples.Person::getName, Case.INSENSITIVE, Nulls.LAST)
+            .build();
+
+    static final KeySort<_02_Examples.Person> JOIN_DATE_NEWEST_FIRST_KEYS = KeySort.<_02_Examples.Person>builder()
+            .nullableLong(_02_Examples.Person::getJoinDate, LocalDate::toEpochDay, Nulls.LAST).descending()
+            .build();
+
+    static final KeySort<_03_InterviewQA.Person> NAME_THEN_AGE_KEYS = KeySort.<_03_InterviewQA.Person>builder()
+            .string(_03_InterviewQA.Person::getName, Case.INSENSITIVE, Nulls.LAST)
+            .intKey(_03_InterviewQA.Person::getAge)
+            .build();
+
+    private static void demoSameOrder() {
+        header("KeySort gives the same order as the comparator chains");
+        List<_02_Examples.Person> people = new ArrayList<>(List.of(
+                new _02_Examples.Person(1, "Alice", 30, 1.65, "Berlin", LocalDate.of(2020, 1, 10)),
+                new _02_Examples.Person(2, "bob", 25, 1.80, "Paris", LocalDate.of(2019, 5, 23)),
+                new _02_Examples.Person(3, "Charlie", 35, 1.75, null, LocalDate.of(2021, 2, 14)),
+                new _02_Examples.Person(4, "ALICE", 28, 1.70, "berlin", LocalDate.of(2018, 3, 1)),
+                new _02_Examples.Person(5, "Bob", 25, 1.82, "London", null),
+                new _02_Examples.Person(6, "Élodie", 29, 1.60, "Paris", LocalDate.of(2022, 11, 11)),
+                new _02_Examples.Person(7, "dave", 25, 1.90, null, LocalDate.of(2017, 8, 8)),
+                new _02_Examples.Person(8, "张伟", 40, 1.76, "Shanghai", LocalDate.of(2015, 4, 4)),
+                new _02_Examples.Person(9, "Özil", 31, 1.81, "Istanbul", LocalDate.of(2020, 7, 7))));
+
+        List<_02_Examples.Person> expected = new ArrayList<>(people);
+        expected.sort(_02_Examples.COMPLEX_COMPARATOR);
+        List<_02_Examples.Person> actual = new ArrayList<>(people);
+        COMPLEX_KEYS.sort(actual);
+        System.out.println("COMPLEX_COMPARATOR: " + ids(expected) + " | KeySort: " + ids(actual));
+
+        expected.sort(_02_Examples.BY_JOIN_DATE_NEWEST_FIRST);
+        JOIN_DATE_NEWEST_FIRST_KEYS.sort(actual);
+        System.out.println("BY_JOIN_DATE_NEWEST_FIRST: " + ids(expected) + " | KeySort: " + ids(actual));
+
+        List<_03_InterviewQA.Person> qa = new ArrayList<>(List.of(
+                new _03_InterviewQA.Person(3, "Alice", 30, 120_000),
+                new _03_InterviewQA.Person(1, "bob", 25, 80_000),
+                new _03_InterviewQA.Person(2, "Charlie", 35, 150_000),
+                new _03_InterviewQA.Person(4, null, 40, 60_000),
+                new _03_InterviewQA.Person(5, "Bob", 25, 90_000)));
+        List<_03_InterviewQA.Person> qaExpected = new ArrayList<>(qa);
+        qaExpected.sort(_03_InterviewQA.PersonComparators.BY_NAME_THEN_AGE);
+        NAME_THEN_AGE_KEYS.sort(qa);
+        System.out.println("BY_NAME_THEN_AGE: " + qaIds(qaExpected) + " | KeySort: " + qaIds(qa));
+    }
+
+    // ============================================================
+    // KeySort
+    // ============================================================
+
+    enum Case { SENSITIVE, INSENSITIVE }
+
+    enum Nulls { FIRST, LAST }
+
+    /** Writes one key part of an element into the buffer; returns the new position. */
+    private interface PartEncoder<T> {
+        int encode(T element, KeyBuffer out, int pos);
+    }
+
+    /** Growable scratch buffer, one per extracting thread. */
+    private static final class KeyBuffer {
+        byte[] bytes = new byte[64];
+
+        void ensure(int capacity) {
+            if (capacity > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+
+    /**
+     * Sort order compiled from key parts. Immutable and thread-safe; the extractors must be side-effect free.
+     */
+    static final class KeySort<T> {
+        private static final int SORT_LEAF = 1 << 16;
+        private static final int MERGE_LEAF = 1 << 13;
+
+        private final List<PartEncoder<T>> parts;
+
+        private KeySort(List<PartEncoder<T>> parts) {
+            this.parts = List.copyOf(parts);
+        }
+
+        static <T> Builder<T> builder() {
+            return new Builder<>();
+        }
+
+        /** Sorts the list in place (stable), like {@code list.sort(comparator)}. */
+        void sort(List<T> list) {
+            apply(list, sortedIndex(list));
+        }
+
+        void parallelSort(List<T> list) {
+            apply(list, parallelSortedIndex(list));
+        }
+
+        /** Permutation p such that list.get(p[0]), list.get(p[1]), ... is sorted. */
+        int[] sortedIndex(List<? extends T> list) {
+            Keys keys = extract(list, false);
+            int n = keys.prefix.length;
+            int[] idx = identity(n);
+            sortRange(keys.prefix.clone(), idx, new long[n], new int[n], 0, n, 0, keys);
+            return idx;
+        }
+
+        int[] parallelSortedIndex(List<? extends T> list) {
+            Keys keys = extract(list, true);
+            int n = keys.prefix.length;
+            long[] pfx = keys.prefix.clone();
+            int[] idx = identity(n);
+            ForkJoinPool.commonPool().invoke(new SortTask(pfx, idx, new long[n], new int[n], 0, n, keys));
+            return idx;
+        }
+
+        // ---- extraction ----
+
+        /** Per-element prefix plus, for keys longer than 8 bytes, the rest of the key. */
+        private static final class Keys {
+            final long[] prefix;
+            final byte[][] tails; // null entry: key fits in the prefix
+
+            Keys(int n) {
+                prefix = new long[n];
+                tails = new byte[n][];
+            }
+
+            /** Bytes [8 * level, 8 * level + 8) of element i's key as an unsigned big-endian long, zero-padded. */
+            long word(int i, int level) {
+                if (level == 0) return prefix[i];
+                byte[] t = tails[i];
+                long w = 0;
+                for (int k = 8 * (level - 1), end = k + 8; k < end; k++) w = (w << 8) | (t != null && k < t.length ? t[k] & 0xFF : 0);
+                return w;
+            }
+
+            boolean longerThan(int i, int length) {
+                byte[] t = tails[i];
+                return t != null && 8 + t.length > length;
+            }
+
+            int compare(long pa, int a, long pb, int b) {
+                int c = Long.compareUnsigned(pa, pb);
+                if (c != 0) return c;
+                byte[] ta = tails[a], tb = tails[b];
+                if (ta != tb) {
+                    if (ta == null) return -1;
+                    if (tb == null) return 1;
+                    c = Arrays.compareUnsigned(ta, tb);
+                    if (c != 0) return c;
+                }
+                return Integer.compare(a, b);
+            }
+        }
+
+        private Keys extract(List<? extends T> list, boolean parallel) {
+            @SuppressWarnings("unchecked")
+            T[] items = (T[]) list.toArray();
+            Keys keys = new Keys(items.length);
+            ThreadLocal<KeyBuffer> buffers = ThreadLocal.withInitial(KeyBuffer::new);
+            IntStream range = IntStream.range(0, items.length);
+            (parallel ? range.parallel() : range).forEach(i -> {
+                KeyBuffer buf = buffers.get();
+                int len = 0;
+                for (PartEncoder<T> part : parts) len = part.encode(items[i], buf, len);
+                byte[] b = buf.bytes;
+                long p = 0;
+                for (int k = 0; k < 8; k++) p = (p << 8) | (k < len ? b[k] & 0xFF : 0);
+                keys.prefix[i] = p;
+                if (len > 8) keys.tails[i] = Arrays.copyOfRange(b, 8, len);
+            });
+            return keys;
+        }
+
+        // ---- sorting (prefix, index) pairs ----
+
+        /**
+         * Sorts [lo, hi) whose w[] holds word {@code level} of each element's key: stable sort on that word, then
+         * every run of equal words moves on to the next word (multikey / MSD over 8-byte words). Keys are
+         * prefix-free, so once a run's key is exhausted all its keys are equal and the run stays in index order.
+         */
+        private static void sortRange(long[] w, int[] idx, long[] tw, int[] tIdx, int lo, int hi, int level, Keys keys) {
+            if (hi - lo <= 48) insertionSort(w, idx, lo, hi);
+            else radixSort(w, idx, tw, tIdx, lo, hi);
+            for (int a = lo; a < hi; ) {
+                int b = a + 1;
+                while (b < hi && w[b] == w[a]) b++;
+                if (b - a > 1 && keys.longerThan(idx[a], 8 * (level + 1))) {
+                    for (int i = a; i < b; i++) w[i] = keys.word(idx[i], level + 1);
+                    sortRange(w, idx, tw, tIdx, a, b, level + 1, keys);
+                }
+                a = b;
+            }
+        }
+
+        // LSD radix over the 8 bytes of the word; stable. All histograms in one pass; constant bytes are skipped.
+        private static void radixSort(long[] w, int[] idx, long[] tw, int[] tIdx, int lo, int hi) {
+            int[][] count = new int[8][257];
+            for (int i = lo; i < hi; i++) {
+                long v = w[i];
+                for (int b = 0; b < 8; b++) count[b][(int) (v >>> (8 * b) & 0xFF) + 1]++;
+            }
+            long[] srcW = w, dstW = tw;
+            int[] srcI = idx, dstI = tIdx;
+            for (int b = 0; b < 8; b++) {
+                int[] c = count[b];
+                if (c[(int) (w[lo] >>> (8 * b) & 0xFF) + 1] == hi - lo) continue;
+                c[0] = lo;
+                for (int k = 0; k < 256; k++) c[k + 1] += c[k];
+                for (int i = lo; i < hi; i++) {
+                    int d = c[(int) (srcW[i] >>> (8 * b) & 0xFF)]++;
+                    dstW[d] = srcW[i];
+                    dstI[d] = srcI[i];
+                }
+                long[] sw = srcW;
+                srcW = dstW;
+                dstW = sw;
+                int[] si = srcI;
+                srcI = dstI;
+                dstI = si;
+            }
+            if (srcW != w) {
+                System.arraycopy(srcW, lo, w, lo, hi - lo);
+                System.arraycopy(srcI, lo, idx, lo, hi - lo);
+            }
+        }
+
+        private static void insertionSort(long[] w, int[] idx, int lo, int hi) {
+            for (int i = lo + 1; i < hi; i++) {
+                long v = w[i];
+                int x = idx[i], j = i - 1;
+                while (j >= lo && Long.compareUnsigned(w[j], v) > 0) {
+                    w[j + 1] = w[j];
+                    idx[j + 1] = idx[j];
+                    j--;
+                }
+                w[j + 1] = v;
+                idx[j + 1] = x;
+            }
+        }
+
+        // Merges src[aLo, aHi) and src[bLo, bHi) into dst starting at d
+        private static void merge(long[] sPfx, int[] sIdx, int aLo, int aHi, int bLo, int bHi,
+                                  long[] dPfx, int[] dIdx, int d, Keys keys) {
+            while (aLo < aHi && bLo < bHi) {
+                if (keys.compare(sPfx[aLo], sIdx[aLo], sPfx[bLo], sIdx[bLo]) <= 0) {
+                    dPfx[d] = sPfx[aLo];
+                    dIdx[d++] = sIdx[aLo++];
+                } else {
+                    dPfx[d] = sPfx[bLo];
+                    dIdx[d++] = sIdx[bLo++];
+                }
+            }
+            System.arraycopy(sPfx, aLo, dPfx, d, aHi - aLo);
+            System.arraycopy(sIdx, aLo, dIdx, d, aHi - aLo);
+            d += aHi - aLo;
+            System.arraycopy(sPfx, bLo, dPfx, d, bHi - bLo);
+            System.arraycopy(sIdx, bLo, dIdx, d, bHi - bLo);
+        }
+
+        /** Sorts [lo, hi) of the pairs in place, using the t* arrays as scratch over the same range. */
+        @SuppressWarnings("serial") // never serialized; RecursiveAction is Serializable only by inheritance
+        private static final class SortTask extends RecursiveAction {
+            private final long[] pfx;
+            private final int[] idx;
+            private final long[] tPfx;
+            private final int[] tIdx;
+            private final int lo, hi;
+            private final Keys keys;
+
+            SortTask(long[] pfx, int[] idx, long[] tPfx, int[] tIdx, int lo, int hi, Keys keys) {
+                this.pfx = pfx;
+                this.idx = idx;
+                this.tPfx = tPfx;
+                this.tIdx = tIdx;
+                this.lo = lo;
+                this.hi = hi;
+                this.keys = keys;
+            }
+
+            @Override
+            protected void compute() {
+                if (hi - lo <= SORT_LEAF) {
+                    sortRange(pfx, idx, tPfx, tIdx, lo, hi, 0, keys);
+                    for (int i = lo; i < hi; i++) pfx[i] = keys.prefix[idx[i]]; // runs left later words behind
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new SortTask(pfx, idx, tPfx, tIdx, lo, mid, keys),
+                        new SortTask(pfx, idx, tPfx, tIdx, mid, hi, keys));
+                if (keys.compare(pfx[mid - 1], idx[mid - 1], pfx[mid], idx[mid]) <= 0) return;
+                System.arraycopy(pfx, lo, tPfx, lo, hi - lo);
+                System.arraycopy(idx, lo, tIdx, lo, hi - lo);
+                new MergeTask(tPfx, tIdx, lo, mid, mid, hi, pfx, idx, lo, keys).invoke();
+            }
+        }
+
+        /** Parallel merge: split the larger run at its middle, binary-search that element in the other run. */
+        @SuppressWarnings("serial") // never serialized; RecursiveAction is Serializable only by inheritance
+        private static final class MergeTask extends RecursiveAction {
+            private final long[] sPfx;
+            private final int[] sIdx;
+            private final int aLo, aHi, bLo, bHi;
+            private final long[] dPfx;
+            private final int[] dIdx;
+            private final int d;
+            private final Keys keys;
+
+            MergeTask(long[] sPfx, int[] sIdx, int aLo, int aHi, int bLo, int bHi, long[] dPfx, int[] dIdx, int d, Keys keys) {
+                this.sPfx = sPfx;
+                this.sIdx = sIdx;
+                this.aLo = aLo;
+                this.aHi = aHi;
+                this.bLo = bLo;
+                this.bHi = bHi;
+                this.dPfx = dPfx;
+                this.dIdx = dIdx;
+                this.d = d;
+                this.keys = keys;
+            }
+
+            @Override
+            protected void compute() {
+                int na = aHi - aLo, nb = bHi - bLo;
+                if (na + nb <= MERGE_LEAF) {
+                    merge(sPfx, sIdx, aLo, aHi, bLo, bHi, dPfx, dIdx, d, keys);
+                    return;
+                }
+                int aMid, bMid;
+                if (na >= nb) {
+                    aMid = (aLo + aHi) >>> 1;
+                    bMid = lowerBound(bLo, bHi, sPfx[aMid], sIdx[aMid]);
+                } else {
+                    bMid = (bLo + bHi) >>> 1;
+                    aMid = lowerBound(aLo, aHi, sPfx[bMid], sIdx[bMid]);
+                }
+                int dMid = d + (aMid - aLo) + (bMid - bLo);
+                invokeAll(new MergeTask(sPfx, sIdx, aLo, aMid, bLo, bMid, dPfx, dIdx, d, keys),
+                        new MergeTask(sPfx, sIdx, aMid, aHi, bMid, bHi, dPfx, dIdx, dMid, keys));
+            }
+
+            // First position in [lo, hi) whose pair is not less than (p, x); pairs are distinct (index tie-break)
+            private int lowerBound(int lo, int hi, long p, int x) {
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (keys.compare(sPfx[mid], sIdx[mid], p, x) < 0) lo = mid + 1;
+                    else hi = mid;
+                }
+                return lo;
+            }
+        }
+
+        private static int[] identity(int n) {
+            int[] idx = new int[n];
+            for (int i = 0; i < n; i++) idx[i] = i;
+            return idx;
+        }
+
+        private static <T> void apply(List<T> list, int[] order) {
+            Object[] items = list.toArray();
+            if (list instanceof RandomAccess) {
+                for (int i = 0; i < order.length; i++) {
+                    @SuppressWarnings("unchecked")
+                    T t = (T) items[order[i]];
+                    list.set(i, t);
+                }
+            } else {
+                ListIterator<T> it = list.listIterator();
+                for (int i : order) {
+                    it.next();
+                    @SuppressWarnings("unchecked")
+                    T t = (T) items[i];
+                    it.set(t);
+                }
+            }
+        }
+    }
+
+    /** Key parts in significance order; descending() applies to the part added last. */
+    static final class Builder<T> {
+        private final List<PartEncoder<T>> parts = new ArrayList<>();
+
+        Builder<T> intKey(ToIntFunction<? super T> key) {
+            parts.add((t, out, pos) -> putVarLong(out, pos, key.applyAsInt(t)));
+            return this;
+        }
+
+        Builder<T> longKey(ToLongFunction<? super T> key) {
+            parts.add((t, out, pos) -> putVarLong(out, pos, key.applyAsLong(t)));
+            return this;
+        }
+
+        /** Same order as Double.compare: -0.0 before 0.0, NaN last. */
+        Builder<T> doubleKey(ToDoubleFunction<? super T> key) {
+            parts.add((t, out, pos) -> {
+                long bits = Double.doubleToLongBits(key.applyAsDouble(t));
+                return putLong(out, pos, bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+            });
+            return this;
+        }
+
+        /** A nullable attribute ordered by a long projection, e.g. LocalDate::toEpochDay. */
+        <R> Builder<T> nullableLong(Function<? super T, ? extends R> attribute, ToLongFunction<? super R> key, Nulls nulls) {
+            parts.add((t, out, pos) -> {
+                R r = attribute.apply(t);
+                if (r != null) return putVarLong(out, pos, key.applyAsLong(r));
+                out.ensure(pos + 1);
+                out.bytes[pos] = (byte) (nulls == Nulls.FIRST ? 0x00 : 0xFF); // below / above every length tag
+                return pos + 1;
+            });
+            return this;
+        }
+
+        /** Null strings as {@code Comparator.nullsFirst/nullsLast}; INSENSITIVE matches String.CASE_INSENSITIVE_ORDER. */
+        Builder<T> string(Function<? super T, String> key, Case caseMode, Nulls nulls) {
+            boolean fold = caseMode == Case.INSENSITIVE;
+            parts.add((t, out, pos) -> {
+                String s = key.apply(t);
+                pos = putNullMarker(out, pos, s == null, nulls);
+                if (s == null) return pos;
+                int n = s.length();
+                out.ensure(pos + 3 * n + 1);
+                byte[] b = out.bytes;
+                for (int i = 0; i < n; i++) {
+                    char c = s.charAt(i);
+                    if (fold && !Character.isSurrogate(c)) c = Character.toLowerCase(Character.toUpperCase(c));
+                    // Order-preserving variable length: 0x00 ends the string, 0x01 escapes chars 0 and 1, ASCII is
+                    // one byte, then 0x80-0xBF lead two-byte and 0xC0 three-byte forms
+                    if (c <= 1) {
+                        b[pos++] = 1;
+                        b[pos++] = (byte) c;
+                    } else if (c < 0x80) {
+                        b[pos++] = (byte) c;
+                    } else if (c < 0x4000) {
+                        b[pos++] = (byte) (0x80 | c >>> 8);
+                        b[pos++] = (byte) c;
+                    } else {
+                        b[pos++] = (byte) 0xC0;
+                        b[pos++] = (byte) (c >>> 8);
+                        b[pos++] = (byte) c;
+                    }
+                }
+                b[pos++] = 0;
+                return pos;
+            });
+            return this;
+        }
+
+        Builder<T> descending() {
+            if (parts.isEmpty()) throw new IllegalStateException("no key part to reverse");
+            PartEncoder<T> ascending = parts.remove(parts.size() - 1);
+            parts.add((t, out, pos) -> {
+                int end = ascending.encode(t, out, pos);
+                byte[] b = out.bytes;
+                for (int i = pos; i < end; i++) b[i] = (byte) ~b[i];
+                return end;
+            });
+            return this;
+        }
+
+        KeySort<T> build() {
+            if (parts.isEmpty()) throw new IllegalStateException("no key parts");
+            return new KeySort<>(parts);
+        }
+
+        private static int putNullMarker(KeyBuffer out, int pos, boolean isNull, Nulls nulls) {
+            out.ensure(pos + 1);
+            out.bytes[pos] = (byte) (isNull ? (nulls == Nulls.FIRST ? 0 : 2) : 1);
+            return pos + 1;
+        }
+
+        // Order-preserving, prefix-free variable length: a tag byte 0x80 + n for v >= 0 (n significant bytes follow),
+        // 0x7F - n for v < 0 (the n significant bytes of ~v follow inverted). Tags 0x00 and 0xFF stay free for nulls.
+        private static int putVarLong(KeyBuffer out, int pos, long v) {
+            long m = v < 0 ? ~v : v;
+            int n = (71 - Long.numberOfLeadingZeros(m)) >>> 3;
+            out.ensure(pos + 1 + n);
+            byte[] b = out.bytes;
+            b[pos++] = (byte) (v < 0 ? 0x7F - n : 0x80 + n);
+            long body = v < 0 ? ~m : m;
+            for (int k = n - 1; k >= 0; k--) b[pos++] = (byte) (body >>> (8 * k));
+            return pos;
+        }
+
+        private static int putLong(KeyBuffer out, int pos, long v) {
+            out.ensure(pos + 8);
+            byte[] b = out.bytes;
+            for (int k = 7; k >= 0; k--) b[pos++] = (byte) (v >>> (8 * k));
+            return pos;
+        }
+    }
+
+    // ============================================================
+    // Benchmarks
+    // ============================================================
+
+    private static final int N = 4_000_000;
+    private static final String[] CITIES = {"Berlin", "berlin", "Paris", "London", "Shanghai", "Istanbul", "São Paulo",
+            "Zürich", "new york", "New York", "Osaka", "Lagos", "Lima", "Oslo", "Kraków", "Austin"};
+    private static final String[] SYLLABLES = {"al", "Ber", "ca", "Do", "el", "fi", "Ga", "hu", "Is", "jo", "Ka", "lé",
+            "Mo", "nu", "Ö", "pa", "Qu", "ri", "Sa", "to"};
+
+    private static void benchmarks() {
+        header("Sorting " + N / 1_000_000 + "M people, " + Runtime.getRuntime().availableProcessors() + " CPU(s)");
+        List<_02_Examples.Person> people = people(N, 1);
+
+        check("COMPLEX_COMPARATOR", people, _02_Examples.COMPLEX_COMPARATOR, COMPLEX_KEYS);
+        check("BY_JOIN_DATE_NEWEST_FIRST", people, _02_Examples.BY_JOIN_DATE_NEWEST_FIRST, JOIN_DATE_NEWEST_FIRST_KEYS);
+
+        bench("List.sort(COMPLEX_COMPARATOR)", people, l -> l.sort(_02_Examples.COMPLEX_COMPARATOR));
+        bench("Arrays.parallelSort(COMPLEX...)", people, l -> {
+            _02_Examples.Person[] a = l.toArray(new _02_Examples.Person[0]);
+            Arrays.parallelSort(a, _02_Examples.COMPLEX_COMPARATOR);
+            BLACKHOLE = a;
+        });
+        bench("KeySort.sort (COMPLEX)", people, COMPLEX_KEYS::sort);
+        bench("KeySort.parallelSort (COMPLEX)", people, COMPLEX_KEYS::parallelSort);
+        bench("  of which key extraction", people, l -> BLACKHOLE = COMPLEX_KEYS.extract(l, false));
+
+        bench("List.sort(BY_JOIN_DATE_NEWEST...)", people, l -> l.sort(_02_Examples.BY_JOIN_DATE_NEWEST_FIRST));
+        bench("KeySort.sort (JOIN_DATE)", people, JOIN_DATE_NEWEST_FIRST_KEYS::sort);
+
+        people = null;
+        List<_03_InterviewQA.Person> qa = new ArrayList<>(N);
+        List<_02_Examples.Person> source = people(N, 2);
+        for (_02_Examples.Person p : source) qa.add(new _03_InterviewQA.Person(p.getId(), p.getName(), p.getAge(), p.getHeight() * 50_000));
+        source = null;
+        List<_03_InterviewQA.Person> qaSorted = new ArrayList<>(qa);
+        qaSorted.sort(_03_InterviewQA.PersonComparators.BY_NAME_THEN_AGE);
+        List<_03_InterviewQA.Person> qaKeys = new ArrayList<>(qa);
+        NAME_THEN_AGE_KEYS.sort(qaKeys);
+        System.out.println("BY_NAME_THEN_AGE same order: " + sameElements(qaSorted, qaKeys));
+        qaSorted = qaKeys = null;
+        bench("List.sort(BY_NAME_THEN_AGE)", qa, l -> l.sort(_03_InterviewQA.PersonComparators.BY_NAME_THEN_AGE));
+        bench("KeySort.sort (NAME_THEN_AGE)", qa, NAME_THEN_AGE_KEYS::sort);
+    }
+
+    private static <T> void check(String label, List<T> data, Comparator<? super T> comparator, KeySort<T> keys) {
+        List<T> expected = new ArrayList<>(data);
+        expected.sort(comparator);
+        List<T> actual = new ArrayList<>(data);
+        keys.sort(actual);
+        List<T> parallel = new ArrayList<>(data);
+        keys.parallelSort(parallel);
+        System.out.println(label + " same order: sort " + sameElements(expected, actual) + ", parallelSort " + sameElements(expected, parallel));
+    }
+
+    private static <T> boolean sameElements(List<T> a, List<T> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    private static List<_02_Examples.Person> people(int n, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        List<_02_Examples.Person> list = new ArrayList<>(n);
+        String[] names = new String[50_000];
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int s = 2 + rnd.nextInt(3); s > 0; s--) sb.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+            names[i] = sb.toString();
+        }
+        LocalDate epoch = LocalDate.of(2010, 1, 1);
+        for (int i = 0; i < n; i++) {
+            String city = rnd.nextInt(20) == 0 ? null : CITIES[rnd.nextInt(CITIES.length)];
+            LocalDate joined = rnd.nextInt(10) == 0 ? null : epoch.plusDays(rnd.nextInt(5_000));
+            list.add(new _02_Examples.Person(i, names[rnd.nextInt(names.length)], 18 + rnd.nextInt(60),
+                    1.5 + rnd.nextDouble() / 2, city, joined));
+        }
+        return list;
+    }
+
+    private interface ListSort<T> {
+        void sort(List<T> list);
+    }
+
+    private static volatile Object BLACKHOLE;
+
+    // Each run sorts a fresh copy of the (unsorted) input
+    private static <T> void bench(String label, List<T> data, ListSort<T> sort) {
+        int warmups = 1, runs = 3;
+        long total = 0;
+        for (int i = 0; i < warmups + runs; i++) {
+            List<T> copy = new ArrayList<>(data);
+            long t0 = System.nanoTime();
+            sort.sort(copy);
+            long t = System.nanoTime() - t0;
+            if (i >= warmups) total += t;
+            BLACKHOLE = copy;
+        }
+        BLACKHOLE = null;
+        System.out.printf("%-35s %8.1f ms%n", label, total / 1e6 / runs);
+    }
+
+    private static String ids(List<_02_Examples.Person> list) {
+        StringBuilder sb = new StringBuilder();
+        for (_02_Examples.Person p : list) sb.append(p.getId()).append(' ');
+        return sb.toString().trim();
+    }
+
+    private static String qaIds(List<_03_InterviewQA.Person> list) {
+        StringBuilder sb = new StringBuilder();
+        for (_03_InterviewQA.Person p : list) sb.append(p.getId()).append(' ');
+        return sb.toString().trim();
+    }
+
+    private static void header(String title) {
+        System.out.println();
+        System.out.println("=== " + title + " ===");
+    }
+}
@@ -0,0 +1,690 @@
+package _05_01_generic_classes_and_methods;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import _05_01_generic_classes_and_methods._03_InterviewQA.InMemoryRepository;
+import _05_01_generic_classes_and_methods._03_InterviewQA.Repository;
+
+/*
+Indexed in-memory repository — generic over the id and entity type, with declarative secondary indexes and
+versioned snapshots.
+
+Starting point:
+- _03_InterviewQA.InMemoryRepository appends to an ArrayList; every query is a linear scan of findAll().
+- GenericRepository (_10_01_reflection_and_annotations._02_Examples) has an index map that add() never fills, and
+  snapshot() copies the whole HashMap.
+
+IndexedRepository<ID, T>:
+- Indexes are declared from getter method references and returned as typed handles:
+    HashIndex<Customer, String>    byCity  = repo.hashIndex("city", Customer::city);     // O(1) equality lookups
+    SortedIndex<Customer, Long>    byScore = repo.sortedIndex("score", Customer::score); // O(log n + k) ranges
+  The handle's type parameter K makes repo.find(byCity, 42) a compile error. Null keys are not indexed.
+- Multi-version storage (MVCC): every write creates a Row stamped with the version that created it; replacing or
+  deleting an entity stamps the old Row with the version that deleted it. A read at version v sees exactly the rows
+  with created <= v < deleted.
+- One writer at a time (ReentrantLock). It adds the new rows to the primary map and all indexes first, and publishes
+  the new version last with one volatile write. Readers never lock: they read the published version and filter, so
+  a write in progress is invisible to them.
+- A snapshot is just a version number plus a registration. It costs the same at 10 entities and at 10M, is
+  immutable, and stays consistent while writers continue. Close it (try-with-resources) so old rows can be reclaimed.
+- Old rows are removed by vacuum(), which the writer runs when garbage exceeds a quarter of the live rows. It keeps
+  everything the oldest open snapshot can still see. Reads without a snapshot check a vacuum generation counter
+  (seqlock style) and retry as a registered snapshot if a vacuum ran while they were reading.
+- Index buckets are append-only arrays with a volatile size (the single writer appends, readers read size first).
+  A key with a single row stores that Row directly, without a bucket. Vacuum builds new buckets instead of editing
+  ones that readers may be iterating.
+
+Benchmark: main() loads N customers (default 1M; pass 10000000 with -Xmx4g for the 10M run) and measures point
+and range queries and snapshot cost. It compares against a linear scan (InMemoryRepository) and against copying a
+HashMap as a snapshot. JMH is not on the classpath, so these are warmed-up nanoTime loops, as in _06_04.
+*/
+public class _04_IndexedRepository {
+
+    private static volatile Object BLACKHOLE;
+
+    record Customer(long id, long phone, String city, int age, long score) {
+        Customer withScore(long newScore) { return new Customer(id, phone, city, age, newScore); }
+    }
+
+    private static final String[] CITIES = {"Berlin", "Paris", "Madrid", "Rome", "Vienna", "Prague", "Lisbon",
+            "Warsaw", "Dublin", "Oslo", "Helsinki", "Athens", "Zurich", "Brussels", "Amsterdam", "Budapest"};
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        System.out.println("1) Indexes, snapshots and versions");
+        IndexedRepository<Long, Customer> small = new IndexedRepository<>(Customer::id);
+        HashIndex<Customer, String> cityIdx = small.hashIndex("city", Customer::city);
+        SortedIndex<Customer, Integer> ageIdx = small.sortedIndex("age", Customer::age);
+        small.save(new Customer(1, 100, "Berlin", 31, 10));
+        small.save(new Customer(2, 200, "Paris", 45, 20));
+        small.save(new Customer(3, 300, "Berlin", 27, 30));
+        try (Snapshot<Long, Customer> before = small.snapshot()) {
+            small.save(new Customer(3, 300, "Paris", 28, 30)); // moves city, changes age
+            small.delete(1L);
+            System.out.println("v" + before.version() + " Berlin: " + before.find(cityIdx, "Berlin"));
+            System.out.println("v" + small.version() + " Berlin: " + small.find(cityIdx, "Berlin"));
+            System.out.println("v" + before.version() + " age in [25, 35): " + before.range(ageIdx, 25, 35));
+            System.out.println("v" + small.version() + " age in [25, 35): " + small.range(ageIdx, 25, 35));
+            System.out.println("Repository.findAll at v" + small.version() + ": " + small.findAll());
+        }
+        System.out.println();
+
+        System.out.println("2) Load " + n + " customers");
+        IndexedRepository<Long, Customer> repo = new IndexedRepository<>(Customer::id);
+        HashIndex<Customer, Long> byPhone = repo.hashIndex("phone", Customer::phone);
+        HashIndex<Customer, String> byCity = repo.hashIndex("city", Customer::city);
+        SortedIndex<Customer, Long> byScore = repo.sortedIndex("score", Customer::score);
+        SortedIndex<Customer, Integer> byAge = repo.sortedIndex("age", Customer::age);
+        long scoreSpace = n * 10L;
+        long t0 = System.nanoTime();
+        SplittableRandom rnd = new SplittableRandom(42);
+        List<Customer> batch = new ArrayList<>(100_000);
+        for (int i = 0; i < n; i++) {
+            batch.add(new Customer(i, phoneOf(i), CITIES[i % CITIES.length], 18 + rnd.nextInt(70), rnd.nextLong(scoreSpace)));
+            if (batch.size() == 100_000 || i == n - 1) {
+                repo.saveAll(batch);
+                batch.clear();
+            }
+        }
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        System.out.printf("loaded in %.1f s, version %d, heap used ~%d MB%n", (System.nanoTime() - t0) / 1e9,
+                repo.version(), (rt.totalMemory() - rt.freeMemory()) >> 20);
+        System.out.println();
+
+        System.out.println("3) Point queries (1M lookups each)");
+        int lookups = 1_000_000;
+        bench("findById (primary)", 2, 3, () -> {
+            SplittableRandom r = new SplittableRandom(1);
+            long hits = 0;
+            for (int i = 0; i < lookups; i++) hits += repo.findById((long) r.nextInt(n)).isPresent() ? 1 : 0;
+            BLACKHOLE = hits;
+        });
+        bench("find(byPhone) unique hash index", 2, 3, () -> {
+            SplittableRandom r = new SplittableRandom(2);
+            long hits = 0;
+            for (int i = 0; i < lookups; i++) hits += repo.find(byPhone, phoneOf(r.nextInt(n))).size();
+            BLACKHOLE = hits;
+        });
+        try (Snapshot<Long, Customer> s = repo.snapshot()) {
+            bench("find(byPhone) on a snapshot", 2, 3, () -> {
+                SplittableRandom r = new SplittableRandom(2);
+                long hits = 0;
+                for (int i = 0; i < lookups; i++) hits += s.find(byPhone, phoneOf(r.nextInt(n))).size();
+                BLACKHOLE = hits;
+            });
+        }
+        linearScanBaseline(repo, n);
+        System.out.println();
+
+        System.out.println("4) Range queries");
+        int ranges = 100_000;
+        bench("100K score ranges of width 100", 1, 3, () -> {
+            SplittableRandom r = new SplittableRandom(4);
+            long rows = 0;
+            for (int i = 0; i < ranges; i++) {
+                long from = r.nextLong(scoreSpace);
+                rows += repo.range(byScore, from, from + 100).size();
+            }
+            BLACKHOLE = rows;
+        });
+        bench("10 age ranges [30, 32)", 1, 3, () -> {
+            long rows = 0;
+            for (int i = 0; i < 10; i++) rows += repo.range(byAge, 30, 32).size();
+            BLACKHOLE = rows;
+        });
+        bench("10 city lookups (1/16 of all rows)", 1, 3, () -> {
+            long rows = 0;
+            for (int i = 0; i < 10; i++) rows += repo.find(byCity, CITIES[i]).size();
+            BLACKHOLE = rows;
+        });
+        System.out.println();
+
+        System.out.println("5) Snapshot cost");
+        bench("1M snapshot open+close", 1, 3, () -> {
+            long v = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                try (Snapshot<Long, Customer> s = repo.snapshot()) {
+                    v += s.version();
+                }
+            }
+            BLACKHOLE = v;
+        });
+        // Copy cost grows linearly; measured on at most 1M entries to stay within the heap at 10M
+        int copied = Math.min(n, 1_000_000);
+        Map<Long, Customer> plain = new HashMap<>(copied * 2);
+        for (long id = 0; id < copied; id++) plain.put(id, repo.findById(id).orElseThrow());
+        bench("HashMap copy of " + copied / 1000 + "K (snapshot())", 0, 3, () -> BLACKHOLE = new HashMap<>(plain));
+        plain.clear();
+        BLACKHOLE = null;
+        System.out.println();
+
+        System.out.println("6) Reads during writes");
+        Snapshot<Long, Customer> frozen = repo.snapshot();
+        int frozenRich = frozen.range(byScore, scoreSpace - scoreSpace / 100, scoreSpace).size();
+        Thread writer = new Thread(() -> {
+            SplittableRandom r = new SplittableRandom(5);
+            List<Customer> updates = new ArrayList<>(10_000);
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 10_000; i++) {
+                    Customer c = repo.findById((long) r.nextInt(n)).orElseThrow();
+                    updates.add(c.withScore(r.nextLong(scoreSpace)));
+                }
+                repo.saveAll(updates);
+                updates.clear();
+            }
+        }, "writer");
+        writer.start();
+        long reads = 0;
+        boolean stable = true;
+        while (writer.isAlive()) {
+            stable &= frozen.range(byScore, scoreSpace - scoreSpace / 100, scoreSpace).size() == frozenRich;
+            reads += repo.range(byScore, scoreSpace - scoreSpace / 100, scoreSpace).size() > 0 ? 1 : 0;
+        }
+        writer.join();
+        System.out.println("top 1% by score at v" + frozen.version() + ": " + frozenRich + " rows, unchanged during "
+                + "200K updates: " + stable + "; concurrent latest reads: " + reads);
+        System.out.println("now at v" + repo.version() + ": " + repo.range(byScore, scoreSpace - scoreSpace / 100, scoreSpace).size()
+                + " rows; garbage rows kept for the open snapshot: " + repo.garbageRows());
+        frozen.close();
+        repo.vacuum();
+        System.out.println("after closing it and vacuum: garbage rows " + repo.garbageRows());
+    }
+
+    // Same lookups without indexes; the copy is dropped on return
+    private static void linearScanBaseline(IndexedRepository<Long, Customer> repo, int n) {
+        InMemoryRepository<Customer> scanRepo = new InMemoryRepository<>();
+        repo.forEach(scanRepo::save);
+        bench("InMemoryRepository scan x10", 0, 1, () -> {
+            SplittableRandom r = new SplittableRandom(3);
+            long hits = 0;
+            for (int i = 0; i < 10; i++) {
+                long phone = phoneOf(r.nextInt(n));
+                hits += scanRepo.findAll().stream().filter(c -> c.phone() == phone).count();
+            }
+            BLACKHOLE = hits;
+        });
+    }
+
+    private static long phoneOf(int i) {
+        return 4_900_000_000L + i * 7L;
+    }
+
+    // ----------------------------------------------------------------
+    // Repository
+    // ----------------------------------------------------------------
+    static final class IndexedRepository<ID, T> implements Repository<T> {
+        private final Function<? super T, ? extends ID> idOf;
+        private final ConcurrentMap<ID, Row<T>> primary = new ConcurrentHashMap<>();
+        private final List<Index<T, ?>> indexes = new ArrayList<>();
+        private final ReentrantLock writeLock = new ReentrantLock();
+        // Versions of open snapshots -> how many are open at that version
+        private final ConcurrentSkipListMap<Long, Integer> openSnapshots = new ConcurrentSkipListMap<>();
+
+        private volatile State state = new State(0, 0);
+        // Highest version any vacuum has announced it may clean up to; snapshots below it must retry
+        private volatile long vacuumFloor;
+        // Odd while a vacuum is removing rows
+        private volatile long vacuumGeneration;
+        private long garbageRows; // guarded by writeLock
+        private long lastVacuumHorizon; // guarded by writeLock
+
+        private record State(long version, int size) { }
+
+        IndexedRepository(Function<? super T, ? extends ID> idOf) {
+            this.idOf = Objects.requireNonNull(idOf);
+        }
+
+        // ---- index declaration ----
+
+        <K> HashIndex<T, K> hashIndex(String name, Function<? super T, ? extends K> key) {
+            return addIndex(new HashIndex<>(this, name, key));
+        }
+
+        <K extends Comparable<? super K>> SortedIndex<T, K> sortedIndex(String name, Function<? super T, ? extends K> key) {
+            return addIndex(new SortedIndex<>(this, name, key));
+        }
+
+        private <X extends Index<T, ?>> X addIndex(X index) {
+            writeLock.lock();
+            try {
+                // Existing rows of all versions, so open snapshots can use the new index too
+                for (Row<T> head : primary.values()) {
+                    for (Row<T> r = head; r != null; r = r.prev) index.insert(r);
+                }
+                indexes.add(index);
+                return index;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        // ---- writes ----
+
+        /** Inserts or replaces the entity with the same id. */
+        @Override
+        public void save(T entity) {
+            saveAll(List.of(entity));
+        }
+
+        /** All entities become visible together, as one new version. */
+        void saveAll(Collection<? extends T> entities) {
+            writeLock.lock();
+            try {
+                State s = state;
+                long v = s.version + 1;
+                int size = s.size;
+                for (T e : entities) {
+                    ID id = Objects.requireNonNull(idOf.apply(e), "id");
+                    Row<T> old = primary.get(id);
+                    Row<T> row = new Row<>(e, v, old);
+                    primary.put(id, row);
+                    for (Index<T, ?> index : indexes) index.insert(row);
+                    if (old != null && old.deleted == Long.MAX_VALUE) {
+                        old.deleted = v;
+                        garbageRows++;
+                    } else {
+                        size++;
+                    }
+                }
+                publish(v, size);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        boolean delete(ID id) {
+            writeLock.lock();
+            try {
+                Row<T> head = primary.get(id);
+                if (head == null || head.deleted != Long.MAX_VALUE) return false;
+                State s = state;
+                head.deleted = s.version + 1;
+                garbageRows++;
+                publish(s.version + 1, s.size - 1);
+                return true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void publish(long version, int size) {
+            state = new State(version, size); // the single point where a write becomes visible
+            // Only worth a full pass if the oldest open snapshot has moved since the last one
+            if (garbageRows > 1024 && garbageRows > size / 4 && oldestVisibleVersion() > lastVacuumHorizon) vacuum();
+        }
+
+        private long oldestVisibleVersion() {
+            Map.Entry<Long, Integer> oldest = openSnapshots.firstEntry();
+            long current = state.version;
+            return oldest == null ? current : Math.min(oldest.getKey(), current);
+        }
+
+        /** Drops rows that no open snapshot can see any more. */
+        void vacuum() {
+            writeLock.lock();
+            try {
+                long current = state.version;
+                vacuumFloor = current; // announce before reading registrations (see snapshot())
+                long horizon = oldestVisibleVersion();
+
+                vacuumGeneration++; // odd: unregistered reads started from now on must retry
+                long removed = 0;
+                for (Map.Entry<ID, Row<T>> e : primary.entrySet()) {
+                    Row<T> head = e.getValue();
+                    if (head.deleted <= horizon) {
+                        primary.remove(e.getKey(), head);
+                        removed += chainLength(head);
+                        continue;
+                    }
+                    for (Row<T> r = head; r.prev != null; r = r.prev) {
+                        if (r.prev.deleted <= horizon) {
+                            removed += chainLength(r.prev);
+                            r.prev = null;
+                            break;
+                        }
+                    }
+                }
+                for (Index<T, ?> index : indexes) index.vacuum(horizon);
+                vacuumGeneration++;
+                garbageRows -= removed;
+                lastVacuumHorizon = horizon;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private static int chainLength(Row<?> row) {
+            int n = 0;
+            for (Row<?> r = row; r != null; r = r.prev) n++;
+            return n;
+        }
+
+        // ---- reads ----
+
+        Snapshot<ID, T> snapshot() {
+            for (;;) {
+                State s = state;
+                openSnapshots.merge(s.version, 1, Integer::sum);
+                if (vacuumFloor <= s.version) return new Snapshot<>(this, s);
+                release(s.version); // a vacuum may not have seen us: take a newer version
+            }
+        }
+
+        private void release(long version) {
+            openSnapshots.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+        }
+
+        long version() { return state.version; }
+        int size() { return state.size; }
+        long garbageRows() { return garbageRows; }
+
+        Optional<T> findById(ID id) {
+            return readLatest(v -> visibleById(id, v));
+        }
+
+        <K> List<T> find(HashIndex<T, K> index, K key) {
+            checkOwner(index);
+            return readLatest(v -> index.find(key, v));
+        }
+
+        /** Entities with from <= key < to. */
+        <K extends Comparable<? super K>> List<T> range(SortedIndex<T, K> index, K from, K to) {
+            return range(index, from, true, to, false);
+        }
+
+        <K extends Comparable<? super K>> List<T> range(SortedIndex<T, K> index, K from, boolean fromInclusive, K to, boolean toInclusive) {
+            checkOwner(index);
+            return readLatest(v -> index.range(from, fromInclusive, to, toInclusive, v));
+        }
+
+        /** Current entities; Repository contract. */
+        @Override
+        public List<T> findAll() {
+            List<T> all = new ArrayList<>(state.size);
+            forEach(all::add);
+            return all;
+        }
+
+        void forEach(Consumer<? super T> action) {
+            try (Snapshot<ID, T> s = snapshot()) {
+                s.forEach(action);
+            }
+        }
+
+        // Unregistered read at the latest version; valid unless a vacuum overlapped it
+        private <R> R readLatest(LongFunction<R> query) {
+            long generation = vacuumGeneration;
+            if ((generation & 1) == 0) {
+                R result = query.apply(state.version);
+                if (vacuumGeneration == generation) return result;
+            }
+            try (Snapshot<ID, T> s = snapshot()) {
+                return query.apply(s.version());
+            }
+        }
+
+        private Optional<T> visibleById(ID id, long version) {
+            for (Row<T> r = primary.get(id); r != null; r = r.prev) {
+                if (r.visibleAt(version)) return Optional.of(r.value);
+                if (r.created <= version) break; // older versions were deleted before this one was created
+            }
+            return Optional.empty();
+        }
+
+        private void checkOwner(Index<T, ?> index) {
+            if (index.owner != this) throw new IllegalArgumentException("index " + index.name + " belongs to another repository");
+        }
+    }
+
+    /** Immutable view of the repository at one version. Close it to let vacuum reclaim older rows. */
+    static final class Snapshot<ID, T> implements AutoCloseable {
+        private final IndexedRepository<ID, T> repo;
+        private final long version;
+        private final int size;
+        private final AtomicBoolean closed = new AtomicBoolean(); // closed from any thread, released exactly once
+
+        private Snapshot(IndexedRepository<ID, T> repo, IndexedRepository.State state) {
+            this.repo = repo;
+            this.version = state.version();
+            this.size = state.size();
+        }
+
+        long version() { return version; }
+        int size() { return size; }
+
+        Optional<T> findById(ID id) {
+            checkOpen();
+            return repo.visibleById(id, version);
+        }
+
+        <K> List<T> find(HashIndex<T, K> index, K key) {
+            checkOpen();
+            repo.checkOwner(index);
+            return index.find(key, version);
+        }
+
+        <K extends Comparable<? super K>> List<T> range(SortedIndex<T, K> index, K from, K to) {
+            checkOpen();
+            repo.checkOwner(index);
+            return index.range(from, true, to, false, version);
+        }
+
+        void forEach(Consumer<? super T> action) {
+            checkOpen();
+            for (Row<T> head : repo.primary.values()) {
+                for (Row<T> r = head; r != null; r = r.prev) {
+                    if (r.visibleAt(version)) {
+                        action.accept(r.value);
+                        break;
+                    }
+                    if (r.created <= version) break;
+                }
+            }
+        }
+
+        private void checkOpen() {
+            if (closed.get()) throw new IllegalStateException("snapshot v" + version + " is closed");
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) repo.release(version);
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Rows and indexes
+    // ----------------------------------------------------------------
+
+    /** One version of one entity. */
+    static final class Row<T> {
+        final T value;
+        final long created;
+        volatile long deleted = Long.MAX_VALUE;
+        volatile Row<T> prev; // older version of the same id, cut by vacuum
+
+        Row(T value, long created, Row<T> prev) {
+            this.value = value;
+            this.created = created;
+            this.prev = prev;
+        }
+
+        boolean visibleAt(long version) {
+            return created <= version && version < deleted;
+        }
+    }
+
+    /** Append-only list of rows for one key; only the writer appends. */
+    static final class Bucket<T> {
+        private volatile Row<T>[] rows;
+        private volatile int size;
+
+        @SuppressWarnings("unchecked")
+        Bucket(Row<T> first, Row<T> second) {
+            rows = (Row<T>[]) new Row<?>[4];
+            rows[0] = first;
+            rows[1] = second;
+            size = 2;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Bucket(List<Row<T>> kept) {
+            rows = kept.toArray((Row<T>[]) new Row<?>[0]);
+            size = rows.length;
+        }
+
+        void append(Row<T> row) {
+            Row<T>[] a = rows;
+            int n = size;
+            if (n == a.length) {
+                a = Arrays.copyOf(a, n * 2);
+                a[n] = row;
+                rows = a;
+            } else {
+                a[n] = row;
+            }
+            size = n + 1; // publishes the element to readers that read size first
+        }
+
+        void collectVisible(long version, List<T> out) {
+            int n = size;
+            Row<T>[] a = rows;
+            for (int i = 0; i < n; i++) {
+                if (a[i].visibleAt(version)) out.add(a[i].value);
+            }
+        }
+    }
+
+    abstract static sealed class Index<T, K> permits HashIndex, SortedIndex {
+        final IndexedRepository<?, T> owner;
+        final String name;
+        private final Function<? super T, ? extends K> key;
+
+        Index(IndexedRepository<?, T> owner, String name, Function<? super T, ? extends K> key) {
+            this.owner = owner;
+            this.name = name;
+            this.key = key;
+        }
+
+        /** Key -> Row (single row) or Bucket. */
+        abstract Map<K, Object> entries();
+
+        void insert(Row<T> row) {
+            K k = key.apply(row.value);
+            if (k == null) return;
+            Map<K, Object> map = entries();
+            Object current = map.get(k);
+            if (current == null) {
+                map.put(k, row);
+            } else if (current instanceof Row<?> single) {
+                @SuppressWarnings("unchecked") Row<T> first = (Row<T>) single;
+                map.put(k, new Bucket<>(first, row));
+            } else {
+                @SuppressWarnings("unchecked") Bucket<T> bucket = (Bucket<T>) current;
+                bucket.append(row);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> void collect(Object entry, long version, List<T> out) {
+            if (entry instanceof Row<?> row) {
+                if (row.visibleAt(version)) out.add((T) row.value);
+            } else if (entry != null) {
+                ((Bucket<T>) entry).collectVisible(version, out);
+            }
+        }
+
+        /** Replaces buckets holding rows deleted at or before {@code horizon}. */
+        @SuppressWarnings("unchecked")
+        void vacuum(long horizon) {
+            Map<K, Object> map = entries();
+            for (Map.Entry<K, Object> e : map.entrySet()) {
+                Object entry = e.getValue();
+                if (entry instanceof Row<?> row) {
+                    if (row.deleted <= horizon) map.remove(e.getKey(), entry);
+                    continue;
+                }
+                Bucket<T> bucket = (Bucket<T>) entry;
+                int n = bucket.size;
+                Row<T>[] rows = bucket.rows;
+                List<Row<T>> kept = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    if (rows[i].deleted > horizon) kept.add(rows[i]);
+                }
+                if (kept.size() == n) continue;
+                if (kept.isEmpty()) map.remove(e.getKey(), entry);
+                else map.put(e.getKey(), kept.size() == 1 ? kept.get(0) : new Bucket<>(kept));
+            }
+        }
+    }
+
+    static final class HashIndex<T, K> extends Index<T, K> {
+        private final ConcurrentHashMap<K, Object> map = new ConcurrentHashMap<>();
+
+        HashIndex(IndexedRepository<?, T> owner, String name, Function<? super T, ? extends K> key) {
+            super(owner, name, key);
+        }
+
+        @Override Map<K, Object> entries() { return map; }
+
+        List<T> find(K key, long version) {
+            if (key == null) return List.of();
+            List<T> out = new ArrayList<>(2);
+            collect(map.get(key), version, out);
+            return out;
+        }
+    }
+
+    static final class SortedIndex<T, K extends Comparable<? super K>> extends Index<T, K> {
+        private final ConcurrentSkipListMap<K, Object> map = new ConcurrentSkipListMap<>();
+
+        SortedIndex(IndexedRepository<?, T> owner, String name, Function<? super T, ? extends K> key) {
+            super(owner, name, key);
+        }
+
+        @Override Map<K, Object> entries() { return map; }
+
+        List<T> range(K from, boolean fromInclusive, K to, boolean toInclusive, long version) {
+            NavigableMap<K, Object> sub = map.subMap(from, fromInclusive, to, toInclusive);
+            List<T> out = new ArrayList<>();
+            for (Object entry : sub.values()) collect(entry, version, out);
+            return out;
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+}
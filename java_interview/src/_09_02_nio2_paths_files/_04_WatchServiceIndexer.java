@@ -0,0 +1,390 @@
+package _09_02_nio2_paths_files;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * WatchService-driven incremental indexing – runnable example covering:
+ * - Recursive registration of a directory tree (WatchService only watches one directory per key)
+ * - Registering new subtrees as they appear (and scanning them, since files may exist before registration)
+ * - Debouncing: bursts of events for the same path are coalesced until the path has been quiet for a window
+ * - OVERFLOW handling: events were lost, so the affected directory is rescanned instead
+ * - An incremental content index that re-reads a file only when its size or mtime changed, or when the stamp
+ *   cannot be trusted because the file was written too close to the moment it was last read
+ *
+ * Notes:
+ * - Events are hints, not facts. At flush time we look at the file system to decide what actually happened
+ *   (CREATE+DELETE within the window collapses to "nothing", MODIFY x 50 collapses to one re-read).
+ * - A maximum delay caps how long a constantly changing file can be starved by the debounce window.
+ * - On some platforms (macOS) the default WatchService polls, so latency is in seconds.
+ */
+public class _04_WatchServiceIndexer {
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("_nio2_watch_indexer_");
+        System.out.println("Watch root: " + root);
+        try {
+            seedTree(root);
+
+            ContentIndex index = new ContentIndex();
+            try (RecursiveWatcher watcher = new RecursiveWatcher(root, index, 200, 2_000)) {
+                Thread loop = new Thread(watcher, "watch-indexer");
+                loop.setDaemon(true);
+                loop.start();
+                watcher.awaitIdle(5_000);
+                System.out.println("Initial scan: files=" + index.size() + " reads=" + index.reads());
+
+                // 1) Burst of writes to one file -> one re-read
+                Path app = root.resolve("config/app.properties");
+                for (int i = 0; i < 50; i++) {
+                    Files.writeString(app, "mode=fast\nversion=" + i + "\n",
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                }
+                // 2) New subtree created after registration
+                Path nested = Files.createDirectories(root.resolve("data/2024/q1"));
+                Files.writeString(nested.resolve("orders.csv"), "orderId,amount\n1,99\n");
+                // 3) Create + delete inside one window -> no index change
+                Path scratch = root.resolve("data/scratch.tmp");
+                Files.writeString(scratch, "temporary");
+                Files.delete(scratch);
+                // 4) Plain delete
+                Files.delete(root.resolve("data/old.csv"));
+
+                watcher.awaitIdle(10_000);
+                System.out.println("Raw events received: " + watcher.rawEvents());
+                System.out.println("Paths flushed after coalescing: " + watcher.flushedPaths());
+                System.out.println("Directory rescans: " + watcher.rescans());
+                System.out.println("Files indexed: " + index.size() + ", total content reads: " + index.reads());
+                System.out.println("search('version=49'): " + rel(root, index.search("version=49")));
+                System.out.println("search('orderid,amount'): " + rel(root, index.search("orderid,amount")));
+                System.out.println("search('temporary'): " + rel(root, index.search("temporary")));
+            }
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Watch loop: recursive registration + debounce + OVERFLOW fallback
+    // ------------------------------------------------------------
+    static final class RecursiveWatcher implements Runnable, AutoCloseable {
+        private final Path root;
+        private final ContentIndex index;
+        private final long quietNanos;
+        private final long maxDelayNanos;
+        private final WatchService ws;
+        private final Map<WatchKey, Path> keys = new HashMap<>();
+        // Insertion-ordered so flushes process paths roughly in arrival order
+        private final Map<Path, Pending> pending = new LinkedHashMap<>();
+        private final Set<Path> pendingRescans = new LinkedHashSet<>();
+        private final AtomicLong rawEvents = new AtomicLong();
+        private final AtomicLong flushedPaths = new AtomicLong();
+        private final AtomicLong rescans = new AtomicLong();
+        private volatile boolean idle;
+
+        // firstSeen bounds the total delay; lastSeen drives the quiet window
+        private static final class Pending {
+            final long firstSeen;
+            long lastSeen;
+            Pending(long now) { this.firstSeen = now; this.lastSeen = now; }
+        }
+
+        RecursiveWatcher(Path root, ContentIndex index, long quietMillis, long maxDelayMillis) throws IOException {
+            this.root = root;
+            this.index = index;
+            this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+            this.ws = FileSystems.getDefault().newWatchService();
+            registerTree(root);
+            pendingRescans.add(root); // initial full scan, done on the watch thread
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long wait = nanosUntilNextFlush();
+                    WatchKey key = wait < 0 ? ws.take() : ws.poll(wait, TimeUnit.NANOSECONDS);
+                    idle = false;
+                    // Drain everything that is already queued before deciding what to flush
+                    while (key != null) {
+                        processKey(key);
+                        key = ws.poll();
+                    }
+                    flushDue(System.nanoTime());
+                    idle = pending.isEmpty() && pendingRescans.isEmpty();
+                }
+            } catch (ClosedWatchServiceException | InterruptedException stop) {
+                // closed or interrupted -> leave the loop
+            }
+        }
+
+        private void processKey(WatchKey key) {
+            Path dir = keys.get(key);
+            long now = System.nanoTime();
+            for (WatchEvent<?> ev : key.pollEvents()) {
+                rawEvents.incrementAndGet();
+                if (ev.kind() == OVERFLOW) {
+                    // Events were dropped: we no longer know what changed, so rescan what this key covers
+                    pendingRescans.add(dir != null ? dir : root);
+                    continue;
+                }
+                if (dir == null) continue;
+                Path child = dir.resolve((Path) ev.context());
+                if (ev.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    // Register first, then scan: files created before registration produced no events
+                    try {
+                        registerTree(child);
+                    } catch (IOException e) {
+                        System.out.println("register failed: " + child + " (" + e.getClass().getSimpleName() + ")");
+                    }
+                    pendingRescans.add(child);
+                    continue;
+                }
+                Pending p = pending.get(child);
+                if (p == null) pending.put(child, new Pending(now));
+                else p.lastSeen = now;
+            }
+            if (!key.reset()) {
+                // Directory deleted or inaccessible: forget the key and drop index entries below it
+                keys.remove(key);
+                if (dir != null) index.removeUnder(dir);
+            }
+        }
+
+        private void flushDue(long now) {
+            if (!pendingRescans.isEmpty()) {
+                for (Path dir : collapseNested(pendingRescans)) {
+                    rescans.incrementAndGet();
+                    index.rescan(dir);
+                    // A rescan already covers any pending single-path updates below it
+                    pending.keySet().removeIf(p -> p.startsWith(dir));
+                }
+                pendingRescans.clear();
+            }
+            var it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                var e = it.next();
+                Pending p = e.getValue();
+                if (now - p.lastSeen >= quietNanos || now - p.firstSeen >= maxDelayNanos) {
+                    it.remove();
+                    flushedPaths.incrementAndGet();
+                    index.refresh(e.getKey());
+                }
+            }
+        }
+
+        // -1 means "nothing pending, block until the next key"
+        private long nanosUntilNextFlush() {
+            if (!pendingRescans.isEmpty()) return 0;
+            if (pending.isEmpty()) return -1;
+            long now = System.nanoTime();
+            long next = Long.MAX_VALUE;
+            for (Pending p : pending.values()) {
+                long due = Math.min(p.lastSeen + quietNanos, p.firstSeen + maxDelayNanos);
+                next = Math.min(next, due);
+            }
+            return Math.max(0, next - now);
+        }
+
+        private void registerTree(Path start) throws IOException {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    keys.put(dir.register(ws, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE; // vanished or unreadable; the index will catch up later
+                }
+            });
+        }
+
+        // Drops directories already covered by an ancestor in the same set
+        private static List<Path> collapseNested(Set<Path> dirs) {
+            List<Path> out = new ArrayList<>();
+            for (Path d : new TreeSet<>(dirs)) {
+                if (out.isEmpty() || !d.startsWith(out.get(out.size() - 1))) out.add(d);
+            }
+            return out;
+        }
+
+        // Test/demo helper: waits until the loop has nothing pending
+        void awaitIdle(long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            Thread.sleep(quietNanos / 1_000_000 + 100);
+            while (!idle && System.currentTimeMillis() < end) Thread.sleep(50);
+        }
+
+        long rawEvents() { return rawEvents.get(); }
+        long flushedPaths() { return flushedPaths.get(); }
+        long rescans() { return rescans.get(); }
+
+        @Override
+        public void close() throws IOException {
+            ws.close();
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Incremental content index: stat first, read only on change
+    // ------------------------------------------------------------
+    static final class ContentIndex {
+        private record Entry(long size, FileTime mtime, long readAtMillis, Set<String> terms) {}
+
+        // Coarser than any common mtime granularity (FAT: 2 s, HFS+: 1 s, ext4/NTFS: far finer)
+        private static final long RACY_WINDOW_MILLIS = 2_000;
+
+        private final Map<Path, Entry> files = new ConcurrentHashMap<>();
+        private final Map<String, Set<Path>> postings = new ConcurrentHashMap<>();
+        private final AtomicLong reads = new AtomicLong();
+
+        // Called for a single dirty path after debouncing
+        void refresh(Path path) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException gone) {
+                remove(path);
+                removeUnder(path); // path may have been a directory
+                return;
+            }
+            if (attrs.isDirectory()) {
+                rescan(path);
+                return;
+            }
+            if (!attrs.isRegularFile()) return;
+            Entry old = files.get(path);
+            FileTime mtime = attrs.lastModifiedTime();
+            if (old != null && old.size() == attrs.size() && old.mtime().equals(mtime) && !isRacy(old)) return; // unchanged
+            long readAt = System.currentTimeMillis();
+            Set<String> terms;
+            try {
+                terms = tokenize(Files.readString(path, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                return; // unreadable or racing with a writer; a later event will retry
+            }
+            reads.incrementAndGet();
+            if (old != null) unlink(path, old.terms());
+            files.put(path, new Entry(attrs.size(), mtime, readAt, terms));
+            for (String t : terms) postings.computeIfAbsent(t, k -> ConcurrentHashMap.newKeySet()).add(path);
+        }
+
+        // A file read within one timestamp tick of its mtime can be rewritten with the same size and the same
+        // mtime (same millisecond, or a coarse file system). Such a stamp proves nothing, so the file is read
+        // again; once it has been quiet for the window the re-read records a stamp that can be trusted.
+        private static boolean isRacy(Entry e) {
+            return e.mtime().toMillis() >= e.readAtMillis() - RACY_WINDOW_MILLIS;
+        }
+
+        // Fallback after OVERFLOW or for a freshly registered subtree: stat everything, read what changed
+        void rescan(Path dir) {
+            Set<Path> seen = new HashSet<>();
+            try (Stream<Path> s = Files.walk(dir)) {
+                s.filter(p -> Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS)).forEach(p -> {
+                    seen.add(p);
+                    refresh(p);
+                });
+            } catch (IOException | java.io.UncheckedIOException e) {
+                // Partial scan; entries we did not see are left alone rather than wrongly removed
+                return;
+            }
+            for (Path p : new ArrayList<>(files.keySet())) {
+                if (p.startsWith(dir) && !seen.contains(p)) remove(p);
+            }
+        }
+
+        void removeUnder(Path dir) {
+            for (Path p : new ArrayList<>(files.keySet())) {
+                if (p.startsWith(dir)) remove(p);
+            }
+        }
+
+        void remove(Path path) {
+            Entry old = files.remove(path);
+            if (old != null) unlink(path, old.terms());
+        }
+
+        private void unlink(Path path, Set<String> terms) {
+            for (String t : terms) {
+                postings.computeIfPresent(t, (k, set) -> {
+                    set.remove(path);
+                    return set.isEmpty() ? null : set;
+                });
+            }
+        }
+
+        Set<Path> search(String term) {
+            return postings.getOrDefault(term.toLowerCase(), Set.of());
+        }
+
+        int size() { return files.size(); }
+        long reads() { return reads.get(); }
+
+        private static Set<String> tokenize(String text) {
+            Set<String> terms = new HashSet<>();
+            for (String t : text.toLowerCase().split("\\s+")) {
+                if (!t.isEmpty()) terms.add(t);
+            }
+            return terms;
+        }
+    }
+
+    // Helpers
+
+    private static void seedTree(Path root) throws IOException {
+        Files.createDirectories(root.resolve("config"));
+        Files.createDirectories(root.resolve("data"));
+        Files.writeString(root.resolve("config/app.properties"), "mode=slow\n");
+        Files.writeString(root.resolve("config/db.properties"), "url=jdbc:h2:mem\n");
+        Files.writeString(root.resolve("data/old.csv"), "legacy\n");
+    }
+
+    private static Set<Path> rel(Path root, Set<Path> paths) {
+        Set<Path> out = new TreeSet<>();
+        for (Path p : paths) out.add(root.relativize(p));
+        return out;
+    }
+
+    private static void deleteRecursively(Path root) {
+        if (root == null) return;
+        try (Stream<Path> s = Files.walk(root)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+            });
+        } catch (IOException ignored) {}
+    }
+}
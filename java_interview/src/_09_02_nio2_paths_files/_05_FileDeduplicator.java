@@ -0,0 +1,338 @@
+package _09_02_nio2_paths_files;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Duplicate file detection across a large tree, reading as few bytes as possible.
+ *
+ * Pipeline (each stage only sees the survivors of the previous one):
+ * 1) Walk the tree, group regular files by size. A unique size cannot have a duplicate -> no bytes read.
+ *    Hard links (same fileKey) are collapsed first: they already share storage, nothing to reclaim.
+ * 2) Hash only the first and last 4 KB of each candidate. Most same-size files differ in headers/trailers.
+ *    Files no larger than 8 KB are fully covered by this step and are final.
+ * 3) For the rest: a pair is compared with Files.mismatch (stops at the first differing byte);
+ *    larger groups get a full SHA-256 over memory-mapped regions, hashed in parallel.
+ *
+ * Notes:
+ * - Mapping is done in bounded chunks (a single MappedByteBuffer is limited to 2 GB).
+ * - Hashing is parallel across files on a dedicated ForkJoinPool so I/O waits do not starve the common pool.
+ * - SHA-256 is used for the final verdict; a weak checksum is fine as a filter but not for deleting data.
+ */
+public class _05_FileDeduplicator {
+
+    // Used to prevent dead-code elimination during ad-hoc timing.
+    private static volatile Object BLACKHOLE;
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("_nio2_dedup_");
+        System.out.println("Dedup root: " + root);
+        try {
+            long totalBytes = seedTree(root);
+            System.out.println("Tree bytes: " + totalBytes);
+
+            Deduplicator dedup = new Deduplicator(Runtime.getRuntime().availableProcessors());
+            Result r = dedup.scan(root);
+            for (DuplicateGroup g : r.groups()) {
+                System.out.println("dup size=" + g.size() + " -> "
+                        + g.paths().stream().map(p -> root.relativize(p).toString()).sorted().toList());
+            }
+            System.out.println("Reclaimable bytes: " + r.reclaimableBytes());
+            System.out.println("Bytes read by engine: " + r.bytesRead()
+                    + String.format(" (%.1f%% of tree)", 100.0 * r.bytesRead() / totalBytes));
+
+            header("Naive full-hash vs staged engine");
+            bench("Hash every file fully", 1, 3, () -> BLACKHOLE = naiveFullHash(root));
+            bench("Staged size/edge/full engine", 1, 3, () -> {
+                try {
+                    BLACKHOLE = dedup.scan(root);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    record DuplicateGroup(long size, List<Path> paths) {}
+
+    record Result(List<DuplicateGroup> groups, long bytesRead) {
+        long reclaimableBytes() {
+            long total = 0;
+            for (DuplicateGroup g : groups) total += g.size() * (g.paths().size() - 1);
+            return total;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Staged deduplicator
+    // ------------------------------------------------------------
+    static final class Deduplicator {
+        static final int EDGE = 4 * 1024;
+        static final long MAP_CHUNK = 64L * 1024 * 1024;
+
+        private final int parallelism;
+
+        Deduplicator(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+        }
+
+        Result scan(Path root) throws IOException {
+            AtomicLong bytesRead = new AtomicLong();
+            List<DuplicateGroup> out = new ArrayList<>();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (Map.Entry<Long, List<Path>> bucket : groupBySize(root).entrySet()) {
+                    List<Path> sameSize = bucket.getValue();
+                    if (sameSize.size() < 2) continue;
+                    long size = bucket.getKey(); // from the walk: no second stat that a deleted file could fail
+                    // Stage 2: first + last 4 KB
+                    for (List<Path> edgeGroup : groupByHash(pool, sameSize, p -> edgeHash(p, size, bytesRead))) {
+                        if (size <= 2L * EDGE) {
+                            out.add(new DuplicateGroup(size, edgeGroup)); // edges covered the whole file
+                        } else if (edgeGroup.size() == 2) {
+                            // Stage 3a: a pair needs no hash, mismatch stops at the first difference
+                            try {
+                                if (Files.mismatch(edgeGroup.get(0), edgeGroup.get(1)) == -1L) {
+                                    out.add(new DuplicateGroup(size, edgeGroup));
+                                }
+                            } catch (IOException vanished) {
+                                // one of the pair is gone or unreadable: not a duplicate, keep scanning
+                            }
+                            bytesRead.addAndGet(2 * size); // upper bound; mismatch does not report progress
+                        } else {
+                            // Stage 3b: full content hash over mapped regions
+                            for (List<Path> full : groupByHash(pool, edgeGroup, p -> fullHash(p, size, bytesRead))) {
+                                out.add(new DuplicateGroup(size, full));
+                            }
+                        }
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+            out.sort(Comparator.comparingLong(DuplicateGroup::size).reversed());
+            return new Result(out, bytesRead.get());
+        }
+
+        // Size buckets; hard links to an already seen inode are skipped
+        private static Map<Long, List<Path>> groupBySize(Path root) throws IOException {
+            Map<Long, List<Path>> bySize = new HashMap<>();
+            Set<Object> seenKeys = new HashSet<>();
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile() || attrs.size() == 0) return FileVisitResult.CONTINUE;
+                    Object key = attrs.fileKey();
+                    if (key != null && !seenKeys.add(key)) return FileVisitResult.CONTINUE;
+                    bySize.computeIfAbsent(attrs.size(), k -> new ArrayList<>()).add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE; // unreadable entries are not candidates
+                }
+            });
+            return bySize;
+        }
+
+        private interface Hasher {
+            String hash(Path p) throws IOException;
+        }
+
+        // Hashes candidates in parallel and returns the groups with two or more members
+        private static List<List<Path>> groupByHash(ForkJoinPool pool, List<Path> candidates, Hasher hasher) {
+            Map<String, List<Path>> byHash;
+            try {
+                byHash = pool.submit(() -> candidates.parallelStream()
+                        .map(p -> {
+                            try {
+                                return Map.entry(hasher.hash(p), p);
+                            } catch (IOException e) {
+                                return null; // vanished, unreadable or resized since the walk: drop from candidates
+                            }
+                        })
+                        .filter(e -> e != null)
+                        .collect(Collectors.groupingBy(Map.Entry::getKey,
+                                Collectors.mapping(Map.Entry::getValue, Collectors.toList())))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return List.of();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("hashing failed", e.getCause());
+            }
+            List<List<Path>> groups = new ArrayList<>();
+            for (List<Path> g : byHash.values()) if (g.size() > 1) groups.add(g);
+            return groups;
+        }
+
+        static String edgeHash(Path p, long size, AtomicLong bytesRead) throws IOException {
+            MessageDigest md = sha256();
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                requireSize(ch, p, size);
+                if (size <= 2L * EDGE) {
+                    readFully(ch, 0, (int) size, md);
+                    bytesRead.addAndGet(size);
+                } else {
+                    readFully(ch, 0, EDGE, md);
+                    readFully(ch, size - EDGE, EDGE, md);
+                    bytesRead.addAndGet(2L * EDGE);
+                }
+                requireSize(ch, p, size); // grew while being read: the hash covers a prefix only
+            }
+            return HexFormat.of().formatHex(md.digest());
+        }
+
+        static String fullHash(Path p, long size, AtomicLong bytesRead) throws IOException {
+            MessageDigest md = sha256();
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                requireSize(ch, p, size); // never map past EOF
+                for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                    long len = Math.min(MAP_CHUNK, size - pos);
+                    MappedByteBuffer region = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                    try {
+                        md.update(region);
+                    } catch (InternalError e) {
+                        // SIGBUS: truncated by someone else while mapped
+                        throw new IOException(p + " was truncated while being hashed", e);
+                    }
+                }
+                requireSize(ch, p, size);
+            }
+            bytesRead.addAndGet(size);
+            return HexFormat.of().formatHex(md.digest());
+        }
+
+        // Sizes come from the walk; a file changed since then is dropped from the candidates (groupByHash)
+        private static void requireSize(FileChannel ch, Path p, long size) throws IOException {
+            long now = ch.size();
+            if (now != size) throw new IOException(p + " changed size since the walk: " + size + " -> " + now);
+        }
+
+        private static void readFully(FileChannel ch, long pos, int len, MessageDigest md) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, pos + buf.position()) < 0) {
+                    throw new EOFException("file shrank while being read"); // never hash a short buffer
+                }
+            }
+            buf.flip();
+            md.update(buf);
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // mandatory algorithm in every JDK
+            }
+        }
+    }
+
+    // Baseline: read every byte of every file
+    private static int naiveFullHash(Path root) {
+        Map<String, List<Path>> byHash = new HashMap<>();
+        AtomicLong ignored = new AtomicLong();
+        try (Stream<Path> s = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+                long size = Files.size(p);
+                if (size == 0) continue;
+                byHash.computeIfAbsent(Deduplicator.fullHash(p, size, ignored), k -> new ArrayList<>()).add(p);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return byHash.size();
+    }
+
+    // Helpers
+
+    // Unique files, exact duplicates, same-size files that differ only at the edges or only in the middle
+    private static long seedTree(Path root) throws IOException {
+        Random rnd = new Random(42);
+        long total = 0;
+        Path a = Files.createDirectories(root.resolve("a"));
+        Path b = Files.createDirectories(root.resolve("b/nested"));
+        for (int i = 0; i < 40; i++) {
+            byte[] data = new byte[256 * 1024 + rnd.nextInt(4096)];
+            rnd.nextBytes(data);
+            total += write(a.resolve("unique_" + i + ".bin"), data);
+        }
+        byte[] big = new byte[2 * 1024 * 1024];
+        rnd.nextBytes(big);
+        total += write(a.resolve("video.bin"), big);
+        total += write(b.resolve("video_copy.bin"), big);
+        total += write(root.resolve("video_copy2.bin"), big);
+        byte[] middle = big.clone();
+        middle[big.length / 2] ^= 1; // same size, same edges, different middle
+        total += write(b.resolve("video_edit.bin"), middle);
+        byte[] edge = big.clone();
+        edge[0] ^= 1; // same size, differs in the first 4 KB
+        total += write(b.resolve("video_header.bin"), edge);
+        byte[] pairData = new byte[300 * 1024];
+        rnd.nextBytes(pairData);
+        total += write(a.resolve("report.pdf"), pairData);
+        total += write(b.resolve("report (1).pdf"), pairData);
+        byte[] small = "tiny config".getBytes();
+        total += write(a.resolve("small.cfg"), small);
+        total += write(b.resolve("small.cfg"), small);
+        return total;
+    }
+
+    private static long write(Path p, byte[] data) throws IOException {
+        Files.write(p, data);
+        return data.length;
+    }
+
+    private static void header(String title) {
+        System.out.println("\n-- " + title + " --");
+    }
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            total += System.nanoTime() - t0;
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    private static void deleteRecursively(Path root) {
+        if (root == null) return;
+        try (Stream<Path> s = Files.walk(root)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+            });
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,450 @@
+package _09_02_nio2_paths_files;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Pipelined AsynchronousFileChannel I/O – keeps N operations in flight instead of one Future round-trip.
+ *
+ * Covers:
+ * - A small pool of direct buffers (allocated once, reused; direct avoids a copy into a temporary native buffer)
+ * - CompletionHandler-driven reads: when one read finishes, the next one is issued from the handler
+ * - Short reads/writes are continued in the handler, callers always see complete chunks
+ * - CompletableFuture results so callers can compose work instead of blocking on Future.get()
+ * - Backpressure with a Semaphore: at most N operations (and N buffers) outstanding
+ * - Ad-hoc timing against a plain FileChannel loop for sequential and random 4 KB reads
+ *
+ * Notes:
+ * - The chunk callback runs on the channel's executor while other reads are still in flight, so
+ *   processing overlaps with I/O. The buffer is only valid during the callback (it goes back to the pool).
+ * - Sequential chunks may complete out of order; the callback receives the file position.
+ * - This is not a benchmarking framework. With a warm page cache the OS does most of the work for both
+ *   variants; pipelining pays off on cold caches, SSD/NVMe queues and network file systems.
+ */
+public class _06_AsyncPipelinedFileIO {
+
+    // Used to prevent dead-code elimination during ad-hoc timing.
+    private static volatile Object BLACKHOLE;
+
+    public static void main(String[] args) throws Exception {
+        long fileSize = (args.length > 0 ? Long.parseLong(args[0]) : 64L) * 1024 * 1024;
+        Path file = Files.createTempFile("_nio2_async_pipeline_", ".bin");
+        ExecutorService io = ioThreads(8); // one per read the write/sequential pipelines keep in flight
+        try {
+            header("Pipelined write (" + fileSize / (1024 * 1024) + " MB)");
+            try (PipelinedFile out = PipelinedFile.open(file, io, 8, 256 * 1024,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long t0 = System.nanoTime();
+                writePattern(out, fileSize).join();
+                System.out.printf("wrote %d bytes in %.1f ms%n", Files.size(file), (System.nanoTime() - t0) / 1e6);
+            }
+
+            try (PipelinedFile in = PipelinedFile.open(file, io, 8, 256 * 1024, StandardOpenOption.READ)) {
+                long syncSum = syncSequentialChecksum(file, 256 * 1024);
+                long asyncSum = asyncSequentialChecksum(in);
+                System.out.println("checksums equal (sync vs pipelined): " + (syncSum == asyncSum));
+
+                header("Sequential read + CRC per 256 KB chunk");
+                bench("FileChannel.read loop", 1, 3, () -> BLACKHOLE = syncSequentialChecksum(file, 256 * 1024));
+                bench("Async, 8 in flight", 1, 3, () -> BLACKHOLE = asyncSequentialChecksum(in));
+            }
+
+            header("Random 4 KB reads (20,000)");
+            long[] offsets = randomOffsets(fileSize, 4096, 20_000);
+            bench("FileChannel.read(pos)", 1, 3, () -> BLACKHOLE = syncRandomChecksum(file, offsets));
+            // AsynchronousFileChannel runs file reads as blocking calls on its executor, so concurrency is capped by
+            // the thread count: give each row as many threads as reads it keeps in flight
+            for (int inFlight : new int[]{1, 16, 64}) {
+                ExecutorService rowIo = ioThreads(inFlight);
+                try (PipelinedFile in = PipelinedFile.open(file, rowIo, inFlight, 4096, StandardOpenOption.READ)) {
+                    bench("Async, " + inFlight + " in flight/threads", 1, 3, () -> BLACKHOLE = asyncRandomChecksum(in, offsets));
+                } finally {
+                    rowIo.shutdownNow();
+                }
+            }
+        } finally {
+            io.shutdownNow();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static ExecutorService ioThreads(int n) {
+        return Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "async-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @FunctionalInterface
+    interface ChunkHandler {
+        void onChunk(long position, ByteBuffer chunk);
+    }
+
+    @FunctionalInterface
+    interface ReadFunction<R> {
+        R apply(long position, ByteBuffer data);
+    }
+
+    // ------------------------------------------------------------
+    // Direct buffer pool
+    // ------------------------------------------------------------
+    static final class BufferPool {
+        private final ArrayBlockingQueue<ByteBuffer> free;
+        private final int bufferSize;
+
+        BufferPool(int count, int bufferSize) {
+            this.bufferSize = bufferSize;
+            this.free = new ArrayBlockingQueue<>(count);
+            for (int i = 0; i < count; i++) free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+
+        // Callers hold an inFlight permit, and there are as many buffers as permits, so one is always free.
+        // An empty pool means a buffer was not returned; allocating another would hide the leak and let direct
+        // memory grow without bound
+        ByteBuffer acquire() {
+            ByteBuffer b = free.poll();
+            if (b == null) throw new IllegalStateException("buffer pool exhausted: a pooled buffer was not returned");
+            return b.clear();
+        }
+
+        // A full queue drops the extra buffer, so the pool never grows past its initial size
+        void release(ByteBuffer b) {
+            free.offer(b);
+        }
+
+        int bufferSize() { return bufferSize; }
+    }
+
+    // ------------------------------------------------------------
+    // Pipelined reader/writer over one AsynchronousFileChannel
+    // ------------------------------------------------------------
+    static final class PipelinedFile implements AutoCloseable {
+        private final AsynchronousFileChannel ch;
+        private final BufferPool pool;
+        private final Semaphore inFlight;
+        private final int maxInFlight;
+
+        private PipelinedFile(AsynchronousFileChannel ch, int maxInFlight, int bufferSize) {
+            this.ch = ch;
+            this.maxInFlight = maxInFlight;
+            this.pool = new BufferPool(maxInFlight, bufferSize);
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        static PipelinedFile open(Path file, ExecutorService executor, int maxInFlight, int bufferSize,
+                                  StandardOpenOption... options) throws IOException {
+            EnumSet<StandardOpenOption> opts = EnumSet.noneOf(StandardOpenOption.class);
+            for (StandardOpenOption o : options) opts.add(o);
+            return new PipelinedFile(AsynchronousFileChannel.open(file, opts, executor), maxInFlight, bufferSize);
+        }
+
+        /**
+         * Reads the whole file in buffer-sized chunks with up to maxInFlight reads outstanding.
+         * Completes with the number of bytes delivered to the handler.
+         */
+        CompletableFuture<Long> readAll(ChunkHandler handler) {
+            CompletableFuture<Long> done = new CompletableFuture<>();
+            long size;
+            try {
+                size = ch.size();
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            if (size == 0) return CompletableFuture.completedFuture(0L);
+            AtomicLong nextPos = new AtomicLong();
+            AtomicLong delivered = new AtomicLong();
+            AtomicInteger active = new AtomicInteger();
+            SequentialState st = new SequentialState(size, nextPos, delivered, active, handler, done);
+            int wanted = (int) Math.min(maxInFlight, (size + pool.bufferSize() - 1) / pool.bufferSize());
+            // Each pipeline slot holds one permit (and so at most one buffer) until it retires. The first slot waits
+            // like read() does; the others only start if a permit is free right now, so buffers the caller still
+            // holds from borrowBuffer() shrink the pipeline instead of blocking it forever
+            inFlight.acquireUninterruptibly();
+            int slots = 1;
+            while (slots < wanted && inFlight.tryAcquire()) slots++;
+            active.set(slots);
+            for (int i = 0; i < slots; i++) issueNext(st);
+            return done;
+        }
+
+        private record SequentialState(long size, AtomicLong nextPos, AtomicLong delivered, AtomicInteger active,
+                                       ChunkHandler handler, CompletableFuture<Long> done) {}
+
+        // Claims the next chunk, or retires this pipeline slot (and its permit) when the file is exhausted
+        private void issueNext(SequentialState st) {
+            long pos = st.nextPos().getAndAdd(pool.bufferSize());
+            if (pos >= st.size() || st.done().isDone()) {
+                inFlight.release();
+                if (st.active().decrementAndGet() == 0) st.done().complete(st.delivered().get());
+                return;
+            }
+            ByteBuffer buf = pool.acquire();
+            buf.limit((int) Math.min(pool.bufferSize(), st.size() - pos));
+            readFully(buf, pos).whenComplete((b, err) -> {
+                if (err != null) {
+                    pool.release(buf);
+                    inFlight.release();
+                    st.done().completeExceptionally(err);
+                    st.active().decrementAndGet();
+                    return;
+                }
+                try {
+                    b.flip();
+                    int n = b.remaining();
+                    st.handler().onChunk(pos, b); // processing overlaps with the other in-flight reads
+                    st.delivered().addAndGet(n);
+                } catch (RuntimeException e) {
+                    st.done().completeExceptionally(e);
+                } finally {
+                    pool.release(buf);
+                }
+                issueNext(st);
+            });
+        }
+
+        /**
+         * Random-access read of up to one buffer. Blocks the caller only when maxInFlight reads are
+         * already outstanding (backpressure). fn must not keep a reference to the buffer.
+         */
+        <R> CompletableFuture<R> read(long position, int length, ReadFunction<R> fn) {
+            inFlight.acquireUninterruptibly();
+            ByteBuffer buf = pool.acquire();
+            buf.limit(Math.min(length, pool.bufferSize()));
+            return readFully(buf, position).handle((b, err) -> {
+                try {
+                    if (err != null) throw new IllegalStateException("read failed at " + position, err);
+                    b.flip();
+                    return fn.apply(position, b);
+                } finally {
+                    pool.release(buf);
+                    inFlight.release();
+                }
+            });
+        }
+
+        /** Asynchronous positional write; the source buffer must not be modified until the future completes. */
+        CompletableFuture<Integer> write(long position, ByteBuffer src) {
+            inFlight.acquireUninterruptibly();
+            return writeFully(src, position).whenComplete((n, err) -> inFlight.release());
+        }
+
+        /**
+         * Pooled buffer for callers that want to fill and write without allocating. Takes a permit first, so
+         * borrowed buffers count against maxInFlight; hand it to writeBorrowed or give it back with returnBuffer.
+         */
+        ByteBuffer borrowBuffer() {
+            inFlight.acquireUninterruptibly();
+            return pool.acquire();
+        }
+
+        void returnBuffer(ByteBuffer b) {
+            pool.release(b);
+            inFlight.release();
+        }
+
+        /** Writes a buffer from borrowBuffer under the permit it already holds, then returns buffer and permit. */
+        CompletableFuture<Integer> writeBorrowed(long position, ByteBuffer borrowed) {
+            return writeFully(borrowed, position).whenComplete((n, err) -> returnBuffer(borrowed));
+        }
+
+        // Writes src up to its limit; the attachment is the position of the next write
+        private CompletableFuture<Integer> writeFully(ByteBuffer src, long position) {
+            CompletableFuture<Integer> f = new CompletableFuture<>();
+            int total = src.remaining();
+            CompletionHandler<Integer, Long> handler = new CompletionHandler<>() {
+                @Override
+                public void completed(Integer n, Long pos) {
+                    if (src.hasRemaining()) {
+                        write(src, pos + n, this, f); // short write: continue where it stopped
+                    } else {
+                        f.complete(total);
+                    }
+                }
+                @Override
+                public void failed(Throwable exc, Long pos) {
+                    f.completeExceptionally(exc);
+                }
+            };
+            write(src, position, handler, f);
+            return f;
+        }
+
+        // ch.read/ch.write can also throw before anything is queued (closed channel, shut down executor);
+        // turning that into a failed future lets the completion paths return the permit and the buffer
+        private void write(ByteBuffer src, long pos, CompletionHandler<Integer, Long> handler, CompletableFuture<?> f) {
+            try {
+                ch.write(src, pos, pos, handler);
+            } catch (RuntimeException e) {
+                f.completeExceptionally(e);
+            }
+        }
+
+        private void read(ByteBuffer dst, long pos, CompletionHandler<Integer, Long> handler, CompletableFuture<?> f) {
+            try {
+                ch.read(dst, pos, pos, handler);
+            } catch (RuntimeException e) {
+                f.completeExceptionally(e);
+            }
+        }
+
+        void force(boolean metaData) throws IOException { ch.force(metaData); }
+
+        // Fills buf up to its limit or EOF; the attachment is the position of the next read
+        private CompletableFuture<ByteBuffer> readFully(ByteBuffer buf, long pos) {
+            CompletableFuture<ByteBuffer> f = new CompletableFuture<>();
+            CompletionHandler<Integer, Long> handler = new CompletionHandler<>() {
+                @Override
+                public void completed(Integer n, Long at) {
+                    if (n < 0 || !buf.hasRemaining()) {
+                        f.complete(buf);
+                    } else {
+                        read(buf, at + n, this, f);
+                    }
+                }
+                @Override
+                public void failed(Throwable exc, Long at) {
+                    f.completeExceptionally(exc);
+                }
+            };
+            read(buf, pos, handler, f);
+            return f;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Workloads
+    // ------------------------------------------------------------
+    private static CompletableFuture<Void> writePattern(PipelinedFile out, long fileSize) {
+        SplittableRandom rnd = new SplittableRandom(7);
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[(int) ((fileSize + 256 * 1024 - 1) / (256 * 1024))];
+        int i = 0;
+        for (long pos = 0; pos < fileSize; pos += 256 * 1024) {
+            ByteBuffer b = out.borrowBuffer();
+            b.limit((int) Math.min(b.capacity(), fileSize - pos));
+            while (b.remaining() >= 8) b.putLong(rnd.nextLong());
+            while (b.hasRemaining()) b.put((byte) 0);
+            b.flip();
+            writes[i++] = out.writeBorrowed(pos, b);
+        }
+        return CompletableFuture.allOf(writes).thenRun(() -> {
+            try {
+                out.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Order-independent combination of per-chunk CRCs so sync and async results are comparable
+    private static long syncSequentialChecksum(Path file, int chunk) {
+        long sum = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(chunk);
+            long pos = 0;
+            while (true) {
+                buf.clear();
+                int n = 0;
+                int r;
+                while (buf.hasRemaining() && (r = ch.read(buf)) > 0) n += r;
+                if (n == 0) break;
+                buf.flip();
+                sum += crc(pos, buf);
+                pos += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sum;
+    }
+
+    private static long asyncSequentialChecksum(PipelinedFile in) {
+        LongAdder sum = new LongAdder();
+        in.readAll((pos, chunk) -> sum.add(crc(pos, chunk))).join();
+        return sum.sum();
+    }
+
+    private static long syncRandomChecksum(Path file, long[] offsets) {
+        long sum = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(4096);
+            for (long off : offsets) {
+                buf.clear();
+                while (buf.hasRemaining() && ch.read(buf, off + buf.position()) > 0) { }
+                buf.flip();
+                sum += crc(off, buf);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sum;
+    }
+
+    private static long asyncRandomChecksum(PipelinedFile in, long[] offsets) {
+        LongAdder sum = new LongAdder();
+        CompletableFuture<?>[] reads = new CompletableFuture<?>[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            reads[i] = in.read(offsets[i], 4096, (pos, data) -> {
+                sum.add(crc(pos, data));
+                return null;
+            });
+        }
+        CompletableFuture.allOf(reads).join();
+        return sum.sum();
+    }
+
+    private static long crc(long pos, ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return crc.getValue() ^ pos;
+    }
+
+    private static long[] randomOffsets(long fileSize, int block, int count) {
+        SplittableRandom rnd = new SplittableRandom(11);
+        long blocks = fileSize / block;
+        long[] out = new long[count];
+        for (int i = 0; i < count; i++) out[i] = rnd.nextLong(blocks) * block;
+        return out;
+    }
+
+    // Helpers
+
+    private static void header(String title) {
+        System.out.println("\n-- " + title + " --");
+    }
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            total += System.nanoTime() - t0;
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+}
@@ -0,0 +1,588 @@
+package _09_03_serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import _09_03_serialization._02_Examples.ImmutableRange;
+import _09_03_serialization._02_Examples.PersonBasic;
+import _09_03_serialization._02_Examples.Point3D;
+import _09_03_serialization._03_InterviewQA.VersionedPoint;
+
+/*
+    Schema-driven binary codec as an alternative to ObjectOutputStream for known, flat classes.
+
+    Why native serialization is expensive for small messages:
+    - Every stream starts with a header and writes a full class descriptor (class name, SUID, field names/types).
+    - Reading walks the descriptor reflectively, allocates via the serialization constructor, sets fields reflectively.
+    - Primitive ints always take 4 bytes.
+
+    What the codec does instead:
+    - A Schema lists the fields once, in code. Nothing about the class is written to the wire.
+    - Getters and the constructor are resolved once as MethodHandles (privateLookupIn, no Field.get per call).
+    - ints/longs are zigzag varints (small values -> 1 byte), strings are varint length + UTF-8.
+    - Versioning follows VersionedPoint: fields are only ever appended and each one records the version that
+      introduced it. The frame carries [version][body length], so an old reader skips fields it does not know
+      and a new reader fills fields missing from an old writer with defaults.
+    - Construction goes through a real constructor, so invariants (ImmutableRange start <= end) are re-checked,
+      just like the serialization proxy does.
+
+    Limits (on purpose): no object graphs/back-references, no polymorphism beyond the registry's type ids.
+
+    Note:
+    - JMH is not on the classpath here; the comparison below uses the same ad-hoc timing helper as the other
+      examples. Numbers are illustrative only.
+*/
+public class _04_BinaryCodec {
+
+    // Used to prevent dead-code elimination during ad-hoc timing.
+    private static volatile Object BLACKHOLE;
+
+    static final Schema<PersonBasic> PERSON = Schema.builder(PersonBasic.class, 1)
+            .intField("id", 1)
+            .stringField("name", 1)
+            // password is transient: not part of the schema, constructor gets null
+            .constructor(MethodType.methodType(void.class, int.class, String.class, String.class), "id", "name", null)
+            .build();
+
+    static final Schema<Point3D> POINT3D = Schema.builder(Point3D.class, 2)
+            .intField("x", 1)
+            .intField("y", 1)
+            .intField("z", 2)
+            .constructor(MethodType.methodType(void.class, int.class, int.class, int.class), "x", "y", "z")
+            .build();
+
+    static final Schema<ImmutableRange> RANGE = Schema.builder(ImmutableRange.class, 1)
+            .intField("start", 1)
+            .intField("end", 1)
+            .constructor(MethodType.methodType(void.class, int.class, int.class), "start", "end")
+            .build();
+
+    static final Schema<VersionedPoint> VPOINT = Schema.builder(VersionedPoint.class, 2)
+            .intField("x", 1)
+            .intField("y", 1)
+            .stringField("label", 2) // added in v2, same as VersionedPoint.STREAM_VERSION
+            .constructor(MethodType.methodType(void.class, int.class, int.class, String.class), "x", "y", "label")
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("1) Round-trips");
+        Registry registry = new Registry()
+                .register(1, PERSON).register(2, POINT3D).register(3, RANGE).register(4, VPOINT);
+        Object[] samples = {
+                new PersonBasic(7, "Alice", "s3cr3t"),
+                new Point3D(1, -2, 3),
+                new ImmutableRange(10, 20),
+                new VersionedPoint(3, 4, "A")
+        };
+        for (Object o : samples) {
+            byte[] codec = registry.encode(o);
+            Object back = registry.decode(codec);
+            byte[] jdk = _02_Examples.serializeToBytes(o);
+            System.out.printf("%-16s codec=%3d bytes  java=%4d bytes  -> %s%n",
+                    o.getClass().getSimpleName(), codec.length, jdk.length, describe(back));
+        }
+        System.out.println();
+
+        System.out.println("2) Versioning (like VersionedPoint.readExternal)");
+        Schema<VersionedPoint> v1 = Schema.builder(VersionedPoint.class, 1)
+                .intField("x", 1).intField("y", 1)
+                .constructor(MethodType.methodType(void.class, int.class, int.class, String.class), "x", "y", null)
+                .build();
+        VersionedPoint fromOldWriter = VPOINT.decode(v1.encode(new VersionedPoint(5, 6, "ignored")));
+        System.out.println("v1 bytes read by v2 schema: label=" + fromOldWriter.label + " (default)");
+        VersionedPoint fromNewWriter = v1.decode(VPOINT.encode(new VersionedPoint(5, 6, "new")));
+        System.out.println("v2 bytes read by v1 schema: x=" + fromNewWriter.x + " y=" + fromNewWriter.y + " (label skipped)");
+        try {
+            RANGE.decode(RANGE.encode(new ImmutableRange(1, 2)), 0, 3);
+        } catch (StreamCorruptedException e) {
+            System.out.println("truncated frame -> " + e.getClass().getSimpleName());
+        }
+        System.out.println();
+
+        System.out.println("3) Size/encode/decode vs ObjectOutputStream (Serializable) and Externalizable");
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        compare("PersonBasic (Serializable)", PERSON, i -> new PersonBasic(i, "user-" + i, "pw"), n);
+        compare("ImmutableRange (proxy)", RANGE, i -> new ImmutableRange(i, i + 100), n);
+        compare("Point3D (Externalizable)", POINT3D, i -> new Point3D(i, i * 2, -i), n);
+        compare("VersionedPoint (Externalizable)", VPOINT, i -> new VersionedPoint(i, -i, "p" + (i % 10)), n);
+    }
+
+    // ------------------------------------------------------------
+    // Wire primitives: zigzag varints over a growable byte[]
+    // ------------------------------------------------------------
+    static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int initialCapacity) { this.buf = new byte[Math.max(16, initialCapacity)]; }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeSInt(int v) { writeVarLong(Integer.toUnsignedLong((v << 1) ^ (v >> 31))); }
+
+        void writeSLong(long v) { writeVarLong((v << 1) ^ (v >> 63)); }
+
+        void writeBoolean(boolean b) {
+            ensure(1);
+            buf[pos++] = (byte) (b ? 1 : 0);
+        }
+
+        void writeDouble(double d) {
+            ensure(8);
+            long bits = Double.doubleToRawLongBits(d);
+            for (int i = 0; i < 8; i++) buf[pos++] = (byte) (bits >>> (i * 8));
+        }
+
+        // 0 = null, otherwise length + 1
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buf, pos, utf8.length);
+            pos += utf8.length;
+        }
+
+        // Reserves room for a length we only know after writing the body
+        int reserve(int bytes) {
+            ensure(bytes);
+            int at = pos;
+            pos += bytes;
+            return at;
+        }
+
+        // Fixed 3-byte varint form (non-minimal but valid) so the body does not have to move
+        void patchLength3(int at, int len) {
+            if (len >= (1 << 21)) throw new IllegalArgumentException("frame too large: " + len);
+            buf[at] = (byte) ((len & 0x7F) | 0x80);
+            buf[at + 1] = (byte) (((len >>> 7) & 0x7F) | 0x80);
+            buf[at + 2] = (byte) (len >>> 14);
+        }
+
+        int position() { return pos; }
+
+        void reset() { pos = 0; }
+
+        byte[] toByteArray() { return Arrays.copyOf(buf, pos); }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+
+    static final class Reader {
+        private final byte[] buf;
+        private int pos;
+        private final int end;
+
+        Reader(byte[] buf, int off, int len) {
+            this.buf = buf;
+            this.pos = off;
+            this.end = off + len;
+        }
+
+        long readVarLong() throws StreamCorruptedException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= end) throw new StreamCorruptedException("truncated varint");
+                byte b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return result;
+            }
+            throw new StreamCorruptedException("varint too long");
+        }
+
+        int readSInt() throws StreamCorruptedException {
+            int v = (int) readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long readSLong() throws StreamCorruptedException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        boolean readBoolean() throws StreamCorruptedException {
+            need(1);
+            return buf[pos++] != 0;
+        }
+
+        double readDouble() throws StreamCorruptedException {
+            need(8);
+            long bits = 0;
+            for (int i = 0; i < 8; i++) bits |= (buf[pos++] & 0xFFL) << (i * 8);
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() throws StreamCorruptedException {
+            long lenPlusOne = readVarLong();
+            if (lenPlusOne == 0) return null;
+            int len = (int) (lenPlusOne - 1);
+            need(len);
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        int position() { return pos; }
+
+        int limit() { return end; }
+
+        void seek(int p) { pos = p; }
+
+        private void need(int n) throws StreamCorruptedException {
+            if (n < 0 || n > end - pos) throw new StreamCorruptedException("truncated frame"); // pos + n could overflow
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Schema: field codecs with MethodHandle getters + constructor handle
+    // ------------------------------------------------------------
+    enum Kind { INT, LONG, BOOLEAN, DOUBLE, STRING }
+
+    static final class FieldCodec {
+        final String name;
+        final Kind kind;
+        final int since;
+        // (Object)prim or (Object)Object: invokeExact avoids boxing on the write path
+        final MethodHandle getter;
+
+        FieldCodec(String name, Kind kind, int since, MethodHandle getter) {
+            this.name = name;
+            this.kind = kind;
+            this.since = since;
+            this.getter = getter;
+        }
+
+        void write(Object target, Writer w) throws Throwable {
+            switch (kind) {
+                case INT -> w.writeSInt((int) getter.invokeExact(target));
+                case LONG -> w.writeSLong((long) getter.invokeExact(target));
+                case BOOLEAN -> w.writeBoolean((boolean) getter.invokeExact(target));
+                case DOUBLE -> w.writeDouble((double) getter.invokeExact(target));
+                case STRING -> w.writeString((String) getter.invokeExact(target));
+            }
+        }
+
+        Object read(Reader r) throws StreamCorruptedException {
+            return switch (kind) {
+                case INT -> r.readSInt();
+                case LONG -> r.readSLong();
+                case BOOLEAN -> r.readBoolean();
+                case DOUBLE -> r.readDouble();
+                case STRING -> r.readString();
+            };
+        }
+    }
+
+    static final class Schema<T> {
+        final Class<T> type;
+        final int version;
+        final FieldCodec[] fields;
+        // (Object[])Object spreader over the real constructor
+        private final MethodHandle ctor;
+        // ctorSlot[i] = index into fields for constructor parameter i, or -1 for "default value"
+        private final int[] ctorSlot;
+        private final Object[] ctorDefaults;
+
+        private Schema(Class<T> type, int version, FieldCodec[] fields, MethodHandle ctor,
+                       int[] ctorSlot, Object[] ctorDefaults) {
+            this.type = type;
+            this.version = version;
+            this.fields = fields;
+            this.ctor = ctor;
+            this.ctorSlot = ctorSlot;
+            this.ctorDefaults = ctorDefaults;
+        }
+
+        static <T> Builder<T> builder(Class<T> type, int version) {
+            return new Builder<>(type, version);
+        }
+
+        byte[] encode(T value) {
+            Writer w = new Writer(32);
+            encodeTo(value, w);
+            return w.toByteArray();
+        }
+
+        // Frame: [varint version][3-byte varint body length][fields...]
+        void encodeTo(T value, Writer w) {
+            w.writeVarLong(version);
+            int lenAt = w.reserve(3);
+            int bodyStart = w.position();
+            try {
+                for (FieldCodec f : fields) f.write(value, w);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("getter failed for " + type.getSimpleName(), t);
+            }
+            w.patchLength3(lenAt, w.position() - bodyStart);
+        }
+
+        T decode(byte[] data) throws StreamCorruptedException {
+            return decode(data, 0, data.length);
+        }
+
+        T decode(byte[] data, int off, int len) throws StreamCorruptedException {
+            return decodeFrom(new Reader(data, off, len));
+        }
+
+        T decodeFrom(Reader r) throws StreamCorruptedException {
+            int writerVersion = (int) r.readVarLong();
+            int bodyLen = (int) r.readVarLong();
+            int bodyEnd = r.position() + bodyLen;
+            if (bodyLen < 0 || bodyEnd > r.limit()) throw new StreamCorruptedException("truncated frame");
+            Object[] values = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                FieldCodec f = fields[i];
+                if (f.since <= writerVersion) values[i] = f.read(r);
+            }
+            if (r.position() > bodyEnd) throw new StreamCorruptedException("body overrun");
+            r.seek(bodyEnd); // skip fields appended by a newer writer
+            Object[] args = new Object[ctorSlot.length];
+            for (int i = 0; i < args.length; i++) {
+                int slot = ctorSlot[i];
+                Object v = slot >= 0 ? values[slot] : null;
+                args[i] = v != null ? v : ctorDefaults[i];
+            }
+            try {
+                return type.cast((Object) ctor.invokeExact(args));
+            } catch (IllegalArgumentException e) {
+                // Constructor rejected the data (e.g. start > end): same role as readObject validation
+                StreamCorruptedException sce = new StreamCorruptedException("invalid " + type.getSimpleName() + ": " + e.getMessage());
+                sce.initCause(e);
+                throw sce;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    static final class Builder<T> {
+        private final Class<T> type;
+        private final int version;
+        private final List<FieldCodec> fields = new ArrayList<>();
+        private final MethodHandles.Lookup lookup;
+        private MethodHandle ctor;
+        private int[] ctorSlot;
+        private Object[] ctorDefaults;
+
+        private Builder(Class<T> type, int version) {
+            this.type = type;
+            this.version = version;
+            try {
+                // Full-privilege lookup on the target: private fields are readable without setAccessible
+                this.lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("no access to " + type.getName(), e);
+            }
+        }
+
+        Builder<T> intField(String name, int since) { return field(name, Kind.INT, int.class, since); }
+        Builder<T> longField(String name, int since) { return field(name, Kind.LONG, long.class, since); }
+        Builder<T> booleanField(String name, int since) { return field(name, Kind.BOOLEAN, boolean.class, since); }
+        Builder<T> doubleField(String name, int since) { return field(name, Kind.DOUBLE, double.class, since); }
+        Builder<T> stringField(String name, int since) { return field(name, Kind.STRING, String.class, since); }
+
+        private Builder<T> field(String name, Kind kind, Class<?> javaType, int since) {
+            if (since > version) throw new IllegalArgumentException(name + " introduced after schema version " + version);
+            if (!fields.isEmpty() && since < fields.get(fields.size() - 1).since) {
+                throw new IllegalArgumentException("fields must be appended in version order: " + name);
+            }
+            try {
+                MethodHandle g = lookup.findGetter(type, name, javaType);
+                g = g.asType(MethodType.methodType(javaType, Object.class));
+                fields.add(new FieldCodec(name, kind, since, g));
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+                throw new IllegalArgumentException("cannot read " + type.getSimpleName() + "." + name, e);
+            }
+            return this;
+        }
+
+        // argFields[i] names the schema field passed as constructor parameter i; null means default value
+        Builder<T> constructor(MethodType ctorType, String... argFields) {
+            if (ctorType.parameterCount() != argFields.length) {
+                throw new IllegalArgumentException("argument count mismatch for " + ctorType);
+            }
+            try {
+                MethodHandle c = lookup.findConstructor(type, ctorType);
+                this.ctor = c.asSpreader(Object[].class, argFields.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("no constructor " + ctorType + " on " + type.getSimpleName(), e);
+            }
+            this.ctorSlot = new int[argFields.length];
+            this.ctorDefaults = new Object[argFields.length];
+            for (int i = 0; i < argFields.length; i++) {
+                ctorSlot[i] = indexOf(argFields[i]);
+                ctorDefaults[i] = defaultValue(ctorType.parameterType(i));
+            }
+            return this;
+        }
+
+        Schema<T> build() {
+            if (ctor == null) throw new IllegalStateException("constructor not set for " + type.getSimpleName());
+            return new Schema<>(type, version, fields.toArray(new FieldCodec[0]), ctor, ctorSlot, ctorDefaults);
+        }
+
+        private int indexOf(String name) {
+            if (name == null) return -1;
+            for (int i = 0; i < fields.size(); i++) if (fields.get(i).name.equals(name)) return i;
+            throw new IllegalArgumentException("unknown field " + name);
+        }
+
+        private static Object defaultValue(Class<?> t) {
+            if (t == int.class) return 0;
+            if (t == long.class) return 0L;
+            if (t == boolean.class) return false;
+            if (t == double.class) return 0.0;
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Registry: small type ids instead of class names on the wire
+    // ------------------------------------------------------------
+    static final class Registry {
+        private final Map<Class<?>, Integer> ids = new HashMap<>();
+        private final Map<Integer, Schema<?>> schemas = new HashMap<>();
+
+        Registry register(int id, Schema<?> schema) {
+            if (schemas.putIfAbsent(id, schema) != null) throw new IllegalArgumentException("duplicate id " + id);
+            ids.put(schema.type, id);
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> byte[] encode(T value) {
+            Integer id = ids.get(value.getClass());
+            if (id == null) throw new IllegalArgumentException("unregistered type " + value.getClass().getName());
+            Writer w = new Writer(32);
+            w.writeVarLong(id);
+            ((Schema<T>) schemas.get(id)).encodeTo(value, w);
+            return w.toByteArray();
+        }
+
+        Object decode(byte[] data) throws StreamCorruptedException {
+            Reader r = new Reader(data, 0, data.length);
+            int id = (int) r.readVarLong();
+            Schema<?> s = schemas.get(id);
+            if (s == null) throw new StreamCorruptedException("unknown type id " + id);
+            return s.decodeFrom(r);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Comparison harness
+    // ------------------------------------------------------------
+    interface Factory<T> {
+        T create(int i);
+    }
+
+    private static <T> void compare(String label, Schema<T> schema, Factory<T> factory, int n) throws Exception {
+        List<T> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) items.add(factory.create(i));
+
+        // One message per object: the RPC case native serialization is worst at
+        long javaBytes = 0, codecBytes = 0;
+        for (T t : items) {
+            javaBytes += _02_Examples.serializeToBytes(t).length;
+            codecBytes += schema.encode(t).length;
+        }
+        System.out.println(label + ": avg bytes/msg java=" + javaBytes / n + " codec=" + codecBytes / n);
+
+        byte[][] javaMsgs = new byte[n][];
+        byte[][] codecMsgs = new byte[n][];
+        Writer reused = new Writer(64);
+        bench("  encode java", 1, 3, () -> {
+            for (int i = 0; i < n; i++) javaMsgs[i] = javaSerialize(items.get(i));
+        });
+        bench("  encode codec", 1, 3, () -> {
+            for (int i = 0; i < n; i++) {
+                reused.reset();
+                schema.encodeTo(items.get(i), reused);
+                codecMsgs[i] = reused.toByteArray();
+            }
+        });
+        bench("  decode java", 1, 3, () -> {
+            Object last = null;
+            for (int i = 0; i < n; i++) last = javaDeserialize(javaMsgs[i]);
+            BLACKHOLE = last;
+        });
+        bench("  decode codec", 1, 3, () -> {
+            Object last = null;
+            try {
+                for (int i = 0; i < n; i++) last = schema.decode(codecMsgs[i]);
+            } catch (StreamCorruptedException e) {
+                throw new UncheckedIOException(e);
+            }
+            BLACKHOLE = last;
+        });
+    }
+
+    private static byte[] javaSerialize(Object o) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+            try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+                out.writeObject(o);
+            }
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object javaDeserialize(byte[] b) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b))) {
+            return in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String describe(Object o) {
+        if (o instanceof VersionedPoint vp) return "VersionedPoint(" + vp.x + "," + vp.y + "," + vp.label + ")";
+        return String.valueOf(o);
+    }
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            total += System.nanoTime() - t0;
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+}
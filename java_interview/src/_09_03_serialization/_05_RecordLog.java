@@ -0,0 +1,400 @@
+package _09_03_serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import _09_03_serialization._02_Examples.Point3D;
+
+/*
+    Append-only record log for serialized objects (durable event log).
+
+    Frame layout (little effort to parse, easy to validate):
+        [int payloadLength][int crc32c(payloadLength, payload)][payload bytes]
+    The length is part of the checksum: a zero-filled tail (preallocated or torn) would otherwise read as a run
+    of valid empty frames, since the CRC of an empty payload is 0.
+
+    Write path:
+    - Callers serialize on their own thread (CPU work stays parallel) and enqueue the bytes.
+    - One writer thread drains everything queued, frames it into one reused direct buffer, issues one write
+      and ONE fsync (FileChannel.force) for the whole batch: group commit. Each append's future completes only
+      after the fsync that covers it, so "completed" means "durable".
+    - Under load batches grow by themselves; fsyncs per second stay bounded by the device, not by callers.
+
+    Replay path:
+    - The file is memory-mapped in large windows and scanned sequentially; the payload is copied into one
+      reused scratch array (no per-record byte[]), CRC-checked, then handed to the deserializer.
+    - A torn tail (crash mid-write) shows up as a short frame or CRC mismatch: replay stops there, and
+      opening the log for writing truncates to the last valid frame.
+
+    Payload format is pluggable: Java serialization (with an ObjectInputFilter) or the _04_BinaryCodec schemas.
+    Java serialization repeats the class descriptor in every record; the codec does not.
+*/
+public class _05_RecordLog {
+
+    // Serializable event used by the demo; records serialize through their canonical constructor
+    record Event(long id, String type, long timestamp) implements Serializable {}
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path dir = Files.createTempDirectory("_serialization_record_log_");
+        Path file = dir.resolve("events.log");
+        try {
+            System.out.println("1) Concurrent appends with group commit");
+            Serializer<Event> javaSer = javaSerializer(Event.class,
+                    "_09_03_serialization.*;java.lang.*;maxdepth=4;!*");
+            int writers = 8;
+            long t0 = System.nanoTime();
+            try (RecordLog<Event> log = RecordLog.open(file, javaSer)) {
+                List<Thread> threads = new ArrayList<>();
+                for (int w = 0; w < writers; w++) {
+                    int id = w;
+                    Thread t = new Thread(() -> {
+                        CompletableFuture<Long> last = null;
+                        for (int i = id; i < records; i += writers) {
+                            last = log.append(new Event(i, i % 3 == 0 ? "ORDER" : "CLICK", 1_700_000_000_000L + i));
+                            if (i % 64 == id) last.join(); // some callers wait for durability, like request threads would
+                        }
+                        if (last != null) last.join();
+                    });
+                    threads.add(t);
+                    t.start();
+                }
+                for (Thread t : threads) t.join();
+                System.out.printf("appended=%d fsyncs=%d (%.1f records/fsync) in %.1f ms, file=%d KB%n",
+                        log.appended(), log.fsyncs(), (double) log.appended() / log.fsyncs(),
+                        (System.nanoTime() - t0) / 1e6, Files.size(file) / 1024);
+            }
+            System.out.println();
+
+            System.out.println("2) Replay over a memory-mapped file");
+            for (int run = 0; run < 3; run++) {
+                long r0 = System.nanoTime();
+                long[] orders = new long[1];
+                ReplayResult rr = RecordLog.replay(file, javaSer, (offset, e) -> {
+                    if (e.type().equals("ORDER")) orders[0]++;
+                });
+                double ms = (System.nanoTime() - r0) / 1e6;
+                System.out.printf("run %d: records=%d orders=%d in %.1f ms (%.0f MB/s) cleanEnd=%b%n",
+                        run, rr.records(), orders[0], ms, rr.validBytes() / 1e6 / (ms / 1000), rr.clean());
+            }
+            System.out.println();
+
+            System.out.println("3) Torn tail after a crash -> replay stops, reopen truncates");
+            long goodSize = Files.size(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer torn = ByteBuffer.allocate(10);
+                torn.putInt(500).putInt(0xDEADBEEF).putShort((short) 1).flip(); // says 500 bytes, has 2
+                ch.write(torn);
+            }
+            ReplayResult afterCrash = RecordLog.replay(file, javaSer, (o, e) -> {});
+            System.out.println("replayed=" + afterCrash.records() + " clean=" + afterCrash.clean()
+                    + " validBytes==goodSize? " + (afterCrash.validBytes() == goodSize));
+            try (RecordLog<Event> log = RecordLog.open(file, javaSer)) {
+                log.append(new Event(records, "RECOVERED", 0L)).join();
+            }
+            System.out.println("after reopen+append: " + RecordLog.replay(file, javaSer, (o, e) -> {}));
+            long beforeZeros = Files.size(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ch.write(ByteBuffer.allocate(4096)); // preallocated / zero-filled tail
+            }
+            ReplayResult zeroed = RecordLog.replay(file, javaSer, (o, e) -> {});
+            System.out.println("zero-filled tail: clean=" + zeroed.clean() + " validBytes==beforeZeros? "
+                    + (zeroed.validBytes() == beforeZeros));
+            System.out.println();
+
+            System.out.println("4) Same log format with the _04_BinaryCodec payload");
+            Path codecFile = dir.resolve("points.log");
+            Serializer<Point3D> codecSer = codecSerializer(_04_BinaryCodec.POINT3D);
+            try (RecordLog<Point3D> log = RecordLog.open(codecFile, codecSer)) {
+                CompletableFuture<Long> last = null;
+                for (int i = 0; i < records; i++) last = log.append(new Point3D(i, i + 1, i + 2));
+                last.join();
+            }
+            long c0 = System.nanoTime();
+            ReplayResult cr = RecordLog.replay(codecFile, codecSer, (o, p) -> {});
+            System.out.printf("codec log: %d KB vs java log: %d KB, replay %d records in %.1f ms%n",
+                    Files.size(codecFile) / 1024, goodSize / 1024, cr.records(), (System.nanoTime() - c0) / 1e6);
+        } finally {
+            for (Path p : new Path[]{file, dir.resolve("points.log"), dir}) Files.deleteIfExists(p);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Payload (de)serialization
+    // ------------------------------------------------------------
+    interface Serializer<T> {
+        byte[] encode(T value) throws IOException;
+
+        T decode(byte[] buf, int off, int len) throws IOException;
+    }
+
+    interface RecordHandler<T> {
+        void onRecord(long offset, T value);
+    }
+
+    record ReplayResult(long records, long validBytes, boolean clean) {}
+
+    // Java serialization with an allow-list: a log file is input like any other
+    static <T extends Serializable> Serializer<T> javaSerializer(Class<T> type, String filterPattern) {
+        ObjectInputFilter filter = ObjectInputFilter.Config.createFilter(filterPattern);
+        return new Serializer<>() {
+            @Override
+            public byte[] encode(T value) throws IOException {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
+                try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+                    out.writeObject(value);
+                }
+                return baos.toByteArray();
+            }
+
+            @Override
+            public T decode(byte[] buf, int off, int len) throws IOException {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf, off, len))) {
+                    in.setObjectInputFilter(filter);
+                    return type.cast(in.readObject());
+                } catch (ClassNotFoundException e) {
+                    throw new InvalidClassException(e.getMessage());
+                }
+            }
+        };
+    }
+
+    static <T> Serializer<T> codecSerializer(_04_BinaryCodec.Schema<T> schema) {
+        return new Serializer<>() {
+            @Override
+            public byte[] encode(T value) {
+                return schema.encode(value);
+            }
+
+            @Override
+            public T decode(byte[] buf, int off, int len) throws StreamCorruptedException {
+                return schema.decode(buf, off, len);
+            }
+        };
+    }
+
+    // ------------------------------------------------------------
+    // The log
+    // ------------------------------------------------------------
+    static final class RecordLog<T> implements AutoCloseable {
+        static final int HEADER = 8;
+        static final int MAX_RECORD = 16 * 1024 * 1024;
+        private static final int BATCH_BYTES = 1024 * 1024;
+        private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+        private record Pending(byte[] payload, CompletableFuture<Long> done) {}
+
+        private static final Pending POISON = new Pending(new byte[0], null);
+
+        private final FileChannel ch;
+        private final Serializer<T> serializer;
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final Thread writer;
+        private final AtomicLong appended = new AtomicLong();
+        private final AtomicLong fsyncs = new AtomicLong();
+        private volatile boolean closed;
+        private long writePos;
+
+        private RecordLog(FileChannel ch, long validEnd, Serializer<T> serializer) {
+            this.ch = ch;
+            this.serializer = serializer;
+            this.writePos = validEnd;
+            this.writer = new Thread(this::writeLoop, "record-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        // Opens for appending; a torn tail from a previous crash is cut off first
+        static <T> RecordLog<T> open(Path file, Serializer<T> serializer) throws IOException {
+            long validEnd = Files.exists(file) ? scan(file, null, null).validBytes() : 0L;
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (ch.size() > validEnd) {
+                ch.truncate(validEnd);
+                ch.force(true);
+            }
+            ch.position(validEnd); // only the writer thread touches the position from here on
+            return new RecordLog<>(ch, validEnd, serializer);
+        }
+
+        /** Serializes on the caller thread; the future completes with the record offset once it is fsynced. */
+        CompletableFuture<Long> append(T value) {
+            if (closed) return CompletableFuture.failedFuture(new IllegalStateException("log closed"));
+            byte[] payload;
+            try {
+                payload = serializer.encode(value);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            if (payload.length > MAX_RECORD) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException("record too large: " + payload.length));
+            }
+            CompletableFuture<Long> f = new CompletableFuture<>();
+            queue.add(new Pending(payload, f));
+            return f;
+        }
+
+        private void writeLoop() {
+            ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+            ByteBuffer header = ByteBuffer.allocateDirect(HEADER);
+            List<Pending> group = new ArrayList<>();
+            List<Long> offsets = new ArrayList<>();
+            CRC32C crc = new CRC32C();
+            boolean stop = false;
+            while (!stop) {
+                try {
+                    group.add(queue.take()); // block for the first record, then take whatever else is waiting
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(group);
+                batch.clear();
+                offsets.clear();
+                long pos = writePos;
+                try {
+                    for (Pending p : group) {
+                        if (p == POISON) {
+                            stop = true;
+                            continue;
+                        }
+                        byte[] payload = p.payload();
+                        int checksum = frameCrc(crc, payload, payload.length);
+                        if (batch.remaining() < HEADER + payload.length) writeFully(batch.flip(), batch);
+                        if (batch.remaining() >= HEADER + payload.length) {
+                            batch.putInt(payload.length).putInt(checksum).put(payload);
+                        } else {
+                            // Larger than the batch buffer: gather-write header + payload directly
+                            header.clear().putInt(payload.length).putInt(checksum).flip();
+                            ByteBuffer[] frame = {header, ByteBuffer.wrap(payload)};
+                            while (frame[1].hasRemaining()) ch.write(frame);
+                        }
+                        offsets.add(pos);
+                        pos += HEADER + payload.length;
+                    }
+                    writeFully(batch.flip(), batch);
+                    if (!offsets.isEmpty()) {
+                        ch.force(false); // one fsync for the whole group
+                        fsyncs.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // Nothing in this group is durable: cut the partial write so a later replay cannot see it
+                    for (Pending p : group) {
+                        if (p == POISON) stop = true; // close() may have queued behind the failed record
+                        else p.done().completeExceptionally(e);
+                    }
+                    group.clear();
+                    try {
+                        ch.truncate(writePos);
+                        ch.position(writePos);
+                    } catch (IOException ignored) {
+                        stop = true; // channel unusable
+                    }
+                    continue;
+                }
+                writePos = pos;
+                int i = 0;
+                for (Pending p : group) {
+                    if (p == POISON) continue;
+                    appended.incrementAndGet();
+                    p.done().complete(offsets.get(i++));
+                }
+                group.clear();
+            }
+            // Anything still queued after close is rejected rather than silently dropped
+            for (Pending p : queue) {
+                if (p.done() != null) p.done().completeExceptionally(new IllegalStateException("log closed"));
+            }
+        }
+
+        // Writes the flipped batch, then leaves it cleared for reuse
+        private void writeFully(ByteBuffer flipped, ByteBuffer batch) throws IOException {
+            while (flipped.hasRemaining()) ch.write(flipped);
+            batch.clear();
+        }
+
+        long appended() { return appended.get(); }
+
+        long fsyncs() { return fsyncs.get(); }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            queue.add(POISON);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ch.close();
+        }
+
+        // CRC32C over the big-endian length, then the payload
+        private static int frameCrc(CRC32C crc, byte[] payload, int len) {
+            crc.reset();
+            crc.update(len >>> 24);
+            crc.update(len >>> 16);
+            crc.update(len >>> 8);
+            crc.update(len);
+            crc.update(payload, 0, len);
+            return (int) crc.getValue();
+        }
+
+        /** Sequential replay; stops at the first torn or corrupt frame. */
+        static <T> ReplayResult replay(Path file, Serializer<T> serializer, RecordHandler<T> handler) throws IOException {
+            return scan(file, serializer, handler);
+        }
+
+        private static <T> ReplayResult scan(Path file, Serializer<T> serializer, RecordHandler<T> handler) throws IOException {
+            byte[] scratch = new byte[4096]; // reused for every payload, grows to the largest record
+            CRC32C crc = new CRC32C();
+            long records = 0;
+            long pos = 0;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                while (true) {
+                    if (size - pos < HEADER) return new ReplayResult(records, pos, pos == size);
+                    // Map a window starting at the next frame; a frame cut by the window end is remapped next round
+                    MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos));
+                    while (map.remaining() >= HEADER) {
+                        int start = map.position();
+                        int len = map.getInt();
+                        int expected = map.getInt();
+                        if (len < 0 || len > MAX_RECORD) return new ReplayResult(records, pos + start, false);
+                        if (map.remaining() < len) {
+                            map.position(start);
+                            break;
+                        }
+                        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+                        map.get(scratch, 0, len);
+                        if (frameCrc(crc, scratch, len) != expected) return new ReplayResult(records, pos + start, false);
+                        if (handler != null) handler.onRecord(pos + start, serializer.decode(scratch, 0, len));
+                        records++;
+                    }
+                    // No complete frame in a window that starts at a frame boundary -> torn tail
+                    if (map.position() == 0) return new ReplayResult(records, pos, false);
+                    pos += map.position();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package _09_03_serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import _09_03_serialization._02_Examples.PersonBasic;
+
+/*
+    Pooled, copy-free buffers for the serializeToBytes / serializeToGzipBytes round-trips of _02_Examples.
+
+    Where the baseline allocates per call:
+    - new ByteArrayOutputStream, grown by copying (32 -> 64 -> 128 ...), then toByteArray() copies once more.
+    - GZIPOutputStream creates a new Deflater (native zlib state, ~256 KB) and ends it on close.
+    - GZIPInputStream does the same with an Inflater.
+
+    What the pooled path does:
+    - One thread-local set of buffers per thread: three growable direct ByteBuffers (serialized, gzipped,
+      inflated), a Deflater, an Inflater, a CRC32. After warm-up they have reached their working size and nothing grows any more.
+    - ObjectOutputStream writes into the raw buffer; GZIP output is produced with Deflater.deflate(ByteBuffer)
+      straight from the raw buffer into the packed buffer, with the 10-byte header and CRC/ISIZE trailer
+      written by hand. The result is a normal .gz stream (GZIPInputStream reads it).
+    - The caller gets a read-only ByteBuffer slice of the pooled buffer: no final copy. A direct slice can go
+      to a SocketChannel/FileChannel without another copy into a temporary native buffer.
+    - Decoding reads from a ByteBuffer through a reusable InputStream view, inflating with the pooled Inflater.
+
+    Contract: the returned slice is only valid until the same thread serializes again (like a reused RPC frame).
+    Deserializing does not invalidate it: inflating uses its own buffer.
+    ObjectOutputStream/ObjectInputStream themselves are still created per message; their internal block
+    buffers and the class descriptors they write are the remaining per-message cost.
+
+    Note:
+    - JMH (and its gc profiler) are not on the classpath here. Allocation per operation is read from
+      com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes, which is what -prof gc reports as
+      gc.alloc.rate.norm; latency percentiles come from per-operation nanoTime samples.
+*/
+public class _06_PooledSerializationBuffers {
+
+    public static void main(String[] args) throws Exception {
+        List<PersonBasic> people = new ArrayList<>();
+        for (int i = 0; i < 50; i++) people.add(new PersonBasic(i, "person-" + i, "pw"));
+
+        System.out.println("1) Compatibility with _02_Examples helpers");
+        ByteBuffer gz = PooledSerializer.serializeGzip(people);
+        List<PersonBasic> viaGzipInputStream = _02_Examples.deserializeFromGzipBytes(toArray(gz));
+        System.out.println("pooled gzip -> GZIPInputStream: " + viaGzipInputStream.size() + " people");
+        List<PersonBasic> viaPooled = PooledSerializer.deserializeGzip(ByteBuffer.wrap(_02_Examples.serializeToGzipBytes(people)));
+        System.out.println("GZIPOutputStream -> pooled inflate: " + viaPooled.size() + " people");
+        ByteBuffer plain = PooledSerializer.serialize(people.get(3));
+        System.out.println("plain slice: direct=" + plain.isDirect() + " readOnly=" + plain.isReadOnly()
+                + " bytes=" + plain.remaining() + " -> " + PooledSerializer.deserialize(plain));
+        PooledSerializer.deserializeGzip(gz); // a read on the same thread leaves the serialized slices alone
+        System.out.println("after deserializeGzip, plain slice still reads " + PooledSerializer.deserialize(plain));
+        System.out.println();
+
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        System.out.println("2) Allocation and latency per round-trip (" + ops + " ops, 50-element list)");
+        measure("serializeToBytes + deserializeFromBytes", ops, () -> {
+            byte[] b = _02_Examples.serializeToBytes(people);
+            return _02_Examples.deserializeFromBytes(b);
+        });
+        measure("pooled serialize + deserialize", ops, () -> PooledSerializer.deserialize(PooledSerializer.serialize(people)));
+        measure("serializeToGzipBytes + deserializeFromGzipBytes", ops, () -> {
+            byte[] b = _02_Examples.serializeToGzipBytes(people);
+            return _02_Examples.deserializeFromGzipBytes(b);
+        });
+        measure("pooled gzip serialize + deserialize", ops,
+                () -> PooledSerializer.deserializeGzip(PooledSerializer.serializeGzip(people)));
+    }
+
+    // ------------------------------------------------------------
+    // Thread-local buffer set + public API
+    // ------------------------------------------------------------
+    static final class PooledSerializer {
+        // Buffers larger than this are dropped after use so one huge message does not pin direct memory forever
+        static final int RETAIN_LIMIT = 1 << 20;
+        // Upper bound for inflated size, guards against decompression bombs
+        static final int MAX_INFLATED = 64 << 20;
+
+        private static final ThreadLocal<PooledSerializer> LOCAL = ThreadLocal.withInitial(PooledSerializer::new);
+
+        private final DirectBufferOutputStream raw = new DirectBufferOutputStream(4096);
+        private final DirectBufferOutputStream packed = new DirectBufferOutputStream(4096);
+        private final DirectBufferOutputStream inflated = new DirectBufferOutputStream(4096); // never handed out
+        private final ByteBufferInputStream in = new ByteBufferInputStream();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true); // raw deflate, we write the gzip framing
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+
+        private PooledSerializer() {}
+
+        /** Java-serialized bytes as a read-only slice; valid until this thread's next serialize call. */
+        static ByteBuffer serialize(Object obj) throws IOException {
+            PooledSerializer s = LOCAL.get();
+            s.writeObject(obj);
+            return s.raw.slice();
+        }
+
+        /** GZIP-compressed serialized bytes as a read-only slice; valid until this thread's next serialize call. */
+        static ByteBuffer serializeGzip(Object obj) throws IOException {
+            PooledSerializer s = LOCAL.get();
+            s.writeObject(obj);
+            ByteBuffer src = s.raw.slice();
+            s.crc.reset();
+            s.crc.update(src.duplicate());
+            s.packed.reset();
+            s.packed.writeGzipHeader();
+            s.deflater.reset();
+            s.deflater.setInput(src);
+            s.deflater.finish();
+            while (!s.deflater.finished()) {
+                ByteBuffer dst = s.packed.writableTail(Math.max(512, src.capacity() / 4));
+                int n = s.deflater.deflate(dst);
+                s.packed.advance(n);
+            }
+            s.packed.writeIntLE((int) s.crc.getValue());
+            s.packed.writeIntLE(src.capacity()); // ISIZE: uncompressed length mod 2^32
+            return s.packed.slice();
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T deserialize(ByteBuffer data) throws IOException, ClassNotFoundException {
+            PooledSerializer s = LOCAL.get();
+            s.in.reset(data.duplicate());
+            try (ObjectInputStream ois = new ObjectInputStream(s.in)) {
+                return (T) ois.readObject();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T deserializeGzip(ByteBuffer data) throws IOException, ClassNotFoundException {
+            PooledSerializer s = LOCAL.get();
+            ByteBuffer src = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int start = src.position();
+            if (src.remaining() < 18 || (src.get(start) & 0xFF) != 0x1F || (src.get(start + 1) & 0xFF) != 0x8B
+                    || src.get(start + 2) != 8) {
+                throw new StreamCorruptedException("not a gzip stream");
+            }
+            if (src.get(start + 3) != 0) {
+                // FEXTRA/FNAME/FCOMMENT/FHCRC: not produced by either writer here, take the general path
+                return (T) _02_Examples.deserializeFromGzipBytes(toArray(data));
+            }
+            int crcExpected = src.getInt(src.limit() - 8);
+            int size = src.getInt(src.limit() - 4);
+            if (size < 0 || size > MAX_INFLATED) throw new StreamCorruptedException("inflated size out of range: " + size);
+
+            ByteBuffer body = src.duplicate().position(start + 10).limit(src.limit() - 8);
+            s.inflated.reset();
+            ByteBuffer dst = s.inflated.writableTail(size);
+            s.inflater.reset();
+            s.inflater.setInput(body);
+            try {
+                while (!s.inflater.finished() && dst.hasRemaining()) {
+                    int n = s.inflater.inflate(dst);
+                    if (n == 0 && (s.inflater.needsInput() || s.inflater.needsDictionary())) break;
+                }
+            } catch (DataFormatException e) {
+                StreamCorruptedException sce = new StreamCorruptedException("bad deflate data");
+                sce.initCause(e);
+                throw sce;
+            }
+            if (!s.inflater.finished() || dst.position() != size) throw new StreamCorruptedException("truncated gzip stream");
+            s.inflated.advance(size);
+            ByteBuffer plain = s.inflated.slice();
+            s.crc.reset();
+            s.crc.update(plain.duplicate());
+            if ((int) s.crc.getValue() != crcExpected) throw new StreamCorruptedException("gzip CRC mismatch");
+            s.in.reset(plain);
+            try (ObjectInputStream ois = new ObjectInputStream(s.in)) {
+                return (T) ois.readObject();
+            }
+        }
+
+        private void writeObject(Object obj) throws IOException {
+            raw.reset();
+            try (ObjectOutputStream out = new ObjectOutputStream(raw)) {
+                out.writeObject(obj);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Growable direct-buffer OutputStream and ByteBuffer InputStream
+    // ------------------------------------------------------------
+    static final class DirectBufferOutputStream extends OutputStream {
+        private ByteBuffer buf;
+        private final int initialCapacity;
+
+        DirectBufferOutputStream(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            this.buf = ByteBuffer.allocateDirect(initialCapacity);
+        }
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buf.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            buf.put(b, off, len);
+        }
+
+        // close() is a no-op: the buffer outlives the ObjectOutputStream wrapped around it
+        @Override
+        public void close() {}
+
+        void reset() {
+            if (buf.capacity() > PooledSerializer.RETAIN_LIMIT) buf = ByteBuffer.allocateDirect(initialCapacity);
+            buf.clear();
+        }
+
+        void writeGzipHeader() {
+            ensure(10);
+            buf.put(new byte[]{0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF}); // same header as GZIPOutputStream
+        }
+
+        void writeIntLE(int v) {
+            ensure(4);
+            buf.order(ByteOrder.LITTLE_ENDIAN).putInt(v).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        // A view of at least minBytes free space at the write position; call advance(n) after filling it
+        ByteBuffer writableTail(int minBytes) {
+            ensure(minBytes);
+            return buf.duplicate().limit(buf.capacity());
+        }
+
+        void advance(int n) {
+            buf.position(buf.position() + n);
+        }
+
+        // Read-only view of [0, position): no copy
+        ByteBuffer slice() {
+            return buf.duplicate().flip().slice().asReadOnlyBuffer();
+        }
+
+        private void ensure(int extra) {
+            if (buf.remaining() >= extra) return;
+            int needed = buf.position() + extra;
+            ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buf.capacity() * 2, needed));
+            bigger.put(buf.flip());
+            buf = bigger;
+        }
+    }
+
+    static final class ByteBufferInputStream extends InputStream {
+        private ByteBuffer src = ByteBuffer.allocate(0);
+
+        void reset(ByteBuffer src) {
+            this.src = src;
+        }
+
+        @Override
+        public int read() {
+            return src.hasRemaining() ? src.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!src.hasRemaining()) return -1;
+            int n = Math.min(len, src.remaining());
+            src.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return src.remaining();
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    // ------------------------------------------------------------
+    // Measurement: bytes allocated per op (like -prof gc) and latency percentiles
+    // ------------------------------------------------------------
+    interface RoundTrip {
+        Object run() throws Exception;
+    }
+
+    private static void measure(String label, int ops, RoundTrip op) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try {
+            for (int i = 0; i < ops; i++) op.run(); // warm-up
+            long[] samples = new long[ops];
+            Object last = null;
+            long alloc0 = mx.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < ops; i++) {
+                long t0 = System.nanoTime();
+                last = op.run();
+                samples[i] = System.nanoTime() - t0;
+            }
+            long allocPerOp = (mx.getCurrentThreadAllocatedBytes() - alloc0) / ops;
+            Arrays.sort(samples);
+            System.out.printf("%-50s alloc=%7d B/op  p50=%6.1f us  p99=%7.1f us  (%s)%n", label, allocPerOp,
+                    samples[ops / 2] / 1e3, samples[(int) (ops * 0.99)] / 1e3, last == null ? "null" : "ok");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(new InvalidClassException(e.getMessage()));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer b) {
+        byte[] out = new byte[b.remaining()];
+        b.duplicate().get(out);
+        return out;
+    }
+}
@@ -0,0 +1,261 @@
+package _09_03_serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import _09_03_serialization._02_Examples.PersonBasic;
+import _09_03_serialization._03_InterviewQA.SensitiveData;
+
+/*
+    Session-oriented ObjectOutputStream/ObjectInputStream pair that sends each class descriptor once per
+    connection and refers to it by a small integer afterwards.
+
+    Background:
+    - SubstitutingOOS/ResolvingOIS in _03_InterviewQA show the replaceObject/resolveObject hooks. Two more hooks
+      exist for exactly this purpose: ObjectOutputStream.writeClassDescriptor and ObjectInputStream.readClassDescriptor.
+    - The handle table that lets a stream write a descriptor only once is per stream. With one small message per
+      stream (RPC, queues) every message repeats class name, serialVersionUID and every field name/type signature.
+
+    How the session pair works:
+    - A WriterSession/ReaderSession pair lives as long as the connection. The first time a class is written the
+      writer sends [NEW][id][full descriptor]; later messages send [REF][id] (1-2 bytes).
+    - New ids are only committed when a message is closed successfully, so a message that fails mid-way does not
+      leave the two sides out of sync. Messages must be read in the order they were written (TCP, one queue).
+    - The reader caches the descriptor per id and, per session, resolveClass results per name (Class.forName is not cheap).
+    - Security is unchanged: ObjectInputStream still runs the ObjectInputFilter for every class it resolves, on
+      every message, whether the descriptor came from the wire or from the cache. A class that was once allowed
+      and later removed from the allow-list is rejected from that point on.
+    - A message that fails to read (filter rejection, corrupt data) may have been abandoned before some NEW
+      descriptors, so the reader session refuses further messages: the connection has to be re-established.
+*/
+public class _07_SessionObjectStreams {
+
+    public static void main(String[] args) throws Exception {
+        ObjectInputFilter allowList = ObjectInputFilter.Config.createFilter(
+                "_09_03_serialization._02_Examples$PersonBasic;java.lang.*;java.util.*;maxdepth=8;!*");
+
+        System.out.println("1) Bytes per message: new stream per message vs session streams");
+        WriterSession writer = new WriterSession();
+        ReaderSession reader = new ReaderSession(allowList);
+        for (int i = 0; i < 3; i++) {
+            PersonBasic p = new PersonBasic(i, "user-" + i, "pw");
+            byte[] plain = _02_Examples.serializeToBytes(p);
+            byte[] session = writer.write(p);
+            PersonBasic back = reader.read(session);
+            System.out.println("msg " + i + ": plain=" + plain.length + " B, session=" + session.length + " B -> " + back);
+        }
+        System.out.println("descriptors cached by reader: " + reader.cachedDescriptors());
+        System.out.println();
+
+        System.out.println("2) Allow-list still enforced with cached descriptors");
+        try {
+            reader.read(writer.write(new SensitiveData("top-secret")));
+        } catch (InvalidClassException e) {
+            System.out.println("rejected: " + e.getMessage());
+        }
+        // The reader stopped mid-message, so it may have missed descriptors the writer has committed:
+        try {
+            reader.read(writer.write(new PersonBasic(9, "ok", "pw")));
+        } catch (StreamCorruptedException e) {
+            System.out.println("session after a failed read: " + e.getMessage());
+        }
+        System.out.println();
+
+        System.out.println("3) Collections reuse descriptors for ArrayList, Integer, Number ...");
+        List<Integer> nums = new ArrayList<>(List.of(1, 2, 3));
+        System.out.println("first list msg: " + writer.write(nums).length + " B, second: " + writer.write(nums).length + " B");
+        System.out.println();
+
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        System.out.println("4) " + n + " small messages, encode + decode");
+        List<PersonBasic> msgs = new ArrayList<>();
+        for (int i = 0; i < n; i++) msgs.add(new PersonBasic(i, "user-" + i, "pw"));
+        for (int round = 0; round < 3; round++) {
+            long bytesPlain = 0;
+            long t0 = System.nanoTime();
+            for (PersonBasic p : msgs) {
+                byte[] b = _02_Examples.serializeToBytes(p);
+                bytesPlain += b.length;
+                fromBytesFiltered(b, allowList);
+            }
+            long t1 = System.nanoTime();
+            WriterSession w = new WriterSession();
+            ReaderSession r = new ReaderSession(allowList);
+            long bytesSession = 0;
+            for (PersonBasic p : msgs) {
+                byte[] b = w.write(p);
+                bytesSession += b.length;
+                r.read(b);
+            }
+            long t2 = System.nanoTime();
+            System.out.printf("round %d: plain %d B/msg %.1f ms | session %d B/msg %.1f ms%n", round,
+                    bytesPlain / n, (t1 - t0) / 1e6, bytesSession / n, (t2 - t1) / 1e6);
+        }
+    }
+
+    // Markers written in place of a class descriptor
+    static final int NEW = 0;
+    static final int REF = 1;
+
+    // ------------------------------------------------------------
+    // Writer side
+    // ------------------------------------------------------------
+    static final class WriterSession {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int nextId;
+
+        /** One message = one stream; the descriptor table survives across messages. */
+        byte[] write(Object obj) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+            try (SessionObjectOutputStream out = new SessionObjectOutputStream(baos, this)) {
+                out.writeObject(obj);
+                out.commit();
+            }
+            return baos.toByteArray();
+        }
+
+        // name + SUID identifies the descriptor; a redeployed class with a new SUID gets a new id
+        private static String key(ObjectStreamClass desc) {
+            return desc.getName() + '#' + desc.getSerialVersionUID();
+        }
+    }
+
+    static final class SessionObjectOutputStream extends ObjectOutputStream {
+        private final WriterSession session;
+        // ids assigned by this message, committed only if the whole message was written
+        private final Map<String, Integer> pending = new LinkedHashMap<>();
+
+        SessionObjectOutputStream(OutputStream out, WriterSession session) throws IOException {
+            super(out);
+            this.session = session;
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            String key = WriterSession.key(desc);
+            Integer id = session.ids.get(key);
+            if (id == null) id = pending.get(key);
+            if (id != null) {
+                writeByte(REF);
+                writeVarInt(id);
+                return;
+            }
+            id = session.nextId + pending.size();
+            pending.put(key, id);
+            writeByte(NEW);
+            writeVarInt(id);
+            super.writeClassDescriptor(desc);
+        }
+
+        void commit() {
+            session.ids.putAll(pending);
+            session.nextId += pending.size();
+            pending.clear();
+        }
+
+        private void writeVarInt(int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                writeByte((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            writeByte(v);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Reader side
+    // ------------------------------------------------------------
+    static final class ReaderSession {
+        private final ObjectInputFilter filter;
+        private final Map<Integer, ObjectStreamClass> descriptors = new HashMap<>();
+        // Per session, not static: the same name can resolve to different classes under different loaders
+        private final Map<String, Class<?>> resolved = new HashMap<>();
+        private boolean broken;
+
+        ReaderSession(ObjectInputFilter filter) {
+            this.filter = filter;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T read(byte[] message) throws IOException, ClassNotFoundException {
+            if (broken) throw new StreamCorruptedException("session invalidated by an earlier failed message; reconnect");
+            boolean ok = false;
+            try (SessionObjectInputStream in = new SessionObjectInputStream(new ByteArrayInputStream(message), this)) {
+                in.setObjectInputFilter(filter);
+                T value = (T) in.readObject();
+                ok = true;
+                return value;
+            } finally {
+                if (!ok) broken = true;
+            }
+        }
+
+        int cachedDescriptors() { return descriptors.size(); }
+    }
+
+    static final class SessionObjectInputStream extends ObjectInputStream {
+        private final ReaderSession session;
+
+        SessionObjectInputStream(InputStream in, ReaderSession session) throws IOException {
+            super(in);
+            this.session = session;
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int marker = readUnsignedByte();
+            int id = readVarInt();
+            if (marker == NEW) {
+                ObjectStreamClass desc = super.readClassDescriptor();
+                session.descriptors.put(id, desc);
+                return desc;
+            }
+            if (marker != REF) throw new StreamCorruptedException("bad descriptor marker " + marker);
+            ObjectStreamClass desc = session.descriptors.get(id);
+            if (desc == null) throw new StreamCorruptedException("unknown descriptor id " + id + " (sessions out of sync)");
+            return desc;
+        }
+
+        // The filter check runs after this returns, on every message
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> cached = session.resolved.get(desc.getName());
+            if (cached != null) return cached;
+            Class<?> cl = super.resolveClass(desc);
+            session.resolved.put(desc.getName(), cl);
+            return cl;
+        }
+
+        private int readVarInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readUnsignedByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new StreamCorruptedException("varint too long");
+        }
+    }
+
+    // Baseline for the comparison: a new plain ObjectInputStream per message with the same filter
+    private static Object fromBytesFiltered(byte[] data, ObjectInputFilter filter) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            in.setObjectInputFilter(filter);
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package _10_01_reflection_and_annotations;
+
+import java.lang.annotation.*;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.CONSTRUCTOR})
+@interface Author {
+    String name();
+    String date() default "";
+    String[] reviewers() default {};
+}
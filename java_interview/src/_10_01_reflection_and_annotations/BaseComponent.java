@@ -0,0 +1,10 @@
+package _10_01_reflection_and_annotations;
+
+@FrameworkComponent("base")
+class BaseComponent {
+    @Range(min = 0, max = 120)
+    private int age;
+
+    @Author(name = "Alice", date = "2024-01-01")
+    public String echo(@NotNull String s) { return "Echo: " + s; }
+}
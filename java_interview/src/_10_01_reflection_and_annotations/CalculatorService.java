@@ -0,0 +1,7 @@
+package _10_01_reflection_and_annotations;
+
+interface CalculatorService {
+    @Author(name = "Bob")
+    @Endpoint(path = "/add")
+    int add(@Range(min = 0) int a, @Range(min = 0) int b);
+}
@@ -0,0 +1,5 @@
+package _10_01_reflection_and_annotations;
+
+class CalculatorServiceImpl implements CalculatorService {
+    @Override public int add(int a, int b) { return a + b; }
+}
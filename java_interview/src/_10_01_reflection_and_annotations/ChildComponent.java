@@ -0,0 +1,3 @@
+package _10_01_reflection_and_annotations;
+
+class ChildComponent extends BaseComponent {}
@@ -0,0 +1,10 @@
+package _10_01_reflection_and_annotations;
+
+import java.lang.annotation.*;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Endpoint {
+    String path();
+    boolean secure() default true;
+}
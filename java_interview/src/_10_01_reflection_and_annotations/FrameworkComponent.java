@@ -0,0 +1,8 @@
+package _10_01_reflection_and_annotations;
+
+import java.lang.annotation.*;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+@interface FrameworkComponent { String value() default ""; }
@@ -0,0 +1,13 @@
+package _10_01_reflection_and_annotations;
+
+import java.util.*;
+
+class GenericRepository<T> {
+    List<@TypeUseAnno T> items = new ArrayList<>();
+    Map<@TypeUseAnno String, List<@TypeUseAnno T>> index = new HashMap<>();
+
+    public void add(@NotNull T t) { items.add(t); }
+
+    @Author(name = "Carol")
+    public Map<@TypeUseAnno String, List<@TypeUseAnno T>> snapshot() { return new HashMap<>(index); }
+}
@@ -0,0 +1,7 @@
+package _10_01_reflection_and_annotations;
+
+import java.lang.annotation.*;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.CONSTRUCTOR)
+@interface Inject {}
@@ -0,0 +1,28 @@
+package _10_01_reflection_and_annotations;
+
+class Person {
+    public static String species = "Homo sapiens";
+
+    private String name;
+    private int age;
+
+    public Person() {
+        this("Unknown", 0);
+    }
+
+    @Inject
+    public Person(@NotNull String name, @Range(min = 0, max = 150) int age) {
+        this.name = name;
+        this.age = age;
+    }
+
+    private String greet(@NotNull String prefix) {
+        return prefix + " " + name;
+    }
+
+    public static int yearsUntilRetirement(@Range(min = 0) int age) {
+        return Math.max(65 - age, 0);
+    }
+
+    @Override public String toString() { return "Person{name='" + name + "', age=" + age + "}"; }
+}
@@ -272,14 +272,8 @@ public class _02_Examples {
 }
 
 // === Sample annotations ===
-
-@Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.TYPE, ElementType.METHOD, ElementType.CONSTRUCTOR})
-@interface Author {
-    String name();
-    String date() default "";
-    String[] reviewers() default {};
-}
+// Author, NotNull, Range, Endpoint, FrameworkComponent, TypeUseAnno and Inject live in their own files:
+// later examples in this package use them too.
 
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.TYPE, ElementType.METHOD})
@@ -290,103 +284,19 @@ public class _02_Examples {
 @Target({ElementType.TYPE, ElementType.METHOD})
 @interface Tags { Tag[] value(); }
 
-@Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.TYPE)
-@Inherited
-@interface FrameworkComponent { String value() default ""; }
-
-@Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.PARAMETER, ElementType.FIELD})
-@interface NotNull {}
-
-@Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.PARAMETER, ElementType.FIELD})
-@interface Range { long min() default Long.MIN_VALUE; long max() default Long.MAX_VALUE; }
-
-@Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.TYPE_USE, ElementType.TYPE_PARAMETER})
-@interface TypeUseAnno { String value() default "TU"; }
-
 @Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 @interface ClassRetentionOnly {}
 
-@Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.METHOD)
-@interface Endpoint {
-    String path();
-    boolean secure() default true;
-}
-
-@Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.CONSTRUCTOR)
-@interface Inject {}
-
 // === Sample classes/interfaces used in examples ===
-
-@FrameworkComponent("base")
-class BaseComponent {
-    @Range(min = 0, max = 120)
-    private int age;
-
-    @Author(name = "Alice", date = "2024-01-01")
-    public String echo(@NotNull String s) { return "Echo: " + s; }
-}
-
-class ChildComponent extends BaseComponent {}
+// BaseComponent, ChildComponent, Person, GenericRepository and CalculatorService(Impl) live in their own files
+// for the same reason.
 
 @Tag("alpha")
 @Tag("beta")
 @ClassRetentionOnly
 class WithTags {}
 
-class Person {
-    public static String species = "Homo sapiens";
-
-    private String name;
-    private int age;
-
-    public Person() {
-        this("Unknown", 0);
-    }
-
-    @Inject
-    public Person(@NotNull String name, @Range(min = 0, max = 150) int age) {
-        this.name = name;
-        this.age = age;
-    }
-
-    private String greet(@NotNull String prefix) {
-        return prefix + " " + name;
-    }
-
-    public static int yearsUntilRetirement(@Range(min = 0) int age) {
-        return Math.max(65 - age, 0);
-    }
-
-    @Override public String toString() { return "Person{name='" + name + "', age=" + age + "}"; }
-}
-
-class GenericRepository<T> {
-    List<@TypeUseAnno T> items = new ArrayList<>();
-    Map<@TypeUseAnno String, List<@TypeUseAnno T>> index = new HashMap<>();
-
-    public void add(@NotNull T t) { items.add(t); }
-
-    @Author(name = "Carol")
-    public Map<@TypeUseAnno String, List<@TypeUseAnno T>> snapshot() { return new HashMap<>(index); }
-}
-
-interface CalculatorService {
-    @Author(name = "Bob")
-    @Endpoint(path = "/add")
-    int add(@Range(min = 0) int a, @Range(min = 0) int b);
-}
-
-class CalculatorServiceImpl implements CalculatorService {
-    @Override public int add(int a, int b) { return a + b; }
-}
-
 // InvocationHandler that logs and enforces @NotNull/@Range on interface methods
 class LoggingHandler implements InvocationHandler {
     private final Object target;
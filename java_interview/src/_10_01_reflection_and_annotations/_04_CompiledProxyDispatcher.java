@@ -0,0 +1,411 @@
+package _10_01_reflection_and_annotations;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Compiled dynamic proxies — resolve everything once per Method, keep only the call on the hot path.
+
+What LoggingInvocationHandler (_01_Theory) and LoggingHandler (_02_Examples) pay on every call:
+- method.getAnnotation(...) / p.getAnnotation(...) for every parameter (the annotation maps are cached by the JDK,
+  but each lookup is a map probe and Parameter[] / Annotation[] arrays are copied).
+- Method.invoke: access check, argument unboxing/checking, and exceptions wrapped in InvocationTargetException
+  (which the handler then leaks as UndeclaredThrowableException).
+
+What CompiledProxyFactory does instead:
+- For each interface, once: walk its methods, ask every Interceptor whether it wants to take part in calls to that
+  Method (Interceptor.adviceFor), and keep only the non-null advice in an array -> the interceptor chain per Method.
+  Annotations are read here and captured in the advice (ranges as long min/max, paths as Strings, counters).
+- The target call is compiled once per Method into an Invoker(target, args):
+  - METHOD_HANDLE: unreflect -> asSpreader(Object[]) -> asType((Object,Object[])Object), called via invokeExact.
+  - LAMBDA: LambdaMetafactory spins a Call0..Call3 implementation whose body is an invokeinterface on the target;
+    unboxing of the arguments and boxing of the result are done by the generated class. Falls back to
+    METHOD_HANDLE for void methods, more than 3 parameters or when the interface cannot see Call0..Call3.
+- Per proxy only the target and the shared template are stored; per call: one HashMap probe (Method -> plan),
+  the advice chain (no chain object at all if it is empty), and the compiled call. Target exceptions propagate
+  unwrapped, as for a direct call.
+
+What stays: the Object[] argument array and boxing of primitives — that is the InvocationHandler contract of
+java.lang.reflect.Proxy. Removing it too needs a generated proxy class per interface (bytecode generation),
+which is out of scope here.
+
+Measurement: JMH is not available in this project, so main() runs a warmed-up ad-hoc loop (as in _06_04). Treat
+the numbers as relative, and run with -Xint or -XX:-Inline to see how much of the gap is JIT inlining.
+*/
+public class _04_CompiledProxyDispatcher {
+
+    private static volatile Object BLACKHOLE;
+
+    public static void main(String[] args) throws Throwable {
+        section("A. Interceptors resolved once per Method");
+        EndpointMetrics metrics = new EndpointMetrics();
+        CompiledProxyFactory factory = new CompiledProxyFactory(CompiledProxyFactory.Binding.LAMBDA,
+                new TraceInterceptor(), new ValidationInterceptor(), metrics);
+        OrderService orders = factory.create(OrderService.class, new OrderServiceImpl());
+        System.out.println("price = " + orders.price("SKU-1", 3));
+        orders.cancel("A-17");
+        System.out.println("describe = " + orders.describe());
+        System.out.println(factory.explain(OrderService.class));
+
+        section("B. Validation and exceptions");
+        try {
+            orders.price("SKU-1", 0);
+        } catch (IllegalArgumentException e) {
+            System.out.println("rejected: " + e.getMessage());
+        }
+        try {
+            orders.price(null, 1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("rejected: " + e.getMessage());
+        }
+        try {
+            orders.price("discontinued", 1);
+        } catch (IllegalStateException e) {
+            System.out.println("compiled proxy rethrows target exception as is: " + e);
+        }
+        OrderService reflective = (OrderService) Proxy.newProxyInstance(OrderService.class.getClassLoader(),
+                new Class<?>[]{OrderService.class}, new ReflectiveHandler(new OrderServiceImpl()));
+        try {
+            reflective.price("discontinued", 1);
+        } catch (UndeclaredThrowableException e) {
+            System.out.println("Method.invoke-based proxy wraps it: " + e.getCause());
+        }
+        System.out.println("calls to /orders/price: " + metrics.calls("/orders/price"));
+
+        section("C. Per-call overhead (1M calls of CalculatorService.add)");
+        CalculatorService direct = new CalculatorServiceImpl();
+        CalculatorService reflect = (CalculatorService) Proxy.newProxyInstance(CalculatorService.class.getClassLoader(),
+                new Class<?>[]{CalculatorService.class}, new ReflectiveHandler(new CalculatorServiceImpl()));
+        CalculatorService viaHandles = new CompiledProxyFactory(CompiledProxyFactory.Binding.METHOD_HANDLE,
+                new ValidationInterceptor(), new EndpointMetrics()).create(CalculatorService.class, new CalculatorServiceImpl());
+        CalculatorService viaLambda = new CompiledProxyFactory(CompiledProxyFactory.Binding.LAMBDA,
+                new ValidationInterceptor(), new EndpointMetrics()).create(CalculatorService.class, new CalculatorServiceImpl());
+        CalculatorService bare = new CompiledProxyFactory(CompiledProxyFactory.Binding.LAMBDA)
+                .create(CalculatorService.class, new CalculatorServiceImpl());
+
+        int calls = 1_000_000;
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round);
+            bench("direct call", 3, 5, () -> BLACKHOLE = loop(direct, calls));
+            bench("reflective handler", 3, 5, () -> BLACKHOLE = loop(reflect, calls));
+            bench("compiled, MethodHandle", 3, 5, () -> BLACKHOLE = loop(viaHandles, calls));
+            bench("compiled, LambdaMetafactory", 3, 5, () -> BLACKHOLE = loop(viaLambda, calls));
+            bench("compiled, no interceptors", 3, 5, () -> BLACKHOLE = loop(bare, calls));
+        }
+    }
+
+    private static long loop(CalculatorService s, int calls) {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) sum += s.add(i & 1023, 7);
+        return sum;
+    }
+
+    // ----------------------------------------------------------------
+    // API
+    // ----------------------------------------------------------------
+
+    /** Consulted once per Method when an interface is first proxied. */
+    interface Interceptor {
+        /** Returns the advice to run around calls to {@code method}, or null to stay out of its chain. */
+        Advice adviceFor(Method method);
+    }
+
+    @FunctionalInterface
+    interface Advice {
+        Object around(Invocation call) throws Throwable;
+    }
+
+    /** Compiled call of one interface method on a target; args is the array handed over by Proxy (may be null). */
+    @FunctionalInterface
+    interface Invoker {
+        Object invoke(Object target, Object[] args) throws Throwable;
+    }
+
+    /** One in-flight call through a non-empty advice chain. */
+    static final class Invocation {
+        private final MethodPlan plan;
+        private final Object target;
+        private final Object[] args;
+        private int next;
+
+        Invocation(MethodPlan plan, Object target, Object[] args) {
+            this.plan = plan;
+            this.target = target;
+            this.args = args;
+        }
+
+        Method method() { return plan.method; }
+        Object[] args() { return args; }
+
+        Object proceed() throws Throwable {
+            Advice[] chain = plan.chain;
+            if (next < chain.length) return chain[next++].around(this);
+            return plan.invoker.invoke(target, args);
+        }
+    }
+
+    /** Everything known about one Method, computed once. */
+    static final class MethodPlan {
+        final Method method;
+        final Advice[] chain;
+        final Invoker invoker;
+        final String binding;
+
+        MethodPlan(Method method, Advice[] chain, Invoker invoker, String binding) {
+            this.method = method;
+            this.chain = chain;
+            this.invoker = invoker;
+            this.binding = binding;
+        }
+
+        Object dispatch(Object target, Object[] args) throws Throwable {
+            if (chain.length == 0) return invoker.invoke(target, args);
+            return new Invocation(this, target, args).proceed();
+        }
+    }
+
+    // Functional shapes for LambdaMetafactory; public so that interfaces in other packages can implement them
+    @FunctionalInterface public interface Call0 { Object call(Object target); }
+    @FunctionalInterface public interface Call1 { Object call(Object target, Object a); }
+    @FunctionalInterface public interface Call2 { Object call(Object target, Object a, Object b); }
+    @FunctionalInterface public interface Call3 { Object call(Object target, Object a, Object b, Object c); }
+
+    // ----------------------------------------------------------------
+    // Factory
+    // ----------------------------------------------------------------
+    static final class CompiledProxyFactory {
+        enum Binding { METHOD_HANDLE, LAMBDA }
+
+        private static final Class<?>[] SHAPES = {Call0.class, Call1.class, Call2.class, Call3.class};
+        private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+        private final Binding binding;
+        private final Interceptor[] interceptors;
+        // Plans depend on the interface and the interceptors, not on the target: shared by all proxies
+        private final Map<Class<?>, Map<Method, MethodPlan>> templates = new ConcurrentHashMap<>();
+
+        CompiledProxyFactory(Binding binding, Interceptor... interceptors) {
+            this.binding = binding;
+            this.interceptors = interceptors.clone();
+        }
+
+        <T> T create(Class<T> iface, T target) {
+            if (!iface.isInterface()) throw new IllegalArgumentException(iface + " is not an interface");
+            Map<Method, MethodPlan> plans = templates.computeIfAbsent(iface, this::compile);
+            InvocationHandler handler = (proxy, method, args) -> plans.get(method).dispatch(target, args);
+            return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, handler));
+        }
+
+        String explain(Class<?> iface) {
+            StringBuilder sb = new StringBuilder("plans for " + iface.getSimpleName() + ":");
+            templates.getOrDefault(iface, Map.of()).values().stream()
+                    .filter(p -> p.method.getDeclaringClass() != Object.class)
+                    .sorted((a, b) -> a.method.getName().compareTo(b.method.getName()))
+                    .forEach(p -> sb.append("\n  ").append(p.method.getName())
+                            .append(": advice=").append(p.chain.length).append(", binding=").append(p.binding));
+            return sb.toString();
+        }
+
+        private Map<Method, MethodPlan> compile(Class<?> iface) {
+            MethodHandles.Lookup lookup;
+            try {
+                lookup = MethodHandles.privateLookupIn(iface, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("cannot access " + iface, e);
+            }
+            Map<Method, MethodPlan> plans = new HashMap<>();
+            List<Method> methods = new ArrayList<>(List.of(iface.getMethods()));
+            // Proxy routes these three through the handler as well
+            try {
+                methods.add(Object.class.getMethod("hashCode"));
+                methods.add(Object.class.getMethod("equals", Object.class));
+                methods.add(Object.class.getMethod("toString"));
+            } catch (NoSuchMethodException e) {
+                throw new AssertionError(e);
+            }
+            for (Method m : methods) {
+                if (Modifier.isStatic(m.getModifiers())) continue;
+                List<Advice> chain = new ArrayList<>();
+                for (Interceptor i : interceptors) {
+                    Advice a = i.adviceFor(m);
+                    if (a != null) chain.add(a);
+                }
+                plans.put(m, bind(lookup, m, chain.toArray(new Advice[0])));
+            }
+            return Map.copyOf(plans);
+        }
+
+        private MethodPlan bind(MethodHandles.Lookup lookup, Method m, Advice[] chain) {
+            try {
+                MethodHandle target = lookup.unreflect(m);
+                if (binding == Binding.LAMBDA) {
+                    Invoker lambda = lambdaInvoker(lookup, target);
+                    if (lambda != null) return new MethodPlan(m, chain, lambda, "lambda");
+                }
+                MethodHandle spread = target.asSpreader(Object[].class, m.getParameterCount()).asType(SPREAD_TYPE);
+                // Proxy passes null instead of an empty array for no-arg methods; asSpreader accepts both
+                return new MethodPlan(m, chain, (t, args) -> spread.invokeExact(t, args), "method handle");
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("cannot access " + m, e);
+            }
+        }
+
+        /** LambdaMetafactory-backed invoker, or null if this method has no matching shape. */
+        private static Invoker lambdaInvoker(MethodHandles.Lookup lookup, MethodHandle target) {
+            MethodType type = target.type(); // (receiver, params...) -> return
+            int arity = type.parameterCount() - 1;
+            if (arity >= SHAPES.length || type.returnType() == void.class) return null;
+            Object fn;
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "call",
+                        MethodType.methodType(SHAPES[arity]),
+                        MethodType.genericMethodType(arity + 1),
+                        target,
+                        type.wrap().changeReturnType(Object.class));
+                fn = site.getTarget().invoke();
+            } catch (LambdaConversionException | LinkageError e) {
+                return null; // e.g. the interface's loader cannot see Call0..Call3
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot link " + target, e);
+            }
+            return switch (arity) {
+                case 0 -> { Call0 c = (Call0) fn; yield (t, a) -> c.call(t); }
+                case 1 -> { Call1 c = (Call1) fn; yield (t, a) -> c.call(t, a[0]); }
+                case 2 -> { Call2 c = (Call2) fn; yield (t, a) -> c.call(t, a[0], a[1]); }
+                default -> { Call3 c = (Call3) fn; yield (t, a) -> c.call(t, a[0], a[1], a[2]); }
+            };
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Interceptors
+    // ----------------------------------------------------------------
+
+    /** @NotNull / @Range on interface parameters, compiled once into an ArgumentPlan (_05_PrecompiledValidator). */
+    static final class ValidationInterceptor implements Interceptor {
+        @Override
+        public Advice adviceFor(Method method) {
+            _05_PrecompiledValidator.ArgumentPlan plan = _05_PrecompiledValidator.ArgumentPlan.compile(method);
+            if (plan.isEmpty()) return null;
+            return call -> {
+                plan.check(call.args());
+                return call.proceed();
+            };
+        }
+    }
+
+    /** Counts calls per @Endpoint path; the counter is looked up once per Method, not per call. */
+    static final class EndpointMetrics implements Interceptor {
+        private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+        @Override
+        public Advice adviceFor(Method method) {
+            Endpoint ep = method.getAnnotation(Endpoint.class);
+            if (ep == null) return null;
+            LongAdder counter = counters.computeIfAbsent(ep.path(), p -> new LongAdder());
+            return call -> {
+                counter.increment();
+                return call.proceed();
+            };
+        }
+
+        long calls(String path) {
+            LongAdder c = counters.get(path);
+            return c == null ? 0 : c.sum();
+        }
+    }
+
+    /** Demo-only: the LoggingHandler output, with the endpoint string built once. */
+    static final class TraceInterceptor implements Interceptor {
+        @Override
+        public Advice adviceFor(Method method) {
+            if (method.getDeclaringClass() == Object.class) return null;
+            Endpoint ep = method.getAnnotation(Endpoint.class);
+            String prefix = ep != null ? "Calling " + ep.path() + " (secure=" + ep.secure() + ") " : "Calling ";
+            String name = method.getName();
+            return call -> {
+                Object[] a = call.args();
+                System.out.println(prefix + name + (a == null ? "()" : Arrays.toString(a)));
+                return call.proceed();
+            };
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Baseline and sample service
+    // ----------------------------------------------------------------
+
+    /** LoggingHandler without the printing: annotations and Method.invoke on every call. */
+    static final class ReflectiveHandler implements InvocationHandler {
+        private final Object target;
+
+        ReflectiveHandler(Object target) { this.target = target; }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Endpoint ep = method.getAnnotation(Endpoint.class);
+            BLACKHOLE = ep;
+            if (args == null) args = new Object[0];
+            _02_Examples.validateArgs(method, args);
+            return method.invoke(target, args);
+        }
+    }
+
+    interface OrderService {
+        @Endpoint(path = "/orders/price", secure = false)
+        long price(@NotNull String sku, @Range(min = 1, max = 1000) int qty);
+
+        @Endpoint(path = "/orders/cancel")
+        void cancel(@NotNull String orderId);
+
+        default String describe() { return "OrderService v1"; }
+    }
+
+    static final class OrderServiceImpl implements OrderService {
+        @Override
+        public long price(String sku, int qty) {
+            if (sku.equals("discontinued")) throw new IllegalStateException("SKU discontinued");
+            return 1_250L * qty;
+        }
+
+        @Override
+        public void cancel(String orderId) { }
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    static void section(String title) {
+        System.out.println("\n=== " + title + " ===");
+    }
+}
@@ -0,0 +1,483 @@
+package _10_01_reflection_and_annotations;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import _10_01_reflection_and_annotations._03_InterviewQA.Min;
+import _10_01_reflection_and_annotations._03_InterviewQA.SimpleValidator;
+import _10_01_reflection_and_annotations._03_InterviewQA.User;
+
+/*
+Precompiled annotation validation — introspect a class once, then validate with plain field reads.
+
+SimpleValidator (_03_InterviewQA) per validate() call:
+- getDeclaredFields() copies the Field[] (and every Field object) from the class's reflection cache,
+- setAccessible(true) runs the access/module checks again,
+- getAnnotation(...) twice per field, f.get(o) boxes primitive fields, and an ArrayList is allocated even when the
+  object is valid. _02_Examples.validateArgs does the same per call for @NotNull/@Range parameters.
+
+PrecompiledValidator:
+- A ClassValue holds one plan per class: an array of checks, superclass fields first, built on first use. ClassValue
+  keeps the plan with the Class, so it goes away with the class loader (no static Map<Class<?>, ...> leak).
+- Each check owns a VarHandle for its field (privateLookupIn instead of setAccessible) and the constraint as
+  primitives. Integral primitive fields are read as long, so @Min on a long/int never boxes.
+- Messages without the value in them are built at compile time. validate() returns the shared List.of() when the
+  object is valid and allocates an ArrayList only on the first violation -> zero allocation on the success path.
+- Understands _03_InterviewQA's @NotNull(message)/@Min and the package-level @NotNull/@Range from _02_Examples.
+  Unlike SimpleValidator, inherited fields are validated too.
+
+ArgumentPlan does the same for Executable parameters and keeps validateArgs' messages; the proxy interceptor in
+_04_CompiledProxyDispatcher uses it.
+
+Measurement: JMH is not on the classpath; allocation per call comes from ThreadMXBean#getCurrentThreadAllocatedBytes
+(what JMH's -prof gc reports as gc.alloc.rate.norm).
+*/
+public class _05_PrecompiledValidator {
+
+    private static volatile Object BLACKHOLE;
+
+    public static void main(String[] args) throws Exception {
+        SimpleValidator simple = new SimpleValidator();
+        PrecompiledValidator compiled = new PrecompiledValidator();
+
+        section("A. Same answers as SimpleValidator");
+        for (User u : List.of(new User(0, null), new User(5, "ok"))) {
+            System.out.println("simple=" + simple.validate(u) + " compiled=" + compiled.validate(u));
+        }
+        System.out.println(PrecompiledValidator.describe(User.class));
+
+        section("B. Inherited, boxed and ranged fields");
+        System.out.println(PrecompiledValidator.describe(Order.class));
+        System.out.println("valid:   " + compiled.validate(new Order("c-1", "SKU-1", 3, 0L, 4.5)));
+        System.out.println("invalid: " + compiled.validate(new Order(null, "", 0, -5L, -2.0)));
+
+        section("C. Parameters");
+        Method add = CalculatorService.class.getMethod("add", int.class, int.class);
+        ArgumentPlan plan = ArgumentPlan.forExecutable(add);
+        for (Object[] call : new Object[][]{{3, 4}, {-1, 4}, {null, 4}, {3}}) {
+            System.out.println(Arrays.toString(call) + " -> validateArgs: " + outcome(() -> _02_Examples.validateArgs(add, call))
+                    + " | plan: " + outcome(() -> plan.check(call)));
+        }
+
+        section("D. Cost per call");
+        int n = 1_000_000;
+        User[] valid = new User[1024];
+        User[] mixed = new User[1024];
+        for (int i = 0; i < valid.length; i++) {
+            valid[i] = new User(i + 1, "user-" + i);
+            mixed[i] = (i & 7) == 0 ? new User(0, null) : valid[i];
+        }
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round + " (" + n + " calls each)");
+            bench("SimpleValidator, valid", 3, 5, () -> BLACKHOLE = loop(simple::validate, valid, n));
+            bench("PrecompiledValidator, valid", 3, 5, () -> BLACKHOLE = loop(compiled::validate, valid, n));
+            bench("SimpleValidator, 1/8 invalid", 3, 5, () -> BLACKHOLE = loop(simple::validate, mixed, n));
+            bench("PrecompiledValidator, 1/8 invalid", 3, 5, () -> BLACKHOLE = loop(compiled::validate, mixed, n));
+            Object[] argsOk = {3, 4};
+            bench("validateArgs(add, 3, 4)", 3, 5, () -> {
+                for (int i = 0; i < n; i++) _02_Examples.validateArgs(add, argsOk);
+            });
+            bench("ArgumentPlan.check(3, 4)", 3, 5, () -> {
+                for (int i = 0; i < n; i++) plan.check(argsOk);
+            });
+        }
+        System.out.printf("allocated per valid call: SimpleValidator %d B, PrecompiledValidator %d B%n",
+                allocatedPerCall(simple::validate, valid[0], n), allocatedPerCall(compiled::validate, valid[0], n));
+    }
+
+    // ----------------------------------------------------------------
+    // Object validation
+    // ----------------------------------------------------------------
+    static final class PrecompiledValidator {
+        private static final FieldCheck[] NONE = new FieldCheck[0];
+        private static final ClassValue<FieldCheck[]> PLANS = new ClassValue<>() {
+            @Override
+            protected FieldCheck[] computeValue(Class<?> type) {
+                return compile(type);
+            }
+        };
+
+        /** Violations in field order; the shared empty list when {@code o} is valid. */
+        public List<String> validate(Object o) {
+            List<String> errors = null;
+            for (FieldCheck check : PLANS.get(o.getClass())) {
+                if (!check.test(o)) {
+                    if (errors == null) errors = new ArrayList<>(4);
+                    errors.add(check.message(o));
+                }
+            }
+            return errors == null ? List.of() : errors;
+        }
+
+        public boolean isValid(Object o) {
+            for (FieldCheck check : PLANS.get(o.getClass())) {
+                if (!check.test(o)) return false;
+            }
+            return true;
+        }
+
+        static String describe(Class<?> type) {
+            StringBuilder sb = new StringBuilder("plan for " + type.getSimpleName() + ":");
+            for (FieldCheck check : PLANS.get(type)) sb.append("\n  ").append(check);
+            return sb.toString();
+        }
+
+        private static FieldCheck[] compile(Class<?> type) {
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) hierarchy.add(0, c);
+
+            List<FieldCheck> checks = new ArrayList<>();
+            for (Class<?> c : hierarchy) {
+                MethodHandles.Lookup lookup = null;
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers()) || !hasConstraint(f)) continue;
+                    if (lookup == null) lookup = lookupIn(c);
+                    VarHandle vh;
+                    try {
+                        vh = lookup.unreflectVarHandle(f);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalArgumentException("cannot read " + f, e);
+                    }
+                    String name = f.getName();
+
+                    _03_InterviewQA.NotNull nn = f.getAnnotation(_03_InterviewQA.NotNull.class);
+                    if (nn != null && !f.getType().isPrimitive()) {
+                        checks.add(new NotNullCheck(vh, name, name + ": " + nn.message()));
+                    }
+                    if (f.isAnnotationPresent(NotNull.class) && !f.getType().isPrimitive()) {
+                        checks.add(new NotNullCheck(vh, name, name + ": must not be null"));
+                    }
+                    Min min = f.getAnnotation(Min.class);
+                    if (min != null) {
+                        addRange(checks, f, vh, min.value(), Long.MAX_VALUE, name + ": must be >= " + min.value());
+                    }
+                    Range range = f.getAnnotation(Range.class);
+                    if (range != null) {
+                        addRange(checks, f, vh, range.min(), range.max(), null);
+                    }
+                }
+            }
+            return checks.isEmpty() ? NONE : checks.toArray(NONE);
+        }
+
+        private static boolean hasConstraint(Field f) {
+            return f.isAnnotationPresent(_03_InterviewQA.NotNull.class) || f.isAnnotationPresent(NotNull.class)
+                    || f.isAnnotationPresent(Min.class) || f.isAnnotationPresent(Range.class);
+        }
+
+        // Non-numeric fields are ignored, as in SimpleValidator
+        private static void addRange(List<FieldCheck> checks, Field f, VarHandle vh, long min, long max, String message) {
+            Class<?> t = f.getType();
+            if (t == long.class || t == int.class || t == short.class || t == byte.class || t == char.class) {
+                checks.add(new IntegralRangeCheck(vh, f.getName(), min, max, message));
+            } else if (t == double.class || t == float.class) {
+                checks.add(new FloatingRangeCheck(vh, f.getName(), min, max, message));
+            } else if (t.isAssignableFrom(Number.class) || Number.class.isAssignableFrom(t)) {
+                checks.add(new NumberRangeCheck(vh, f.getName(), min, max, message));
+            }
+        }
+    }
+
+    /** One constraint on one field. */
+    abstract static class FieldCheck {
+        final VarHandle field;
+        final String name;
+
+        FieldCheck(VarHandle field, String name) {
+            this.field = field;
+            this.name = name;
+        }
+
+        abstract boolean test(Object o);
+
+        /** Only called after test() failed. */
+        abstract String message(Object o);
+    }
+
+    static final class NotNullCheck extends FieldCheck {
+        private final String message;
+
+        NotNullCheck(VarHandle field, String name, String message) {
+            super(field, name);
+            this.message = message;
+        }
+
+        @Override boolean test(Object o) { return field.get(o) != null; }
+        @Override String message(Object o) { return message; }
+        @Override public String toString() { return name + " != null"; }
+    }
+
+    /** Shared by the range flavours; {@code fixedMessage} is null when the message includes the value. */
+    abstract static class RangeCheck extends FieldCheck {
+        final long min;
+        final long max;
+        private final String fixedMessage;
+
+        RangeCheck(VarHandle field, String name, long min, long max, String fixedMessage) {
+            super(field, name);
+            this.min = min;
+            this.max = max;
+            this.fixedMessage = fixedMessage;
+        }
+
+        abstract Object valueOf(Object o);
+
+        @Override
+        String message(Object o) {
+            if (fixedMessage != null) return fixedMessage;
+            return name + ": out of range [" + min + "," + max + "]: " + valueOf(o);
+        }
+
+        @Override
+        public String toString() {
+            return name + " in [" + (min == Long.MIN_VALUE ? "-inf" : min) + ", " + (max == Long.MAX_VALUE ? "+inf" : max)
+                    + "] (" + getClass().getSimpleName() + ")";
+        }
+    }
+
+    // long/int/short/byte/char fields: the VarHandle widens to long, nothing is boxed
+    static final class IntegralRangeCheck extends RangeCheck {
+        IntegralRangeCheck(VarHandle field, String name, long min, long max, String message) {
+            super(field, name, min, max, message);
+        }
+
+        @Override
+        boolean test(Object o) {
+            long v = (long) field.get(o);
+            return v >= min && v <= max;
+        }
+
+        @Override Object valueOf(Object o) { return (long) field.get(o); }
+    }
+
+    // Same truncation as Number.longValue() in SimpleValidator
+    static final class FloatingRangeCheck extends RangeCheck {
+        FloatingRangeCheck(VarHandle field, String name, long min, long max, String message) {
+            super(field, name, min, max, message);
+        }
+
+        @Override
+        boolean test(Object o) {
+            long v = (long) (double) field.get(o);
+            return v >= min && v <= max;
+        }
+
+        @Override Object valueOf(Object o) { return (double) field.get(o); }
+    }
+
+    // Boxed or Number-typed fields: null passes (pair with @NotNull), the existing box is read, not a new one
+    static final class NumberRangeCheck extends RangeCheck {
+        NumberRangeCheck(VarHandle field, String name, long min, long max, String message) {
+            super(field, name, min, max, message);
+        }
+
+        @Override
+        boolean test(Object o) {
+            if (!(field.get(o) instanceof Number n)) return true;
+            long v = n.longValue();
+            return v >= min && v <= max;
+        }
+
+        @Override Object valueOf(Object o) { return field.get(o); }
+    }
+
+    // ----------------------------------------------------------------
+    // Parameter validation
+    // ----------------------------------------------------------------
+
+    /** Compiled form of _02_Examples.validateArgs for one Executable; same exceptions and messages. */
+    static final class ArgumentPlan {
+        private static final ClassValue<Map<Executable, ArgumentPlan>> BY_CLASS = new ClassValue<>() {
+            @Override
+            protected Map<Executable, ArgumentPlan> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+
+        private final int arity;
+        private final int[] index;
+        private final String[] names;
+        private final boolean[] notNull;
+        private final boolean[] ranged;
+        private final long[] min;
+        private final long[] max;
+
+        private ArgumentPlan(int arity, int[] index, String[] names, boolean[] notNull, boolean[] ranged, long[] min, long[] max) {
+            this.arity = arity;
+            this.index = index;
+            this.names = names;
+            this.notNull = notNull;
+            this.ranged = ranged;
+            this.min = min;
+            this.max = max;
+        }
+
+        /** Cached per declaring class, so plans are dropped together with the class. */
+        static ArgumentPlan forExecutable(Executable exec) {
+            return BY_CLASS.get(exec.getDeclaringClass()).computeIfAbsent(exec, ArgumentPlan::compile);
+        }
+
+        static ArgumentPlan compile(Executable exec) {
+            Parameter[] params = exec.getParameters();
+            List<Integer> constrained = new ArrayList<>();
+            for (int i = 0; i < params.length; i++) {
+                for (Annotation a : params[i].getAnnotations()) {
+                    Class<? extends Annotation> t = a.annotationType();
+                    if (t == NotNull.class || t == _03_InterviewQA.NotNull.class || t == Range.class || t == Min.class) {
+                        constrained.add(i);
+                        break;
+                    }
+                }
+            }
+            int n = constrained.size();
+            int[] index = new int[n];
+            String[] names = new String[n];
+            boolean[] notNull = new boolean[n];
+            boolean[] ranged = new boolean[n];
+            long[] min = new long[n];
+            long[] max = new long[n];
+            for (int k = 0; k < n; k++) {
+                Parameter p = params[constrained.get(k)];
+                index[k] = constrained.get(k);
+                names[k] = p.getName();
+                notNull[k] = p.isAnnotationPresent(NotNull.class) || p.isAnnotationPresent(_03_InterviewQA.NotNull.class);
+                min[k] = Long.MIN_VALUE;
+                max[k] = Long.MAX_VALUE;
+                Range r = p.getAnnotation(Range.class);
+                if (r != null) {
+                    ranged[k] = true;
+                    min[k] = r.min();
+                    max[k] = r.max();
+                }
+                Min m = p.getAnnotation(Min.class);
+                if (m != null) {
+                    ranged[k] = true;
+                    min[k] = Math.max(min[k], m.value());
+                }
+            }
+            return new ArgumentPlan(params.length, index, names, notNull, ranged, min, max);
+        }
+
+        boolean isEmpty() { return index.length == 0; }
+
+        /** Throws IllegalArgumentException on the first violation; args may be null for a no-arg method. */
+        void check(Object... args) {
+            int length = args == null ? 0 : args.length;
+            if (length != arity) throw new IllegalArgumentException("Arity mismatch");
+            for (int k = 0; k < index.length; k++) {
+                Object arg = args[index[k]];
+                if (arg == null && notNull[k]) throw new IllegalArgumentException("Param " + names[k] + " must not be null");
+                if (ranged[k]) {
+                    // same order as validateArgs: a null argument to a ranged parameter is "not numeric"
+                    if (!(arg instanceof Number num)) throw new IllegalArgumentException("Param " + names[k] + " must be numeric");
+                    long v = num.longValue();
+                    if (v < min[k] || v > max[k]) {
+                        throw new IllegalArgumentException("Param " + names[k] + " out of range [" + min[k] + "," + max[k] + "]: " + v);
+                    }
+                }
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Sample types
+    // ----------------------------------------------------------------
+    static class Audited {
+        @NotNull
+        private String createdBy;
+
+        Audited(String createdBy) { this.createdBy = createdBy; }
+    }
+
+    static final class Order extends Audited {
+        @_03_InterviewQA.NotNull(message = "sku is required")
+        private final String sku;
+        @Range(min = 1, max = 1000)
+        private final int quantity;
+        @Min(0)
+        private final Long discountCents;
+        @Min(0)
+        private final double weightKg;
+
+        Order(String createdBy, String sku, int quantity, Long discountCents, double weightKg) {
+            super(createdBy);
+            this.sku = sku;
+            this.quantity = quantity;
+            this.discountCents = discountCents;
+            this.weightKg = weightKg;
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    @FunctionalInterface
+    interface Validation {
+        List<String> validate(Object o) throws Exception;
+    }
+
+    private static String outcome(Runnable r) {
+        try {
+            r.run();
+            return "ok";
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static long loop(Validation v, Object[] objects, int n) {
+        long errors = 0;
+        try {
+            for (int i = 0; i < n; i++) errors += v.validate(objects[i & (objects.length - 1)]).size();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return errors;
+    }
+
+    private static long allocatedPerCall(Validation v, Object o, int n) throws Exception {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < n; i++) BLACKHOLE = v.validate(o); // warm-up, lets escape analysis kick in
+        long before = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < n; i++) BLACKHOLE = v.validate(o);
+        return (mx.getCurrentThreadAllocatedBytes() - before) / n;
+    }
+
+    private static MethodHandles.Lookup lookupIn(Class<?> c) {
+        try {
+            return MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("cannot access " + c + " (package not open to this module?)", e);
+        }
+    }
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    static void section(String title) {
+        System.out.println("\n=== " + title + " ===");
+    }
+}
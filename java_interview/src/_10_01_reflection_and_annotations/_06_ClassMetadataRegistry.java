@@ -0,0 +1,618 @@
+package _10_01_reflection_and_annotations;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AnnotatedType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+Reflection metadata registry — one immutable, per-Class snapshot of members, annotations, generic types and
+accessors, cached in a ClassValue.
+
+Why:
+- getDeclaredFields()/getMethods()/getDeclaredConstructors() return fresh copies on every call (the JDK caches the
+  originals in Class.reflectionData, behind a SoftReference, and copies each Field/Method object out of it).
+  getMethods() additionally merges the whole hierarchy. Serializers and DI containers that call these per object
+  pay that copy every time.
+- Finding one member by name means a linear scan over the copied array.
+
+Design:
+- REGISTRY is a ClassValue<ClassMetadata>. ClassValue stores the value inside the Class object itself, so:
+  - classes with the same name from different class loaders get separate entries (keyed by Class identity);
+  - when a class loader becomes unreachable, its classes and their metadata are collected together. A static
+    Map<Class<?>, ...> would keep every class (and through it its loader) alive forever — see section D.
+- Structural data (names, types, modifiers, annotations, generic types) is read once when the class is first used.
+  The expensive, rarely needed parts are built lazily per member: accessors (MethodHandles for get/set/invoke/new),
+  type-use annotations (AnnotatedType), parameter annotations and the getMethods() view.
+- Members are indexed by name; instanceFields() is the serializer view (superclass fields first), built from the
+  superclass's metadata instead of walking the hierarchy again.
+- Everything handed out is immutable (List.copyOf / Map.copyOf); Field/Method/Constructor objects are private copies
+  that callers cannot make accessible behind the registry's back.
+
+Measurement: JMH is not on the classpath. Startup is measured by loading this package's classes in fresh
+URLClassLoaders (so both sides start cold); steady state with the ad-hoc bench loop from _06_04.
+*/
+public class _06_ClassMetadataRegistry {
+
+    private static volatile Object BLACKHOLE;
+
+    public static void main(String[] args) throws Throwable {
+        section("A. Members, annotations and generic types");
+        ClassMetadata person = ClassMetadataRegistry.of(Person.class);
+        System.out.println(person);
+        ConstructorInfo injectable = person.injectableConstructor();
+        Object ada = injectable.newInstance("Ada", 36);
+        System.out.println("@Inject constructor -> " + ada + ", name=" + person.field("name").get(ada));
+        System.out.println("greet -> " + person.declaredMethod("greet", String.class).invoke(ada, "Hello"));
+        System.out.println("static yearsUntilRetirement(40) -> " + person.publicMethod("yearsUntilRetirement", int.class).invoke(null, 40));
+
+        ClassMetadata repo = ClassMetadataRegistry.of(GenericRepository.class);
+        System.out.println("GenericRepository type parameters: " + repo.typeParameters());
+        for (FieldInfo f : repo.instanceFields()) {
+            System.out.println("  " + f.name() + ": " + _02_Examples.annotatedTypeToString(f.annotatedType()));
+        }
+        MethodInfo snapshot = repo.publicMethod("snapshot");
+        System.out.println("  snapshot(): " + _02_Examples.annotatedTypeToString(snapshot.annotatedReturnType())
+                + " @Author=" + snapshot.annotation(Author.class).name());
+
+        section("B. Serializer view: instance fields incl. inherited");
+        ClassMetadata child = ClassMetadataRegistry.of(ChildComponent.class);
+        System.out.println("ChildComponent fields: " + child.instanceFields().stream().map(FieldInfo::name).toList()
+                + ", @FrameworkComponent inherited: " + (child.annotation(FrameworkComponent.class) != null));
+        Range range = child.field("age").annotation(Range.class);
+        System.out.println("inherited field age @Range = [" + range.min() + ", " + range.max() + "]");
+
+        Path classes = classesDirectory();
+        if (classes == null) {
+            System.out.println("\n(classes are not in a directory; skipping class loader sections)");
+        } else {
+            section("C. Startup: cold metadata for every class of this package");
+            List<String> names = classNamesIn(classes);
+            System.out.println(names.size() + " classes, each run in a fresh class loader; 1st pass is cold, 2nd repeats it");
+            for (int round = 0; round < 3; round++) {
+                double[] raw = coldStartup(classes, names, false);
+                double[] reg = coldStartup(classes, names, true);
+                System.out.printf("round %d: raw reflection %.2f + %.2f ms | registry %.2f + %.2f ms%n",
+                        round, raw[0], raw[1], reg[0], reg[1]);
+            }
+
+            section("D. Class unloading: ClassValue vs static Map<Class<?>, ...>");
+            System.out.println("loader collected with ClassValue registry: " + loaderCollected(classes, false));
+            System.out.println("loader collected with static HashMap cache: " + loaderCollected(classes, true));
+        }
+
+        section("E. Steady state (1M lookups)");
+        Person p = new Person("Grace", 45);
+        Field cachedField = Person.class.getDeclaredField("name");
+        cachedField.setAccessible(true);
+        int n = 1_000_000;
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round);
+            bench("getDeclaredField+setAccessible+get", 2, 3, () -> {
+                try {
+                    for (int i = 0; i < n; i++) {
+                        Field f = Person.class.getDeclaredField("name");
+                        f.setAccessible(true);
+                        BLACKHOLE = f.get(p);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            bench("cached Field.get", 2, 3, () -> {
+                try {
+                    for (int i = 0; i < n; i++) BLACKHOLE = cachedField.get(p);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            bench("registry field(name).get", 2, 3, () -> {
+                for (int i = 0; i < n; i++) BLACKHOLE = ClassMetadataRegistry.of(Person.class).field("name").get(p);
+            });
+            bench("getDeclaredFields() walk", 2, 3, () -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++) sum += Person.class.getDeclaredFields().length;
+                BLACKHOLE = sum;
+            });
+            bench("registry declaredFields() walk", 2, 3, () -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++) sum += ClassMetadataRegistry.of(Person.class).declaredFields().size();
+                BLACKHOLE = sum;
+            });
+            bench("getMethods() scan for 'snapshot'", 2, 3, () -> {
+                for (int i = 0; i < n; i++) {
+                    for (Method m : GenericRepository.class.getMethods()) {
+                        if (m.getName().equals("snapshot")) { BLACKHOLE = m; break; }
+                    }
+                }
+            });
+            bench("registry publicMethod('snapshot')", 2, 3, () -> {
+                for (int i = 0; i < n; i++) BLACKHOLE = ClassMetadataRegistry.of(GenericRepository.class).publicMethod("snapshot");
+            });
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Registry
+    // ----------------------------------------------------------------
+    static final class ClassMetadataRegistry {
+        private static final ClassValue<ClassMetadata> REGISTRY = new ClassValue<>() {
+            @Override
+            protected ClassMetadata computeValue(Class<?> type) {
+                return new ClassMetadata(type);
+            }
+        };
+
+        private ClassMetadataRegistry() { }
+
+        static ClassMetadata of(Class<?> type) {
+            return REGISTRY.get(type);
+        }
+    }
+
+    static final class ClassMetadata {
+        private final Class<?> type;
+        private final List<FieldInfo> declaredFields;
+        private final List<FieldInfo> instanceFields;
+        private final Map<String, FieldInfo> fieldsByName;
+        private final List<MethodInfo> declaredMethods;
+        private final Map<String, MethodInfo[]> declaredByName;
+        private final List<ConstructorInfo> constructors;
+        private final Map<Class<? extends Annotation>, Annotation> annotations;
+        private final List<String> typeParameters;
+        private final Type genericSuperclass;
+        private final List<Type> genericInterfaces;
+        // getMethods() merges the hierarchy and is the most expensive part: built on first use.
+        // Racing threads may build two equivalent copies of these lazy fields, which is harmless.
+        private PublicMethods publicView;
+        private MethodHandles.Lookup lookup;
+
+        private ClassMetadata(Class<?> type) {
+            this.type = type;
+
+            List<FieldInfo> fields = new ArrayList<>();
+            for (Field f : type.getDeclaredFields()) fields.add(new FieldInfo(this, f));
+            this.declaredFields = List.copyOf(fields);
+
+            List<FieldInfo> instance = new ArrayList<>();
+            Map<String, FieldInfo> byName = new HashMap<>();
+            Class<?> superclass = type.getSuperclass();
+            if (superclass != null) {
+                ClassMetadata parent = ClassMetadataRegistry.of(superclass);
+                instance.addAll(parent.instanceFields);
+                byName.putAll(parent.fieldsByName);
+            }
+            for (FieldInfo f : declaredFields) {
+                if (!Modifier.isStatic(f.modifiers())) instance.add(f);
+                byName.put(f.name(), f); // declared fields shadow inherited ones
+            }
+            this.instanceFields = List.copyOf(instance);
+            this.fieldsByName = Map.copyOf(byName);
+
+            this.declaredMethods = Arrays.stream(type.getDeclaredMethods()).map(m -> new MethodInfo(this, m)).toList();
+            this.declaredByName = indexByName(declaredMethods);
+
+            this.constructors = Arrays.stream(type.getDeclaredConstructors()).map(c -> new ConstructorInfo(this, c)).toList();
+            this.annotations = annotationMap(type.getAnnotations());
+            this.typeParameters = Arrays.stream(type.getTypeParameters()).map(TypeVariable::getName).toList();
+            this.genericSuperclass = type.getGenericSuperclass();
+            this.genericInterfaces = List.of(type.getGenericInterfaces());
+        }
+
+        Class<?> type() { return type; }
+        List<FieldInfo> declaredFields() { return declaredFields; }
+        /** Non-static fields of this class and all superclasses, superclass fields first. */
+        List<FieldInfo> instanceFields() { return instanceFields; }
+        List<MethodInfo> declaredMethods() { return declaredMethods; }
+        /** Class.getMethods(): public methods incl. inherited ones. */
+        List<MethodInfo> publicMethods() { return publicView().list(); }
+        List<ConstructorInfo> constructors() { return constructors; }
+        List<String> typeParameters() { return typeParameters; }
+        Type genericSuperclass() { return genericSuperclass; }
+        List<Type> genericInterfaces() { return genericInterfaces; }
+
+        /** Declared or inherited field; null if there is none. */
+        FieldInfo field(String name) {
+            return fieldsByName.get(name);
+        }
+
+        MethodInfo declaredMethod(String name, Class<?>... parameterTypes) {
+            return find(declaredByName, name, parameterTypes);
+        }
+
+        MethodInfo publicMethod(String name, Class<?>... parameterTypes) {
+            return find(publicView().byName(), name, parameterTypes);
+        }
+
+        <A extends Annotation> A annotation(Class<A> annotationType) {
+            return annotationType.cast(annotations.get(annotationType));
+        }
+
+        /** The @Inject constructor, otherwise the no-arg one (the DI container's rule). */
+        ConstructorInfo injectableConstructor() {
+            ConstructorInfo noArg = null;
+            for (ConstructorInfo c : constructors) {
+                if (c.annotation(Inject.class) != null) return c;
+                if (c.parameterTypes().isEmpty()) noArg = c;
+            }
+            if (noArg == null) throw new IllegalArgumentException(type.getName() + " has neither an @Inject nor a no-arg constructor");
+            return noArg;
+        }
+
+        private PublicMethods publicView() {
+            PublicMethods view = publicView;
+            if (view == null) {
+                // Inherited methods share the MethodInfo (and its cached invoker) of the declaring class
+                List<MethodInfo> list = Arrays.stream(type.getMethods())
+                        .map(m -> ClassMetadataRegistry.of(m.getDeclaringClass()).declared(m))
+                        .toList();
+                publicView = view = new PublicMethods(list, indexByName(list));
+            }
+            return view;
+        }
+
+        private MethodInfo declared(Method m) {
+            for (MethodInfo info : declaredByName.getOrDefault(m.getName(), new MethodInfo[0])) {
+                if (info.method.equals(m)) return info;
+            }
+            throw new IllegalStateException(m + " not declared by " + type.getName());
+        }
+
+        MethodHandles.Lookup lookup() {
+            MethodHandles.Lookup l = lookup;
+            if (l == null) {
+                try {
+                    l = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                } catch (IllegalAccessException e) {
+                    // package not opened to us: only public members of public classes stay reachable
+                    l = MethodHandles.publicLookup();
+                }
+                lookup = l;
+            }
+            return l;
+        }
+
+        @Override
+        public String toString() {
+            return type.getSimpleName() + "{fields=" + fieldsByName.keySet().stream().sorted().toList()
+                    + ", declaredMethods=" + declaredMethods.stream().map(MethodInfo::name).sorted().toList()
+                    + ", constructors=" + constructors.size()
+                    + ", annotations=" + annotations.keySet().stream().map(Class::getSimpleName).sorted().toList() + "}";
+        }
+
+        private static Map<String, MethodInfo[]> indexByName(List<MethodInfo> methods) {
+            Map<String, List<MethodInfo>> grouped = new LinkedHashMap<>();
+            for (MethodInfo m : methods) grouped.computeIfAbsent(m.name(), k -> new ArrayList<>()).add(m);
+            Map<String, MethodInfo[]> index = new HashMap<>();
+            grouped.forEach((name, list) -> index.put(name, list.toArray(new MethodInfo[0])));
+            return Map.copyOf(index);
+        }
+
+        private static MethodInfo find(Map<String, MethodInfo[]> index, String name, Class<?>[] parameterTypes) {
+            MethodInfo[] candidates = index.get(name);
+            if (candidates == null) return null;
+            MethodInfo best = null;
+            for (MethodInfo m : candidates) {
+                if (!Arrays.equals(m.parameterTypes, parameterTypes)) continue;
+                // Covariant overrides leave bridge methods with the same parameters: prefer the most specific return
+                if (best == null || best.method.getReturnType().isAssignableFrom(m.method.getReturnType())) best = m;
+            }
+            return best;
+        }
+    }
+
+    private record PublicMethods(List<MethodInfo> list, Map<String, MethodInfo[]> byName) { }
+
+    // ----------------------------------------------------------------
+    // Member snapshots
+    // ----------------------------------------------------------------
+    static final class FieldInfo {
+        private final ClassMetadata owner;
+        private final Field field;
+        private final String name;
+        private final int modifiers;
+        private final Map<Class<? extends Annotation>, Annotation> annotations;
+        private final Type genericType;
+        private AnnotatedType annotatedType; // type annotations are parsed on demand
+        private MethodHandle getter; // (Object)Object, lazily
+        private MethodHandle setter; // (Object,Object)void, lazily
+
+        private FieldInfo(ClassMetadata owner, Field field) {
+            this.owner = owner;
+            this.field = field;
+            this.name = field.getName();
+            this.modifiers = field.getModifiers();
+            this.annotations = annotationMap(field.getAnnotations());
+            this.genericType = field.getGenericType();
+        }
+
+        String name() { return name; }
+        Class<?> type() { return field.getType(); }
+        int modifiers() { return modifiers; }
+        Type genericType() { return genericType; }
+        AnnotatedType annotatedType() {
+            AnnotatedType t = annotatedType;
+            if (t == null) annotatedType = t = field.getAnnotatedType();
+            return t;
+        }
+
+        <A extends Annotation> A annotation(Class<A> annotationType) {
+            return annotationType.cast(annotations.get(annotationType));
+        }
+
+        /** {@code target} is ignored for static fields. */
+        Object get(Object target) {
+            MethodHandle h = getter;
+            if (h == null) getter = h = unreflect(true);
+            try {
+                return h.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e); // field access throws no checked exceptions
+            }
+        }
+
+        void set(Object target, Object value) {
+            MethodHandle h = setter;
+            if (h == null) setter = h = unreflect(false);
+            try {
+                h.invokeExact(target, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private MethodHandle unreflect(boolean get) {
+            try {
+                MethodHandles.Lookup l = owner.lookup();
+                MethodHandle h = get ? l.unreflectGetter(field) : l.unreflectSetter(field);
+                if (Modifier.isStatic(modifiers)) h = MethodHandles.dropArguments(h, 0, Object.class);
+                return h.asType(get ? MethodType.methodType(Object.class, Object.class)
+                        : MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("field " + name + " of " + owner.type.getName() + " is not accessible", e);
+            }
+        }
+
+        @Override public String toString() { return owner.type.getSimpleName() + "." + name; }
+    }
+
+    static final class MethodInfo {
+        private final ClassMetadata owner;
+        private final Method method;
+        private final String name;
+        private final Class<?>[] parameterTypes; // never handed out
+        private final List<Type> genericParameterTypes;
+        private final Type genericReturnType;
+        private AnnotatedType annotatedReturnType; // lazily, like the parameter annotations
+        private final Map<Class<? extends Annotation>, Annotation> annotations;
+        private List<Map<Class<? extends Annotation>, Annotation>> parameterAnnotations;
+        private MethodHandle invoker; // (Object, Object[])Object, lazily
+
+        private MethodInfo(ClassMetadata owner, Method method) {
+            this.owner = owner;
+            this.method = method;
+            this.name = method.getName();
+            this.parameterTypes = method.getParameterTypes();
+            this.genericParameterTypes = List.of(method.getGenericParameterTypes());
+            this.genericReturnType = method.getGenericReturnType();
+            this.annotations = annotationMap(method.getAnnotations());
+        }
+
+        String name() { return name; }
+        List<Class<?>> parameterTypes() { return List.of(parameterTypes); }
+        List<Type> genericParameterTypes() { return genericParameterTypes; }
+        Type genericReturnType() { return genericReturnType; }
+        AnnotatedType annotatedReturnType() {
+            AnnotatedType t = annotatedReturnType;
+            if (t == null) annotatedReturnType = t = method.getAnnotatedReturnType();
+            return t;
+        }
+
+        <A extends Annotation> A annotation(Class<A> annotationType) {
+            return annotationType.cast(annotations.get(annotationType));
+        }
+
+        <A extends Annotation> A parameterAnnotation(int index, Class<A> annotationType) {
+            List<Map<Class<? extends Annotation>, Annotation>> all = parameterAnnotations;
+            if (all == null) {
+                parameterAnnotations = all = Arrays.stream(method.getParameters()).map(Parameter::getAnnotations)
+                        .map(_06_ClassMetadataRegistry::annotationMap).toList();
+            }
+            return annotationType.cast(all.get(index).get(annotationType));
+        }
+
+        /** {@code target} is ignored for static methods; exceptions of the method propagate unwrapped. */
+        Object invoke(Object target, Object... args) throws Throwable {
+            MethodHandle h = invoker;
+            if (h == null) {
+                try {
+                    h = owner.lookup().unreflect(method);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(method + " is not accessible", e);
+                }
+                if (Modifier.isStatic(method.getModifiers())) h = MethodHandles.dropArguments(h, 0, Object.class);
+                invoker = h = h.asSpreader(Object[].class, parameterTypes.length)
+                        .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            }
+            return h.invokeExact(target, args);
+        }
+
+        @Override public String toString() { return owner.type.getSimpleName() + "." + name + "()"; }
+    }
+
+    static final class ConstructorInfo {
+        private final ClassMetadata owner;
+        private final Constructor<?> constructor;
+        private final Class<?>[] parameterTypes;
+        private final Map<Class<? extends Annotation>, Annotation> annotations;
+        private MethodHandle factory; // (Object[])Object, lazily
+
+        private ConstructorInfo(ClassMetadata owner, Constructor<?> constructor) {
+            this.owner = owner;
+            this.constructor = constructor;
+            this.parameterTypes = constructor.getParameterTypes();
+            this.annotations = annotationMap(constructor.getAnnotations());
+        }
+
+        List<Class<?>> parameterTypes() { return List.of(parameterTypes); }
+
+        <A extends Annotation> A annotation(Class<A> annotationType) {
+            return annotationType.cast(annotations.get(annotationType));
+        }
+
+        Object newInstance(Object... args) throws Throwable {
+            MethodHandle h = factory;
+            if (h == null) {
+                try {
+                    h = owner.lookup().unreflectConstructor(constructor);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(constructor + " is not accessible", e);
+                }
+                factory = h = h.asSpreader(Object[].class, parameterTypes.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            }
+            return h.invokeExact(args);
+        }
+    }
+
+    private static Map<Class<? extends Annotation>, Annotation> annotationMap(Annotation[] annotations) {
+        if (annotations.length == 0) return Map.of();
+        Map<Class<? extends Annotation>, Annotation> map = new HashMap<>();
+        for (Annotation a : annotations) map.put(a.annotationType(), a);
+        return Map.copyOf(map);
+    }
+
+    // ----------------------------------------------------------------
+    // Startup and unloading experiments
+    // ----------------------------------------------------------------
+
+    // Pins every class it has seen: what a "simple" cache keyed by Class<?> does
+    private static final Map<Class<?>, Object> LEAKY_CACHE = new ConcurrentHashMap<>();
+
+    private static double[] coldStartup(Path classes, List<String> names, boolean registry) throws Exception {
+        try (URLClassLoader loader = isolatedLoader(classes)) {
+            List<Class<?>> loaded = new ArrayList<>();
+            for (String name : names) loaded.add(Class.forName(name, false, loader));
+            double[] ms = new double[2];
+            for (int pass = 0; pass < 2; pass++) {
+                long t0 = System.nanoTime();
+                describeAll(loaded, registry);
+                ms[pass] = (System.nanoTime() - t0) / 1e6;
+            }
+            return ms;
+        }
+    }
+
+    private static void describeAll(List<Class<?>> loaded, boolean registry) {
+        for (Class<?> c : loaded) {
+            if (registry) {
+                ClassMetadata m = ClassMetadataRegistry.of(c);
+                BLACKHOLE = m.publicMethods().size() + m.instanceFields().size();
+            } else {
+                // What an uncached caller touches: the same data the registry snapshots
+                long sum = 0;
+                for (Field f : c.getDeclaredFields()) sum += f.getAnnotations().length + f.getGenericType().hashCode();
+                for (Method m : c.getDeclaredMethods()) sum += m.getAnnotations().length + m.getGenericReturnType().hashCode();
+                sum += c.getMethods().length + c.getDeclaredConstructors().length + c.getAnnotations().length;
+                BLACKHOLE = sum;
+            }
+        }
+    }
+
+    private static boolean loaderCollected(Path classes, boolean leakyCache) throws Throwable {
+        WeakReference<ClassLoader> ref = loadAndDescribe(classes, leakyCache);
+        for (int i = 0; i < 10 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ref.get() == null;
+    }
+
+    private static WeakReference<ClassLoader> loadAndDescribe(Path classes, boolean leakyCache) throws Throwable {
+        URLClassLoader loader = isolatedLoader(classes);
+        Class<?> isolatedPerson = Class.forName(Person.class.getName(), true, loader);
+        ClassMetadata metadata = ClassMetadataRegistry.of(isolatedPerson);
+        // The app loader's Inject.class is not the isolated copy's annotation type -> the no-arg constructor is picked
+        Object p = metadata.injectableConstructor().newInstance(); // creates accessors too
+        BLACKHOLE = metadata.field("name").get(p);
+        if (leakyCache) LEAKY_CACHE.put(isolatedPerson, metadata);
+        System.out.println("  " + isolatedPerson.getName() + " from " + loader.getClass().getSimpleName()
+                + " is the app class? " + (isolatedPerson == Person.class));
+        loader.close();
+        BLACKHOLE = null;
+        return new WeakReference<>(loader);
+    }
+
+    // Parent is the platform loader, so this package's classes are defined again by the new loader
+    private static URLClassLoader isolatedLoader(Path classes) throws IOException {
+        return new URLClassLoader(new URL[]{classes.toUri().toURL()}, ClassLoader.getPlatformClassLoader());
+    }
+
+    private static Path classesDirectory() {
+        try {
+            Path p = Path.of(_06_ClassMetadataRegistry.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return Files.isDirectory(p) ? p : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static List<String> classNamesIn(Path classes) throws IOException {
+        String pkg = _06_ClassMetadataRegistry.class.getPackageName();
+        try (Stream<Path> files = Files.list(classes.resolve(pkg.replace('.', '/')))) {
+            return files.map(f -> f.getFileName().toString())
+                    .filter(f -> f.endsWith(".class"))
+                    .map(f -> pkg + "." + f.substring(0, f.length() - ".class".length()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    static void section(String title) {
+        System.out.println("\n=== " + title + " ===");
+    }
+}
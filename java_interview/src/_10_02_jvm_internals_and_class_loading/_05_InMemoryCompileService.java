@@ -0,0 +1,546 @@
+package _10_02_jvm_internals_and_class_loading;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * In-memory compile service for classes generated at runtime (rules, expressions, adapters).
+ *
+ * What {@code _02_Examples.compileTo} pays on every call:
+ * - getStandardFileManager(): a new file manager re-opens the platform modules and every class path entry.
+ * - One JavacTask per call, even when many sources are generated together. Each task re-creates the compiler
+ *   context (symbol tables, java.lang completion, ...), which is the bulk of a small compilation.
+ * - Class files go to a temp directory and are read back through a URLClassLoader.
+ * - The same source compiled twice is compiled twice.
+ *
+ * InMemoryCompileService:
+ * - One JavaCompiler and one StandardJavaFileManager for the life of the service, wrapped by a ForwardingJavaFileManager
+ *   that captures class output in byte arrays (attributed to their source via the "sibling" argument, so nested
+ *   classes travel with their unit) and lists already-compiled classes on the class path, so a later batch can
+ *   reference classes from an earlier one.
+ * - compileAll(sources) hashes each source (SHA-256 of name + code + options), serves hits from the cache and
+ *   compiles all misses in a single task.
+ * - Classes are defined by one shared parallel-capable MemoryClassLoader. Recompiling a class name with different
+ *   bytes cannot redefine it in the same loader, so the service then rolls over to another loader generation that
+ *   holds the new bytes; Class objects handed out earlier keep working against the old generation.
+ *   A roll-over first looks for a recently retired generation that has no conflicting bytes and switches back to it,
+ *   so flipping between two versions of a rule reuses two loaders instead of defining the classes again each time.
+ *   Only MAX_RETIRED generations are kept; older ones are dropped and their metaspace is freed once callers drop
+ *   their Class objects.
+ * - Bounded: at most maxUnits compiled units stay cached (oldest compiled first out). Once the current generation
+ *   holds more than twice the classes of the cached units, it is replaced by one holding only those, so classes
+ *   of evicted units stop being carried forward and become unloadable with their old generation. A source whose
+ *   unit was evicted is simply compiled again; once pruned, classes of an evicted unit
+ *   are also off the class path of new compilations.
+ * - javac and its file manager are not thread-safe: compilation is serialized, cache hits are lock-free.
+ *
+ * main() reports cold (first compile in the JVM) and warm latencies against a compileTo-style baseline.
+ * JMH is not on the classpath; the numbers are single ad-hoc runs after a warm-up.
+ *
+ * Typical numbers (1 CPU, 40 small rules): first compilation in the JVM ~1 s; compileTo-style ~30 ms per source;
+ * reused file manager with one task per source ~27 ms; one task for the whole batch ~3.5 ms per source;
+ * cache hit ~40 us per source (hashing + loadClass).
+ */
+public class _05_InMemoryCompileService {
+
+    /** Contract of the generated rule classes; public so the generated code can implement it. */
+    public interface Rule {
+        boolean test(int value);
+    }
+
+    private static final String RULE = Rule.class.getCanonicalName();
+
+    public static void main(String[] args) throws Exception {
+        if (ToolProvider.getSystemJavaCompiler() == null) {
+            System.out.println("No Java compiler available (running on a JRE); skipping.");
+            return;
+        }
+        try (InMemoryCompileService service = new InMemoryCompileService(List.of("-proc:none"))) {
+            section("1) Cold: first compilation in this JVM");
+            long t0 = System.nanoTime();
+            Map<String, Class<?>> first = service.compileAll(List.of(ruleSource("demo", 1, 3)));
+            System.out.printf("compiled %s in %.1f ms (javac classes loaded and interpreted)%n",
+                    first.keySet(), (System.nanoTime() - t0) / 1e6);
+            Rule rule = (Rule) first.get("rules.gen.Rule_demo_1").getDeclaredConstructor().newInstance();
+            System.out.println("rule.test(9) = " + rule.test(9) + ", rule.test(10) = " + rule.test(10)
+                    + ", loader = " + rule.getClass().getClassLoader().getName());
+
+            section("2) Later batch referencing an earlier one, nested classes included");
+            Map<String, Class<?>> composite = service.compileAll(List.of(new _02_Examples.InMemSource("rules.gen.Composite", """
+                    package rules.gen;
+                    public final class Composite implements %s {
+                        private final %s first = new Rule_demo_1();
+                        private final Inner inner = new Inner();
+                        public boolean test(int v) { return first.test(v) && inner.test(v); }
+                        static final class Inner { boolean test(int v) { return v > 10; } }
+                    }
+                    """.formatted(RULE, RULE))));
+            Rule c = (Rule) composite.get("rules.gen.Composite").getDeclaredConstructor().newInstance();
+            System.out.println("Composite.test(9) = " + c.test(9) + ", Composite.test(12) = " + c.test(12)
+                    + "; same loader as Rule_demo_1: " + (c.getClass().getClassLoader() == rule.getClass().getClassLoader()));
+
+            section("3) Same name, new source -> new loader generation");
+            Class<?> redefined = service.compileAll(List.of(ruleSource("demo", 1, 5))).get("rules.gen.Rule_demo_1");
+            Rule r2 = (Rule) redefined.getDeclaredConstructor().newInstance();
+            System.out.println("old.test(10) = " + rule.test(10) + ", new.test(10) = " + r2.test(10)
+                    + ", distinct classes: " + (redefined != rule.getClass()));
+            for (int flip = 0; flip < 10; flip++) {
+                service.compileAll(List.of(ruleSource("demo", 1, flip % 2 == 0 ? 3 : 5)));
+            }
+            Class<?> back = service.compileAll(List.of(ruleSource("demo", 1, 5))).get("rules.gen.Rule_demo_1");
+            System.out.println("after 10 more flips between the two versions: same class as before: " + (back == redefined)
+                    + "; " + service.stats());
+
+            section("4) Warm latency: " + BATCH + " generated rules");
+            // Warm-up so the comparison below is about the approaches, not about javac being interpreted
+            for (int w = 0; w < 3; w++) {
+                baselineCompileEach(rules("warm" + w, BATCH));
+                service.compileAll(rules("warmup" + w, BATCH));
+            }
+            List<_02_Examples.InMemSource> eachBaseline = rules("base", BATCH);
+            List<_02_Examples.InMemSource> eachService = rules("each", BATCH);
+            List<_02_Examples.InMemSource> batched = rules("batch", BATCH);
+
+            double baselineMs = millis(() -> baselineCompileEach(eachBaseline));
+            double eachMs = millis(() -> {
+                for (_02_Examples.InMemSource s : eachService) service.compileAll(List.of(s));
+            });
+            double batchMs = millis(() -> service.compileAll(batched));
+            double cachedMs = millis(() -> {
+                for (int i = 0; i < 100; i++) service.compileAll(batched);
+            }) / 100;
+
+            System.out.printf("%-45s %9.2f ms/source%n", "compileTo-style (new file manager, temp dir)", baselineMs / BATCH);
+            System.out.printf("%-45s %9.2f ms/source%n", "service, one task per source", eachMs / BATCH);
+            System.out.printf("%-45s %9.2f ms/source%n", "service, one task for the batch", batchMs / BATCH);
+            System.out.printf("%-45s %9.4f ms/source%n", "service, cache hit", cachedMs / BATCH);
+            System.out.println(service.stats());
+        }
+
+        section("5) Bounded service: 10 batches of " + BATCH + " new rules, at most 100 units kept");
+        try (InMemoryCompileService bounded = new InMemoryCompileService(List.of("-proc:none"),
+                _05_InMemoryCompileService.class.getClassLoader(), 100)) {
+            for (int b = 0; b < 10; b++) bounded.compileAll(rules("bounded" + b, BATCH));
+            System.out.println(bounded.stats());
+        }
+    }
+
+    static final int BATCH = 40;
+    static final int MAX_RETIRED = 3;
+    static final int MAX_UNITS = 4096;
+
+    // ----------------------------------------------------------------
+    // Service
+    // ----------------------------------------------------------------
+    static final class InMemoryCompileService implements AutoCloseable {
+        private final JavaCompiler compiler;
+        private final StandardJavaFileManager standard;
+        private final MemoryFileManager files;
+        private final List<String> options;
+        private final ClassLoader parent;
+
+        private final Map<String, CompiledUnit> cache = new ConcurrentHashMap<>(); // source hash -> unit
+        private final Deque<String> compiledOrder = new ArrayDeque<>(); // cache keys, oldest first, guarded by this
+        private final int maxUnits;
+        private volatile MemoryClassLoader loader;
+        private final Deque<MemoryClassLoader> retired = new ArrayDeque<>(); // most recent first, guarded by this
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder tasks = new LongAdder();
+        private final LongAdder generations = new LongAdder();
+        private final LongAdder reused = new LongAdder();
+        private final LongAdder evicted = new LongAdder();
+
+        InMemoryCompileService(List<String> options) {
+            this(options, _05_InMemoryCompileService.class.getClassLoader(), MAX_UNITS);
+        }
+
+        InMemoryCompileService(List<String> options, ClassLoader parent, int maxUnits) {
+            this.compiler = Objects.requireNonNull(ToolProvider.getSystemJavaCompiler(), "No Java compiler available. Use a JDK.");
+            this.standard = compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+            this.files = new MemoryFileManager(standard);
+            this.options = List.copyOf(options);
+            this.parent = parent;
+            this.maxUnits = maxUnits;
+            this.loader = new MemoryClassLoader(parent, Map.of());
+            generations.increment();
+        }
+
+        /** Compiles (or fetches from the cache) every source and returns the top-level class of each, by name. */
+        Map<String, Class<?>> compileAll(List<_02_Examples.InMemSource> sources) {
+            Map<_02_Examples.InMemSource, String> hashes = new IdentityHashMap<>();
+            List<_02_Examples.InMemSource> missing = new ArrayList<>();
+            for (_02_Examples.InMemSource s : sources) {
+                String hash = hash(s);
+                hashes.put(s, hash);
+                if (cache.containsKey(hash)) {
+                    hits.increment();
+                } else {
+                    missing.add(s);
+                }
+            }
+            if (!missing.isEmpty()) {
+                compileMissing(missing, hashes);
+            }
+
+            Map<String, Class<?>> result = new LinkedHashMap<>();
+            for (_02_Examples.InMemSource s : sources) {
+                CompiledUnit unit;
+                while ((unit = cache.get(hashes.get(s))) == null) {
+                    compileMissing(List.of(s), hashes); // evicted by another batch since the lookup above
+                }
+                result.put(unit.primaryName, loadFromCurrentGeneration(unit));
+            }
+            return result;
+        }
+
+        private synchronized void compileMissing(List<_02_Examples.InMemSource> missing, Map<_02_Examples.InMemSource, String> hashes) {
+            // Another thread may have compiled some of them while we waited for the lock
+            List<_02_Examples.InMemSource> todo = new ArrayList<>();
+            for (_02_Examples.InMemSource s : missing) {
+                if (!cache.containsKey(hashes.get(s))) todo.add(s);
+            }
+            if (todo.isEmpty()) return;
+
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            files.beginTask();
+            tasks.increment();
+            boolean ok = Boolean.TRUE.equals(compiler.getTask(null, files, diagnostics, options, null, todo).call());
+            Map<JavaFileObject, List<ClassOutput>> outputs = files.endTask();
+            if (!ok) {
+                StringBuilder sb = new StringBuilder("Compilation failed:");
+                for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                    sb.append("\n  ").append(d.getKind()).append(": ")
+                            .append(d.getSource() != null ? d.getSource().getName() : "<no-source>")
+                            .append(':').append(d.getLineNumber()).append(' ').append(d.getMessage(Locale.ROOT));
+                }
+                throw new IllegalStateException(sb.toString());
+            }
+
+            Map<String, byte[]> produced = new HashMap<>();
+            for (_02_Examples.InMemSource s : todo) {
+                Map<String, byte[]> classes = new HashMap<>();
+                for (ClassOutput out : outputs.getOrDefault(s, List.of())) classes.put(out.binaryName, out.bytes);
+                misses.increment();
+                cache.put(hashes.get(s), new CompiledUnit(binaryNameOf(s), Map.copyOf(classes)));
+                compiledOrder.add(hashes.get(s));
+                produced.putAll(classes);
+            }
+            publish(produced);
+            evict();
+        }
+
+        // Called with the lock held: drop the oldest units, then stop carrying their classes in the current generation
+        private void evict() {
+            if (cache.size() <= maxUnits) return;
+            while (cache.size() > maxUnits) {
+                cache.remove(compiledOrder.poll());
+                evicted.increment();
+            }
+            Set<String> live = new HashSet<>();
+            for (CompiledUnit u : cache.values()) live.addAll(u.classes.keySet());
+            MemoryClassLoader current = loader;
+            if (current.classes.size() <= 2 * live.size()) return;
+            Map<String, byte[]> kept = new HashMap<>(current.classes);
+            kept.keySet().retainAll(live);
+            retired.addFirst(current);
+            if (retired.size() > MAX_RETIRED) retired.removeLast();
+            loader = new MemoryClassLoader(parent, kept);
+            generations.increment();
+        }
+
+        // Called with the lock held: add to the current generation, or roll over if a name now has different bytes
+        private void publish(Map<String, byte[]> produced) {
+            MemoryClassLoader current = loader;
+            if (current.accepts(produced)) {
+                current.add(produced);
+                return;
+            }
+            Map<String, byte[]> all = new HashMap<>(current.classes);
+            all.putAll(produced);
+            MemoryClassLoader next = null;
+            for (Iterator<MemoryClassLoader> it = retired.iterator(); it.hasNext(); ) {
+                MemoryClassLoader g = it.next();
+                if (g.accepts(all)) { // e.g. switching back to the previous version of a rule
+                    it.remove();
+                    g.add(all);
+                    next = g;
+                    reused.increment();
+                    break;
+                }
+            }
+            if (next == null) {
+                next = new MemoryClassLoader(parent, all);
+                generations.increment();
+            }
+            retired.addFirst(current);
+            if (retired.size() > MAX_RETIRED) retired.removeLast();
+            loader = next;
+        }
+
+        private Class<?> loadFromCurrentGeneration(CompiledUnit unit) {
+            MemoryClassLoader current = loader;
+            if (!current.accepts(unit.classes)) {
+                // A cache hit for a unit whose names were recompiled with other bytes since: bring it back
+                synchronized (this) {
+                    publish(unit.classes);
+                    current = loader;
+                }
+            }
+            try {
+                return current.loadClass(unit.primaryName);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private String hash(_02_Examples.InMemSource s) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(binaryNameOf(s).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(s.getCharContent(true).toString().getBytes(StandardCharsets.UTF_8));
+                for (String o : options) {
+                    md.update((byte) 0);
+                    md.update(o.getBytes(StandardCharsets.UTF_8));
+                }
+                return HexFormat.of().formatHex(md.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // "string:///a/b/C.java" -> "a.b.C"
+        private static String binaryNameOf(_02_Examples.InMemSource s) {
+            String path = s.toUri().getPath();
+            return path.substring(1, path.length() - JavaFileObject.Kind.SOURCE.extension.length()).replace('/', '.');
+        }
+
+        String stats() {
+            return "cache hits=" + hits.sum() + ", compiled units=" + misses.sum() + " (evicted " + evicted.sum() + ")"
+                    + ", javac tasks=" + tasks.sum()
+                    + ", loader generations=" + generations.sum() + " (reused " + reused.sum() + "), classes in current loader=" + loader.classes.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            files.close();
+        }
+
+        /** Class output of one javac task is captured here instead of being written to disk. */
+        private final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+            private Map<JavaFileObject, List<ClassOutput>> outputs = new HashMap<>();
+
+            MemoryFileManager(StandardJavaFileManager delegate) {
+                super(delegate);
+            }
+
+            void beginTask() {
+                outputs = new HashMap<>();
+            }
+
+            Map<JavaFileObject, List<ClassOutput>> endTask() {
+                Map<JavaFileObject, List<ClassOutput>> done = outputs;
+                outputs = new HashMap<>();
+                return done;
+            }
+
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+                if (kind != JavaFileObject.Kind.CLASS) return super.getJavaFileForOutput(location, className, kind, sibling);
+                ClassOutput out = new ClassOutput(className);
+                outputs.computeIfAbsent((JavaFileObject) sibling, k -> new ArrayList<>()).add(out);
+                return out;
+            }
+
+            // Classes compiled by earlier tasks are visible on the class path of later ones
+            @Override
+            public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+                Iterable<JavaFileObject> std = super.list(location, packageName, kinds, recurse);
+                if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS)) return std;
+                List<JavaFileObject> merged = new ArrayList<>();
+                for (Map.Entry<String, byte[]> e : loader.classes.entrySet()) {
+                    String name = e.getKey();
+                    int dot = name.lastIndexOf('.');
+                    String pkg = dot < 0 ? "" : name.substring(0, dot);
+                    if (pkg.equals(packageName) || (recurse && pkg.startsWith(packageName + "."))) {
+                        merged.add(new ClassOutput(name, e.getValue()));
+                    }
+                }
+                if (merged.isEmpty()) return std;
+                std.forEach(merged::add);
+                return merged;
+            }
+
+            @Override
+            public String inferBinaryName(Location location, JavaFileObject file) {
+                return file instanceof ClassOutput out ? out.binaryName : super.inferBinaryName(location, file);
+            }
+        }
+    }
+
+    /** Result of compiling one source: its top-level class name and every class file it produced. */
+    record CompiledUnit(String primaryName, Map<String, byte[]> classes) {
+    }
+
+    /** A class file held in memory, written by javac or read back by it. */
+    static final class ClassOutput extends SimpleJavaFileObject {
+        final String binaryName;
+        volatile byte[] bytes;
+
+        ClassOutput(String binaryName) {
+            super(URI.create("mem:///" + binaryName.replace('.', '/') + JavaFileObject.Kind.CLASS.extension), JavaFileObject.Kind.CLASS);
+            this.binaryName = binaryName;
+        }
+
+        ClassOutput(String binaryName, byte[] bytes) {
+            this(binaryName);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    bytes = toByteArray();
+                }
+            };
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    /** Shared loader for compiled classes; defines lazily from the byte map. */
+    static final class MemoryClassLoader extends ClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+        MemoryClassLoader(ClassLoader parent, Map<String, byte[]> initial) {
+            super("in-memory-compiled", parent);
+            classes.putAll(initial);
+        }
+
+        boolean accepts(Map<String, byte[]> candidate) {
+            for (Map.Entry<String, byte[]> e : candidate.entrySet()) {
+                byte[] existing = classes.get(e.getKey());
+                if (existing != null && !Arrays.equals(existing, e.getValue())) return false;
+            }
+            return true;
+        }
+
+        void add(Map<String, byte[]> more) {
+            classes.putAll(more);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) throw new ClassNotFoundException(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Baseline: what _02_Examples.compileTo does, once per source
+    // ----------------------------------------------------------------
+    private static void baselineCompileEach(List<_02_Examples.InMemSource> sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        for (_02_Examples.InMemSource s : sources) {
+            try {
+                Path out = Files.createTempDirectory("compile_baseline_");
+                try (StandardJavaFileManager fm = compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8)) {
+                    boolean ok = Boolean.TRUE.equals(compiler.getTask(null, fm, null,
+                            List.of("-proc:none", "-d", out.toString()), null, List.of(s)).call());
+                    if (!ok) throw new IllegalStateException("Compilation failed");
+                } finally {
+                    deleteRecursively(out);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    private static _02_Examples.InMemSource ruleSource(String tag, int i, int modulus) {
+        String name = "Rule_" + tag + "_" + i;
+        return new _02_Examples.InMemSource("rules.gen." + name, """
+                package rules.gen;
+                public final class %s implements %s {
+                    public boolean test(int v) { return v %% %d == 0; }
+                }
+                """.formatted(name, RULE, modulus));
+    }
+
+    private static List<_02_Examples.InMemSource> rules(String tag, int n) {
+        List<_02_Examples.InMemSource> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) list.add(ruleSource(tag, i, 2 + i % 7));
+        return list;
+    }
+
+    private static double millis(Runnable r) {
+        long t0 = System.nanoTime();
+        r.run();
+        return (System.nanoTime() - t0) / 1e6;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    private static void section(String title) {
+        System.out.println();
+        System.out.println("-- " + title + " --");
+    }
+}
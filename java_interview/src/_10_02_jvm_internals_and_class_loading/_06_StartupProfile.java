@@ -0,0 +1,314 @@
+package _10_02_jvm_internals_and_class_loading;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Startup profile for a small CLI: Class Data Sharing (AppCDS) and lazy vs eager static initialization.
+ *
+ * A short-lived tool spends most of its life starting: loading, verifying and linking a few hundred JDK and app
+ * classes, running their static initializers and bootstrapping lambdas/string concatenation (invokedynamic).
+ * CDS maps pre-parsed class metadata from an archive file instead:
+ * - The JDK ships a default archive for its own core classes (used unless -Xshare:off).
+ * - AppCDS adds the application's classes, and the JDK classes the application uses beyond the default set,
+ *   including lambda proxy classes (JDK 16+):
+ *     1) java -XX:DumpLoadedClassList=app.classlist -cp app.jar Main ...      (record what a run loads)
+ *     2) java -Xshare:dump -XX:SharedClassListFile=app.classlist -XX:SharedArchiveFile=app.jsa -cp app.jar
+ *     3) java -XX:SharedArchiveFile=app.jsa -cp app.jar Main ...              (same class path, or a prefix of it)
+ *   Alternatives: -XX:ArchiveClassesAtExit (dynamic archive, JDK 13+), -XX:+AutoCreateSharedArchive (JDK 19+),
+ *   and the AOT cache of newer JDKs (-XX:AOTMode=record / -XX:AOTCache), which builds on the same idea.
+ * - CDS archives only classes from JARs: a non-empty directory on the class path fails the dump. main() therefore
+ *   packages this class into a JAR first.
+ *
+ * The harness (main without arguments) runs the tool below as a child JVM and measures, per configuration, the
+ * time until the child prints its first result, the time until it exits and the child's peak RSS (VmHWM, Linux).
+ * Configurations: -Xshare:off, default CDS, AppCDS. It then compares the `version` command of a tool whose static
+ * fields eagerly build everything it might need with one that uses lazy holder classes (initialization-on-demand:
+ * a nested class's static initializer runs on first access, guarded by the JVM's class-init lock, no volatile).
+ *
+ * JMH does not measure process startup; medians of a few fresh JVMs per configuration are reported instead.
+ *
+ * Typical numbers (JDK 21, 1 CPU; ~1,130 classes in the list, 1,148 of 1,191 loaded from the archive):
+ * - report: ~515 ms without CDS, ~420 ms with the default archive, ~405 ms with AppCDS; peak RSS 45 / 47 / 43 MB.
+ *   The remaining time is executing code (locale data for the currency and date formats, interpreted stream and
+ *   regex work), which no archive removes.
+ * - version: ~250 ms eager vs ~65 ms lazy to first result, 46 vs 37 MB; report: the same for both, since every
+ *   holder is needed. Lazy init moves cost to where it is used, it does not make it smaller.
+ */
+public class _06_StartupProfile {
+
+    static final int RUNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--workload")) {
+            runWorkload(args[1]);
+            return;
+        }
+        Path work = Files.createTempDirectory("startup_profile_");
+        try {
+            Path jar = packageSelf(work);
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            String main = _06_StartupProfile.class.getName();
+            Path classList = work.resolve("app.classlist");
+            Path archive = work.resolve("app.jsa");
+
+            section("1) Record the class list and dump an AppCDS archive");
+            run(List.of(java, "-XX:DumpLoadedClassList=" + classList, "-cp", jar.toString(), main, "--workload", "report"));
+            long classes;
+            try (Stream<String> lines = Files.lines(classList)) {
+                classes = lines.filter(l -> !l.isBlank() && !l.startsWith("#") && !l.startsWith("@")).count();
+            }
+            Measurement dump = run(List.of(java, "-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+                    "-XX:SharedArchiveFile=" + archive, "-cp", jar.toString()));
+            System.out.printf("class list: %d classes; archive: %.1f MB, dumped in %.0f ms%n",
+                    classes, Files.size(archive) / 1e6, dump.exitMs);
+
+            List<String> verbose = runCapture(List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xlog:class+load=info",
+                    "-cp", jar.toString(), main, "--workload", "report"));
+            long loaded = verbose.stream().filter(l -> l.contains("source:")).count();
+            long shared = verbose.stream().filter(l -> l.contains("source: shared objects file")).count();
+            System.out.printf("with the archive, %d of %d loaded classes came from it%n", shared, loaded);
+
+            section("2) `report` command, median of " + RUNS + " fresh JVMs");
+            String[][] configs = {
+                    {"-Xshare:off (no CDS)", "-Xshare:off"},
+                    {"default CDS (JDK classes only)", "-Xshare:auto"},
+                    {"AppCDS archive", "-XX:SharedArchiveFile=" + archive},
+            };
+            List<List<Measurement>> results = new ArrayList<>();
+            for (String[] ignored : configs) results.add(new ArrayList<>());
+            for (int r = 0; r < RUNS; r++) {
+                // Interleaved, so drift (page cache, CPU frequency) hits every configuration alike
+                for (int c = 0; c < configs.length; c++) {
+                    results.get(c).add(run(List.of(java, configs[c][1], "-cp", jar.toString(), main, "--workload", "report")));
+                }
+            }
+            printHeader();
+            for (int c = 0; c < configs.length; c++) print(configs[c][0], results.get(c));
+
+            section("3) Eager static init vs lazy holders (`version` and `report` commands)");
+            String[] workloads = {"version-eager", "version-lazy", "report-eager", "report-lazy"};
+            List<List<Measurement>> initResults = new ArrayList<>();
+            for (String ignored : workloads) initResults.add(new ArrayList<>());
+            for (int r = 0; r < RUNS; r++) {
+                for (int w = 0; w < workloads.length; w++) {
+                    initResults.get(w).add(run(List.of(java, "-cp", jar.toString(), main, "--workload", workloads[w])));
+                }
+            }
+            printHeader();
+            for (int w = 0; w < workloads.length; w++) print(workloads[w], initResults.get(w));
+        } finally {
+            deleteRecursively(work);
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // The CLI under test (runs in the child JVM)
+    // ----------------------------------------------------------------
+
+    private static void runWorkload(String command) {
+        String result = switch (command) {
+            case "report" -> buildReport(Pattern.compile(LOG_REGEX), DateTimeFormatter.ofPattern(STAMP_FORMAT, Locale.ROOT),
+                    NumberFormat.getCurrencyInstance(Locale.US));
+            case "version-eager" -> EagerTool.version();
+            case "version-lazy" -> LazyTool.version();
+            case "report-eager" -> EagerTool.report();
+            case "report-lazy" -> LazyTool.report();
+            default -> throw new IllegalArgumentException("unknown command: " + command);
+        };
+        System.out.println("RESULT " + result);
+        System.out.println("RSS_KB " + peakRssKb());
+    }
+
+    // Compile-time constants: referencing them does not initialize anything
+    private static final String LOG_REGEX = "(\\d{4}-\\d{2}-\\d{2}) (\\w+) (\\S+) took=(\\d+)ms";
+    private static final String STAMP_FORMAT = "EEE d MMM uuuu";
+
+    // What a typical tool does once: parse input, aggregate with streams, format the output
+    static String buildReport(Pattern logLine, DateTimeFormatter stamp, NumberFormat money) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lines.add(String.format(Locale.ROOT, "2024-03-%02d %s service-%d took=%dms",
+                    1 + i % 28, i % 10 == 0 ? "WARN" : "INFO", i % 5, 5 + (i * 37) % 200));
+        }
+        Map<String, IntSummaryStatistics> byService = lines.stream()
+                .map(logLine::matcher)
+                .filter(Matcher::matches)
+                .collect(Collectors.groupingBy(m -> m.group(3), TreeMap::new, Collectors.summarizingInt(m -> Integer.parseInt(m.group(4)))));
+        LocalDate last = lines.stream().map(logLine::matcher).filter(Matcher::matches)
+                .map(m -> LocalDate.parse(m.group(1))).max(Comparator.naturalOrder()).orElseThrow();
+        String slowest = byService.entrySet().stream()
+                .max(Map.Entry.comparingByValue(Comparator.comparingDouble(IntSummaryStatistics::getAverage)))
+                .map(e -> e.getKey() + " avg " + String.format(Locale.ROOT, "%.1f", e.getValue().getAverage()) + "ms")
+                .orElse("-");
+        return byService.size() + " services, slowest " + slowest + ", last " + stamp.format(last)
+                + ", cost " + money.format(byService.values().stream().mapToLong(IntSummaryStatistics::getSum).sum() / 1000.0);
+    }
+
+    // Everything a command might need is built in <clinit>, so `version` pays for `report`
+    static final class EagerTool {
+        static final Pattern LOG_LINE = Pattern.compile(LOG_REGEX);
+        static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern(STAMP_FORMAT, Locale.ROOT);
+        static final NumberFormat MONEY = NumberFormat.getCurrencyInstance(Locale.US);
+        static final int[] SCORE_TABLE = buildScoreTable();
+
+        static String version() {
+            return "tool 1.0 (eager)";
+        }
+
+        static String report() {
+            return buildReport(LOG_LINE, STAMP, MONEY) + ", score " + SCORE_TABLE[SCORE_TABLE.length - 1];
+        }
+    }
+
+    // Same fields, each behind a holder class that is initialized on first use
+    static final class LazyTool {
+        private static final class Parsing {
+            static final Pattern LOG_LINE = Pattern.compile(LOG_REGEX);
+        }
+
+        private static final class Formatting {
+            static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern(STAMP_FORMAT, Locale.ROOT);
+            static final NumberFormat MONEY = NumberFormat.getCurrencyInstance(Locale.US);
+        }
+
+        private static final class Scores {
+            static final int[] TABLE = buildScoreTable();
+        }
+
+        static String version() {
+            return "tool 1.0 (lazy)";
+        }
+
+        static String report() {
+            return buildReport(Parsing.LOG_LINE, Formatting.STAMP, Formatting.MONEY) + ", score " + Scores.TABLE[Scores.TABLE.length - 1];
+        }
+    }
+
+    // 4 MB precomputed table, the kind of thing that ends up in a static initializer
+    private static int[] buildScoreTable() {
+        int[] table = new int[1 << 20];
+        for (int i = 1; i < table.length; i++) table[i] = table[i - 1] * 31 + Integer.bitCount(i);
+        return table;
+    }
+
+    private static long peakRssKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    // ----------------------------------------------------------------
+    // Harness
+    // ----------------------------------------------------------------
+
+    record Measurement(double firstResultMs, double exitMs, long rssKb) {
+    }
+
+    private static Measurement run(List<String> command) throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+        double first = -1;
+        long rss = -1;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("RESULT ") && first < 0) first = (System.nanoTime() - t0) / 1e6;
+                else if (line.startsWith("RSS_KB ")) rss = Long.parseLong(line.substring(7));
+                output.append(line).append('\n');
+            }
+        }
+        int exit = p.waitFor();
+        double exitMs = (System.nanoTime() - t0) / 1e6;
+        if (exit != 0) throw new IllegalStateException("exit " + exit + " from " + command + ":\n" + output);
+        return new Measurement(first, exitMs, rss);
+    }
+
+    private static List<String> runCapture(List<String> command) throws IOException, InterruptedException {
+        Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            lines = in.lines().toList();
+        }
+        p.waitFor();
+        return lines;
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-32s %14s %10s %10s%n", "", "first result", "exit", "peak RSS");
+    }
+
+    private static void print(String label, List<Measurement> runs) {
+        System.out.printf("%-32s %11.0f ms %7.0f ms %7.1f MB%n", label,
+                median(runs.stream().mapToDouble(Measurement::firstResultMs).toArray()),
+                median(runs.stream().mapToDouble(Measurement::exitMs).toArray()),
+                median(runs.stream().mapToDouble(Measurement::rssKb).toArray()) / 1024);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // CDS needs the application classes in a JAR; reuse ours if we already run from one
+    private static Path packageSelf(Path dir) throws IOException, URISyntaxException {
+        Path location = Path.of(_06_StartupProfile.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (Files.isRegularFile(location)) return location;
+        String pkg = _06_StartupProfile.class.getPackageName().replace('.', '/');
+        String prefix = _06_StartupProfile.class.getSimpleName();
+        Path jar = dir.resolve("startup-profile.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.list(location.resolve(pkg))) {
+            for (Path f : files.filter(f -> f.getFileName().toString().startsWith(prefix)).sorted().toList()) {
+                out.putNextEntry(new JarEntry(pkg + "/" + f.getFileName()));
+                out.write(Files.readAllBytes(f));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    private static void section(String title) {
+        System.out.println();
+        System.out.println("-- " + title + " --");
+    }
+}
@@ -0,0 +1,494 @@
+package _10_04_modules_jpms;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/*
+Plugin host on ModuleLayer: cached layers, atomic hot reload, inlinable entry points.
+
+Example 10 (LayerDemo) resolves one plugin into a new layer and calls it with getMethod("run").invoke(...). A host
+that does that on every (re)load and call pays for:
+- Resolution + a new class loader + class loading/verification/init every time, even if the JAR did not change.
+- Core reflection per call: Method lookup (copies Method objects), access checks, varargs array, boxing.
+- Reading the plugin from the JAR the admin is about to overwrite: the layer's ModuleReader keeps the file open,
+  and a JAR rewritten in place under a live layer produces odd failures later.
+
+PluginLayerHost:
+- load(jar): stat (size, full mtime) -> unchanged since last time: nothing to do. A stamp whose mtime lies within
+  RACY_WINDOW_MILLIS of when the JAR was hashed is not trusted (a same-size rewrite in the same mtime tick would look
+  identical), so that JAR is hashed again and compared. The layer cache is keyed by (ModuleDescriptor, SHA-256). ModuleDescriptor implements equals/hashCode over name, version,
+  requires, exports, packages, ..., so "same descriptor and same bytes" is an exact hit.
+- Otherwise the JAR is copied once to a temp file, the copy is hashed and atomically renamed to a content-addressed
+  snapshot (<hash>.jar), so a snapshot always holds exactly the bytes its name claims even if the JAR is rewritten
+  during the load. On a miss the snapshot is resolved against the boot layer and defined with one loader. The entry package is exported to the host's module through the layer's Controller,
+  so plugins do not have to export it to everyone.
+- Entry point: Main-Class of the descriptor if set, else <module>.Main, with `public String handle(String)`.
+  Looked up once with findVirtual and bound to the instance. The bound handle becomes the class data of a per-plugin
+  hidden class implementing Function<String, String>, which keeps it in a static final: the JIT treats it as a
+  constant and inlines the plugin's handle() into the caller. (LambdaMetafactory would be the usual tool, but it
+  needs a full-privilege lookup in the plugin's module, which a host in another module cannot get.)
+- The active plugin per module name lives in a ConcurrentHashMap; reload = one put. In-flight calls keep the
+  ActivePlugin they read and finish on the old layer; new calls see the new one. No locks on the call path.
+- Up to KEEP_VERSIONS layers per module stay cached, so rolling back to a previous JAR is a cache hit;
+  older layers are dropped and become collectable once no call is still running on them.
+
+main() compiles plugin modules at runtime (needs a JDK), then measures reloads and steady-state calls.
+JMH is not on the classpath; numbers come from the ad-hoc bench loop used in the other examples.
+
+Typical numbers (1 CPU, 3 runs of main): reload of a new JAR ~7-9 ms (copy, hash, resolve, define, first call), reload
+of a JAR seen before ~1-2 ms (copy + hash), unchanged but recently written ~0.1-0.17 ms (stat + hash), unchanged file
+~7-17 us (stat only; averaged over 2000 loads, a handful of loads right after the sleep measured ~0.3 ms).
+Per 1M calls: getMethod().invoke ~64-93 ms, cached Method.invoke ~15-29 ms, host.invoke ~12-23 ms, held ActivePlugin
+~0.5-1.7 ms. host.invoke is NOT meaningfully faster than a cached Method.invoke: here they are within noise of each
+other, and on other machines the cached Method.invoke loop has measured ~3x faster (~4.6 vs ~13.5 ms). What
+host.invoke pays is the ConcurrentHashMap lookup per call, whose volatile reads cannot be hoisted out of the loop;
+only a held ActivePlugin lets the entry inline down to Main.handle with nothing in between. Callers on a hot path
+should hold the ActivePlugin (and re-read it when they want to pick up a reload).
+*/
+public class _04_PluginLayerHost {
+
+    public static void main(String[] args) throws Exception {
+        if (ToolProvider.getSystemJavaCompiler() == null) {
+            System.out.println("No Java compiler available (running on a JRE); skipping.");
+            return;
+        }
+        Path work = Files.createTempDirectory("plugin_host_");
+        try {
+            Path plugins = Files.createDirectories(work.resolve("plugins"));
+            Path greeterV1 = buildPlugin(work, "greeter", "\"hello, \" + request", "1.0");
+            Path greeterV2 = buildPlugin(work, "greeter", "\"HELLO, \" + request.toUpperCase()", "2.0");
+            Path counter = buildPlugin(work, "counter", "String.valueOf(request.length())", "1.0");
+            Path reverser = buildPlugin(work, "reverser", "new StringBuilder(request).reverse().toString()", "1.0");
+
+            PluginLayerHost host = new PluginLayerHost(work.resolve("snapshots"));
+
+            section("Load several plugins");
+            Path live = plugins.resolve("greeter.jar");
+            Files.copy(greeterV1, live);
+            for (Path p : List.of(live, copyInto(plugins, counter), copyInto(plugins, reverser))) {
+                System.out.println(host.load(p));
+            }
+            for (String name : host.activeModules()) {
+                System.out.println(name + ".handle(\"world\") = " + host.invoke(name, "world"));
+            }
+
+            section("Hot reload: overwrite greeter.jar in place");
+            replace(live, greeterV2);
+            System.out.println(host.load(live));
+            System.out.println("greeter.handle(\"world\") = " + host.invoke("greeter", "world"));
+            replace(live, greeterV1);
+            System.out.println(host.load(live) + "   <- rollback reuses the cached layer");
+            System.out.println("greeter.handle(\"world\") = " + host.invoke("greeter", "world"));
+            System.out.println(host.load(live) + "   <- unchanged file");
+
+            section("Reload latency (average per reload)");
+            int n = 20;
+            double cold = 0;
+            for (int i = 0; i < n; i++) {
+                // A new build each time: the body differs, so hash and layer are new
+                Path fresh = buildPlugin(work, "greeter", "\"hi #" + i + ", \" + request", "3." + i);
+                replace(live, fresh);
+                long t0 = System.nanoTime();
+                host.load(live);
+                host.invoke("greeter", "x"); // first call initializes the plugin's classes
+                cold += System.nanoTime() - t0;
+            }
+            System.out.printf("%-35s %8.3f ms%n", "new JAR (copy+hash+resolve+define)", cold / n / 1e6);
+            replace(live, greeterV1);
+            host.load(live); // make sure v1 is cached again
+            replace(live, greeterV2);
+            host.load(live);
+            double hit = 0;
+            for (int i = 0; i < n; i++) {
+                replace(live, (i & 1) == 0 ? greeterV1 : greeterV2);
+                long t0 = System.nanoTime();
+                host.load(live);
+                hit += System.nanoTime() - t0;
+            }
+            System.out.printf("%-35s %8.3f ms%n", "known JAR (copy+hash, cached layer)", hit / n / 1e6);
+            // The unchanged paths are cheap: more rounds, so the average is not just the first interpreted calls
+            int m = 2_000;
+            double racy = 0;
+            for (int i = 0; i < m; i++) {
+                long t0 = System.nanoTime();
+                host.load(live);
+                racy += System.nanoTime() - t0;
+            }
+            System.out.printf("%-35s %8.3f ms%n", "unchanged, just written (stat+hash)", racy / m / 1e6);
+            Thread.sleep(PluginLayerHost.RACY_WINDOW_MILLIS + 100);
+            host.load(live); // hashed once more, now clearly after the last write
+            double same = 0;
+            for (int i = 0; i < m; i++) {
+                long t0 = System.nanoTime();
+                host.load(live);
+                same += System.nanoTime() - t0;
+            }
+            System.out.printf("%-35s %8.3f ms%n", "unchanged file (stat only)", same / m / 1e6);
+            System.out.println(host.stats());
+
+            section("Steady-state calls (1M per run)");
+            int calls = 1_000_000;
+            ClassLoader loader = host.loaderOf("counter");
+            Class<?> mainClass = Class.forName("counter.Main", true, loader);
+            Object instance = mainClass.getDeclaredConstructor().newInstance();
+            Method cachedMethod = mainClass.getMethod("handle", String.class);
+            bench("getMethod(...).invoke per call", 2, 5, () -> {
+                long sum = 0;
+                for (int i = 0; i < calls; i++) {
+                    try {
+                        sum += ((String) mainClass.getMethod("handle", String.class).invoke(instance, "abc")).length();
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                BLACKHOLE = sum;
+            });
+            bench("cached Method.invoke", 2, 5, () -> {
+                long sum = 0;
+                for (int i = 0; i < calls; i++) {
+                    try {
+                        sum += ((String) cachedMethod.invoke(instance, "abc")).length();
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                BLACKHOLE = sum;
+            });
+            bench("host.invoke (map + entry.apply)", 2, 5, () -> {
+                long sum = 0;
+                for (int i = 0; i < calls; i++) sum += host.invoke("counter", "abc").length();
+                BLACKHOLE = sum;
+            });
+            PluginLayerHost.ActivePlugin pinned = host.active("counter");
+            bench("held ActivePlugin.invoke", 2, 5, () -> {
+                long sum = 0;
+                for (int i = 0; i < calls; i++) sum += pinned.invoke("abc").length();
+                BLACKHOLE = sum;
+            });
+        } finally {
+            deleteRecursively(work);
+        }
+    }
+
+    private static volatile Object BLACKHOLE;
+
+    // ----------------------------------------------------------------
+    // Host
+    // ----------------------------------------------------------------
+    static final class PluginLayerHost {
+        static final int KEEP_VERSIONS = 2;
+        static final long RACY_WINDOW_MILLIS = 2_000; // coarsest common mtime granularity (FAT: 2 s)
+        private static final MethodType ENTRY_TYPE = MethodType.methodType(String.class, String.class);
+        private static final byte[] ENTRY_TEMPLATE = templateBytes();
+
+        private final Path snapshots;
+        private final Map<String, ActivePlugin> active = new ConcurrentHashMap<>();
+        private final Map<LayerKey, ActivePlugin> layers = new ConcurrentHashMap<>();
+        private final Map<String, Deque<LayerKey>> versions = new ConcurrentHashMap<>(); // per module, newest first
+        private final Map<Path, FileStamp> stamps = new ConcurrentHashMap<>();
+        private final AtomicLong resolved = new AtomicLong();
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLong unchanged = new AtomicLong();
+
+        PluginLayerHost(Path snapshots) throws IOException {
+            this.snapshots = Files.createDirectories(snapshots);
+        }
+
+        /** Loads or reloads the plugin in {@code jar} and makes it the active version of its module. */
+        synchronized String load(Path jar) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(jar, BasicFileAttributes.class);
+            long size = attrs.size();
+            FileTime modified = attrs.lastModifiedTime();
+            long readAt = System.currentTimeMillis(); // before the content is read
+            FileStamp stamp = stamps.get(jar);
+            if (stamp != null && stamp.size == size && stamp.modified.equals(modified)
+                    && active.get(stamp.key.descriptor.name()) == layers.get(stamp.key)) {
+                if (!stamp.isRacy()) {
+                    unchanged.incrementAndGet();
+                    return "unchanged  " + stamp.key;
+                }
+                // Modified close to when it was hashed: a same-size rewrite in the same mtime tick looks identical
+                if (sha256(jar).equals(stamp.key.sha256)) {
+                    stamps.put(jar, new FileStamp(size, modified, readAt, stamp.key));
+                    unchanged.incrementAndGet();
+                    return "unchanged  " + stamp.key;
+                }
+            }
+
+            // Copy first and hash the copy: hashing the live JAR and copying it in a second read could name a
+            // snapshot after bytes it does not contain if the JAR is rewritten in between
+            Path tmp = Files.createTempFile(snapshots, "load", ".tmp");
+            String hash;
+            Path snapshot;
+            try {
+                Files.copy(jar, tmp, StandardCopyOption.REPLACE_EXISTING);
+                hash = sha256(tmp);
+                snapshot = snapshots.resolve(hash + ".jar");
+                if (Files.notExists(snapshot)) Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            ModuleFinder finder = ModuleFinder.of(snapshot);
+            Set<ModuleReference> refs = finder.findAll();
+            if (refs.size() != 1) throw new IllegalArgumentException(jar + " must contain exactly one module, found " + refs.size());
+            ModuleDescriptor descriptor = refs.iterator().next().descriptor();
+            LayerKey key = new LayerKey(descriptor, hash);
+
+            ActivePlugin plugin = layers.get(key);
+            String how;
+            if (plugin != null) {
+                cacheHits.incrementAndGet();
+                how = "cached     ";
+            } else {
+                plugin = define(finder, descriptor, key);
+                layers.put(key, plugin);
+                resolved.incrementAndGet();
+                how = "resolved   ";
+            }
+            active.put(descriptor.name(), plugin); // the swap: next invoke() sees the new layer
+            stamps.put(jar, new FileStamp(size, modified, readAt, key));
+            retain(descriptor.name(), key);
+            return how + key;
+        }
+
+        private ActivePlugin define(ModuleFinder finder, ModuleDescriptor descriptor, LayerKey key) {
+            ModuleLayer boot = ModuleLayer.boot();
+            Configuration cf = boot.configuration().resolve(finder, ModuleFinder.of(), Set.of(descriptor.name()));
+            ModuleLayer.Controller controller = ModuleLayer.defineModulesWithOneLoader(cf, List.of(boot), PluginLayerHost.class.getClassLoader());
+            Module module = controller.layer().findModule(descriptor.name()).orElseThrow();
+
+            String entryClass = descriptor.mainClass().orElse(descriptor.name() + ".Main");
+            String pkg = entryClass.substring(0, entryClass.lastIndexOf('.'));
+            controller.addExports(module, pkg, PluginLayerHost.class.getModule());
+            try {
+                Class<?> main = Class.forName(module, entryClass);
+                if (main == null) throw new IllegalArgumentException(entryClass + " not found in " + descriptor.name());
+                Object instance = main.getDeclaredConstructor().newInstance();
+                MethodHandle handle = MethodHandles.lookup().findVirtual(main, "handle", ENTRY_TYPE).bindTo(instance);
+                return new ActivePlugin(key, controller.layer(), constantEntry(handle));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException(descriptor.name() + ": no usable " + entryClass + ".handle(String)", e);
+            }
+        }
+
+        // One hidden copy of ConstantEntry per plugin, not linked strongly to our loader: it is unloaded with the
+        // ActivePlugin that references it
+        private static Function<String, String> constantEntry(MethodHandle handle) throws ReflectiveOperationException {
+            Class<?> hidden = MethodHandles.lookup().defineHiddenClassWithClassData(ENTRY_TEMPLATE, handle, true).lookupClass();
+            @SuppressWarnings("unchecked")
+            Function<String, String> entry = (Function<String, String>) hidden.getDeclaredConstructor().newInstance();
+            return entry;
+        }
+
+        private static byte[] templateBytes() {
+            try (InputStream in = ConstantEntry.class.getResourceAsStream(ConstantEntry.class.getName()
+                    .substring(ConstantEntry.class.getPackageName().length() + 1) + ".class")) {
+                if (in == null) throw new IllegalStateException("ConstantEntry.class not found");
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Never used directly: the template for constantEntry. Its HANDLE is the class data of each hidden copy. */
+        static final class ConstantEntry implements Function<String, String> {
+            private static final MethodHandle HANDLE = classData();
+
+            private static MethodHandle classData() {
+                try {
+                    return MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+                } catch (IllegalAccessException e) {
+                    throw new ExceptionInInitializerError(e);
+                }
+            }
+
+            @Override
+            public String apply(String request) {
+                try {
+                    return (String) HANDLE.invokeExact(request);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new UndeclaredThrowableException(t);
+                }
+            }
+        }
+
+        // Keep the newest KEEP_VERSIONS layers of a module; older ones are dropped (and their snapshot files deleted)
+        private void retain(String module, LayerKey key) throws IOException {
+            Deque<LayerKey> deque = versions.computeIfAbsent(module, m -> new ArrayDeque<>());
+            deque.remove(key);
+            deque.addFirst(key);
+            while (deque.size() > KEEP_VERSIONS) {
+                LayerKey evicted = deque.removeLast();
+                layers.remove(evicted);
+                stamps.values().removeIf(s -> s.key.equals(evicted));
+                // The old layer's loader may still read from its snapshot until in-flight calls finish: deleting
+                // an open file is fine on POSIX; elsewhere leave it for the next start.
+                try {
+                    Files.deleteIfExists(snapshots.resolve(evicted.sha256 + ".jar"));
+                } catch (IOException ignored) {
+                    // still mapped by a live loader
+                }
+            }
+        }
+
+        String invoke(String module, String request) {
+            ActivePlugin plugin = active.get(module);
+            if (plugin == null) throw new IllegalArgumentException("no plugin " + module);
+            return plugin.invoke(request);
+        }
+
+        ActivePlugin active(String module) {
+            return active.get(module);
+        }
+
+        ClassLoader loaderOf(String module) {
+            return active.get(module).layer.findLoader(module);
+        }
+
+        List<String> activeModules() {
+            return active.keySet().stream().sorted().toList();
+        }
+
+        String stats() {
+            return "resolved=" + resolved.get() + ", layer cache hits=" + cacheHits.get() + ", unchanged=" + unchanged.get()
+                    + ", cached layers=" + layers.size();
+        }
+
+        record LayerKey(ModuleDescriptor descriptor, String sha256) {
+            @Override
+            public String toString() {
+                return descriptor.toNameAndVersion() + "@" + sha256.substring(0, 12);
+            }
+        }
+
+        /** size + full mtime when the JAR was hashed at {@code hashedAt}; trusted only once the mtime is clearly older. */
+        record FileStamp(long size, FileTime modified, long hashedAt, LayerKey key) {
+            boolean isRacy() {
+                return modified.toMillis() >= hashedAt - RACY_WINDOW_MILLIS;
+            }
+        }
+
+        /** One resolved layer with its entry point; immutable, so a caller holding it is never affected by reloads. */
+        record ActivePlugin(LayerKey key, ModuleLayer layer, Function<String, String> entry) {
+            String invoke(String request) {
+                return entry.apply(request);
+            }
+        }
+
+        private static String sha256(Path file) throws IOException {
+            try (InputStream in = Files.newInputStream(file)) {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                byte[] buf = new byte[64 * 1024];
+                for (int r; (r = in.read(buf)) > 0; ) md.update(buf, 0, r);
+                return HexFormat.of().formatHex(md.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------
+    // Building plugin modules at runtime
+    // ----------------------------------------------------------------
+
+    private static int builds;
+
+    // module <name> { }  +  <name>.Main { public String handle(String request) { return <expr>; } }
+    private static Path buildPlugin(Path work, String name, String expression, String version) throws IOException {
+        Path src = Files.createDirectories(work.resolve("src" + builds).resolve(name));
+        Path out = Files.createDirectories(work.resolve("out" + builds));
+        Path jar = work.resolve(name + "-" + version + "-" + builds++ + ".jar");
+        Files.writeString(src.resolve("module-info.java"), "module " + name + " { }\n");
+        Path pkgDir = Files.createDirectories(src.resolve(name));
+        Files.writeString(pkgDir.resolve("Main.java"), """
+                package %s;
+                public class Main {
+                    public String handle(String request) { return %s; }
+                }
+                """.formatted(name, expression));
+        int rc = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", out.toString(), "--module-version", version,
+                src.resolve("module-info.java").toString(), pkgDir.resolve("Main.java").toString());
+        if (rc != 0) throw new IllegalStateException("Compilation failed for " + name);
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> files = Files.walk(out)) {
+            for (Path f : files.filter(Files::isRegularFile).sorted().toList()) {
+                jos.putNextEntry(new JarEntry(out.relativize(f).toString().replace('\\', '/')));
+                jos.write(Files.readAllBytes(f));
+                jos.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static Path copyInto(Path dir, Path jar) throws IOException {
+        String file = jar.getFileName().toString();
+        return Files.copy(jar, dir.resolve(file.substring(0, file.indexOf('-')) + ".jar"));
+    }
+
+    // In-place overwrite, as a deploy script would do
+    private static void replace(Path live, Path with) throws IOException {
+        Files.write(live, Files.readAllBytes(with));
+    }
+
+    // ----------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------
+
+    private static void bench(String label, int warmups, int runs, Runnable r) {
+        for (int i = 0; i < warmups; i++) r.run();
+        long total = 0L;
+        for (int i = 0; i < runs; i++) {
+            long t0 = System.nanoTime();
+            r.run();
+            long t1 = System.nanoTime();
+            total += (t1 - t0);
+        }
+        double avgMs = total / 1_000_000.0 / Math.max(1, runs);
+        System.out.printf("%-35s %8.3f ms%n", label, avgMs);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    private static void section(String title) {
+        System.out.println();
+        System.out.println("--- " + title + " ---");
+    }
+}